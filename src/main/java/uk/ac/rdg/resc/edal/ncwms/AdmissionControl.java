@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsRequestLimit;
+
+/**
+ * Limits the number of requests of each type which are processed at once.
+ * Requests beyond the limit wait in a bounded queue for a free slot, and are
+ * rejected if the queue is full or they wait for too long, so that a burst
+ * of expensive requests (e.g. long time series) cannot take every request
+ * thread away from cheap ones (e.g. map tiles).
+ *
+ * Request types without a configured limit are not restricted.
+ */
+final class AdmissionControl {
+    /*
+     * Returned for requests which are not limited
+     */
+    private static final Permit UNLIMITED = new Permit(null, 0L);
+
+    /*
+     * Keyed by lower-case request type. Replaced rather than modified, so
+     * that it can be read without locking.
+     */
+    private volatile Map<String, Gate> gates = new HashMap<>();
+
+    /**
+     * Applies a new set of limits. Requests which are already running or
+     * waiting continue under the limits they were admitted with, so the
+     * number running at once may briefly exceed a lowered limit.
+     *
+     * @param limits
+     *            The limits for each type of request
+     */
+    synchronized void configure(Iterable<NcwmsRequestLimit> limits) {
+        Map<String, Gate> newGates = new HashMap<>();
+        for (NcwmsRequestLimit limit : limits) {
+            if (limit.getRequest() == null || limit.getMaxConcurrent() <= 0) {
+                continue;
+            }
+            String key = limit.getRequest().toLowerCase(Locale.ROOT);
+            Gate gate = gates.get(key);
+            if (gate == null || !gate.hasLimit(limit)) {
+                gate = new Gate(limit);
+            }
+            newGates.put(key, gate);
+        }
+        gates = newGates;
+    }
+
+    /**
+     * Waits for a slot in which to process a request
+     *
+     * @param request
+     *            The WMS request type, e.g. GetMap
+     * @return A {@link Permit} which must be released once the request has
+     *         been processed, or <code>null</code> if the request has been
+     *         rejected
+     * @throws InterruptedException
+     *             If the thread was interrupted whilst waiting
+     */
+    Permit acquire(String request) throws InterruptedException {
+        Gate gate = request == null ? null : gates.get(request.toLowerCase(Locale.ROOT));
+        if (gate == null) {
+            return UNLIMITED;
+        }
+        return gate.acquire();
+    }
+
+    /**
+     * @param request
+     *            The WMS request type, e.g. GetMap
+     * @return The number of seconds after which a client whose request was
+     *         rejected should try again
+     */
+    int getRetryAfterSeconds(String request) {
+        Gate gate = request == null ? null : gates.get(request.toLowerCase(Locale.ROOT));
+        return gate == null ? 1 : gate.getRetryAfterSeconds();
+    }
+
+    /**
+     * @return The current queue depths, wait times etc. for each type of
+     *         request which is limited
+     */
+    JSONObject getStatistics() {
+        JSONObject statistics = new JSONObject();
+        for (Gate gate : gates.values()) {
+            statistics.put(gate.limit.getRequest(), gate.getStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * A slot in which a request is being processed
+     */
+    static final class Permit {
+        private final Gate gate;
+        private final long waitMillis;
+        private boolean released = false;
+
+        private Permit(Gate gate, long waitMillis) {
+            this.gate = gate;
+            this.waitMillis = waitMillis;
+        }
+
+        /**
+         * @return The time the request waited for this permit, in
+         *         milliseconds
+         */
+        long getWaitMillis() {
+            return waitMillis;
+        }
+
+        /**
+         * Frees the slot for another request. Has no effect if it has already
+         * been released.
+         */
+        synchronized void release() {
+            if (gate != null && !released) {
+                released = true;
+                gate.semaphore.release();
+            }
+        }
+    }
+
+    /**
+     * The limit on a single type of request, with its statistics
+     */
+    private static final class Gate {
+        private final NcwmsRequestLimit limit;
+        private final Semaphore semaphore;
+        private final AtomicInteger queued = new AtomicInteger(0);
+        private final AtomicLong admitted = new AtomicLong(0L);
+        private final AtomicLong rejected = new AtomicLong(0L);
+        private final AtomicLong queuedTotal = new AtomicLong(0L);
+        private final AtomicLong totalWaitMillis = new AtomicLong(0L);
+        private final AtomicLong maxWaitMillis = new AtomicLong(0L);
+
+        private Gate(NcwmsRequestLimit limit) {
+            this.limit = limit;
+            /*
+             * Fair, so that requests are admitted in the order they arrived
+             */
+            this.semaphore = new Semaphore(limit.getMaxConcurrent(), true);
+        }
+
+        private boolean hasLimit(NcwmsRequestLimit other) {
+            return limit.getMaxConcurrent() == other.getMaxConcurrent()
+                    && limit.getMaxQueued() == other.getMaxQueued()
+                    && limit.getMaxWaitSeconds() == other.getMaxWaitSeconds();
+        }
+
+        private Permit acquire() throws InterruptedException {
+            /*
+             * Unlike tryAcquire(), this does not take a slot ahead of requests
+             * which are already waiting
+             */
+            if (semaphore.tryAcquire(0L, TimeUnit.SECONDS)) {
+                admitted.incrementAndGet();
+                return new Permit(this, 0L);
+            }
+            if (queued.incrementAndGet() > limit.getMaxQueued()) {
+                queued.decrementAndGet();
+                rejected.incrementAndGet();
+                return null;
+            }
+            queuedTotal.incrementAndGet();
+            long start = System.currentTimeMillis();
+            boolean acquired;
+            try {
+                acquired = semaphore.tryAcquire(limit.getMaxWaitSeconds(), TimeUnit.SECONDS);
+            } finally {
+                queued.decrementAndGet();
+            }
+            long waitMillis = System.currentTimeMillis() - start;
+            totalWaitMillis.addAndGet(waitMillis);
+            long max;
+            while (waitMillis > (max = maxWaitMillis.get())
+                    && !maxWaitMillis.compareAndSet(max, waitMillis)) {
+                /*
+                 * Retry until the maximum is updated
+                 */
+            }
+            if (!acquired) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            admitted.incrementAndGet();
+            return new Permit(this, waitMillis);
+        }
+
+        /**
+         * @return The number of seconds after which a rejected client should
+         *         try again
+         */
+        private int getRetryAfterSeconds() {
+            return Math.max(1, limit.getMaxWaitSeconds());
+        }
+
+        private JSONObject getStatistics() {
+            JSONObject statistics = new JSONObject();
+            statistics.put("MaxConcurrent", limit.getMaxConcurrent());
+            statistics.put("MaxQueued", limit.getMaxQueued());
+            statistics.put("Active", limit.getMaxConcurrent() - semaphore.availablePermits());
+            statistics.put("QueueDepth", queued.get());
+            statistics.put("AdmittedCount", admitted.get());
+            statistics.put("RejectedCount", rejected.get());
+            long nQueued = queuedTotal.get();
+            statistics.put("QueuedCount", nQueued);
+            statistics.put("MeanWaitMillis", nQueued == 0 ? 0L : totalWaitMillis.get() / nQueued);
+            statistics.put("MaxWaitMillis", maxWaitMillis.get());
+            return statistics;
+        }
+    }
+}
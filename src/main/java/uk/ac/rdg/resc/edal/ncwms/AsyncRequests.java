@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the processing of requests from the servlet container's threads to
+ * a {@link RequestExecutors}, using Servlet 3.0 asynchronous processing.
+ *
+ * This is the only class which uses the Servlet 3.0 API, so that the rest of
+ * ncWMS still runs in older containers (e.g. the standalone server). It must
+ * only be used once {@link #isSupported(ServletContext)} has returned
+ * <code>true</code>.
+ */
+final class AsyncRequests {
+    private static final Logger log = LoggerFactory.getLogger(AsyncRequests.class);
+
+    /**
+     * The work for a request
+     */
+    interface Handler {
+        void handle(HttpServletRequest request, HttpServletResponse response) throws Exception;
+    }
+
+    private AsyncRequests() {
+    }
+
+    /**
+     * @param servletContext
+     *            The context of the servlet which will process requests
+     * @return Whether the container supports asynchronous processing
+     */
+    static boolean isSupported(ServletContext servletContext) {
+        return servletContext.getMajorVersion() >= 3;
+    }
+
+    /**
+     * Processes a request on the I/O executor, returning the container's
+     * thread straight away. Requests which cannot be processed asynchronously
+     * (e.g. because they have been forwarded from another servlet, which
+     * expects the response to be complete when the forward returns) are
+     * processed on the current thread.
+     *
+     * @param request
+     *            The request
+     * @param response
+     *            The response
+     * @param executors
+     *            The executors to process the request on
+     * @param handler
+     *            The work for the request
+     * @return Whether the request has been (or will be) passed to the
+     *         handler. If not, a 503 (Service Unavailable) response has been
+     *         sent.
+     */
+    static boolean process(final HttpServletRequest request, final HttpServletResponse response,
+            RequestExecutors executors, final Handler handler) throws Exception {
+        if (!request.isAsyncSupported() || request.getDispatcherType() != DispatcherType.REQUEST) {
+            handler.handle(request, response);
+            return true;
+        }
+
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        /*
+         * Long requests are stopped by their deadlines instead
+         */
+        asyncContext.setTimeout(0L);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                cancel(request);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                /*
+                 * Usually because the client has gone away
+                 */
+                cancel(request);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        try {
+            executors.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handler.handle(request, response);
+                    } catch (Exception e) {
+                        log.error("Problem processing request", e);
+                        sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    } finally {
+                        asyncContext.complete();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            /*
+             * The queue of requests is full, or the server is shutting down
+             */
+            log.debug("Rejected request - {}", e.getMessage());
+            if (!response.isCommitted()) {
+                response.setHeader("Cache-Control", "no-store");
+                response.setIntHeader("Retry-After", 1);
+            }
+            sendError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            asyncContext.complete();
+            return false;
+        }
+    }
+
+    private static void cancel(HttpServletRequest request) {
+        Object token = request.getAttribute(NcwmsServlet.CANCELLATION_TOKEN);
+        if (token instanceof CancellationToken) {
+            ((CancellationToken) token).cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+        }
+    }
+
+    private static void sendError(HttpServletResponse response, int status) {
+        if (!response.isCommitted()) {
+            try {
+                response.sendError(status);
+            } catch (IOException e) {
+                log.debug("Cannot send error to client", e);
+            }
+        }
+    }
+}
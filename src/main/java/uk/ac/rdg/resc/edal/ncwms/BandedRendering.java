@@ -0,0 +1,430 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.wms.RequestParams;
+
+/**
+ * Renders a large GetMap image as a number of horizontal bands in parallel.
+ * Each band is a GetMap request for a strip of the original bounding box,
+ * which is rendered on an executor for work which reads data, then decoded
+ * and copied into its rows of the full image on another for CPU-bound work
+ * (normally the render pool). The full image is then encoded on the calling
+ * thread.
+ *
+ * This is only done where the bands are guaranteed to join up exactly, i.e.
+ * for 32-bit PNG images drawn with raster styles and a fixed colour scale
+ * range. Other PNG images are encoded by EDAL with a palette chosen for the
+ * whole image, which the joined image could not reproduce.
+ * Contours, arrows and the like are drawn with respect to the whole image,
+ * and an automatic colour scale range is calculated from the data in the
+ * image, so these are always rendered in one piece.
+ */
+final class BandedRendering {
+    private static final Logger log = LoggerFactory.getLogger(BandedRendering.class);
+
+    /*
+     * Bands are never made smaller than this, so that small images are not
+     * split into so many requests that the overhead outweighs the benefit
+     */
+    static final int MIN_BAND_ROWS = 64;
+
+    /*
+     * The formats whose images are encoded as plain ARGB, as the joined image
+     * is
+     */
+    private static final Set<String> PNG_FORMATS = new HashSet<>(
+            Arrays.asList("image/png;mode=32bit"));
+    /*
+     * The styles which colour each pixel independently of the others
+     */
+    private static final Set<String> RASTER_STYLES = new HashSet<>(Arrays.asList(
+            "default-scalar", "raster", "boxfill"));
+
+    /**
+     * Renders a single band of a banded image
+     */
+    interface BandRenderer {
+        /**
+         * @param bandParams
+         *            The GetMap parameters for the band
+         * @return The rendered band
+         * @throws Exception
+         *             If there is a problem rendering the band
+         */
+        CapturedResponse render(RequestParams bandParams) throws Exception;
+    }
+
+    private final RequestParams params;
+    private final int width;
+    private final int height;
+    private final int bands;
+    /*
+     * The vertical extent of the bounding box, and the positions of the
+     * horizontal extent in it
+     */
+    private final double minY;
+    private final double maxY;
+    private final String minX;
+    private final String maxX;
+    /*
+     * Whether the bounding box has the vertical axis first (WMS 1.3.0 in
+     * EPSG:4326)
+     */
+    private final boolean yFirst;
+
+    private BandedRendering(RequestParams params, int width, int height, int bands,
+            String[] bbox, boolean yFirst) {
+        this.params = params;
+        this.width = width;
+        this.height = height;
+        this.bands = bands;
+        this.yFirst = yFirst;
+        if (yFirst) {
+            minY = Double.parseDouble(bbox[0].trim());
+            minX = bbox[1].trim();
+            maxY = Double.parseDouble(bbox[2].trim());
+            maxX = bbox[3].trim();
+        } else {
+            minX = bbox[0].trim();
+            minY = Double.parseDouble(bbox[1].trim());
+            maxX = bbox[2].trim();
+            maxY = Double.parseDouble(bbox[3].trim());
+        }
+    }
+
+    /**
+     * Decides whether a GetMap request should be rendered in bands
+     *
+     * @param params
+     *            The GetMap parameters
+     * @param minPixels
+     *            The minimum size of image (width &times; height) to render
+     *            in bands. Zero or less means that no images are.
+     * @param maxWidth
+     *            The maximum width of image which the server will render
+     * @param maxHeight
+     *            The maximum height of image which the server will render
+     * @param parallelism
+     *            The number of bands which may be rendered at once
+     * @return A {@link BandedRendering} for the request, or <code>null</code>
+     *         if it should be rendered in one piece
+     */
+    static BandedRendering plan(RequestParams params, int minPixels, int maxWidth,
+            int maxHeight, int parallelism) {
+        if (minPixels <= 0 || parallelism < 2) {
+            return null;
+        }
+        String format = params.getString("FORMAT");
+        if (format == null || !PNG_FORMATS.contains(format.trim().toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        if (params.getString("SLD") != null || params.getString("SLD_BODY") != null
+                || "true".equalsIgnoreCase(params.getString("ANIMATION"))) {
+            return null;
+        }
+        String scaleRange = params.getString("COLORSCALERANGE");
+        if (scaleRange != null && "auto".equalsIgnoreCase(scaleRange.trim())) {
+            return null;
+        }
+        if (!isRasterStyles(params.getString("STYLES"))) {
+            return null;
+        }
+
+        String widthStr = params.getString("WIDTH");
+        String heightStr = params.getString("HEIGHT");
+        String bboxStr = params.getString("BBOX");
+        if (widthStr == null || heightStr == null || bboxStr == null) {
+            return null;
+        }
+        String[] bbox = bboxStr.split(",");
+        if (bbox.length != 4) {
+            return null;
+        }
+        String version = params.getString("VERSION");
+        String crs = params.getString("CRS");
+        if (crs == null) {
+            crs = params.getString("SRS");
+        }
+        boolean yFirst = version != null && version.startsWith("1.3")
+                && "EPSG:4326".equalsIgnoreCase(crs);
+
+        BandedRendering banded;
+        try {
+            int width = Integer.parseInt(widthStr.trim());
+            int height = Integer.parseInt(heightStr.trim());
+            /*
+             * Oversized requests are left to be rejected in the usual way
+             */
+            if (width <= 0 || height <= 0 || width > maxWidth || height > maxHeight
+                    || (long) width * height < minPixels) {
+                return null;
+            }
+            int bands = Math.min(parallelism, height / MIN_BAND_ROWS);
+            if (bands < 2) {
+                return null;
+            }
+            banded = new BandedRendering(params, width, height, bands, bbox, yFirst);
+            /*
+             * The horizontal extent is passed on unchanged, but must be valid
+             */
+            for (String x : new String[] { banded.minX, banded.maxX }) {
+                Double.parseDouble(x);
+            }
+        } catch (NumberFormatException e) {
+            /*
+             * The request is invalid, and will fail in the usual way
+             */
+            return null;
+        }
+        if (!(banded.minY < banded.maxY)) {
+            return null;
+        }
+        return banded;
+    }
+
+    private static boolean isRasterStyles(String stylesStr) {
+        if (stylesStr == null || stylesStr.trim().isEmpty()) {
+            /*
+             * The default style of a layer may not be a raster one (e.g. for
+             * vector layers)
+             */
+            return false;
+        }
+        for (String style : stylesStr.split(",", -1)) {
+            int slash = style.indexOf('/');
+            String styleName = (slash < 0 ? style : style.substring(0, slash)).trim();
+            if (!RASTER_STYLES.contains(styleName.toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of bands which the image is split into
+     */
+    int getBandCount() {
+        return bands;
+    }
+
+    /**
+     * @param band
+     *            The index of the band, from the top of the image. This may
+     *            be equal to the number of bands, to get the height of the
+     *            image.
+     * @return The row of the full image at which the band starts
+     */
+    int getFirstRow(int band) {
+        return (int) ((long) height * band / bands);
+    }
+
+    /**
+     * @param band
+     *            The index of the band, from the top of the image
+     * @return The GetMap parameters which render the given band
+     */
+    RequestParams getBandParameters(int band) {
+        int firstRow = getFirstRow(band);
+        int lastRow = getFirstRow(band + 1);
+        double rowHeight = (maxY - minY) / height;
+        /*
+         * The outer edges are kept exactly as requested
+         */
+        double top = band == 0 ? maxY : maxY - firstRow * rowHeight;
+        double bottom = band == bands - 1 ? minY : maxY - lastRow * rowHeight;
+
+        Map<String, String> bandParams = new HashMap<>();
+        if (yFirst) {
+            bandParams.put("BBOX", bottom + "," + minX + "," + top + "," + maxX);
+        } else {
+            bandParams.put("BBOX", minX + "," + bottom + "," + maxX + "," + top);
+        }
+        bandParams.put("HEIGHT", String.valueOf(lastRow - firstRow));
+        return params.mergeParameters(bandParams);
+    }
+
+    /**
+     * Renders all of the bands and joins them into a single image
+     *
+     * @param executor
+     *            The executor to render the bands on. Bands which it has not
+     *            started by the time the calling thread is free are rendered
+     *            on the calling thread, so this may be busy.
+     * @param decoder
+     *            The executor to decode the rendered bands and copy them
+     *            into the full image on (normally the render pool)
+     * @param renderer
+     *            Renders each band
+     * @return The complete response. If any band could not be rendered, this
+     *         is the response for that band (e.g. an error report).
+     * @throws Exception
+     *             If rendering any of the bands threw an exception
+     */
+    CapturedResponse render(Executor executor, ExecutorService decoder,
+            final BandRenderer renderer) throws Exception {
+        /*
+         * The bands are part of this request, so stop when it is cancelled and
+         * keep its datasets open
+         */
+        final CancellationToken token = CancellationToken.current();
+        final DatasetUsage usage = DatasetUsage.current();
+        List<FutureTask<CapturedResponse>> tasks = new ArrayList<>();
+        for (int i = 0; i < bands; i++) {
+            final RequestParams bandParams = getBandParameters(i);
+            tasks.add(new FutureTask<>(new Callable<CapturedResponse>() {
+                @Override
+                public CapturedResponse call() throws Exception {
+                    CancellationToken previousToken = CancellationToken.attach(token);
+                    DatasetUsage previousUsage = DatasetUsage.attach(usage);
+                    try {
+                        CancellationToken.checkCurrent();
+                        return renderer.render(bandParams);
+                    } finally {
+                        DatasetUsage.attach(previousUsage);
+                        CancellationToken.attach(previousToken);
+                    }
+                }
+            }));
+        }
+
+        /*
+         * The first band is always rendered on this thread
+         */
+        for (int i = 1; i < bands; i++) {
+            try {
+                executor.execute(tasks.get(i));
+            } catch (RejectedExecutionException e) {
+                /*
+                 * Rendered on this thread below
+                 */
+                break;
+            }
+        }
+        for (FutureTask<CapturedResponse> task : tasks) {
+            /*
+             * Does nothing if the band has already been started elsewhere
+             */
+            task.run();
+        }
+
+        List<CapturedResponse> responses = getAll(tasks);
+        for (CapturedResponse response : responses) {
+            if (!response.isImage()) {
+                return response;
+            }
+        }
+
+        /*
+         * Decoding and copying the bands is CPU-bound, so is shared out on
+         * the decoder
+         */
+        final BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        List<Callable<CapturedResponse>> copies = new ArrayList<>();
+        for (int i = 0; i < bands; i++) {
+            final int band = i;
+            final CapturedResponse response = responses.get(i);
+            copies.add(new Callable<CapturedResponse>() {
+                @Override
+                public CapturedResponse call() throws Exception {
+                    copyBand(band, response, image);
+                    return response;
+                }
+            });
+        }
+        getAll(decoder.invokeAll(copies));
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", encoded);
+        return new CapturedResponse(200, null, responses.get(0).getContentType(),
+                Collections.<CapturedResponse.Header> emptyList(), encoded.toByteArray());
+    }
+
+    private static List<CapturedResponse> getAll(List<? extends Future<CapturedResponse>> futures)
+            throws Exception {
+        List<CapturedResponse> results = new ArrayList<>();
+        for (Future<CapturedResponse> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Decodes a rendered band and copies it into its rows of the full image
+     */
+    private void copyBand(int band, CapturedResponse response, BufferedImage image)
+            throws IOException {
+        int firstRow = getFirstRow(band);
+        int rows = getFirstRow(band + 1) - firstRow;
+        BufferedImage bandImage = ImageIO.read(new ByteArrayInputStream(response.getContent()));
+        if (bandImage == null || bandImage.getWidth() != width || bandImage.getHeight() != rows) {
+            log.warn("Band {} of a GetMap image was not a {}x{} image", band, width, rows);
+            throw new IOException("Problem rendering part of the image");
+        }
+        /*
+         * The bands cover separate rows, so can be written at the same time
+         */
+        int[] pixels = bandImage.getRGB(0, 0, width, rows, null, 0, width);
+        image.setRGB(0, firstRow, width, rows, pixels, 0, width);
+    }
+}
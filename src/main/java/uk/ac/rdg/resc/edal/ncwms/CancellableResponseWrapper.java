@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.IOException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * A response which stops the work for its request once it has been
+ * cancelled. Each write to the output stream is a checkpoint, so that
+ * encoding stops when the deadline passes, and a failed write is taken to
+ * mean that the client has gone away.
+ *
+ * Text written with {@link #getWriter()} is passed straight through, since
+ * it is small and {@link java.io.PrintWriter} hides write failures anyway.
+ */
+class CancellableResponseWrapper extends HttpServletResponseWrapper {
+    private final CancellationToken token;
+    private ServletOutputStream outputStream = null;
+
+    CancellableResponseWrapper(HttpServletResponse response, CancellationToken token) {
+        super(response);
+        this.token = token;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            final ServletOutputStream wrapped = super.getOutputStream();
+            outputStream = new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    token.checkpoint();
+                    try {
+                        wrapped.write(b);
+                    } catch (IOException e) {
+                        token.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+                        throw e;
+                    }
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    token.checkpoint();
+                    try {
+                        wrapped.write(b, off, len);
+                    } catch (IOException e) {
+                        token.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+                        throw e;
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    try {
+                        wrapped.flush();
+                    } catch (IOException e) {
+                        token.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+                        throw e;
+                    }
+                }
+            };
+        }
+        return outputStream;
+    }
+}
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records whether the work for a request should stop, either because the
+ * client has gone away or because the request's deadline has passed.
+ *
+ * The token for the request being processed is attached to the thread doing
+ * the work, so that code which is not passed the request (e.g. dataset
+ * loading in the catalogue) can check it with {@link #checkCurrent()}.
+ * Threads without a token are never cancelled.
+ *
+ * Work shared by several requests (see {@link SingleFlight}) runs under a
+ * shared token (see {@link #shared(String)}), which is only cancelled once
+ * every request sharing it has been cancelled.
+ */
+final class CancellationToken {
+    /**
+     * Why a request was cancelled
+     */
+    enum Reason {
+        DEADLINE_EXCEEDED, CLIENT_DISCONNECTED
+    }
+
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+
+    private final String request;
+    /* From System.nanoTime(), or Long.MAX_VALUE for no deadline */
+    private final long deadlineNanos;
+    private volatile Reason reason = null;
+    /*
+     * For a shared token, the tokens of the requests sharing it, or null for
+     * a request without a token (which is never cancelled). Null for the
+     * token of a single request.
+     */
+    private final List<CancellationToken> sharers;
+
+    /**
+     * @param request
+     *            The WMS request type, e.g. GetMap
+     * @param timeoutMillis
+     *            The time allowed for the request, or a non-positive number
+     *            for no limit
+     */
+    CancellationToken(String request, long timeoutMillis) {
+        this(request, timeoutMillis, null);
+    }
+
+    private CancellationToken(String request, long timeoutMillis, List<CancellationToken> sharers) {
+        this.request = request;
+        this.deadlineNanos = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1000000L
+                : Long.MAX_VALUE;
+        this.sharers = sharers;
+    }
+
+    /**
+     * Creates a token for work which is shared by several requests. This has
+     * no deadline of its own, and is cancelled once all of the requests which
+     * have joined it (see {@link #join(CancellationToken)}) have been
+     * cancelled or have left.
+     *
+     * @param request
+     *            The WMS request type, e.g. GetMap
+     * @return The new token, which no request has yet joined
+     */
+    static CancellationToken shared(String request) {
+        return new CancellationToken(request, 0L, new ArrayList<CancellationToken>());
+    }
+
+    /**
+     * Adds a request to those sharing this token
+     *
+     * @param token
+     *            The request's token, or <code>null</code> if it has none, in
+     *            which case this token will never be cancelled
+     * @return <code>false</code> if this token has already been cancelled, in
+     *         which case the request has not joined it
+     */
+    boolean join(CancellationToken token) {
+        synchronized (sharers) {
+            if (isCancelled()) {
+                return false;
+            }
+            sharers.add(token);
+            return true;
+        }
+    }
+
+    /**
+     * Removes a request from those sharing this token, e.g. because it has
+     * stopped waiting for the shared work
+     *
+     * @param token
+     *            The token which was passed to {@link #join(CancellationToken)}
+     */
+    void leave(CancellationToken token) {
+        synchronized (sharers) {
+            sharers.remove(token);
+        }
+    }
+
+    String getRequest() {
+        return request;
+    }
+
+    /**
+     * Cancels the request. Has no effect if it has already been cancelled.
+     */
+    void cancel(Reason reason) {
+        if (this.reason == null) {
+            this.reason = reason;
+        }
+    }
+
+    /**
+     * @return Why the request was cancelled, or <code>null</code> if it has
+     *         not been
+     */
+    Reason getReason() {
+        if (reason == null && deadlineNanos != Long.MAX_VALUE
+                && System.nanoTime() - deadlineNanos > 0) {
+            cancel(Reason.DEADLINE_EXCEEDED);
+        }
+        if (reason == null && sharers != null) {
+            checkSharers();
+        }
+        return reason;
+    }
+
+    private void checkSharers() {
+        synchronized (sharers) {
+            if (sharers.isEmpty()) {
+                /*
+                 * Not joined yet, or finished with
+                 */
+                return;
+            }
+            Reason lastReason = null;
+            for (CancellationToken sharer : sharers) {
+                lastReason = sharer == null ? null : sharer.getReason();
+                if (lastReason == null) {
+                    return;
+                }
+            }
+            cancel(lastReason);
+        }
+    }
+
+    boolean isCancelled() {
+        return getReason() != null;
+    }
+
+    /**
+     * Stops the work for the request if it has been cancelled
+     *
+     * @throws RequestCancelledException
+     *             If the request has been cancelled
+     */
+    void checkpoint() {
+        Reason cancelled = getReason();
+        if (cancelled != null) {
+            throw new RequestCancelledException(request, cancelled);
+        }
+    }
+
+    /**
+     * Attaches a token to the current thread
+     *
+     * @param token
+     *            The token, or <code>null</code> to remove it
+     * @return The token which was previously attached, which should be
+     *         restored once the work has finished
+     */
+    static CancellationToken attach(CancellationToken token) {
+        CancellationToken previous = CURRENT.get();
+        if (token == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(token);
+        }
+        return previous;
+    }
+
+    /**
+     * @return The token attached to the current thread, or <code>null</code>
+     *         if there is none
+     */
+    static CancellationToken current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Stops the work on the current thread if its request has been cancelled
+     *
+     * @throws RequestCancelledException
+     *             If the request has been cancelled
+     */
+    static void checkCurrent() {
+        CancellationToken token = CURRENT.get();
+        if (token != null) {
+            token.checkpoint();
+        }
+    }
+}
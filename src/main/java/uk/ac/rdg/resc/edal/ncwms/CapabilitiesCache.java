@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A cache of rendered capabilities documents. Each document is stored along
+ * with a gzip-compressed copy and validators (an ETag for each copy and a
+ * last-modified time) so that it can be served cheaply, or not at all if the
+ * client already has it.
+ *
+ * Documents are tagged with the catalogue version they were rendered from,
+ * and are ignored once the catalogue has changed.
+ */
+class CapabilitiesCache {
+    private final Map<String, Document> documents;
+
+    /**
+     * @param maxDocuments
+     *            The maximum number of documents to hold. The least recently
+     *            used documents are discarded first.
+     */
+    CapabilitiesCache(final int maxDocuments) {
+        documents = new LinkedHashMap<String, Document>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Document> eldest) {
+                return size() > maxDocuments;
+            }
+        };
+    }
+
+    /**
+     * @param key
+     *            The key of the document
+     * @param version
+     *            The current version of the catalogue
+     * @return The cached document, or <code>null</code> if there is none for
+     *         the current catalogue version
+     */
+    Document get(String key, long version) {
+        synchronized (documents) {
+            Document document = documents.get(key);
+            if (document != null && document.version != version) {
+                documents.remove(key);
+                return null;
+            }
+            return document;
+        }
+    }
+
+    /**
+     * Stores a newly-rendered document
+     *
+     * @return The stored {@link Document}
+     */
+    Document put(String key, long version, byte[] content, String contentType)
+            throws IOException {
+        Document document = new Document(version, content, contentType);
+        synchronized (documents) {
+            documents.put(key, document);
+        }
+        return document;
+    }
+
+    void clear() {
+        synchronized (documents) {
+            documents.clear();
+        }
+    }
+
+    static final class Document {
+        private final long version;
+        private final byte[] content;
+        private final byte[] gzipped;
+        private final String contentType;
+        private final String etag;
+        /* The compressed copy is a different representation, so has its own */
+        private final String gzipEtag;
+        /* Rounded to whole seconds, since that is all HTTP dates can hold */
+        private final long lastModified;
+
+        private Document(long version, byte[] content, String contentType) throws IOException {
+            this.version = version;
+            this.content = content;
+            this.contentType = contentType;
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4 + 64);
+            try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(content);
+            }
+            this.gzipped = compressed.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            String tag = Long.toHexString(crc.getValue()) + "-"
+                    + Integer.toHexString(content.length);
+            this.etag = "\"" + tag + "\"";
+            this.gzipEtag = "\"" + tag + "-gzip\"";
+            this.lastModified = (System.currentTimeMillis() / 1000L) * 1000L;
+        }
+
+        /**
+         * Writes this document to a response. If the request's validators
+         * show that the client already has this document, only a 304 (Not
+         * Modified) status is sent. Otherwise the compressed copy is sent if
+         * the client accepts it.
+         */
+        void write(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+            String tag = gzip ? gzipEtag : etag;
+            response.setHeader("ETag", tag);
+            response.setDateHeader("Last-Modified", lastModified);
+            response.setHeader("Vary", "Accept-Encoding");
+            if (HttpCaching.isNotModified(request, tag, lastModified)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            byte[] body = content;
+            if (gzip) {
+                response.setHeader("Content-Encoding", "gzip");
+                body = gzipped;
+            }
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+}
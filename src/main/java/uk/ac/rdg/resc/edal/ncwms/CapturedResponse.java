@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * An immutable copy of a response captured by a
+ * {@link CapturingResponseWrapper}, which can be written to any number of
+ * real responses
+ */
+class CapturedResponse {
+    private final int status;
+    private final String errorMessage;
+    private final String contentType;
+    private final List<Header> headers;
+    private final byte[] content;
+
+    CapturedResponse(int status, String errorMessage, String contentType, List<Header> headers,
+            byte[] content) {
+        this.status = status;
+        this.errorMessage = errorMessage;
+        this.contentType = contentType;
+        this.headers = Collections.unmodifiableList(new ArrayList<>(headers));
+        this.content = content;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    String getContentType() {
+        return contentType;
+    }
+
+    byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * @return Whether this is a successful response containing an image
+     */
+    boolean isImage() {
+        return status == HttpServletResponse.SC_OK && contentType != null
+                && contentType.startsWith("image/");
+    }
+
+    /**
+     * Writes the captured status, headers and content to a response
+     *
+     * @param response
+     *            The response to write to
+     */
+    void writeTo(HttpServletResponse response) throws IOException {
+        for (Header header : headers) {
+            header.writeTo(response);
+        }
+        if (status >= 400 && content.length == 0) {
+            if (errorMessage == null) {
+                response.sendError(status);
+            } else {
+                response.sendError(status, errorMessage);
+            }
+            return;
+        }
+        response.setStatus(status);
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        response.setContentLength(content.length);
+        response.getOutputStream().write(content);
+    }
+
+    /**
+     * A header which was set or added to the captured response
+     */
+    static final class Header {
+        private final String name;
+        private final Object value;
+        private final boolean add;
+
+        /**
+         * @param name
+         *            The name of the header
+         * @param value
+         *            The value, as a {@link String}, a {@link Long} date or an
+         *            {@link Integer}
+         * @param add
+         *            <code>true</code> if the header was added rather than
+         *            set
+         */
+        Header(String name, Object value, boolean add) {
+            this.name = name;
+            this.value = value;
+            this.add = add;
+        }
+
+        private void writeTo(HttpServletResponse response) {
+            if (value instanceof Long) {
+                if (add) {
+                    response.addDateHeader(name, (Long) value);
+                } else {
+                    response.setDateHeader(name, (Long) value);
+                }
+            } else if (value instanceof Integer) {
+                if (add) {
+                    response.addIntHeader(name, (Integer) value);
+                } else {
+                    response.setIntHeader(name, (Integer) value);
+                }
+            } else {
+                if (add) {
+                    response.addHeader(name, (String) value);
+                } else {
+                    response.setHeader(name, (String) value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * A response which captures everything written to it in memory rather than
+ * sending it to the client. The status and headers are only recorded, so that
+ * the caller can decide what to do with the response (e.g. send it to several
+ * clients). The content type is also passed through to the wrapped response,
+ * so that text is written in the correct encoding.
+ */
+class CapturingResponseWrapper extends HttpServletResponseWrapper {
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private ServletOutputStream outputStream = null;
+    private PrintWriter writer = null;
+    private int status = SC_OK;
+    private String errorMessage = null;
+    private String contentType = null;
+    private final List<CapturedResponse.Header> headers = new ArrayList<>();
+
+    CapturingResponseWrapper(HttpServletResponse response) {
+        super(response);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (outputStream == null) {
+            outputStream = new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    buffer.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    buffer.write(b, off, len);
+                }
+            };
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (outputStream != null) {
+            throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        if (writer == null) {
+            String encoding = getCharacterEncoding();
+            try {
+                writer = new PrintWriter(new OutputStreamWriter(buffer,
+                        encoding == null ? "ISO-8859-1" : encoding));
+            } catch (UnsupportedEncodingException e) {
+                writer = new PrintWriter(new OutputStreamWriter(buffer, "UTF-8"));
+            }
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        /*
+         * Nothing is sent to the client until the captured content is used
+         */
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void setContentType(String type) {
+        super.setContentType(type);
+        contentType = type;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        /*
+         * This is set when the captured content is written
+         */
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        headers.add(new CapturedResponse.Header(name, value, false));
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        headers.add(new CapturedResponse.Header(name, value, true));
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        headers.add(new CapturedResponse.Header(name, date, false));
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        headers.add(new CapturedResponse.Header(name, date, true));
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        headers.add(new CapturedResponse.Header(name, value, false));
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        headers.add(new CapturedResponse.Header(name, value, true));
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        status = sc;
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        status = sc;
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        status = sc;
+        errorMessage = msg;
+    }
+
+    int getCapturedStatus() {
+        return status;
+    }
+
+    String getCapturedContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return Everything which has been written to this response
+     */
+    byte[] getContent() {
+        if (writer != null) {
+            writer.flush();
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @return A copy of everything which has been captured
+     */
+    CapturedResponse getCapturedResponse() {
+        return new CapturedResponse(status, errorMessage, contentType, headers, getContent());
+    }
+
+    /**
+     * Sends the captured status, headers and content to the wrapped response,
+     * as if it had not been captured
+     */
+    void replay() throws IOException {
+        getCapturedResponse().writeTo((HttpServletResponse) getResponse());
+    }
+}
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.File;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.CacheInfo;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+import uk.ac.rdg.resc.edal.ncwms.config.ConfigDiff;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsConfig;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsContact;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDynamicCacheInfo;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDynamicService;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsHttpCacheInfo;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsImageCacheInfo;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsLoadingInfo;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsProcessingInfo;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsServerInfo;
+
+/**
+ * Watches the config file for external changes, and applies them to the
+ * running catalogue. Only the differences are applied, so datasets which have
+ * not changed are not reloaded and caches are kept.
+ *
+ * The file is polled for changes to its modification time or size. Writes
+ * made by ncWMS itself are also picked up, but since they match the live
+ * config they result in no changes. Whilst ncWMS is writing the config, the
+ * file is not compared, since it may not yet match the live config.
+ */
+class ConfigFileWatcher {
+    private static final Logger log = LoggerFactory.getLogger(ConfigFileWatcher.class);
+
+    private final NcwmsCatalogue catalogue;
+    private final File configFile;
+    private final ScheduledExecutorService executor;
+    private long lastModified;
+    private long lastLength;
+
+    /**
+     * @param catalogue
+     *            The {@link NcwmsCatalogue} to apply changes to
+     * @param intervalSeconds
+     *            How often to check the config file for changes
+     */
+    ConfigFileWatcher(NcwmsCatalogue catalogue, int intervalSeconds) {
+        this.catalogue = catalogue;
+        this.configFile = catalogue.getConfig().getConfigFile();
+        lastModified = configFile.lastModified();
+        lastLength = configFile.length();
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ncwms-config-watcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkForChanges();
+                } catch (Exception e) {
+                    /*
+                     * Don't let this stop future checks
+                     */
+                    log.error("Problem checking config file for changes", e);
+                }
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void checkForChanges() throws Exception {
+        long modified = configFile.lastModified();
+        long length = configFile.length();
+        if (modified == lastModified && length == lastLength) {
+            return;
+        }
+        if (catalogue.getConfig().isWritePending()) {
+            /*
+             * Compare once the write has finished, when the file is next
+             * checked
+             */
+            return;
+        }
+        lastModified = modified;
+        lastLength = length;
+
+        NcwmsConfig updated;
+        try {
+            updated = catalogue.getConfig().readCurrentFile();
+        } catch (Exception e) {
+            /*
+             * Most likely the file is part-way through being written. We will
+             * try again when it next changes.
+             */
+            log.warn("Cannot read changed config file " + configFile + ": " + e.getMessage());
+            return;
+        }
+        if (updated == null) {
+            return;
+        }
+        ConfigDiff diff = ConfigDiff.between(catalogue.getConfig(), updated);
+        if (!diff.isEmpty()) {
+            log.info("Config file has changed - applying differences");
+            apply(diff, updated);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void apply(ConfigDiff diff, NcwmsConfig updated) {
+        NcwmsConfig config = catalogue.getConfig();
+
+        for (DatasetConfig dataset : diff.getRemovedDatasets()) {
+            log.info("Removing dataset " + dataset.getId());
+            catalogue.removeDataset(dataset.getId());
+        }
+        /*
+         * Datasets being reloaded are replaced in the config, but the loaded
+         * version is served until the new one has loaded
+         */
+        for (DatasetConfig dataset : diff.getReloadedDatasets()) {
+            log.info("Reloading changed dataset " + dataset.getId());
+            catalogue.addConfiguredDataset(dataset);
+        }
+        for (DatasetConfig dataset : diff.getAddedDatasets()) {
+            log.info("Adding dataset " + dataset.getId());
+            catalogue.addConfiguredDataset(dataset);
+        }
+        for (Entry<DatasetConfig, DatasetConfig> update : diff.getUpdatedDatasets().entrySet()) {
+            copyDatasetSettings(update.getValue(), update.getKey());
+        }
+
+        for (NcwmsDynamicService service : diff.getRemovedDynamicServices()) {
+            config.removeDynamicService(service);
+        }
+        for (Entry<NcwmsDynamicService, NcwmsDynamicService> update : diff
+                .getUpdatedDynamicServices().entrySet()) {
+            copyDynamicServiceSettings(update.getValue(), update.getKey());
+        }
+        for (NcwmsDynamicService service : diff.getAddedDynamicServices()) {
+            try {
+                config.addDynamicService(service);
+            } catch (IllegalArgumentException e) {
+                log.error("Not adding new dynamic service", e);
+            }
+        }
+        if (!diff.getRemovedDynamicServices().isEmpty()
+                || !diff.getUpdatedDynamicServices().isEmpty()) {
+            /*
+             * Make sure that nothing loaded or resolved using the old settings
+             * is still used
+             */
+            config.refreshDynamicServiceIndex();
+            catalogue.emptyDynamicDatasetCache();
+        }
+
+        if (diff.isCacheChanged()) {
+            CacheInfo cache = config.getCacheSettings();
+            CacheInfo newCache = updated.getCacheSettings();
+            cache.setEnabled(newCache.isEnabled());
+            cache.setInMemorySizeMB(newCache.getInMemorySizeMB());
+            cache.setElementLifetimeMinutes(newCache.getElementLifetimeMinutes());
+            catalogue.setCache(cache);
+        }
+        if (diff.isDynamicCacheChanged()) {
+            NcwmsDynamicCacheInfo dynamicCache = config.getDynamicCacheInfo();
+            NcwmsDynamicCacheInfo newDynamicCache = updated.getDynamicCacheInfo();
+            dynamicCache.setEnabled(newDynamicCache.isEnabled());
+            dynamicCache.setNumberOfDatasets(newDynamicCache.getNumberOfDatasets());
+            dynamicCache.setElementLifetimeMinutes(newDynamicCache.getElementLifetimeMinutes());
+            dynamicCache.setMaxSizeMB(newDynamicCache.getMaxSizeMB());
+            dynamicCache.setMaxOpenDatasets(newDynamicCache.getMaxOpenDatasets());
+            dynamicCache.setReloadOnChange(newDynamicCache.isReloadOnChange());
+            dynamicCache.setChangeCheckIntervalSeconds(newDynamicCache.getChangeCheckIntervalSeconds());
+            dynamicCache.setFailedDatasetCacheSize(newDynamicCache.getFailedDatasetCacheSize());
+            dynamicCache.setFailedDatasetLifetimeMinutes(
+                    newDynamicCache.getFailedDatasetLifetimeMinutes());
+            catalogue.updateDynamicDatasetCache(dynamicCache);
+        }
+        if (diff.isImageCacheChanged()) {
+            NcwmsImageCacheInfo imageCache = config.getImageCacheInfo();
+            NcwmsImageCacheInfo newImageCache = updated.getImageCacheInfo();
+            imageCache.setEnabled(newImageCache.isEnabled());
+            imageCache.setNumberOfImages(newImageCache.getNumberOfImages());
+            imageCache.setNumberOfDiskImages(newImageCache.getNumberOfDiskImages());
+            imageCache.setElementLifetimeMinutes(newImageCache.getElementLifetimeMinutes());
+            catalogue.updateRenderedImageCache(imageCache);
+        }
+        if (diff.isHttpCacheChanged()) {
+            NcwmsHttpCacheInfo httpCache = config.getHttpCacheInfo();
+            httpCache.setEnabled(updated.getHttpCacheInfo().isEnabled());
+            httpCache.setMaxAgeRules(updated.getHttpCacheInfo().getMaxAgeRules());
+        }
+        if (diff.isSettingsChanged()) {
+            copyOtherSettings(updated, config);
+        }
+        if (diff.isCrsCodesChanged()) {
+            /*
+             * Picked up by the WMS servlet when it next handles a request
+             */
+            config.getSupportedNcwmsCrsCodes().setSupportedCrsCodes(
+                    updated.getSupportedNcwmsCrsCodes().getSupportedCrsCodes());
+        }
+        catalogue.configChanged();
+    }
+
+    private static void copyDatasetSettings(DatasetConfig from, DatasetConfig to) {
+        to.setTitle(from.getTitle());
+        to.setDisabled(from.isDisabled());
+        to.setQueryable(from.isQueryable());
+        to.setDownloadable(from.isDownloadable());
+        to.setUpdateInterval(from.getUpdateInterval());
+        to.setMoreInfo(from.getMoreInfo());
+        to.setCopyrightStatement(from.getCopyrightStatement());
+        to.setMetadataUrl(from.getMetadataUrl());
+        to.setMetadataDesc(from.getMetadataDesc());
+        to.setMetadataMimetype(from.getMetadataMimetype());
+    }
+
+    private static void copyDynamicServiceSettings(NcwmsDynamicService from,
+            NcwmsDynamicService to) {
+        to.setServicePath(from.getServicePath());
+        to.setDatasetIdMatch(from.getDatasetIdMatch());
+        to.setDataReaderClass(from.getDataReaderClass());
+        to.setMoreInfo(from.getMoreInfo());
+        to.setCopyrightStatement(from.getCopyrightStatement());
+        to.setDisabled(from.isDisabled());
+        to.setQueryable(from.isQueryable());
+        to.setDownloadable(from.isDownloadable());
+    }
+
+    private static void copyOtherSettings(NcwmsConfig from, NcwmsConfig to) {
+        NcwmsContact contact = to.getContactInfo();
+        contact.setName(from.getContactInfo().getName());
+        contact.setOrganisation(from.getContactInfo().getOrganisation());
+        contact.setTelephone(from.getContactInfo().getTelephone());
+        contact.setEmail(from.getContactInfo().getEmail());
+
+        NcwmsServerInfo server = to.getServerInfo();
+        NcwmsServerInfo newServer = from.getServerInfo();
+        server.setTitle(newServer.getName());
+        server.setDescription(newServer.getAbstract());
+        if (newServer.getKeywords() != null) {
+            server.setKeywords(StringUtils.join(newServer.getKeywords(), ", "));
+        }
+        server.setUrl(newServer.getUrl());
+        server.setMaxImageWidth(newServer.getMaxImageWidth());
+        server.setMaxImageHeight(newServer.getMaxImageHeight());
+        server.setRequestLimits(newServer.getRequestLimits());
+        server.setRequestDeadlines(newServer.getRequestDeadlines());
+        server.setAllowFeatureInfo(newServer.allowsFeatureInfo());
+        server.setAllowGlobalCapabilities(newServer.allowsGlobalCapabilities());
+
+        /*
+         * Apart from the number of loading threads and which datasets are lazy
+         * (which are applied by the catalogue) and the minimum size for banded
+         * rendering (which is read for each request), these only take effect
+         * on restart, but are kept so that they are not lost when the config
+         * is next saved
+         */
+        NcwmsLoadingInfo loading = to.getLoadingInfo();
+        loading.setSnapshotsEnabled(from.getLoadingInfo().isSnapshotsEnabled());
+        loading.setLoadingThreads(from.getLoadingInfo().getLoadingThreads());
+        loading.setLazy(from.getLoadingInfo().isLazy());
+        loading.setLazyIdleMinutes(from.getLoadingInfo().getLazyIdleMinutes());
+
+        NcwmsProcessingInfo processing = to.getProcessingInfo();
+        processing.setAsyncEnabled(from.getProcessingInfo().isAsyncEnabled());
+        processing.setIoThreads(from.getProcessingInfo().getIoThreads());
+        processing.setIoQueueSize(from.getProcessingInfo().getIoQueueSize());
+        processing.setRenderThreads(from.getProcessingInfo().getRenderThreads());
+        processing.setBandedRenderingPixels(from.getProcessingInfo().getBandedRenderingPixels());
+
+        /*
+         * Datasets whose settings have been removed go back to the defaults
+         */
+        to.replaceDatasetSettings(from.getDatasetSettings());
+    }
+}
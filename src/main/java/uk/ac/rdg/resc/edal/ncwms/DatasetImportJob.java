@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.joda.time.DateTime;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.CatalogueConfig;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig.DatasetState;
+import uk.ac.rdg.resc.edal.util.TimeUtils;
+
+/**
+ * Tracks the progress of a bulk dataset import. The progress is calculated
+ * from the current state of each imported dataset whenever it is requested.
+ */
+class DatasetImportJob {
+    private final String id;
+    private final DateTime submitted = new DateTime();
+    private final int total;
+    private final List<DatasetConfig> accepted;
+    private final Map<String, String> rejected;
+
+    /**
+     * @param id
+     *            The ID of this job
+     * @param total
+     *            The total number of dataset definitions submitted
+     * @param accepted
+     *            The datasets which were added to the catalogue
+     * @param rejected
+     *            The definitions which were not added, mapped to the reason
+     *            for rejecting them
+     */
+    DatasetImportJob(String id, int total, List<DatasetConfig> accepted,
+            Map<String, String> rejected) {
+        this.id = id;
+        this.total = total;
+        this.accepted = Collections.unmodifiableList(new ArrayList<>(accepted));
+        this.rejected = Collections.unmodifiableMap(new LinkedHashMap<>(rejected));
+    }
+
+    String getId() {
+        return id;
+    }
+
+    int getAcceptedCount() {
+        return accepted.size();
+    }
+
+    /**
+     * @param config
+     *            The {@link CatalogueConfig} containing the datasets
+     * @return Whether all accepted datasets have either loaded or failed to
+     *         load (or have since been disabled or removed)
+     */
+    boolean isComplete(CatalogueConfig config) {
+        for (DatasetConfig dataset : accepted) {
+            if (isPending(dataset, config)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPending(DatasetConfig dataset, CatalogueConfig config) {
+        if (dataset.isDisabled() || config.getDatasetInfo(dataset.getId()) != dataset) {
+            return false;
+        }
+        DatasetState state = dataset.getState();
+        return state != DatasetState.READY && state != DatasetState.ERROR;
+    }
+
+    /**
+     * @param config
+     *            The {@link CatalogueConfig} containing the datasets
+     * @return The current status of this job, as JSON
+     */
+    JSONObject toJson(CatalogueConfig config) {
+        int ready = 0;
+        int failed = 0;
+        int pending = 0;
+        JSONArray failures = new JSONArray();
+        for (DatasetConfig dataset : accepted) {
+            if (isPending(dataset, config)) {
+                pending++;
+            } else if (dataset.getState() == DatasetState.READY) {
+                ready++;
+            } else if (dataset.getState() == DatasetState.ERROR) {
+                failed++;
+                failures.put(dataset.getId());
+            }
+        }
+
+        JSONObject status = new JSONObject();
+        status.put("jobId", id);
+        status.put("submitted", TimeUtils.dateTimeToISO8601(submitted));
+        status.put("total", total);
+        status.put("accepted", accepted.size());
+        status.put("ready", ready);
+        status.put("failed", failed);
+        status.put("pending", pending);
+        status.put("complete", pending == 0);
+        if (failures.length() > 0) {
+            status.put("failedDatasets", failures);
+        }
+        JSONArray rejections = new JSONArray();
+        for (Entry<String, String> rejection : rejected.entrySet()) {
+            JSONObject rejectionJson = new JSONObject();
+            rejectionJson.put("dataset", rejection.getKey());
+            rejectionJson.put("reason", rejection.getValue());
+            rejections.put(rejectionJson);
+        }
+        status.put("rejected", rejections);
+        return status;
+    }
+}
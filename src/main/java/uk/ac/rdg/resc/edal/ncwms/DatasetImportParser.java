@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Parses lists of dataset definitions for bulk import. Each definition is
+ * returned as a map of the same parameter names used by the single
+ * <code>addDataset</code> admin method (<code>id</code>, <code>location</code>,
+ * <code>title</code>, etc.).
+ *
+ * Two formats are accepted:
+ * <ul>
+ * <li>JSON - either an array of objects, or an object containing such an array
+ * under the key <code>datasets</code></li>
+ * <li>CSV - a header line containing the parameter names, followed by one line
+ * per dataset. Fields may be quoted with double quotes, and a double quote
+ * within a quoted field is written as two double quotes.</li>
+ * </ul>
+ */
+class DatasetImportParser {
+    private DatasetImportParser() {
+    }
+
+    /**
+     * Parses dataset definitions
+     *
+     * @param contentType
+     *            The content type of the definitions. Anything containing
+     *            "csv" is treated as CSV, otherwise JSON is assumed.
+     * @param body
+     *            The definitions
+     * @return A {@link List} of definitions, in the order they were supplied
+     * @throws IOException
+     *             If the definitions cannot be read
+     * @throws IllegalArgumentException
+     *             If the definitions are not in a valid format
+     */
+    static List<Map<String, String>> parse(String contentType, Reader body) throws IOException {
+        if (contentType != null && contentType.toLowerCase().contains("csv")) {
+            return parseCsv(body);
+        } else {
+            return parseJson(body);
+        }
+    }
+
+    static List<Map<String, String>> parseJson(Reader body) {
+        JSONArray array;
+        try {
+            Object value = new JSONTokener(body).nextValue();
+            if (value instanceof JSONObject) {
+                array = ((JSONObject) value).getJSONArray("datasets");
+            } else if (value instanceof JSONArray) {
+                array = (JSONArray) value;
+            } else {
+                throw new IllegalArgumentException(
+                        "Expected a JSON array of datasets, or an object containing a \"datasets\" array");
+            }
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getMessage(), e);
+        }
+
+        List<Map<String, String>> definitions = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject object = array.optJSONObject(i);
+            if (object == null) {
+                throw new IllegalArgumentException("Dataset " + (i + 1) + " is not a JSON object");
+            }
+            Map<String, String> definition = new LinkedHashMap<>();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (!object.isNull(key)) {
+                    definition.put(key, object.get(key).toString());
+                }
+            }
+            definitions.add(definition);
+        }
+        return definitions;
+    }
+
+    static List<Map<String, String>> parseCsv(Reader body) throws IOException {
+        BufferedReader reader = new BufferedReader(body);
+        List<String> header = null;
+        List<Map<String, String>> definitions = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            List<String> fields = splitCsvLine(line, lineNumber);
+            if (header == null) {
+                header = new ArrayList<>();
+                for (String field : fields) {
+                    header.add(field.trim());
+                }
+                continue;
+            }
+            if (fields.size() > header.size()) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has " + fields.size()
+                        + " fields, but the header only has " + header.size());
+            }
+            Map<String, String> definition = new LinkedHashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                if (!fields.get(i).isEmpty()) {
+                    definition.put(header.get(i), fields.get(i));
+                }
+            }
+            definitions.add(definition);
+        }
+        return definitions;
+    }
+
+    private static List<String> splitCsvLine(String line, int lineNumber) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field on line " + lineNumber);
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
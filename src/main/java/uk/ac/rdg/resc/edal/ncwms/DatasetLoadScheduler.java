@@ -0,0 +1,358 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig.DatasetState;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsConfig;
+
+/**
+ * Loads the configured datasets on a limited number of threads. Datasets with
+ * a higher priority are loaded first, and datasets with equal priority are
+ * loaded in the order they were requested.
+ *
+ * Once started, this loads every dataset which needs a refresh (including all
+ * datasets at startup), and reloads datasets when their update interval has
+ * passed. Refreshes can also be requested explicitly.
+ */
+class DatasetLoadScheduler {
+    private static final Logger log = LoggerFactory.getLogger(DatasetLoadScheduler.class);
+
+    /* How often to look for datasets which need refreshing */
+    private static final long REFRESH_CHECK_SECONDS = 10L;
+    /* How long idle loading threads are kept */
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    /**
+     * Does the work of loading a dataset
+     */
+    interface DatasetLoader {
+        /**
+         * Loads a dataset from its source and makes it available
+         *
+         * @param dataset
+         *            The {@link DatasetConfig} of the dataset to load
+         * @throws Exception
+         *             If the dataset cannot be loaded
+         */
+        void load(DatasetConfig dataset) throws Exception;
+    }
+
+    private final NcwmsConfig config;
+    private final DatasetLoader loader;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService refreshChecker;
+    /* Refreshes which are waiting to start, keyed by dataset ID */
+    private final Map<String, LoadTask> queued = new ConcurrentHashMap<>();
+    /* The IDs of datasets which are currently loading */
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+    /*
+     * Refreshes requested whilst the dataset was loading, to be queued once
+     * that load finishes. Keyed by dataset ID, with the priority as the value
+     */
+    private final Map<String, Integer> deferred = new ConcurrentHashMap<>();
+    /* When the most recent load of each dataset started */
+    private final Map<String, Long> loadStartTimes = new ConcurrentHashMap<>();
+    /* The duration of the most recent load of each dataset, in milliseconds */
+    private final Map<String, Long> loadDurations = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong(0L);
+
+    /**
+     * @param config
+     *            The {@link NcwmsConfig} containing the datasets
+     * @param loader
+     *            The {@link DatasetLoader} to load each dataset with
+     * @param nThreads
+     *            The maximum number of datasets to load at once
+     */
+    DatasetLoadScheduler(NcwmsConfig config, DatasetLoader loader, int nThreads) {
+        this.config = config;
+        this.loader = loader;
+        final AtomicInteger threadNumber = new AtomicInteger(0);
+        executor = new ThreadPoolExecutor(nThreads, nThreads, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "ncwms-dataset-loader-"
+                                + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        executor.prestartAllCoreThreads();
+        refreshChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ncwms-dataset-refresh-checker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts loading the datasets which need it, and checking periodically for
+     * datasets which need refreshing
+     */
+    void start() {
+        refreshChecker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scheduleDueRefreshes();
+                } catch (Exception e) {
+                    /*
+                     * Don't stop checking
+                     */
+                    log.error("Problem checking datasets for refreshes", e);
+                }
+            }
+        }, 0L, REFRESH_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues refreshes of all datasets which have not been loaded, have been
+     * marked as needing a refresh, or whose update interval has passed. Lazy
+     * datasets are left until they are requested.
+     */
+    void scheduleDueRefreshes() {
+        long now = System.currentTimeMillis();
+        for (DatasetConfig dataset : config.getDatasets()) {
+            if (!dataset.isDisabled() && !config.isLazy(dataset.getId()) && isDue(dataset, now)) {
+                schedule(dataset);
+            }
+        }
+    }
+
+    private boolean isDue(DatasetConfig dataset, long now) {
+        String id = dataset.getId();
+        if (queued.containsKey(id) || loading.contains(id)) {
+            return false;
+        }
+        if (dataset.getState() == DatasetState.NEEDS_REFRESH) {
+            return true;
+        }
+        Long lastStart = loadStartTimes.get(id);
+        return dataset.getUpdateInterval() > 0 && lastStart != null
+                && now - lastStart >= dataset.getUpdateInterval() * 60 * 1000L;
+    }
+
+    /**
+     * Queues a refresh of a dataset at its configured priority
+     *
+     * @param dataset
+     *            The {@link DatasetConfig} to refresh
+     */
+    void schedule(DatasetConfig dataset) {
+        schedule(dataset, config.getSettingsForDataset(dataset.getId()).getPriority());
+    }
+
+    /**
+     * Queues a refresh of a dataset. If a refresh of this dataset is already
+     * queued, this does nothing. If the dataset is currently loading, it is
+     * queued again once that load has finished.
+     *
+     * @param dataset
+     *            The {@link DatasetConfig} to refresh
+     * @param priority
+     *            The priority of the refresh. Higher priorities are loaded
+     *            first.
+     */
+    void schedule(DatasetConfig dataset, int priority) {
+        LoadTask task = new LoadTask(dataset, priority, sequence.getAndIncrement());
+        if (queued.putIfAbsent(dataset.getId(), task) == null) {
+            /*
+             * The executor hands a task straight to a new thread, rather than
+             * queueing it by priority, whilst it has fewer than its core
+             * number of threads. Idle threads time out, so make sure they are
+             * all running first.
+             */
+            executor.prestartAllCoreThreads();
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Changes the number of datasets which can load at once. Loads which have
+     * already started are not affected.
+     *
+     * @param nThreads
+     *            The maximum number of datasets to load at once
+     */
+    synchronized void setThreads(int nThreads) {
+        /*
+         * The maximum size can never be less than the core size
+         */
+        if (nThreads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(nThreads);
+            executor.setCorePoolSize(nThreads);
+        } else {
+            executor.setCorePoolSize(nThreads);
+            executor.setMaximumPoolSize(nThreads);
+        }
+        executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * @param datasetId
+     *            The ID of the dataset
+     * @return The position of the dataset in the queue (1 is next to load), or
+     *         <code>null</code> if it is not queued
+     */
+    Integer getQueuePosition(String datasetId) {
+        LoadTask task = queued.get(datasetId);
+        if (task == null) {
+            return null;
+        }
+        Object[] waiting = executor.getQueue().toArray();
+        Arrays.sort(waiting);
+        for (int i = 0; i < waiting.length; i++) {
+            if (waiting[i] == task) {
+                return i + 1;
+            }
+        }
+        /*
+         * Just started
+         */
+        return null;
+    }
+
+    /**
+     * @param datasetId
+     *            The ID of the dataset
+     * @return The time taken by the most recent load of the dataset, in
+     *         milliseconds, or <code>null</code> if it has not been loaded by
+     *         this scheduler
+     */
+    Long getLastLoadDuration(String datasetId) {
+        return loadDurations.get(datasetId);
+    }
+
+    /**
+     * @return The number of refreshes waiting to start
+     */
+    int getQueueLength() {
+        return executor.getQueue().size();
+    }
+
+    void shutdown() {
+        refreshChecker.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private class LoadTask implements Runnable, Comparable<LoadTask> {
+        private final DatasetConfig dataset;
+        private final int priority;
+        private final long sequenceNumber;
+
+        private LoadTask(DatasetConfig dataset, int priority, long sequenceNumber) {
+            this.dataset = dataset;
+            this.priority = priority;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public void run() {
+            String id = dataset.getId();
+            queued.remove(id, this);
+            synchronized (DatasetLoadScheduler.this) {
+                if (!loading.add(id)) {
+                    /*
+                     * Already being loaded by another thread, which may have
+                     * read the source before it changed
+                     */
+                    deferred.put(id, priority);
+                    return;
+                }
+            }
+            try {
+                if (!dataset.isDisabled() && config.getDatasetInfo(id) == dataset) {
+                    load();
+                }
+            } finally {
+                Integer again;
+                synchronized (DatasetLoadScheduler.this) {
+                    loading.remove(id);
+                    again = deferred.remove(id);
+                }
+                if (again != null) {
+                    schedule(dataset, again);
+                }
+            }
+        }
+
+        private void load() {
+            long start = System.currentTimeMillis();
+            loadStartTimes.put(dataset.getId(), start);
+            /*
+             * A loaded dataset stays available whilst it is being updated
+             */
+            dataset.setState(dataset.getState() == DatasetState.READY ? DatasetState.UPDATING
+                    : DatasetState.LOADING);
+            try {
+                loader.load(dataset);
+                dataset.setLastSuccessfulUpdateTime(new DateTime());
+                dataset.setState(DatasetState.READY);
+            } catch (Exception e) {
+                log.error("Cannot load dataset " + dataset.getId(), e);
+                dataset.setState(DatasetState.ERROR);
+                return;
+            }
+            long duration = System.currentTimeMillis() - start;
+            loadDurations.put(dataset.getId(), duration);
+            log.debug("Loaded dataset {} in {}ms", dataset.getId(), duration);
+        }
+
+        @Override
+        public int compareTo(LoadTask other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return Long.compare(sequenceNumber, other.sequenceNumber);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.dataset.Dataset;
+import uk.ac.rdg.resc.edal.exceptions.EdalException;
+import uk.ac.rdg.resc.edal.metadata.VariableMetadata;
+
+/**
+ * Stores compressed snapshots of the metadata of loaded {@link Dataset}s on
+ * disk, so that after a restart datasets can be described (e.g. in
+ * capabilities documents) immediately whilst they are reloaded from their
+ * source in the background.
+ *
+ * A snapshot holds only the {@link VariableMetadata} of each variable (i.e.
+ * their domains and parameters), not the data readers or anything else
+ * belonging to the dataset. A restored dataset answers questions about its
+ * variables from the snapshot, and anything else (e.g. reading data) waits for
+ * the dataset to be loaded from its source.
+ *
+ * Each snapshot records the location of the dataset and the
+ * {@link SourceSignature} of its files at the time it was taken. A snapshot is
+ * only used if both still match, so datasets whose files cannot be checked
+ * (remote locations and glob expressions) are never snapshotted.
+ */
+class DatasetSnapshotStore {
+    private static final Logger log = LoggerFactory.getLogger(DatasetSnapshotStore.class);
+
+    /* Increment this if the format of the snapshot files changes */
+    private static final int FORMAT_VERSION = 2;
+    private static final String SUFFIX = ".snapshot";
+
+    /**
+     * Provides datasets once they have been loaded from their source
+     */
+    interface SourceDatasets {
+        /**
+         * Gets the dataset loaded from its source, waiting for it to load if
+         * necessary
+         *
+         * @param datasetId
+         *            The ID of the dataset
+         * @return The loaded {@link Dataset}
+         * @throws IllegalStateException
+         *             If the dataset cannot be loaded
+         */
+        Dataset getSourceDataset(String datasetId);
+    }
+
+    private final File directory;
+
+    /**
+     * @param directory
+     *            The directory to store snapshots in. This will be created if
+     *            required.
+     */
+    DatasetSnapshotStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads the snapshot of a dataset, if there is a valid one
+     *
+     * @param datasetId
+     *            The ID of the dataset
+     * @param location
+     *            The current location of the dataset
+     * @param sourceDatasets
+     *            Provides the dataset loaded from its source, for anything
+     *            which the snapshot cannot answer
+     * @return A {@link Dataset} described by the snapshot, or
+     *         <code>null</code> if there is no snapshot, or it is no longer
+     *         valid
+     */
+    Dataset read(String datasetId, String location, SourceDatasets sourceDatasets) {
+        File file = getFile(datasetId);
+        if (!file.exists()) {
+            return null;
+        }
+        SourceSignature currentSignature = SourceSignature.forLocation(location);
+        if (currentSignature == null) {
+            /*
+             * Cannot tell whether it is still valid
+             */
+            remove(datasetId);
+            return null;
+        }
+        SnapshotDataset handler = new SnapshotDataset(datasetId, sourceDatasets);
+        Dataset dataset = (Dataset) Proxy.newProxyInstance(Dataset.class.getClassLoader(),
+                new Class<?>[] { Dataset.class }, handler);
+        try (SnapshotInputStream in = new SnapshotInputStream(new GZIPInputStream(
+                new BufferedInputStream(new FileInputStream(file))), dataset)) {
+            if (in.readInt() != FORMAT_VERSION || !location.equals(in.readUTF())
+                    || !currentSignature.equals(in.readObject())) {
+                log.debug("Snapshot of {} is out of date", datasetId);
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, VariableMetadata> variables = (Map<String, VariableMetadata>) in
+                    .readObject();
+            @SuppressWarnings("unchecked")
+            Set<String> topLevelIds = (Set<String>) in.readObject();
+            handler.setVariables(variables, topLevelIds);
+            return dataset;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            /*
+             * Most likely written by a different version of the software
+             */
+            log.debug("Cannot read snapshot of " + datasetId + ", removing it", e);
+            remove(datasetId);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of a dataset, replacing any existing one
+     *
+     * @param dataset
+     *            The {@link Dataset} to store
+     * @param location
+     *            The location the dataset was loaded from
+     * @return <code>true</code> if a snapshot was written
+     */
+    boolean write(Dataset dataset, String location) {
+        if (isSnapshot(dataset)) {
+            return false;
+        }
+        SourceSignature signature = SourceSignature.forLocation(location);
+        if (signature == null) {
+            log.debug("Not snapshotting {}: its source at {} cannot be checked for changes",
+                    dataset.getId(), location);
+            remove(dataset.getId());
+            return false;
+        }
+        Map<String, VariableMetadata> variables = new LinkedHashMap<>();
+        Set<String> topLevelIds = new LinkedHashSet<>();
+        try {
+            for (String variableId : dataset.getVariableIds()) {
+                variables.put(variableId, dataset.getVariableMetadata(variableId));
+            }
+            for (VariableMetadata metadata : dataset.getTopLevelVariables()) {
+                topLevelIds.add(metadata.getId());
+            }
+        } catch (EdalException e) {
+            log.warn("Not snapshotting " + dataset.getId() + ": cannot read its metadata", e);
+            return false;
+        }
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            log.warn("Cannot create snapshot directory " + directory);
+            return false;
+        }
+        File file = getFile(dataset.getId());
+        File tmpFile = new File(directory, file.getName() + ".tmp");
+        try (ObjectOutputStream out = new SnapshotOutputStream(
+                new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(location);
+            out.writeObject(signature);
+            out.writeObject(variables);
+            out.writeObject(topLevelIds);
+        } catch (NotSerializableException e) {
+            log.info("Not snapshotting {}: its metadata contains a {}, which cannot be stored",
+                    dataset.getId(), e.getMessage());
+            tmpFile.delete();
+            return false;
+        } catch (IOException e) {
+            log.warn("Cannot write snapshot of " + dataset.getId(), e);
+            tmpFile.delete();
+            return false;
+        }
+        /*
+         * Replace the old snapshot in one step, so that a partially-written
+         * snapshot is never read
+         */
+        file.delete();
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the snapshot of a dataset
+     *
+     * @param datasetId
+     *            The ID of the dataset
+     */
+    void remove(String datasetId) {
+        getFile(datasetId).delete();
+    }
+
+    /**
+     * @return Whether the given dataset was restored from a snapshot, rather
+     *         than loaded from its source
+     */
+    static boolean isSnapshot(Dataset dataset) {
+        return Proxy.isProxyClass(dataset.getClass())
+                && Proxy.getInvocationHandler(dataset) instanceof SnapshotDataset;
+    }
+
+    private File getFile(String datasetId) {
+        try {
+            return new File(directory, URLEncoder.encode(datasetId, "UTF-8") + SUFFIX);
+        } catch (UnsupportedEncodingException e) {
+            /*
+             * UTF-8 is always supported
+             */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Stands in for the dataset in a snapshot. Variable metadata refers back
+     * to its dataset, which must not be written with it.
+     */
+    private enum DatasetReference {
+        INSTANCE
+    }
+
+    private static final class SnapshotOutputStream extends ObjectOutputStream {
+        private SnapshotOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            return obj instanceof Dataset ? DatasetReference.INSTANCE : obj;
+        }
+    }
+
+    private static final class SnapshotInputStream extends ObjectInputStream {
+        private final Dataset dataset;
+
+        private SnapshotInputStream(InputStream in, Dataset dataset) throws IOException {
+            super(in);
+            this.dataset = dataset;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            return obj == DatasetReference.INSTANCE ? dataset : obj;
+        }
+    }
+
+    /**
+     * Implements a restored {@link Dataset}. Its variables are described from
+     * the snapshot, and all other methods are passed on to the dataset once it
+     * has loaded from its source.
+     */
+    private static final class SnapshotDataset implements InvocationHandler {
+        private final String datasetId;
+        private final SourceDatasets sourceDatasets;
+        private Map<String, VariableMetadata> variables = Collections.emptyMap();
+        private Set<VariableMetadata> topLevelVariables = Collections.emptySet();
+
+        private SnapshotDataset(String datasetId, SourceDatasets sourceDatasets) {
+            this.datasetId = datasetId;
+            this.sourceDatasets = sourceDatasets;
+        }
+
+        private void setVariables(Map<String, VariableMetadata> variables,
+                Set<String> topLevelIds) {
+            this.variables = Collections.unmodifiableMap(variables);
+            Set<VariableMetadata> topLevel = new LinkedHashSet<>();
+            for (String id : topLevelIds) {
+                VariableMetadata metadata = variables.get(id);
+                if (metadata != null) {
+                    topLevel.add(metadata);
+                }
+            }
+            this.topLevelVariables = Collections.unmodifiableSet(topLevel);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            int nArgs = args == null ? 0 : args.length;
+            switch (method.getName()) {
+            case "getId":
+                if (nArgs == 0) {
+                    return datasetId;
+                }
+                break;
+            case "getVariableIds":
+                if (nArgs == 0) {
+                    return variables.keySet();
+                }
+                break;
+            case "getTopLevelVariables":
+                if (nArgs == 0) {
+                    return topLevelVariables;
+                }
+                break;
+            case "getVariableMetadata":
+                if (nArgs == 1 && variables.containsKey(args[0])) {
+                    return variables.get(args[0]);
+                }
+                break;
+            case "equals":
+                if (nArgs == 1) {
+                    return proxy == args[0];
+                }
+                break;
+            case "hashCode":
+                if (nArgs == 0) {
+                    return System.identityHashCode(proxy);
+                }
+                break;
+            case "toString":
+                if (nArgs == 0) {
+                    return "Snapshot of " + datasetId;
+                }
+                break;
+            default:
+                break;
+            }
+            try {
+                return method.invoke(sourceDatasets.getSourceDataset(datasetId), args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
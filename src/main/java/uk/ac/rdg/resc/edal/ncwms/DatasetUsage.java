@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.rdg.resc.edal.dataset.Dataset;
+
+/**
+ * Records the dynamic and lazily-loaded datasets used by a single request, so
+ * that they are not closed whilst it is still reading them. A usage is
+ * attached to the thread processing the request (and to any threads working
+ * on its behalf), and is ended once the response has been generated, which
+ * releases all of its datasets.
+ *
+ * Datasets which are fetched outside of any request (i.e. with no current
+ * usage) are not protected, and may be closed as soon as they leave the
+ * dynamic dataset cache or are unloaded.
+ */
+final class DatasetUsage {
+    private static final ThreadLocal<DatasetUsage> CURRENT = new ThreadLocal<>();
+
+    private final List<Use> uses = new ArrayList<>();
+    private boolean ended = false;
+
+    /**
+     * Makes the given usage the current one for this thread
+     *
+     * @param usage
+     *            The usage to attach, or <code>null</code> to detach the
+     *            current one
+     * @return The usage which was previously attached, so that it can be
+     *         restored
+     */
+    static DatasetUsage attach(DatasetUsage usage) {
+        DatasetUsage previous = CURRENT.get();
+        if (usage == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(usage);
+        }
+        return previous;
+    }
+
+    /**
+     * @return The usage attached to the current thread, or <code>null</code>
+     *         if there is none
+     */
+    static DatasetUsage current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Registers this usage as a user of a dataset from the given pool. Using
+     * the same dataset more than once has no further effect.
+     *
+     * @param pool
+     *            The pool which keeps track of the dataset
+     * @param key
+     *            The cache key of the dataset
+     * @param dataset
+     *            The dataset to use
+     * @return <code>false</code> if the dataset has already been closed (or
+     *         this usage has ended), in which case it should not be used
+     */
+    synchronized boolean use(DynamicDatasetPool pool, Object key, Dataset dataset) {
+        if (ended) {
+            return false;
+        }
+        for (Use use : uses) {
+            if (use.dataset == dataset) {
+                return true;
+            }
+        }
+        if (!pool.acquire(key, dataset)) {
+            return false;
+        }
+        uses.add(new Use(pool, dataset));
+        return true;
+    }
+
+    /**
+     * Releases all of the datasets used by this usage
+     */
+    void end() {
+        List<Use> toRelease;
+        synchronized (this) {
+            ended = true;
+            toRelease = new ArrayList<>(uses);
+            uses.clear();
+        }
+        for (Use use : toRelease) {
+            use.pool.release(use.dataset);
+        }
+    }
+
+    private static final class Use {
+        private final DynamicDatasetPool pool;
+        private final Dataset dataset;
+
+        private Use(DynamicDatasetPool pool, Dataset dataset) {
+            this.pool = pool;
+            this.dataset = dataset;
+        }
+    }
+}
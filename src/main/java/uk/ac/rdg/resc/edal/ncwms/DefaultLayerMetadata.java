@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import uk.ac.rdg.resc.edal.graphics.utils.EnhancedVariableMetadata;
+import uk.ac.rdg.resc.edal.graphics.utils.PlottingStyleParameters;
+
+/**
+ * The {@link EnhancedVariableMetadata} of a layer which has not been configured
+ * individually, such as a layer of a dynamic dataset. These take sensible
+ * defaults, and the properties of whatever provides them (e.g. a dynamic
+ * service).
+ */
+class DefaultLayerMetadata implements EnhancedVariableMetadata {
+    private final String variableId;
+    private final boolean queryable;
+    private final boolean downloadable;
+    private final boolean disabled;
+    private final PlottingStyleParameters defaultPlottingParameters;
+
+    /**
+     * @param variableId
+     *            The ID of the variable within its dataset
+     * @param queryable
+     *            Whether the layer can be queried
+     * @param downloadable
+     *            Whether the layer can be downloaded
+     * @param disabled
+     *            Whether the layer is disabled
+     * @param defaultPlottingParameters
+     *            The default {@link PlottingStyleParameters} for the layer.
+     *            These can be shared between layers.
+     */
+    DefaultLayerMetadata(String variableId, boolean queryable, boolean downloadable,
+            boolean disabled, PlottingStyleParameters defaultPlottingParameters) {
+        this.variableId = variableId;
+        this.queryable = queryable;
+        this.downloadable = downloadable;
+        this.disabled = disabled;
+        this.defaultPlottingParameters = defaultPlottingParameters;
+    }
+
+    @Override
+    public String getId() {
+        return variableId;
+    }
+
+    @Override
+    public String getTitle() {
+        return variableId;
+    }
+
+    @Override
+    public PlottingStyleParameters getDefaultPlottingParameters() {
+        return defaultPlottingParameters;
+    }
+
+    @Override
+    public String getMoreInfo() {
+        return null;
+    }
+
+    @Override
+    public String getDescription() {
+        return null;
+    }
+
+    @Override
+    public String getCopyright() {
+        return null;
+    }
+
+    @Override
+    public boolean isQueryable() {
+        return queryable;
+    }
+
+    @Override
+    public boolean isDownloadable() {
+        return downloadable;
+    }
+
+    @Override
+    public boolean isDisabled() {
+        return disabled;
+    }
+}
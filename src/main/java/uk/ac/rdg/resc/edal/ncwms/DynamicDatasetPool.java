@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.dataset.Dataset;
+
+/**
+ * Keeps track of the dynamic {@link Dataset}s which are currently open, i.e.
+ * held in the dynamic dataset cache. Whenever a dataset leaves the cache (by
+ * removal, expiry or eviction) its resources are released, and the number of
+ * open datasets can be limited, closing the least recently used first.
+ *
+ * Requests may still be reading a dataset when it leaves the cache, so
+ * requests register their use of datasets with {@link #acquire(Object, Dataset)}
+ * and {@link #release(Dataset)}. A dataset which leaves the cache whilst in
+ * use is only closed once its last user has released it.
+ *
+ * Lazily-loaded datasets are not held in a cache, so their store tells its own
+ * pool directly when they are opened with {@link #open(Object, Dataset)} and
+ * unloaded with {@link #retire(Object, Object)}.
+ */
+class DynamicDatasetPool extends CacheEventListenerAdapter {
+    private static final Logger log = LoggerFactory.getLogger(DynamicDatasetPool.class);
+
+    /*
+     * Open datasets which are in the cache, in order of access. All of the
+     * state of this pool is guarded by this map.
+     */
+    private final Map<Object, Dataset> openDatasets = new LinkedHashMap<>(16, 0.75f, true);
+    /*
+     * The number of users of each dataset which is in use
+     */
+    private final Map<Dataset, Integer> users = new IdentityHashMap<>();
+    /*
+     * Datasets which have left the cache, but are still in use
+     */
+    private final Set<Dataset> retired = Collections.newSetFromMap(
+            new IdentityHashMap<Dataset, Boolean>());
+    private final AtomicLong closeCount = new AtomicLong(0L);
+
+    /**
+     * Marks a dataset as having been used, so that it is the last to be closed
+     *
+     * @param key
+     *            The cache key of the dataset
+     */
+    void touch(Object key) {
+        synchronized (openDatasets) {
+            openDatasets.get(key);
+        }
+    }
+
+    /**
+     * Registers a user of a dataset, which will not then be closed until the
+     * user calls {@link #release(Dataset)}
+     *
+     * @param key
+     *            The cache key of the dataset
+     * @param dataset
+     *            The dataset which was retrieved from the cache
+     * @return <code>true</code> if the dataset is open and has been acquired,
+     *         or <code>false</code> if it has already been closed, in which
+     *         case it should not be used
+     */
+    boolean acquire(Object key, Dataset dataset) {
+        synchronized (openDatasets) {
+            Integer count = users.get(dataset);
+            if (count == null && openDatasets.get(key) != dataset) {
+                return false;
+            }
+            users.put(dataset, count == null ? 1 : count + 1);
+            return true;
+        }
+    }
+
+    /**
+     * Releases a dataset previously acquired with
+     * {@link #acquire(Object, Dataset)}. If it has left the cache and this was
+     * its last user, it is closed.
+     *
+     * @param dataset
+     *            The dataset which is no longer being used
+     */
+    void release(Dataset dataset) {
+        synchronized (openDatasets) {
+            Integer count = users.get(dataset);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                users.put(dataset, count - 1);
+                return;
+            }
+            users.remove(dataset);
+            if (!retired.remove(dataset)) {
+                return;
+            }
+        }
+        close(dataset);
+    }
+    /**
+     * Removes the least recently used datasets from the cache until no more
+     * than the given number are open. Removing them from the cache will close
+     * them.
+     *
+     * @param cache
+     *            The cache this pool is listening to
+     * @param maxOpen
+     *            The maximum number of datasets to keep open. Zero or less means
+     *            no limit
+     */
+    void closeLeastRecentlyUsed(Ehcache cache, int maxOpen) {
+        if (maxOpen <= 0) {
+            return;
+        }
+        List<Object> toRemove = new ArrayList<>();
+        synchronized (openDatasets) {
+            Iterator<Object> keys = openDatasets.keySet().iterator();
+            for (int excess = openDatasets.size() - maxOpen; excess > 0 && keys.hasNext(); excess--) {
+                toRemove.add(keys.next());
+            }
+        }
+        /*
+         * Remove from the cache outside of the lock, since this will call back
+         * into the listener methods
+         */
+        for (Object key : toRemove) {
+            if (!cache.remove(key)) {
+                /*
+                 * It wasn't in the cache (e.g. it had expired without us being
+                 * notified), but we still need to release it
+                 */
+                retire(key, null);
+            }
+        }
+    }
+
+    /**
+     * @return The number of datasets currently open, including those which
+     *         have left the cache but are still in use
+     */
+    int getOpenCount() {
+        synchronized (openDatasets) {
+            return openDatasets.size() + retired.size();
+        }
+    }
+
+    /**
+     * @return The total number of datasets whose resources have been closed
+     */
+    long getCloseCount() {
+        return closeCount.get();
+    }
+
+    @Override
+    public void notifyElementPut(Ehcache cache, Element element) {
+        add(element);
+    }
+
+    @Override
+    public void notifyElementUpdated(Ehcache cache, Element element) {
+        add(element);
+    }
+
+    @Override
+    public void notifyElementRemoved(Ehcache cache, Element element) {
+        retire(element.getObjectKey(), element.getObjectValue());
+    }
+
+    @Override
+    public void notifyElementExpired(Ehcache cache, Element element) {
+        retire(element.getObjectKey(), element.getObjectValue());
+    }
+
+    @Override
+    public void notifyElementEvicted(Ehcache cache, Element element) {
+        retire(element.getObjectKey(), element.getObjectValue());
+    }
+
+    @Override
+    public void notifyRemoveAll(Ehcache cache) {
+        List<Dataset> toClose = new ArrayList<>();
+        synchronized (openDatasets) {
+            for (Dataset dataset : openDatasets.values()) {
+                if (!retireInUse(dataset)) {
+                    toClose.add(dataset);
+                }
+            }
+            openDatasets.clear();
+        }
+        for (Dataset dataset : toClose) {
+            close(dataset);
+        }
+    }
+
+    private void add(Element element) {
+        if (element.getObjectValue() instanceof Dataset) {
+            open(element.getObjectKey(), (Dataset) element.getObjectValue());
+        }
+    }
+
+    /**
+     * Records that a dataset is open. Any other dataset open for the same key
+     * is closed, unless it is in use.
+     *
+     * @param key
+     *            The key of the dataset
+     * @param dataset
+     *            The dataset which has been opened
+     */
+    void open(Object key, Dataset dataset) {
+        Dataset replaced;
+        synchronized (openDatasets) {
+            replaced = openDatasets.put(key, dataset);
+            if (replaced == null || replaced == dataset || retireInUse(replaced)) {
+                return;
+            }
+        }
+        close(replaced);
+    }
+
+    /**
+     * Handles the dataset with the given key leaving the cache, if it is the
+     * one we have open. It is closed now unless it is in use.
+     *
+     * @param key
+     *            The cache key of the dataset
+     * @param value
+     *            The dataset which has left the cache, or <code>null</code> to
+     *            release whichever dataset is open for the key
+     */
+    void retire(Object key, Object value) {
+        Dataset dataset;
+        synchronized (openDatasets) {
+            dataset = openDatasets.get(key);
+            if (dataset == null || (value != null && value != dataset)) {
+                return;
+            }
+            openDatasets.remove(key);
+            if (retireInUse(dataset)) {
+                return;
+            }
+        }
+        close(dataset);
+    }
+
+    /**
+     * Must be called whilst synchronized on {@link #openDatasets}
+     *
+     * @return <code>true</code> if the dataset is in use, in which case it
+     *         will be closed when it is released, or <code>false</code> if it
+     *         should be closed now
+     */
+    private boolean retireInUse(Dataset dataset) {
+        if (users.containsKey(dataset)) {
+            retired.add(dataset);
+            return true;
+        }
+        return false;
+    }
+
+    private void close(Dataset dataset) {
+        if (dataset instanceof Closeable) {
+            try {
+                ((Closeable) dataset).close();
+                closeCount.incrementAndGet();
+            } catch (IOException e) {
+                log.warn("Problem closing dataset " + dataset.getId(), e);
+            }
+        }
+        log.debug("Released dataset {}", dataset.getId());
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+/**
+ * Records the state of the files behind each cached dynamic dataset, so that a
+ * dataset can be reloaded when its source changes rather than only when it
+ * expires from the cache.
+ *
+ * Only local files and directories can be checked. Datasets from remote
+ * locations or glob expressions are never considered to have changed.
+ */
+class DynamicDatasetValidator extends CacheEventListenerAdapter {
+    private final Map<Object, SourceState> sources = new ConcurrentHashMap<>();
+
+    /**
+     * Records a previously-taken state of the source of a dataset
+     *
+     * @param key
+     *            The cache key of the dataset
+     * @param state
+     *            The state of the source, from
+     *            {@link #getSourceState(String)}. May be <code>null</code>
+     *            if the source cannot be checked.
+     */
+    void record(Object key, SourceState state) {
+        if (state == null) {
+            sources.remove(key);
+        } else {
+            sources.put(key, state);
+        }
+    }
+
+    /**
+     * Takes the current state of the source of a dataset. This should be done
+     * before the dataset is read, so that a change made whilst it is being read
+     * is still detected afterwards.
+     *
+     * @param location
+     *            The location the dataset is read from
+     * @return The state of the source, or <code>null</code> if it cannot be
+     *         checked
+     */
+    static SourceState getSourceState(String location) {
+        File source = SourceSignature.getLocalSource(location);
+        return source == null ? null : new SourceState(source);
+    }
+
+    /**
+     * Checks whether the source of a dataset has changed since it was recorded.
+     *
+     * @param key
+     *            The cache key of the dataset
+     * @param checkIntervalMillis
+     *            The source will not be checked if it was last checked less
+     *            than this long ago
+     * @return <code>true</code> if the source has been modified
+     */
+    boolean hasChanged(Object key, long checkIntervalMillis) {
+        SourceState state = sources.get(key);
+        if (state == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now - state.lastChecked < checkIntervalMillis) {
+            return false;
+        }
+        state.lastChecked = now;
+        return !state.signature.equals(SourceSignature.of(state.source));
+    }
+
+    @Override
+    public void notifyElementRemoved(Ehcache cache, Element element) {
+        sources.remove(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyElementExpired(Ehcache cache, Element element) {
+        sources.remove(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyElementEvicted(Ehcache cache, Element element) {
+        sources.remove(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyRemoveAll(Ehcache cache) {
+        sources.clear();
+    }
+
+    /**
+     * The state of the source of a dataset at a particular time
+     */
+    static final class SourceState {
+        private final File source;
+        private final SourceSignature signature;
+        private volatile long lastChecked;
+
+        private SourceState(File source) {
+            this.source = source;
+            this.signature = SourceSignature.of(source);
+            this.lastChecked = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.dataset.Dataset;
+import uk.ac.rdg.resc.edal.domain.HorizontalDomain;
+import uk.ac.rdg.resc.edal.domain.TemporalDomain;
+import uk.ac.rdg.resc.edal.domain.VerticalDomain;
+import uk.ac.rdg.resc.edal.exceptions.EdalException;
+import uk.ac.rdg.resc.edal.grid.HorizontalGrid;
+import uk.ac.rdg.resc.edal.grid.RectilinearGrid;
+import uk.ac.rdg.resc.edal.grid.ReferenceableAxis;
+import uk.ac.rdg.resc.edal.metadata.VariableMetadata;
+
+/**
+ * Keeps track of the estimated memory footprint of the {@link Dataset}s held in
+ * the dynamic dataset cache, so that the cache can be limited by size rather
+ * than just by the number of datasets it holds.
+ *
+ * The estimate covers the metadata and coordinate values which a dataset keeps
+ * in memory. It does not attempt to account for data values, which are read on
+ * demand.
+ */
+class DynamicDatasetWeigher extends CacheEventListenerAdapter {
+    private static final Logger log = LoggerFactory.getLogger(DynamicDatasetWeigher.class);
+
+    /* Rough overhead of a dataset and of each variable's metadata */
+    private static final long DATASET_OVERHEAD_BYTES = 4096L;
+    private static final long VARIABLE_OVERHEAD_BYTES = 1024L;
+    /*
+     * A coordinate value held as a double, and a point on a curvilinear grid
+     * (longitude, latitude, and its entry in the spatial lookup)
+     */
+    private static final long AXIS_VALUE_BYTES = 8L;
+    private static final long CURVILINEAR_CELL_BYTES = 24L;
+    /* A DateTime object on a time axis */
+    private static final long TIME_VALUE_BYTES = 32L;
+
+    private final Map<Object, Long> weights = new ConcurrentHashMap<>();
+    private final AtomicLong totalWeight = new AtomicLong(0L);
+
+    /**
+     * @return The total estimated size of all datasets in the cache, in bytes
+     */
+    long getWeightedSize() {
+        return totalWeight.get();
+    }
+
+    /**
+     * Removes entries from the cache until its estimated size is within the
+     * given budget. The least frequently used entries are removed first.
+     *
+     * @param cache
+     *            The cache this weigher is listening to
+     * @param maxBytes
+     *            The maximum estimated size of the cache, in bytes
+     * @param retainKey
+     *            A key which should not be evicted (e.g. one which has just
+     *            been added), or <code>null</code>. This is only evicted if it
+     *            is larger than the whole budget.
+     */
+    void evictToBudget(Ehcache cache, long maxBytes, Object retainKey) {
+        while (totalWeight.get() > maxBytes) {
+            Object victim = null;
+            long minHits = Long.MAX_VALUE;
+            for (Object key : weights.keySet()) {
+                if (key.equals(retainKey)) {
+                    continue;
+                }
+                /*
+                 * getQuiet() so that we don't affect the statistics we are
+                 * using
+                 */
+                Element element = cache.getQuiet(key);
+                if (element == null) {
+                    /*
+                     * Removed without us being notified (e.g. expired but not
+                     * yet cleaned up)
+                     */
+                    Long stale = weights.remove(key);
+                    if (stale != null) {
+                        totalWeight.addAndGet(-stale);
+                    }
+                } else if (element.getHitCount() < minHits) {
+                    minHits = element.getHitCount();
+                    victim = key;
+                }
+            }
+            if (victim == null) {
+                if (retainKey != null && weights.containsKey(retainKey)) {
+                    log.warn("Dynamic dataset " + retainKey + " is larger than the cache size limit");
+                    cache.remove(retainKey);
+                }
+                return;
+            }
+            cache.remove(victim);
+        }
+    }
+
+    @Override
+    public void notifyElementPut(Ehcache cache, Element element) {
+        addWeight(element);
+    }
+
+    @Override
+    public void notifyElementUpdated(Ehcache cache, Element element) {
+        addWeight(element);
+    }
+
+    @Override
+    public void notifyElementRemoved(Ehcache cache, Element element) {
+        removeWeight(element);
+    }
+
+    @Override
+    public void notifyElementExpired(Ehcache cache, Element element) {
+        removeWeight(element);
+    }
+
+    @Override
+    public void notifyElementEvicted(Ehcache cache, Element element) {
+        removeWeight(element);
+    }
+
+    @Override
+    public void notifyRemoveAll(Ehcache cache) {
+        weights.clear();
+        totalWeight.set(0L);
+    }
+
+    private void addWeight(Element element) {
+        long weight = 0L;
+        if (element.getObjectValue() instanceof Dataset) {
+            weight = estimateSize((Dataset) element.getObjectValue());
+        }
+        Long previous = weights.put(element.getObjectKey(), weight);
+        totalWeight.addAndGet(weight - (previous == null ? 0L : previous));
+    }
+
+    private void removeWeight(Element element) {
+        Long previous = weights.remove(element.getObjectKey());
+        if (previous != null) {
+            totalWeight.addAndGet(-previous);
+        }
+    }
+
+    /**
+     * Estimates the memory used by the metadata and coordinates of a
+     * {@link Dataset}. Domains which are shared between variables are only
+     * counted once.
+     *
+     * @param dataset
+     *            The {@link Dataset} to estimate the size of
+     * @return The estimated size, in bytes
+     */
+    static long estimateSize(Dataset dataset) {
+        long size = DATASET_OVERHEAD_BYTES;
+        Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        for (String varId : dataset.getVariableIds()) {
+            size += VARIABLE_OVERHEAD_BYTES;
+            VariableMetadata metadata;
+            try {
+                metadata = dataset.getVariableMetadata(varId);
+            } catch (EdalException e) {
+                continue;
+            }
+            HorizontalDomain hDomain = metadata.getHorizontalDomain();
+            if (hDomain instanceof HorizontalGrid && counted.add(hDomain)) {
+                HorizontalGrid grid = (HorizontalGrid) hDomain;
+                if (grid instanceof RectilinearGrid) {
+                    size += AXIS_VALUE_BYTES * (grid.getXSize() + grid.getYSize());
+                } else {
+                    size += CURVILINEAR_CELL_BYTES * grid.getXSize() * (long) grid.getYSize();
+                }
+            }
+            VerticalDomain zDomain = metadata.getVerticalDomain();
+            if (zDomain instanceof ReferenceableAxis && counted.add(zDomain)) {
+                size += AXIS_VALUE_BYTES * ((ReferenceableAxis<?>) zDomain).size();
+            }
+            TemporalDomain tDomain = metadata.getTemporalDomain();
+            if (tDomain instanceof ReferenceableAxis && counted.add(tDomain)) {
+                size += TIME_VALUE_BYTES * ((ReferenceableAxis<?>) tDomain).size();
+            }
+        }
+        return size;
+    }
+}
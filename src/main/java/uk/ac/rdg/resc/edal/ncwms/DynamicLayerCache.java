@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import uk.ac.rdg.resc.edal.graphics.utils.EnhancedVariableMetadata;
+import uk.ac.rdg.resc.edal.graphics.utils.PlottingStyleParameters;
+import uk.ac.rdg.resc.edal.ncwms.config.DynamicServiceIndex;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDynamicService;
+
+/**
+ * Caches the dynamic service which each layer name belongs to, and the
+ * metadata of layers of dynamic datasets, so that these only need resolving
+ * once per layer. An instance only holds results from a single
+ * {@link DynamicServiceIndex}, and is replaced as a whole when the dynamic
+ * services change.
+ *
+ * This is read on every request, so uses concurrent maps rather than a lock.
+ * The number of entries is limited by discarding arbitrary entries once it is
+ * exceeded, which is cheaper than keeping them in order of use.
+ */
+final class DynamicLayerCache {
+    /*
+     * Stored for layers which do not belong to any dynamic service, since
+     * concurrent maps cannot hold null values
+     */
+    private static final NcwmsDynamicService NO_SERVICE = new NcwmsDynamicService();
+
+    private final DynamicServiceIndex index;
+    private final int maxEntries;
+    private final ConcurrentMap<String, NcwmsDynamicService> layerServices = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, EnhancedVariableMetadata> layerMetadata = new ConcurrentHashMap<>();
+    /*
+     * NcwmsDynamicService does not override equals(), so these are keyed by
+     * identity
+     */
+    private final ConcurrentMap<NcwmsDynamicService, PlottingStyleParameters> serviceDefaults = new ConcurrentHashMap<>();
+
+    /**
+     * @param index
+     *            The index which the cached results are resolved from
+     * @param maxEntries
+     *            The maximum number of layers to hold results for
+     */
+    DynamicLayerCache(DynamicServiceIndex index, int maxEntries) {
+        this.index = index;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return The index which the cached results are resolved from
+     */
+    DynamicServiceIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @param layerName
+     *            The layer name or dataset ID
+     * @return Whether the service of the given layer is cached
+     */
+    boolean containsService(String layerName) {
+        return layerServices.containsKey(layerName);
+    }
+
+    /**
+     * @param layerName
+     *            The layer name or dataset ID
+     * @return The cached service of the given layer, or <code>null</code> if
+     *         it belongs to no service or is not cached
+     */
+    NcwmsDynamicService getService(String layerName) {
+        NcwmsDynamicService service = layerServices.get(layerName);
+        return service == NO_SERVICE ? null : service;
+    }
+
+    /**
+     * @param layerName
+     *            The layer name or dataset ID
+     * @param service
+     *            The service of the layer, or <code>null</code> if it belongs
+     *            to none
+     */
+    void putService(String layerName, NcwmsDynamicService service) {
+        layerServices.put(layerName, service == null ? NO_SERVICE : service);
+        trim(layerServices, layerName);
+    }
+
+    /**
+     * @param layerName
+     *            The name of a layer of a dynamic dataset
+     * @return The cached metadata of the layer, or <code>null</code> if it is
+     *         not cached
+     */
+    EnhancedVariableMetadata getMetadata(String layerName) {
+        return layerMetadata.get(layerName);
+    }
+
+    void putMetadata(String layerName, EnhancedVariableMetadata metadata) {
+        layerMetadata.put(layerName, metadata);
+        trim(layerMetadata, layerName);
+    }
+
+    /**
+     * @return The default plotting parameters shared by all layers of the
+     *         given service, or <code>null</code> if there are none yet
+     */
+    PlottingStyleParameters getDefaults(NcwmsDynamicService service) {
+        return serviceDefaults.get(service);
+    }
+
+    /**
+     * Stores the default plotting parameters of a service, unless another
+     * thread has already done so
+     *
+     * @return The parameters which are stored for the service
+     */
+    PlottingStyleParameters putDefaults(NcwmsDynamicService service,
+            PlottingStyleParameters defaults) {
+        PlottingStyleParameters existing = serviceDefaults.putIfAbsent(service, defaults);
+        return existing == null ? defaults : existing;
+    }
+
+    /**
+     * Discards entries until the map is no larger than the maximum, keeping
+     * the one which has just been added
+     */
+    private <V> void trim(ConcurrentMap<String, V> map, String added) {
+        if (map.size() <= maxEntries) {
+            return;
+        }
+        Iterator<String> keys = map.keySet().iterator();
+        while (map.size() > maxEntries && keys.hasNext()) {
+            if (!keys.next().equals(added)) {
+                keys.remove();
+            }
+        }
+    }
+}
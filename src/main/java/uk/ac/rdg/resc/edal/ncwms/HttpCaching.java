@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+
+/**
+ * Support for HTTP caching of WMS responses: validators (ETag and
+ * Last-Modified) which can be calculated from a request without reading any
+ * data, answering conditional requests, and Cache-Control headers.
+ */
+final class HttpCaching {
+    /*
+     * Responses which depend on the whole catalogue are tagged with its
+     * version number, which starts again whenever the server does
+     */
+    private static final long START_TIME = System.currentTimeMillis();
+    private static final int ETAG_BYTES = 16;
+
+    private HttpCaching() {
+    }
+
+    /**
+     * Calculates the validators of the response to a request. The ETag is
+     * calculated from the request, the time at which the configuration last
+     * changed and the version of each dataset used. The last-modified time is
+     * the latest of these times.
+     *
+     * @param catalogue
+     *            The catalogue serving the request
+     * @param key
+     *            The canonical form of the request
+     * @param datasetIds
+     *            The IDs of the datasets which the response depends on. If
+     *            this is empty, the response may depend on any dataset in the
+     *            catalogue.
+     * @return The validators, or <code>null</code> if they cannot be
+     *         calculated (e.g. because a dataset is not yet loaded)
+     */
+    static Validators getValidators(NcwmsCatalogue catalogue, String key,
+            Collection<String> datasetIds) {
+        long lastModified = catalogue.getConfigChangeTime();
+        StringBuilder tag = new StringBuilder(key);
+        tag.append("|config@").append(lastModified);
+        if (datasetIds.isEmpty()) {
+            tag.append("|catalogue@").append(START_TIME).append('.')
+                    .append(catalogue.getCatalogueVersion());
+            /*
+             * We don't know when the catalogue last changed
+             */
+            lastModified = -1L;
+        } else {
+            for (String datasetId : datasetIds) {
+                Long version = catalogue.getDatasetVersion(datasetId);
+                if (version == null) {
+                    return null;
+                }
+                tag.append('|').append(datasetId).append('@').append(version);
+                lastModified = Math.max(lastModified, version);
+            }
+        }
+        return new Validators("\"" + digest(tag.toString()) + "\"", lastModified);
+    }
+
+    private static String digest(String value) {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(
+                    value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            /*
+             * Every Java platform must support SHA-256
+             */
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder(ETAG_BYTES * 2);
+        for (int i = 0; i < ETAG_BYTES; i++) {
+            hex.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param request
+     *            The client's request
+     * @param etag
+     *            The ETag of the current response
+     * @param lastModified
+     *            The last-modified time of the current response, or a
+     *            negative number if it is not known
+     * @return Whether the client's validators show that it already has the
+     *         current response
+     */
+    static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            /*
+             * If-None-Match takes precedence over If-Modified-Since
+             */
+            return ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(etag);
+        }
+        if (lastModified < 0) {
+            return false;
+        }
+        try {
+            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+        } catch (IllegalArgumentException e) {
+            /*
+             * Unparseable date
+             */
+            return false;
+        }
+    }
+
+    /**
+     * Works out the Cache-Control header for a response. This uses the
+     * configured max-age for the type of request, but never allows a
+     * response to be reused beyond the next scheduled refresh of any dataset
+     * it depends on.
+     *
+     * @param catalogue
+     *            The catalogue serving the request
+     * @param request
+     *            The WMS request type, e.g. GetMap
+     * @param datasetIds
+     *            The IDs of the datasets which the response depends on
+     * @return The value of the Cache-Control header
+     */
+    static String getCacheControl(NcwmsCatalogue catalogue, String request,
+            Collection<String> datasetIds) {
+        long maxAge = catalogue.getConfig().getHttpCacheInfo().getMaxAge(request);
+        long now = System.currentTimeMillis();
+        for (String datasetId : datasetIds) {
+            DatasetConfig datasetConfig = catalogue.getDatasetConfig(datasetId);
+            if (maxAge > 0 && datasetConfig != null && datasetConfig.getUpdateInterval() > 0
+                    && datasetConfig.getLastUpdateTime() != null) {
+                long nextUpdate = datasetConfig.getLastUpdateTime().getMillis()
+                        + datasetConfig.getUpdateInterval() * 60 * 1000L;
+                maxAge = Math.min(maxAge, Math.max(0L, (nextUpdate - now) / 1000L));
+            }
+        }
+        return maxAge > 0 ? "max-age=" + maxAge : "no-cache";
+    }
+
+    /**
+     * The validators of a response
+     */
+    static final class Validators {
+        private final String etag;
+        /* Rounded to whole seconds, since that is all HTTP dates can hold */
+        private final long lastModified;
+
+        Validators(String etag, long lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified < 0 ? -1L : (lastModified / 1000L) * 1000L;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Adds these validators to a response
+         */
+        void write(HttpServletResponse response) {
+            response.setHeader("ETag", etag);
+            if (lastModified >= 0) {
+                response.setDateHeader("Last-Modified", lastModified);
+            }
+        }
+
+        /**
+         * @return Whether the client already has the response with these
+         *         validators
+         */
+        boolean isNotModified(HttpServletRequest request) {
+            return HttpCaching.isNotModified(request, etag, lastModified);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig.DatasetState;
+import uk.ac.rdg.resc.edal.dataset.Dataset;
+import uk.ac.rdg.resc.edal.dataset.DatasetFactory;
+
+/**
+ * Holds the lazily-loaded datasets. These are configured like any other
+ * dataset, but are only loaded when first requested, and are unloaded again
+ * once they have not been used for a while.
+ *
+ * The state of each {@link DatasetConfig} reflects whether it is currently
+ * loaded: {@link DatasetState#NEEDS_REFRESH} until it is first used, and again
+ * after it has been unloaded. A dataset which is unloaded whilst requests are
+ * still reading it is only closed once they have finished.
+ */
+class LazyDatasetStore {
+    private static final Logger log = LoggerFactory.getLogger(LazyDatasetStore.class);
+
+    /**
+     * Receives notifications when datasets are loaded
+     */
+    interface LoadListener {
+        /**
+         * Called when a lazy dataset has been loaded from its source
+         *
+         * @param datasetConfig
+         *            The {@link DatasetConfig} of the dataset
+         * @param dataset
+         *            The loaded {@link Dataset}
+         */
+        void datasetLoaded(DatasetConfig datasetConfig, Dataset dataset);
+    }
+
+    private final Map<String, LoadedDataset> loaded = new ConcurrentHashMap<>();
+    private final SingleFlight<String, Dataset> loads = new SingleFlight<>();
+    /* Keeps loaded datasets open whilst requests are using them */
+    private final DynamicDatasetPool pool = new DynamicDatasetPool();
+    private final LoadListener listener;
+    private final ScheduledExecutorService idleSweeper;
+    private final long idleMillis;
+
+    /**
+     * @param idleMinutes
+     *            The time after which unused datasets are unloaded. Zero or
+     *            less means that they are never unloaded
+     * @param listener
+     *            Notified whenever a dataset has been loaded
+     */
+    LazyDatasetStore(float idleMinutes, LoadListener listener) {
+        this.listener = listener;
+        idleMillis = (long) (idleMinutes * 60 * 1000);
+        if (idleMillis > 0) {
+            idleSweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ncwms-lazy-dataset-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            long period = Math.max(1000L, idleMillis / 4);
+            idleSweeper.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    unloadIdle(System.currentTimeMillis() - idleMillis);
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            idleSweeper = null;
+        }
+    }
+
+    /**
+     * Gets a lazily-loaded dataset, loading it if required. Concurrent requests
+     * for the same dataset share a single load. If this is called whilst
+     * processing a request, the dataset stays open until the request has
+     * finished.
+     *
+     * @param datasetConfig
+     *            The {@link DatasetConfig} of the dataset
+     * @return The {@link Dataset}, or <code>null</code> if it is disabled or
+     *         cannot be loaded
+     */
+    Dataset get(DatasetConfig datasetConfig) {
+        if (datasetConfig.isDisabled()) {
+            return null;
+        }
+        Dataset dataset = getLoaded(datasetConfig);
+        if (dataset == null || use(datasetConfig, dataset)) {
+            return dataset;
+        }
+        /*
+         * Unloaded and closed since we fetched it. Try once more.
+         */
+        dataset = getLoaded(datasetConfig);
+        if (dataset == null || use(datasetConfig, dataset)) {
+            return dataset;
+        }
+        return null;
+    }
+
+    private Dataset getLoaded(final DatasetConfig datasetConfig) {
+        LoadedDataset existing = loaded.get(datasetConfig.getId());
+        if (existing != null) {
+            existing.lastAccess = System.currentTimeMillis();
+            return existing.dataset;
+        }
+        try {
+            return loads.get(datasetConfig.getId(), new Callable<Dataset>() {
+                @Override
+                public Dataset call() throws Exception {
+                    LoadedDataset existing = loaded.get(datasetConfig.getId());
+                    if (existing != null) {
+                        return existing.dataset;
+                    }
+                    return load(datasetConfig);
+                }
+            });
+        } catch (ExecutionException e) {
+            log.error("Problem loading lazy dataset " + datasetConfig.getId(), e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private boolean use(DatasetConfig datasetConfig, Dataset dataset) {
+        DatasetUsage usage = DatasetUsage.current();
+        return usage == null || usage.use(pool, datasetConfig.getId(), dataset);
+    }
+
+    private Dataset load(DatasetConfig datasetConfig) {
+        datasetConfig.setState(DatasetState.LOADING);
+        long start = System.currentTimeMillis();
+        try {
+            DatasetFactory factory = DatasetFactory.forName(datasetConfig.getDataReaderClass());
+            Dataset dataset = factory.createDataset(datasetConfig.getId(), datasetConfig.getLocation());
+            pool.open(datasetConfig.getId(), dataset);
+            loaded.put(datasetConfig.getId(), new LoadedDataset(datasetConfig, dataset));
+            datasetConfig.setLastSuccessfulUpdateTime(new DateTime());
+            datasetConfig.setState(DatasetState.READY);
+            log.debug("Loaded lazy dataset {} in {}ms", datasetConfig.getId(),
+                    System.currentTimeMillis() - start);
+            listener.datasetLoaded(datasetConfig, dataset);
+            return dataset;
+        } catch (Exception e) {
+            log.error("Cannot load lazy dataset " + datasetConfig.getId(), e);
+            datasetConfig.setState(DatasetState.ERROR);
+            return null;
+        }
+    }
+
+    /**
+     * @param datasetId
+     *            The ID of the dataset
+     * @return Whether the dataset is currently loaded
+     */
+    boolean isLoaded(String datasetId) {
+        return loaded.containsKey(datasetId);
+    }
+
+    /**
+     * @return The datasets which are currently loaded
+     */
+    List<Dataset> getLoadedDatasets() {
+        List<Dataset> datasets = new ArrayList<>();
+        for (LoadedDataset loadedDataset : loaded.values()) {
+            datasets.add(loadedDataset.dataset);
+        }
+        return datasets;
+    }
+
+    /**
+     * Unloads a dataset, e.g. because its configuration has changed or it has
+     * been removed
+     *
+     * @param datasetConfig
+     *            The {@link DatasetConfig} of the dataset
+     */
+    void unload(DatasetConfig datasetConfig) {
+        LoadedDataset removed = loaded.remove(datasetConfig.getId());
+        if (removed != null) {
+            unloaded(datasetConfig.getId(), removed);
+        }
+    }
+
+    private void unloadIdle(long lastAccessBefore) {
+        Iterator<Entry<String, LoadedDataset>> iterator = loaded.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry<String, LoadedDataset> entry = iterator.next();
+            if (entry.getValue().lastAccess < lastAccessBefore) {
+                iterator.remove();
+                unloaded(entry.getKey(), entry.getValue());
+                log.debug("Unloaded idle lazy dataset {}", entry.getKey());
+            }
+        }
+    }
+
+    private void unloaded(String datasetId, LoadedDataset removed) {
+        /*
+         * Closed now, or once the last request using it has finished
+         */
+        pool.retire(datasetId, removed.dataset);
+        removed.datasetConfig.setState(DatasetState.NEEDS_REFRESH);
+    }
+
+    void shutdown() {
+        if (idleSweeper != null) {
+            idleSweeper.shutdownNow();
+        }
+    }
+
+    private static final class LoadedDataset {
+        private final DatasetConfig datasetConfig;
+        private final Dataset dataset;
+        private volatile long lastAccess;
+
+        private LoadedDataset(DatasetConfig datasetConfig, Dataset dataset) {
+            this.datasetConfig = datasetConfig;
+            this.dataset = dataset;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+}
@@ -35,9 +35,12 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.UUID;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -54,6 +57,8 @@ import org.apache.velocity.app.event.implement.EscapeHtmlReference;
 import org.apache.velocity.exception.MethodInvocationException;
 import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.exception.ResourceNotFoundException;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,6 +70,9 @@ import uk.ac.rdg.resc.edal.graphics.utils.ColourPalette;
 import uk.ac.rdg.resc.edal.ncwms.config.NcwmsContact;
 import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDynamicCacheInfo;
 import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDynamicService;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsHttpCacheInfo;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsImageCacheInfo;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsProcessingInfo;
 import uk.ac.rdg.resc.edal.ncwms.config.NcwmsServerInfo;
 import uk.ac.rdg.resc.edal.util.Extents;
 import uk.ac.rdg.resc.edal.util.TimeUtils;
@@ -82,8 +90,25 @@ public class NcwmsAdminServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
     private static final Logger log = LoggerFactory.getLogger(NcwmsAdminServlet.class);
 
+    /* The number of finished bulk import jobs whose status is kept */
+    private static final int MAX_IMPORT_JOBS = 100;
+    /* The longest time for which import progress is streamed to a client */
+    private static final long MAX_STREAM_MILLIS = 10 * 60 * 1000L;
+    private static final long STREAM_INTERVAL_MILLIS = 1000L;
+    /* The requests whose max-age can be set on the admin page */
+    private static final String[] HTTP_CACHE_REQUESTS = new String[] { "GetCapabilities",
+            "GetMap", "GetLegendGraphic", "GetFeatureInfo", "GetMetadata" };
+
     private VelocityEngine velocityEngine;
     private NcwmsCatalogue catalogue;
+    private final Map<String, DatasetImportJob> importJobs = new LinkedHashMap<String, DatasetImportJob>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DatasetImportJob> eldest) {
+            return size() > MAX_IMPORT_JOBS;
+        }
+    };
 
     public NcwmsAdminServlet() throws IOException, Exception {
         super();
@@ -155,6 +180,10 @@ public class NcwmsAdminServlet extends HttpServlet {
             displayStatusPage(request, response);
         } else if ("/editVariables".equals(path)) {
             displayEditVariablesPage(request, response);
+        } else if ("/importStatus".equals(path)) {
+            displayImportStatus(request, response);
+        } else if ("/seedStatus".equals(path)) {
+            displaySeedStatus(request, response);
         } else {
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
@@ -193,6 +222,11 @@ public class NcwmsAdminServlet extends HttpServlet {
         ec.attachToContext(context);
 
         context.put("dataset", dataset);
+        if (dataset != null) {
+            context.put("priority", catalogue.getConfig().getSettingsForDataset(datasetId).getPriority());
+            context.put("queuePosition", catalogue.getDatasetQueuePosition(datasetId));
+            context.put("loadDuration", catalogue.getDatasetLoadDuration(datasetId));
+        }
 
         PrintWriter writer;
         try {
@@ -345,6 +379,18 @@ public class NcwmsAdminServlet extends HttpServlet {
              * Add a new dataset
              */
             removeDataset(request, response);
+        } else if ("/addDatasets".equals(path)) {
+            /*
+             * Add many datasets at once
+             */
+            addDatasets(request, response);
+        } else if ("/seedTiles".equals(path)) {
+            /*
+             * Start pre-rendering tiles
+             */
+            seedTiles(request, response);
+        } else if ("/cancelSeed".equals(path)) {
+            cancelSeed(request, response);
         } else {
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
@@ -359,12 +405,44 @@ public class NcwmsAdminServlet extends HttpServlet {
         NcwmsServerInfo server = catalogue.getConfig().getServerInfo();
         CacheInfo cache = catalogue.getConfig().getCacheSettings();
         NcwmsDynamicCacheInfo dynamicCache = catalogue.getConfig().getDynamicCacheInfo();
+        NcwmsImageCacheInfo imageCache = catalogue.getConfig().getImageCacheInfo();
 
         contact.setName(request.getParameter("contact.name"));
         contact.setOrganisation(request.getParameter("contact.org"));
         contact.setTelephone(request.getParameter("contact.tel"));
         contact.setEmail(request.getParameter("contact.email"));
 
+        catalogue.getConfig().getLoadingInfo()
+                .setSnapshotsEnabled(request.getParameter("loading.snapshots") != null);
+        String loadingThreads = request.getParameter("loading.threads");
+        if (loadingThreads != null && !loadingThreads.isEmpty()) {
+            catalogue.getConfig().getLoadingInfo().setLoadingThreads(Integer.parseInt(loadingThreads));
+        }
+        catalogue.getConfig().getLoadingInfo().setLazy(request.getParameter("loading.lazy") != null);
+        String lazyIdleMinutes = request.getParameter("loading.lazyIdleMinutes");
+        if (lazyIdleMinutes != null && !lazyIdleMinutes.isEmpty()) {
+            catalogue.getConfig().getLoadingInfo().setLazyIdleMinutes(Float.parseFloat(lazyIdleMinutes));
+        }
+
+        NcwmsProcessingInfo processing = catalogue.getConfig().getProcessingInfo();
+        processing.setAsyncEnabled(request.getParameter("processing.async") != null);
+        String ioThreads = request.getParameter("processing.ioThreads");
+        if (ioThreads != null && !ioThreads.isEmpty()) {
+            processing.setIoThreads(Integer.parseInt(ioThreads));
+        }
+        String ioQueueSize = request.getParameter("processing.ioQueueSize");
+        if (ioQueueSize != null && !ioQueueSize.isEmpty()) {
+            processing.setIoQueueSize(Integer.parseInt(ioQueueSize));
+        }
+        String renderThreads = request.getParameter("processing.renderThreads");
+        if (renderThreads != null && !renderThreads.isEmpty()) {
+            processing.setRenderThreads(Integer.parseInt(renderThreads));
+        }
+        String bandedRenderingPixels = request.getParameter("processing.bandedRenderingPixels");
+        if (bandedRenderingPixels != null && !bandedRenderingPixels.isEmpty()) {
+            processing.setBandedRenderingPixels(Integer.parseInt(bandedRenderingPixels));
+        }
+
         /* Process the server details */
         server.setTitle(request.getParameter("server.title"));
         server.setDescription(request.getParameter("server.abstract"));
@@ -434,7 +512,7 @@ public class NcwmsAdminServlet extends HttpServlet {
                 }
             }
             if (refreshDataset) {
-                ds.forceRefresh();
+                catalogue.refreshDataset(ds);
             }
         }
         /* Now we can remove the datasets */
@@ -448,7 +526,7 @@ public class NcwmsAdminServlet extends HttpServlet {
              * Force a refresh of the dataset. We do this in case the new ID
              * happens to be the same as an existing dataset.
              */
-            ds.forceRefresh();
+            catalogue.refreshDataset(ds);
         }
 
         /*
@@ -483,11 +561,7 @@ public class NcwmsAdminServlet extends HttpServlet {
                         .parseInt(request.getParameter("dataset.new" + i + ".updateinterval")));
                 ds.setMoreInfo(request.getParameter("dataset.new" + i + ".moreinfo"));
                 ds.setCopyrightStatement(request.getParameter("dataset.new" + i + ".copyright"));
-                /*
-                 * addDataset() contains code to ensure that the dataset loads
-                 * its metadata at the next opportunity
-                 */
-                catalogue.getConfig().addDataset(ds);
+                catalogue.addConfiguredDataset(ds);
             }
             i++;
         }
@@ -554,6 +628,11 @@ public class NcwmsAdminServlet extends HttpServlet {
         for (NcwmsDynamicService ds : changedNcwmsDynamicServiceIds.keySet()) {
             catalogue.getConfig().changeDynamicServiceId(ds, changedNcwmsDynamicServiceIds.get(ds));
         }
+        /*
+         * The remaining services may have been modified in place, so make sure
+         * that nothing resolved from their old settings is still used
+         */
+        catalogue.getConfig().refreshDynamicServiceIndex();
 
         /*
          * Now look for the new dynamic Services. The logic below means that we
@@ -579,7 +658,11 @@ public class NcwmsAdminServlet extends HttpServlet {
                 ds.setQueryable(
                         request.getParameter("dynamicService.new" + i + ".queryable") != null);
                 ds.setDataReaderClass(request.getParameter("dynamicService.new" + i + ".reader"));
-                catalogue.getConfig().addDynamicService(ds);
+                try {
+                    catalogue.getConfig().addDynamicService(ds);
+                } catch (IllegalArgumentException e) {
+                    log.error("Not adding new dynamic service", e);
+                }
             }
             i++;
         }
@@ -614,6 +697,27 @@ public class NcwmsAdminServlet extends HttpServlet {
         if (!tmpLifetime.isEmpty()) {
             dynamicCache.setElementLifetimeMinutes(Float.parseFloat(tmpLifetime));
         }
+        String maxSizeMB = request.getParameter("dynamicCache.maxSizeMB");
+        if (maxSizeMB != null && !maxSizeMB.isEmpty()) {
+            dynamicCache.setMaxSizeMB(Integer.parseInt(maxSizeMB));
+        }
+        String maxOpen = request.getParameter("dynamicCache.maxOpenDatasets");
+        if (maxOpen != null && !maxOpen.isEmpty()) {
+            dynamicCache.setMaxOpenDatasets(Integer.parseInt(maxOpen));
+        }
+        dynamicCache.setReloadOnChange(request.getParameter("dynamicCache.reloadOnChange") != null);
+        String changeCheckInterval = request.getParameter("dynamicCache.changeCheckIntervalSeconds");
+        if (changeCheckInterval != null && !changeCheckInterval.isEmpty()) {
+            dynamicCache.setChangeCheckIntervalSeconds(Integer.parseInt(changeCheckInterval));
+        }
+        String failedCacheSize = request.getParameter("dynamicCache.failedDatasetCacheSize");
+        if (failedCacheSize != null && !failedCacheSize.isEmpty()) {
+            dynamicCache.setFailedDatasetCacheSize(Integer.parseInt(failedCacheSize));
+        }
+        tmpLifetime = request.getParameter("dynamicCache.failedDatasetLifetimeMinutes");
+        if (tmpLifetime != null && !tmpLifetime.isEmpty()) {
+            dynamicCache.setFailedDatasetLifetimeMinutes(Float.parseFloat(tmpLifetime));
+        }
         if(request.getParameter("dynamicCache.empty") != null) {
             catalogue.emptyDynamicDatasetCache();
         }
@@ -623,6 +727,37 @@ public class NcwmsAdminServlet extends HttpServlet {
          */
         catalogue.updateDynamicDatasetCache(dynamicCache);
 
+        /*
+         * Set the properties of the rendered image cache
+         */
+        imageCache.setEnabled(request.getParameter("imageCache.enable") != null);
+        String nImages = request.getParameter("imageCache.nImages");
+        if (nImages != null && !nImages.isEmpty()) {
+            imageCache.setNumberOfImages(Integer.parseInt(nImages));
+        }
+        String nDiskImages = request.getParameter("imageCache.nDiskImages");
+        if (nDiskImages != null && !nDiskImages.isEmpty()) {
+            imageCache.setNumberOfDiskImages(Integer.parseInt(nDiskImages));
+        }
+        tmpLifetime = request.getParameter("imageCache.elementLifetimeMinutes");
+        if (tmpLifetime != null && !tmpLifetime.isEmpty()) {
+            imageCache.setElementLifetimeMinutes(Float.parseFloat(tmpLifetime));
+        }
+        catalogue.updateRenderedImageCache(imageCache);
+
+        /*
+         * Set the HTTP caching rules
+         */
+        NcwmsHttpCacheInfo httpCache = catalogue.getConfig().getHttpCacheInfo();
+        httpCache.setEnabled(request.getParameter("httpCache.enable") != null);
+        for (String wmsRequest : HTTP_CACHE_REQUESTS) {
+            String maxAge = request.getParameter("httpCache.maxAge." + wmsRequest);
+            if (maxAge != null && !maxAge.isEmpty()) {
+                httpCache.setMaxAge(wmsRequest, Integer.parseInt(maxAge));
+            }
+        }
+        catalogue.configChanged();
+
         /* Save the updated config information to disk */
         try {
             catalogue.getConfig().save();
@@ -682,6 +817,7 @@ public class NcwmsAdminServlet extends HttpServlet {
                 var.setScaling(request.getParameter(variableId + ".scaling"));
                 var.setDisabled(request.getParameter(variableId + ".disabled") != null);
             }
+            catalogue.configChanged();
             /* Saves the new configuration information to disk */
             try {
                 catalogue.getConfig().save();
@@ -705,18 +841,46 @@ public class NcwmsAdminServlet extends HttpServlet {
         }
     }
 
-    private void addDataset(HttpServletRequest request, HttpServletResponse response) {
-        RequestParams params = new RequestParams(request.getParameterMap());
+    /**
+     * Creates the configuration for a new dataset from the parameters used by
+     * the addDataset and addDatasets methods
+     */
+    private static DatasetConfig createDatasetConfig(RequestParams params) {
         String id = params.getMandatoryString("id");
-        String location = params.getMandatoryString("location");
-        String title = params.getString("title", id);
-        String dataReader = params.getString("dataReader", "");
-        String moreInfo = params.getString("moreInfo", "");
-        String copyright = params.getString("copyright", "");
-        boolean queryable = params.getBoolean("queryable", true);
-        boolean downloadable = params.getBoolean("downloadable", false);
+        DatasetConfig ds = new DatasetConfig();
+        ds.setId(id);
+        ds.setTitle(params.getString("title", id));
+        ds.setLocation(params.getMandatoryString("location"));
+        ds.setDataReaderClass(params.getString("dataReader", ""));
+        ds.setQueryable(params.getBoolean("queryable", true));
+        ds.setDownloadable(params.getBoolean("downloadable", false));
         // -1 means never
-        int autoRefreshMinutes = params.getInt("autoRefreshMinutes", -1);
+        ds.setUpdateInterval(params.getInt("autoRefreshMinutes", -1));
+        ds.setMoreInfo(params.getString("moreInfo", ""));
+        ds.setCopyrightStatement(params.getString("copyright", ""));
+        return ds;
+    }
+
+    /**
+     * @return A message describing why the given data reading class cannot be
+     *         used, or <code>null</code> if it is available
+     */
+    private static String checkDataReader(String dataReader) {
+        try {
+            if (!dataReader.isEmpty()) {
+                Class.forName(dataReader);
+            }
+            return null;
+        } catch (ClassNotFoundException e) {
+            return "Data reading class: " + dataReader + " is not available";
+        }
+    }
+
+    private void addDataset(HttpServletRequest request, HttpServletResponse response) {
+        RequestParams params = new RequestParams(request.getParameterMap());
+        DatasetConfig ds = createDatasetConfig(params);
+        String id = ds.getId();
+        String location = ds.getLocation();
 
         /*
          * Perform simple sanity checks to see whether this dataset is likely to
@@ -728,13 +892,10 @@ public class NcwmsAdminServlet extends HttpServlet {
             datasetOK = false;
             message = "Dataset with ID " + id + " already exists";
         }
-        try {
-            if (!dataReader.isEmpty()) {
-                Class.forName(dataReader);
-            }
-        } catch (ClassNotFoundException e) {
+        String readerError = checkDataReader(ds.getDataReaderClass());
+        if (readerError != null) {
             datasetOK = false;
-            message = "Data reading class: " + dataReader + " is not available";
+            message = readerError;
         }
 
         /*
@@ -743,27 +904,10 @@ public class NcwmsAdminServlet extends HttpServlet {
         response.setContentType("text/plain");
         try (BufferedWriter w = new BufferedWriter(response.getWriter())) {
             if (datasetOK) {
-                /*
-                 * Configure the dataset
-                 */
-                DatasetConfig ds = new DatasetConfig();
-                ds.setId(id);
-                ds.setTitle(title);
-                ds.setLocation(location);
-                ds.setDataReaderClass(dataReader);
-                ds.setQueryable(queryable);
-                ds.setDownloadable(downloadable);
-                ds.setUpdateInterval(autoRefreshMinutes);
-                ds.setMoreInfo(moreInfo);
-                ds.setCopyrightStatement(copyright);
-                /*
-                 * addDataset() contains code to ensure that the dataset loads
-                 * its metadata at the next opportunity
-                 */
-                catalogue.getConfig().addDataset(ds);
+                catalogue.addConfiguredDataset(ds);
 
                 try {
-                    catalogue.getConfig().save();
+                    catalogue.getConfig().saveAddedDataset(ds);
                 } catch (IOException e) {
                     log.error("Problem writing config to file", e);
                 }
@@ -796,7 +940,7 @@ public class NcwmsAdminServlet extends HttpServlet {
 
         boolean saved = false;
         try {
-            catalogue.getConfig().save();
+            catalogue.getConfig().saveRemovedDataset(id);
             saved = true;
         } catch (IOException e) {
             log.error("Problem writing config", e);
@@ -822,4 +966,203 @@ public class NcwmsAdminServlet extends HttpServlet {
         }
     }
 
+    private void addDatasets(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        List<Map<String, String>> definitions;
+        try {
+            definitions = DatasetImportParser.parse(request.getContentType(), request.getReader());
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        /*
+         * Validate everything before changing the config. Each data reading
+         * class is only checked once, however many datasets use it.
+         */
+        Map<String, String> readerErrors = new HashMap<>();
+        Set<String> batchIds = new HashSet<>();
+        List<DatasetConfig> accepted = new ArrayList<>();
+        Map<String, String> rejected = new LinkedHashMap<>();
+        for (int i = 0; i < definitions.size(); i++) {
+            Map<String, String[]> paramMap = new HashMap<>();
+            for (Entry<String, String> param : definitions.get(i).entrySet()) {
+                paramMap.put(param.getKey(), new String[] { param.getValue() });
+            }
+            String label = (i + 1) + (definitions.get(i).containsKey("id")
+                    ? " (" + definitions.get(i).get("id") + ")" : "");
+            DatasetConfig ds;
+            try {
+                ds = createDatasetConfig(new RequestParams(paramMap));
+            } catch (RuntimeException e) {
+                rejected.put(label, e.getMessage());
+                continue;
+            }
+            if (catalogue.getDatasetInfo(ds.getId()) != null || !batchIds.add(ds.getId())) {
+                rejected.put(label, "Dataset with ID " + ds.getId() + " already exists");
+                continue;
+            }
+            String dataReader = ds.getDataReaderClass();
+            if (!readerErrors.containsKey(dataReader)) {
+                readerErrors.put(dataReader, checkDataReader(dataReader));
+            }
+            if (readerErrors.get(dataReader) != null) {
+                rejected.put(label, readerErrors.get(dataReader));
+                continue;
+            }
+            accepted.add(ds);
+        }
+
+        /*
+         * Add the valid datasets and write the config once
+         */
+        for (DatasetConfig ds : accepted) {
+            catalogue.addConfiguredDataset(ds);
+        }
+        boolean saved = true;
+        if (!accepted.isEmpty()) {
+            try {
+                catalogue.getConfig().save();
+            } catch (IOException e) {
+                log.error("Problem writing config", e);
+                saved = false;
+            }
+        }
+
+        DatasetImportJob job = new DatasetImportJob(UUID.randomUUID().toString(),
+                definitions.size(), accepted, rejected);
+        synchronized (importJobs) {
+            importJobs.put(job.getId(), job);
+        }
+        log.info("Bulk import " + job.getId() + ": " + accepted.size() + " of "
+                + definitions.size() + " datasets added");
+
+        JSONObject status = job.toJson(catalogue.getConfig());
+        status.put("statusUrl", request.getRequestURL().toString().replaceAll("addDatasets",
+                "importStatus") + "?job=" + job.getId());
+        if (!saved) {
+            status.put("warning", "There was a problem saving the config file to disk");
+        }
+        response.setStatus(accepted.isEmpty() ? HttpServletResponse.SC_BAD_REQUEST
+                : HttpServletResponse.SC_ACCEPTED);
+        response.setContentType("application/json");
+        response.getWriter().write(status.toString());
+    }
+
+    private void displayImportStatus(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        RequestParams params = new RequestParams(request.getParameterMap());
+        String jobId = params.getMandatoryString("job");
+        DatasetImportJob job;
+        synchronized (importJobs) {
+            job = importJobs.get(jobId);
+        }
+        if (job == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No import job with ID " + jobId);
+            return;
+        }
+
+        if (!params.getBoolean("stream", false)) {
+            response.setContentType("application/json");
+            response.getWriter().write(job.toJson(catalogue.getConfig()).toString());
+            return;
+        }
+
+        /*
+         * Stream one line of JSON per interval until the job is complete, or
+         * the client goes away
+         */
+        response.setContentType("application/x-ndjson");
+        PrintWriter writer = response.getWriter();
+        long end = System.currentTimeMillis() + MAX_STREAM_MILLIS;
+        while (true) {
+            writer.println(job.toJson(catalogue.getConfig()).toString());
+            writer.flush();
+            if (writer.checkError() || job.isComplete(catalogue.getConfig())
+                    || System.currentTimeMillis() > end) {
+                break;
+            }
+            try {
+                Thread.sleep(STREAM_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Starts a job which renders tiles into the rendered image cache. The
+     * parameters are described in {@link TileSeedRequest#parse(RequestParams)}
+     */
+    private void seedTiles(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        TileSeeder seeder = catalogue.getTileSeeder();
+        if (seeder == null || !seeder.isImageCacheEnabled()) {
+            response.sendError(HttpServletResponse.SC_CONFLICT,
+                    "Tiles can only be seeded when the rendered image cache is enabled");
+            return;
+        }
+        TileSeedJob job;
+        try {
+            job = seeder.start(TileSeedRequest.parse(new RequestParams(request.getParameterMap())),
+                    seeder.imageCacheSink());
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        log.info("Started tile seeding job " + job.getId() + ": " + job.getDescription());
+
+        JSONObject status = job.toJson();
+        status.put("statusUrl", request.getRequestURL().toString().replaceAll("seedTiles",
+                "seedStatus") + "?job=" + job.getId());
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        response.setContentType("application/json");
+        response.getWriter().write(status.toString());
+    }
+
+    /**
+     * Reports the progress of a tile seeding job, or of all known jobs if
+     * none is specified
+     */
+    private void displaySeedStatus(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        TileSeeder seeder = catalogue.getTileSeeder();
+        String jobId = new RequestParams(request.getParameterMap()).getString("job");
+        if (jobId == null) {
+            JSONArray jobs = new JSONArray();
+            if (seeder != null) {
+                for (TileSeedJob job : seeder.getJobs()) {
+                    jobs.put(job.toJson());
+                }
+            }
+            response.setContentType("application/json");
+            response.getWriter().write(jobs.toString());
+            return;
+        }
+        TileSeedJob job = seeder == null ? null : seeder.getJob(jobId);
+        if (job == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No seeding job with ID "
+                    + jobId);
+            return;
+        }
+        response.setContentType("application/json");
+        response.getWriter().write(job.toJson().toString());
+    }
+
+    private void cancelSeed(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        TileSeeder seeder = catalogue.getTileSeeder();
+        String jobId = new RequestParams(request.getParameterMap()).getMandatoryString("job");
+        TileSeedJob job = seeder == null ? null : seeder.getJob(jobId);
+        if (job == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No seeding job with ID "
+                    + jobId);
+            return;
+        }
+        job.cancel();
+        log.info("Cancelled tile seeding job " + jobId);
+        response.setContentType("application/json");
+        response.getWriter().write(job.toJson().toString());
+    }
 }
@@ -97,6 +97,17 @@ public class NcwmsApiServlet extends HttpServlet {
         datasetInfo.put("title", dataset.getTitle());
         datasetInfo.put("lastUpdate", dataset.getLastUpdateTime());
         datasetInfo.put("status", decodeState(dataset));
+        /*
+         * Only included when the dataset has been queued for loading
+         */
+        Integer queuePosition = catalogue.getDatasetQueuePosition(datasetId);
+        if (queuePosition != null && queuePosition > 0) {
+            datasetInfo.put("queuePosition", queuePosition);
+        }
+        Long loadDuration = catalogue.getDatasetLoadDuration(datasetId);
+        if (loadDuration != null && loadDuration > 0) {
+            datasetInfo.put("loadDurationMillis", loadDuration);
+        }
         JSONArray variables = new JSONArray();
         for (VariableConfig variable : dataset.getVariables()){
             JSONObject var = new JSONObject();
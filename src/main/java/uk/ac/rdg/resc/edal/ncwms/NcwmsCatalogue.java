@@ -28,17 +28,36 @@
 
 package uk.ac.rdg.resc.edal.ncwms;
 
+import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.PersistenceConfiguration;
+import net.sf.ehcache.event.CacheEventListener;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import uk.ac.rdg.resc.edal.cache.EdalCache;
 import uk.ac.rdg.resc.edal.catalogue.DataCatalogue;
 import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig.DatasetState;
 import uk.ac.rdg.resc.edal.catalogue.jaxb.VariableConfig;
 import uk.ac.rdg.resc.edal.dataset.Dataset;
 import uk.ac.rdg.resc.edal.dataset.DatasetFactory;
@@ -52,9 +71,11 @@ import uk.ac.rdg.resc.edal.graphics.utils.SimpleLayerNameMapper;
 import uk.ac.rdg.resc.edal.graphics.utils.SldTemplateStyleCatalogue;
 import uk.ac.rdg.resc.edal.graphics.utils.StyleCatalogue;
 import uk.ac.rdg.resc.edal.metadata.VariableMetadata;
+import uk.ac.rdg.resc.edal.ncwms.config.DynamicServiceIndex;
 import uk.ac.rdg.resc.edal.ncwms.config.NcwmsConfig;
 import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDynamicCacheInfo;
 import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDynamicService;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsImageCacheInfo;
 import uk.ac.rdg.resc.edal.ncwms.config.NcwmsSupportedCrsCodes;
 import uk.ac.rdg.resc.edal.wms.WmsCatalogue;
 import uk.ac.rdg.resc.edal.wms.util.ContactInfo;
@@ -67,14 +88,134 @@ import uk.ac.rdg.resc.edal.wms.util.ServerInfo;
  * @author Guy Griffiths
  */
 public class NcwmsCatalogue extends DataCatalogue implements WmsCatalogue {
+    private static final Logger log = LoggerFactory.getLogger(NcwmsCatalogue.class);
+
     private StyleCatalogue styleCatalogue;
 
-    private static final String CACHE_NAME = "dynamicDatasetCache";
+    static final String CACHE_NAME = "dynamicDatasetCache";
+    private static final String SNAPSHOT_DIR = "snapshots";
+    private static final long SNAPSHOT_LOAD_CHECK_MS = 1000L;
+    private static final String FAILED_CACHE_NAME = "failedDynamicDatasetCache";
     private static final MemoryStoreEvictionPolicy EVICTION_POLICY = MemoryStoreEvictionPolicy.LFU;
     private static final PersistenceConfiguration.Strategy PERSISTENCE_STRATEGY = PersistenceConfiguration.Strategy.NONE;
     private static final CacheConfiguration.TransactionalMode TRANSACTIONAL_MODE = CacheConfiguration.TransactionalMode.OFF;
-    private Cache dynamicDatasetCache;
-    private boolean dynamicCacheEnabled = true;
+    private static final int MAX_CACHED_LAYER_SERVICES = 1000;
+    private static final int CONFIG_CHECK_INTERVAL_SECONDS = 10;
+    private volatile Cache dynamicDatasetCache;
+    private volatile boolean dynamicCacheEnabled = true;
+    /*
+     * Stores the reasons that dynamic datasets could not be loaded, so that
+     * repeated requests for them fail fast
+     */
+    private volatile Cache failedDatasetCache;
+    /*
+     * Tracks the estimated size of the dynamic datasets, and the maximum
+     * total size (or 0 if the cache is limited by number of datasets)
+     */
+    private volatile DynamicDatasetWeigher dynamicDatasetWeigher;
+    private volatile long dynamicCacheMaxBytes = 0L;
+    /*
+     * Releases dynamic datasets when they leave the cache, and limits how many
+     * can be open at once (0 for no limit)
+     */
+    private volatile DynamicDatasetPool dynamicDatasetPool;
+    private volatile int maxOpenDynamicDatasets = 0;
+    /*
+     * Detects changes to the files behind dynamic datasets. A negative
+     * interval means that changes are not checked for.
+     */
+    private volatile DynamicDatasetValidator dynamicDatasetValidator;
+    private volatile long changeCheckIntervalMillis = -1L;
+
+    /*
+     * Stores snapshots of the configured datasets (null if disabled). These are
+     * written in the background, after each dataset has loaded.
+     */
+    private DatasetSnapshotStore snapshotStore = null;
+    private ExecutorService snapshotWriter = null;
+
+    /*
+     * Loads the configured datasets, limiting the number which load at once
+     * (null if there is no limit, in which case the superclass loads them)
+     */
+    private DatasetLoadScheduler loadScheduler = null;
+    /*
+     * Default metadata for the variables of datasets loaded by the
+     * loadScheduler which have no configuration of their own, keyed by layer
+     * name
+     */
+    private final Map<String, EnhancedVariableMetadata> defaultLayerMetadata = new ConcurrentHashMap<>();
+    /*
+     * Holds datasets which are configured to only be loaded on first access.
+     * These are not known to the superclass, so getAllDatasets() adds them.
+     */
+    private LazyDatasetStore lazyDatasets = null;
+    /*
+     * Snapshots of lazy datasets, which describe them whilst they are not
+     * loaded, keyed by dataset ID
+     */
+    private final Map<String, Dataset> lazySnapshots = new ConcurrentHashMap<>();
+    /*
+     * Provides the source datasets of restored snapshots
+     */
+    private final DatasetSnapshotStore.SourceDatasets sourceDatasets = new DatasetSnapshotStore.SourceDatasets() {
+        @Override
+        public Dataset getSourceDataset(String datasetId) {
+            return awaitSourceDataset(datasetId);
+        }
+    };
+    /*
+     * Applies external changes to the config file
+     */
+    private ConfigFileWatcher configWatcher = null;
+    /*
+     * Holds rendered map images
+     */
+    private RenderedImageCache renderedImageCache = null;
+    /*
+     * Limits the number of requests of each type processed at once
+     */
+    private final AdmissionControl admissionControl = new AdmissionControl();
+    /*
+     * Sets the deadlines of requests, and counts those which are cancelled
+     */
+    private final RequestDeadlines requestDeadlines = new RequestDeadlines();
+    /*
+     * Process requests away from the servlet container's threads
+     */
+    private RequestExecutors requestExecutors = null;
+    /*
+     * Seeds tiles of datasets which are configured for it (null until the
+     * WMS servlet has started)
+     */
+    private volatile TileSeeder tileSeeder = null;
+    /*
+     * Incremented whenever the set of loaded datasets or their configuration
+     * changes, so that documents describing the catalogue (e.g. capabilities)
+     * can tell when they need rebuilding
+     */
+    private final AtomicLong catalogueVersion = new AtomicLong(0L);
+    /*
+     * A hash of the state of every configured dataset when the catalogue
+     * version was last read. Datasets can change state (e.g. when they fail to
+     * load) inside EDAL, where we are not told about it.
+     */
+    private final AtomicLong datasetStates = new AtomicLong(0L);
+    /*
+     * The time at which the configuration last changed in a way which may
+     * affect the responses to any request (e.g. styles or palettes)
+     */
+    private volatile long configChangeTime = System.currentTimeMillis();
+    /*
+     * Ensures that concurrent requests for the same dynamic dataset only load it
+     * once
+     */
+    private final SingleFlight<String, Dataset> dynamicDatasetLoads = new SingleFlight<>();
+    /*
+     * The dynamic service and metadata of each layer of a dynamic dataset,
+     * resolved from the current dynamic service index
+     */
+    private volatile DynamicLayerCache dynamicLayers = null;
 
     public NcwmsCatalogue() {
         super();
@@ -83,29 +224,647 @@ public class NcwmsCatalogue extends DataCatalogue implements WmsCatalogue {
     public NcwmsCatalogue(NcwmsConfig config) throws IOException {
         super(config, new SimpleLayerNameMapper());
         this.styleCatalogue = SldTemplateStyleCatalogue.getStyleCatalogue();
+        if (config.getConfigFile() != null && config.getConfigFile().exists()) {
+            /*
+             * So that responses are still seen as unchanged after a restart
+             */
+            configChangeTime = config.getConfigFile().lastModified();
+        }
 
-        dynamicCacheEnabled = config.getDynamicCacheInfo().isEnabled();
+        NcwmsDynamicCacheInfo cacheInfo = config.getDynamicCacheInfo();
+        dynamicCacheEnabled = cacheInfo.isEnabled();
 
         if (dynamicCacheEnabled) {
             if (EdalCache.cacheManager.cacheExists(CACHE_NAME) == false) {
-                NcwmsDynamicCacheInfo cacheInfo = config.getDynamicCacheInfo();
                 /*
                  * Configure cache
                  */
-                CacheConfiguration cacheConfig = new CacheConfiguration(CACHE_NAME, cacheInfo.getNumberOfDatasets())
-                        .memoryStoreEvictionPolicy(EVICTION_POLICY)
-                        .persistence(new PersistenceConfiguration().strategy(PERSISTENCE_STRATEGY))
-                        .transactionalMode(TRANSACTIONAL_MODE);
-                if (cacheInfo.getElementLifetimeMinutes() > 0) {
-                    cacheConfig.setTimeToLiveSeconds((long) (cacheInfo.getElementLifetimeMinutes() * 60));
-                } else {
-                    cacheConfig.eternal(true);
-                }
-                dynamicDatasetCache = new Cache(cacheConfig);
-                EdalCache.cacheManager.addCache(dynamicDatasetCache);
+                dynamicDatasetCache = createCache(CACHE_NAME, getMaxDynamicDatasets(cacheInfo),
+                        cacheInfo.getElementLifetimeMinutes());
             } else {
                 dynamicDatasetCache = EdalCache.cacheManager.getCache(CACHE_NAME);
             }
+            dynamicDatasetWeigher = registerListener(dynamicDatasetCache, new DynamicDatasetWeigher());
+            dynamicDatasetPool = registerListener(dynamicDatasetCache, new DynamicDatasetPool());
+            dynamicCacheMaxBytes = getMaxDynamicCacheBytes(cacheInfo);
+            maxOpenDynamicDatasets = cacheInfo.getMaxOpenDatasets();
+            dynamicDatasetValidator = registerListener(dynamicDatasetCache, new DynamicDatasetValidator());
+            changeCheckIntervalMillis = getChangeCheckIntervalMillis(cacheInfo);
+        }
+
+        if (cacheInfo.getFailedDatasetCacheSize() > 0) {
+            if (EdalCache.cacheManager.cacheExists(FAILED_CACHE_NAME) == false) {
+                failedDatasetCache = createCache(FAILED_CACHE_NAME, cacheInfo.getFailedDatasetCacheSize(),
+                        cacheInfo.getFailedDatasetLifetimeMinutes());
+            } else {
+                failedDatasetCache = EdalCache.cacheManager.getCache(FAILED_CACHE_NAME);
+            }
+        }
+
+        if (config.isLoadingManaged()) {
+            /*
+             * The config has left loading the datasets to us
+             */
+            loadScheduler = new DatasetLoadScheduler(config, new DatasetLoadScheduler.DatasetLoader() {
+                @Override
+                public void load(DatasetConfig datasetConfig) throws Exception {
+                    loadConfiguredDataset(datasetConfig);
+                }
+            }, getLoadingThreadLimit());
+            loadScheduler.start();
+        }
+
+        lazyDatasets = new LazyDatasetStore(config.getLoadingInfo().getLazyIdleMinutes(),
+                new LazyDatasetStore.LoadListener() {
+                    @Override
+                    public void datasetLoaded(DatasetConfig datasetConfig, Dataset dataset) {
+                        lazyDatasetLoaded(datasetConfig, dataset);
+                    }
+                });
+        renderedImageCache = new RenderedImageCache(config.getImageCacheInfo());
+        admissionControl.configure(config.getServerInfo().getRequestLimits());
+        requestDeadlines.configure(config.getServerInfo().getRequestDeadlines());
+        requestExecutors = new RequestExecutors(config.getProcessingInfo());
+
+        File configDir = config.getConfigDirectory();
+        if (config.getLoadingInfo().isSnapshotsEnabled() && configDir != null) {
+            snapshotStore = new DatasetSnapshotStore(new File(configDir, SNAPSHOT_DIR));
+            snapshotWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ncwms-snapshot-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            /*
+             * Reading the snapshots takes a while for large catalogues, so
+             * don't hold up startup with it
+             */
+            snapshotWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    restoreSnapshots();
+                }
+            });
+        }
+
+        if (config.getConfigFile() != null && config.getConfigFile().exists()) {
+            configWatcher = new ConfigFileWatcher(this, CONFIG_CHECK_INTERVAL_SECONDS);
+        }
+    }
+
+    /**
+     * Makes datasets available from their snapshots, if they have not already
+     * been loaded. They will still be loaded from their source as usual, which
+     * will replace the snapshot once complete.
+     */
+    private void restoreSnapshots() {
+        int nRestored = 0;
+        for (DatasetConfig datasetConfig : config.getDatasets()) {
+            if (datasetConfig.isDisabled()) {
+                continue;
+            }
+            Dataset dataset = snapshotStore.read(datasetConfig.getId(),
+                    datasetConfig.getLocation(), sourceDatasets);
+            if (dataset != null && isLazyDataset(datasetConfig.getId())) {
+                /*
+                 * Only used to describe the dataset until it is loaded
+                 */
+                lazySnapshots.put(datasetConfig.getId(), dataset);
+                nRestored++;
+            } else if (dataset != null) {
+                synchronized (this) {
+                    if (super.getDatasetFromId(datasetConfig.getId()) == null) {
+                        super.datasetLoaded(dataset, Arrays.asList(datasetConfig.getVariables()));
+                        nRestored++;
+                    }
+                }
+            }
+        }
+        if (nRestored > 0) {
+            catalogueVersion.incrementAndGet();
+        }
+        log.info("Restored " + nRestored + " datasets from snapshots");
+    }
+
+    /**
+     * Waits for a dataset which was restored from a snapshot to be loaded from
+     * its source.
+     *
+     * @param datasetId
+     *            The ID of the dataset
+     * @return The loaded {@link Dataset}
+     * @throws IllegalStateException
+     *             If the dataset fails to load or is removed
+     */
+    private Dataset awaitSourceDataset(String datasetId) {
+        if (isLazyDataset(datasetId)) {
+            /*
+             * These are only loaded when needed, which is now
+             */
+            DatasetConfig datasetConfig = config.getDatasetInfo(datasetId);
+            Dataset dataset = datasetConfig == null ? null : lazyDatasets.get(datasetConfig);
+            if (dataset == null) {
+                throw new IllegalStateException("Dataset " + datasetId
+                        + " could not be loaded from its source");
+            }
+            return dataset;
+        }
+        synchronized (this) {
+            return awaitLoadedDataset(datasetId);
+        }
+    }
+
+    /**
+     * Must be called whilst synchronized on this catalogue
+     */
+    private Dataset awaitLoadedDataset(String datasetId) {
+        while (true) {
+            CancellationToken.checkCurrent();
+            Dataset dataset = super.getDatasetFromId(datasetId);
+            if (dataset != null && !DatasetSnapshotStore.isSnapshot(dataset)) {
+                return dataset;
+            }
+            DatasetConfig datasetConfig = config.getDatasetInfo(datasetId);
+            if (dataset == null || datasetConfig == null
+                    || datasetConfig.getState() == DatasetState.ERROR) {
+                throw new IllegalStateException("Dataset " + datasetId
+                        + " could not be loaded from its source");
+            }
+            try {
+                /*
+                 * Woken by datasetLoaded(), but check periodically for
+                 * failures and cancellation
+                 */
+                wait(SNAPSHOT_LOAD_CHECK_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted whilst waiting for " + datasetId);
+            }
+        }
+    }
+
+    /**
+     * Loads a configured dataset from its source, replacing any previous
+     * version of it
+     *
+     * @param datasetConfig
+     *            The {@link DatasetConfig} of the dataset
+     * @throws Exception
+     *             If the data reader cannot be created or the dataset cannot
+     *             be read
+     */
+    private void loadConfiguredDataset(DatasetConfig datasetConfig) throws Exception {
+        DatasetFactory factory = DatasetFactory.forName(datasetConfig.getDataReaderClass());
+        Dataset dataset = factory.createDataset(datasetConfig.getId(), datasetConfig.getLocation());
+        datasetLoaded(dataset, Arrays.asList(datasetConfig.getVariables()));
+    }
+
+    @Override
+    public void datasetLoaded(final Dataset dataset, Collection<VariableConfig> variables) {
+        synchronized (this) {
+            super.datasetLoaded(dataset, variables);
+            notifyAll();
+        }
+        catalogueVersion.incrementAndGet();
+        writeSnapshot(dataset, false);
+        TileSeeder seeder = tileSeeder;
+        if (seeder != null && config.getDatasetInfo(dataset.getId()) != null) {
+            seeder.seedDataset(dataset.getId());
+        }
+    }
+
+    /**
+     * Called when a lazy dataset has been loaded from its source
+     */
+    private void lazyDatasetLoaded(DatasetConfig datasetConfig, Dataset dataset) {
+        /*
+         * It may not have been listed in capabilities documents before
+         */
+        catalogueVersion.incrementAndGet();
+        writeSnapshot(dataset, true);
+    }
+
+    /**
+     * Replaces the snapshot of a configured dataset in the background, if
+     * snapshots are enabled
+     *
+     * @param dataset
+     *            The {@link Dataset} which has been loaded
+     * @param lazy
+     *            Whether this is a lazy dataset, in which case the new snapshot
+     *            is used to describe it once it has been unloaded
+     */
+    private void writeSnapshot(final Dataset dataset, final boolean lazy) {
+        final DatasetSnapshotStore store = snapshotStore;
+        final DatasetConfig datasetConfig = config.getDatasetInfo(dataset.getId());
+        if (store == null || datasetConfig == null) {
+            return;
+        }
+        snapshotWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                String location = datasetConfig.getLocation();
+                boolean written = store.write(dataset, location);
+                if (lazy) {
+                    Dataset snapshot = written ? store.read(dataset.getId(), location,
+                            sourceDatasets) : null;
+                    if (snapshot == null) {
+                        lazySnapshots.remove(dataset.getId());
+                    } else {
+                        lazySnapshots.put(dataset.getId(), snapshot);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @param datasetId
+     *            The ID of a configured dataset
+     * @return Whether the dataset is only loaded when it is first requested.
+     *         This is only possible when the catalogue loads the datasets
+     *         itself.
+     */
+    boolean isLazyDataset(String datasetId) {
+        return loadScheduler != null && getConfig().isLazy(datasetId);
+    }
+
+    /**
+     * @return The maximum number of configured datasets to load at once
+     */
+    private int getLoadingThreadLimit() {
+        int loadingThreads = getConfig().getLoadingInfo().getLoadingThreads();
+        return loadingThreads > 0 ? loadingThreads : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Lists all of the configured datasets which can currently be described.
+     * As well as those known to the superclass, this includes lazy datasets
+     * which are loaded, or which can be described from a snapshot.
+     */
+    @Override
+    public Collection<Dataset> getAllDatasets() {
+        Collection<Dataset> datasets = super.getAllDatasets();
+        if (lazyDatasets == null || loadScheduler == null) {
+            return datasets;
+        }
+        Map<String, Dataset> lazy = new LinkedHashMap<>(lazySnapshots);
+        for (Dataset dataset : lazyDatasets.getLoadedDatasets()) {
+            lazy.put(dataset.getId(), dataset);
+        }
+        if (lazy.isEmpty()) {
+            return datasets;
+        }
+        List<Dataset> allDatasets = new ArrayList<>(datasets);
+        for (Dataset dataset : lazy.values()) {
+            DatasetConfig datasetConfig = config.getDatasetInfo(dataset.getId());
+            if (datasetConfig != null && !datasetConfig.isDisabled()) {
+                allDatasets.add(dataset);
+            }
+        }
+        return allDatasets;
+    }
+
+    @Override
+    public void removeDataset(String id) {
+        synchronized (this) {
+            super.removeDataset(id);
+            notifyAll();
+        }
+        DatasetConfig datasetConfig = config.getDatasetInfo(id);
+        if (lazyDatasets != null && datasetConfig != null) {
+            lazyDatasets.unload(datasetConfig);
+        }
+        lazySnapshots.remove(id);
+        catalogueVersion.incrementAndGet();
+        DatasetSnapshotStore store = snapshotStore;
+        if (store != null) {
+            store.remove(id);
+        }
+    }
+
+    /**
+     * @return A number which changes whenever a dataset is loaded or removed,
+     *         changes state (e.g. fails to load, is disabled or is waiting to
+     *         be refreshed), or the configuration is changed
+     */
+    public long getCatalogueVersion() {
+        long states = hashDatasetStates();
+        long previous = datasetStates.get();
+        if (states != previous && datasetStates.compareAndSet(previous, states)) {
+            catalogueVersion.incrementAndGet();
+        }
+        return catalogueVersion.get();
+    }
+
+    private long hashDatasetStates() {
+        long hash = 17L;
+        for (DatasetConfig datasetConfig : config.getDatasets()) {
+            DatasetState state = datasetConfig.getState();
+            hash = 31L * hash + datasetConfig.getId().hashCode();
+            hash = 31L * hash + (state == null ? -1 : state.ordinal());
+            hash = 31L * hash + (datasetConfig.isDisabled() ? 1 : 0);
+        }
+        return hash;
+    }
+
+    /**
+     * Records that the configuration has changed in a way which may affect
+     * documents describing the catalogue
+     */
+    public void configChanged() {
+        catalogueVersion.incrementAndGet();
+        configChangeTime = System.currentTimeMillis();
+        admissionControl.configure(getConfig().getServerInfo().getRequestLimits());
+        requestDeadlines.configure(getConfig().getServerInfo().getRequestDeadlines());
+        if (loadScheduler != null) {
+            loadScheduler.setThreads(getLoadingThreadLimit());
+            /*
+             * Datasets which are no longer lazy are loaded by the scheduler
+             */
+            for (Dataset dataset : lazyDatasets.getLoadedDatasets()) {
+                DatasetConfig datasetConfig = config.getDatasetInfo(dataset.getId());
+                if (datasetConfig != null && !isLazyDataset(dataset.getId())) {
+                    lazyDatasets.unload(datasetConfig);
+                    lazySnapshots.remove(dataset.getId());
+                }
+            }
+        }
+        /*
+         * Dataset settings may have changed
+         */
+        defaultLayerMetadata.clear();
+        /*
+         * Changes to styles, palettes etc. may affect any image
+         */
+        if (renderedImageCache != null) {
+            renderedImageCache.clear();
+        }
+    }
+
+    /**
+     * @return The cache of rendered map images, or <code>null</code> if this
+     *         catalogue was not created from a config
+     */
+    RenderedImageCache getRenderedImageCache() {
+        return renderedImageCache;
+    }
+
+    /**
+     * @return The limits on the number of requests of each type processed at
+     *         once
+     */
+    AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    /**
+     * @return The executors which process requests, or <code>null</code> if
+     *         this catalogue was not created from a config
+     */
+    RequestExecutors getRequestExecutors() {
+        return requestExecutors;
+    }
+
+    /**
+     * @return The deadlines of requests of each type
+     */
+    RequestDeadlines getRequestDeadlines() {
+        return requestDeadlines;
+    }
+
+    /**
+     * @return The time at which the configuration was last changed, in
+     *         milliseconds since the epoch
+     */
+    public long getConfigChangeTime() {
+        return configChangeTime;
+    }
+
+    /**
+     * @return The tile seeder, or <code>null</code> if there is none
+     */
+    TileSeeder getTileSeeder() {
+        return tileSeeder;
+    }
+
+    /**
+     * @param tileSeeder
+     *            Used to seed tiles of configured datasets whenever they are
+     *            loaded
+     */
+    void setTileSeeder(TileSeeder tileSeeder) {
+        this.tileSeeder = tileSeeder;
+        /*
+         * Datasets may have loaded before the seeder was available
+         */
+        for (DatasetConfig datasetConfig : config.getDatasets()) {
+            if (datasetConfig.getState() == DatasetState.READY) {
+                tileSeeder.seedDataset(datasetConfig.getId());
+            }
+        }
+    }
+
+    /**
+     * Applies new settings to the cache of rendered map images
+     *
+     * @param cacheInfo
+     *            The new settings
+     */
+    public void updateRenderedImageCache(NcwmsImageCacheInfo cacheInfo) {
+        if (renderedImageCache != null) {
+            renderedImageCache.update(cacheInfo);
+        }
+    }
+
+    /**
+     * Gets a value which changes whenever the data of a dataset may have
+     * changed. For configured datasets (whether loaded at startup or lazily)
+     * this is the time of their last successful update, and for dynamic
+     * datasets it is the time at which they were put in the dynamic dataset
+     * cache.
+     *
+     * @param datasetId
+     *            The ID of the dataset
+     * @return The version of the dataset, or <code>null</code> if it is not
+     *         currently loaded
+     */
+    public Long getDatasetVersion(String datasetId) {
+        DatasetConfig datasetInfo = getDatasetConfig(datasetId);
+        if (datasetInfo != null) {
+            if (datasetInfo.getLastUpdateTime() == null
+                    || (isLazyDataset(datasetId) && !isLazyDatasetLoaded(datasetId))) {
+                return null;
+            }
+            return datasetInfo.getLastUpdateTime().getMillis();
+        }
+        Cache cache = dynamicDatasetCache;
+        if (cache != null) {
+            /*
+             * getQuiet() so that we don't affect the statistics
+             */
+            Element element = cache.getQuiet(datasetId);
+            if (element != null && element.getObjectValue() != null) {
+                return element.getCreationTime();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a new dataset to the config and starts loading it once. If the
+     * config loads datasets itself, adding it is enough. Otherwise the config
+     * leaves the dataset waiting for a refresh, and it is queued with the
+     * other datasets we load, unless it is lazy.
+     *
+     * @param dataset
+     *            The {@link DatasetConfig} of the new dataset
+     */
+    public void addConfiguredDataset(DatasetConfig dataset) {
+        getConfig().addDataset(dataset);
+        if (loadScheduler != null && !isLazyDataset(dataset.getId())) {
+            loadScheduler.schedule(dataset);
+        }
+    }
+
+    /**
+     * Requests that a dataset is refreshed. If the number of datasets loading
+     * at once is limited, this is queued according to the dataset's priority.
+     * Lazy datasets are unloaded, so that they are loaded again when they are
+     * next requested.
+     *
+     * @param dataset
+     *            The {@link DatasetConfig} of the dataset to refresh
+     */
+    public void refreshDataset(DatasetConfig dataset) {
+        if (loadScheduler == null) {
+            dataset.forceRefresh();
+        } else if (isLazyDataset(dataset.getId())) {
+            lazyDatasets.unload(dataset);
+        } else {
+            loadScheduler.schedule(dataset);
+        }
+    }
+
+    /**
+     * @param datasetId
+     *            The ID of a configured dataset
+     * @return The position of the dataset in the queue of datasets waiting to
+     *         be refreshed (starting at 1), or <code>null</code> if it is not
+     *         waiting
+     */
+    public Integer getDatasetQueuePosition(String datasetId) {
+        return loadScheduler == null ? null : loadScheduler.getQueuePosition(datasetId);
+    }
+
+    /**
+     * @param datasetId
+     *            The ID of a configured dataset
+     * @return The time taken to refresh the dataset the last time it was
+     *         queued, in milliseconds, or <code>null</code> if this is not
+     *         known
+     */
+    public Long getDatasetLoadDuration(String datasetId) {
+        return loadScheduler == null ? null : loadScheduler.getLastLoadDuration(datasetId);
+    }
+
+    /**
+     * Stops any background tasks started by this catalogue
+     */
+    public void shutdown() {
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdown();
+        }
+        if (loadScheduler != null) {
+            loadScheduler.shutdown();
+        }
+        if (lazyDatasets != null) {
+            lazyDatasets.shutdown();
+        }
+        if (configWatcher != null) {
+            configWatcher.shutdown();
+        }
+        if (requestExecutors != null) {
+            requestExecutors.shutdown();
+        }
+    }
+
+    /**
+     * @param datasetId
+     *            The ID of a lazily-loaded dataset
+     * @return Whether the dataset is currently loaded
+     */
+    public boolean isLazyDatasetLoaded(String datasetId) {
+        return lazyDatasets != null && lazyDatasets.isLoaded(datasetId);
+    }
+
+    /**
+     * Creates a new in-memory cache and registers it with the
+     * {@link EdalCache#cacheManager}
+     *
+     * @param name
+     *            The name of the cache
+     * @param maxEntries
+     *            The maximum number of elements to hold
+     * @param lifetimeMinutes
+     *            The lifetime of each element. Zero or less means that elements
+     *            never expire
+     * @return The new {@link Cache}
+     */
+    private static Cache createCache(String name, int maxEntries, float lifetimeMinutes) {
+        CacheConfiguration cacheConfig = new CacheConfiguration(name, maxEntries)
+                .memoryStoreEvictionPolicy(EVICTION_POLICY)
+                .persistence(new PersistenceConfiguration().strategy(PERSISTENCE_STRATEGY))
+                .transactionalMode(TRANSACTIONAL_MODE);
+        setLifetime(cacheConfig, lifetimeMinutes);
+        Cache cache = new Cache(cacheConfig);
+        EdalCache.cacheManager.addCache(cache);
+        return cache;
+    }
+
+    /**
+     * Registers a listener on the given cache, unless one of the same type is
+     * already registered. The cache may outlive this catalogue, so we need to
+     * reuse any existing listener.
+     *
+     * @return The listener which is registered on the cache
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends CacheEventListener> T registerListener(Cache cache, T listener) {
+        synchronized (cache) {
+            for (CacheEventListener existing : cache.getCacheEventNotificationService()
+                    .getCacheEventListeners()) {
+                if (existing.getClass() == listener.getClass()) {
+                    return (T) existing;
+                }
+            }
+            cache.getCacheEventNotificationService().registerListener(listener);
+            return listener;
+        }
+    }
+
+    private static int getMaxDynamicDatasets(NcwmsDynamicCacheInfo cacheInfo) {
+        /*
+         * When limited by size, there is no limit on the number of datasets
+         */
+        return cacheInfo.isSizeLimited() ? 0 : cacheInfo.getNumberOfDatasets();
+    }
+
+    private static long getMaxDynamicCacheBytes(NcwmsDynamicCacheInfo cacheInfo) {
+        return cacheInfo.isSizeLimited() ? cacheInfo.getMaxSizeMB() * 1024L * 1024L : 0L;
+    }
+
+    private static long getChangeCheckIntervalMillis(NcwmsDynamicCacheInfo cacheInfo) {
+        return cacheInfo.isReloadOnChange() ? cacheInfo.getChangeCheckIntervalSeconds() * 1000L : -1L;
+    }
+
+    private static void setLifetime(CacheConfiguration cacheConfig, float lifetimeMinutes) {
+        if (lifetimeMinutes > 0) {
+            cacheConfig.setTimeToLiveSeconds((long) (lifetimeMinutes * 60));
+        } else {
+            cacheConfig.eternal(true);
         }
     }
 
@@ -124,33 +883,83 @@ public class NcwmsCatalogue extends DataCatalogue implements WmsCatalogue {
             /*
              * Create cache
              */
-            CacheConfiguration cacheConfig = new CacheConfiguration(CACHE_NAME, cacheInfo.getNumberOfDatasets())
-                    .memoryStoreEvictionPolicy(EVICTION_POLICY)
-                    .persistence(new PersistenceConfiguration().strategy(PERSISTENCE_STRATEGY))
-                    .transactionalMode(TRANSACTIONAL_MODE);
-            if (cacheInfo.getElementLifetimeMinutes() > 0) {
-                cacheConfig.setTimeToLiveSeconds((long) (cacheInfo.getElementLifetimeMinutes() * 60));
-            } else {
-                cacheConfig.eternal(true);
-            }
-            dynamicDatasetCache = new Cache(cacheConfig);
-            EdalCache.cacheManager.addCache(dynamicDatasetCache);
+            dynamicDatasetCache = createCache(CACHE_NAME, getMaxDynamicDatasets(cacheInfo),
+                    cacheInfo.getElementLifetimeMinutes());
         } else {
             /*
              * Configure existing cache
              */
-            if (cacheInfo.getElementLifetimeMinutes() > 0) {
-                dynamicDatasetCache.getCacheConfiguration()
-                        .setTimeToLiveSeconds((long) (cacheInfo.getElementLifetimeMinutes() * 60));
-            } else {
-                dynamicDatasetCache.getCacheConfiguration().eternal(true);
+            dynamicDatasetCache = EdalCache.cacheManager.getCache(CACHE_NAME);
+            setLifetime(dynamicDatasetCache.getCacheConfiguration(), cacheInfo.getElementLifetimeMinutes());
+            dynamicDatasetCache.getCacheConfiguration().setMaxEntriesLocalHeap(
+                    getMaxDynamicDatasets(cacheInfo));
+        }
+        dynamicDatasetWeigher = registerListener(dynamicDatasetCache, new DynamicDatasetWeigher());
+        dynamicDatasetPool = registerListener(dynamicDatasetCache, new DynamicDatasetPool());
+        dynamicCacheMaxBytes = getMaxDynamicCacheBytes(cacheInfo);
+        maxOpenDynamicDatasets = cacheInfo.getMaxOpenDatasets();
+        dynamicDatasetValidator = registerListener(dynamicDatasetCache, new DynamicDatasetValidator());
+        changeCheckIntervalMillis = getChangeCheckIntervalMillis(cacheInfo);
+        if (dynamicCacheMaxBytes > 0) {
+            dynamicDatasetWeigher.evictToBudget(dynamicDatasetCache, dynamicCacheMaxBytes, null);
+        }
+        dynamicDatasetPool.closeLeastRecentlyUsed(dynamicDatasetCache, maxOpenDynamicDatasets);
+
+        if (cacheInfo.getFailedDatasetCacheSize() <= 0) {
+            /*
+             * Failures are no longer remembered
+             */
+            if (EdalCache.cacheManager.cacheExists(FAILED_CACHE_NAME)) {
+                EdalCache.cacheManager.removeCache(FAILED_CACHE_NAME);
             }
-            dynamicDatasetCache.getCacheConfiguration().setMaxEntriesInCache(cacheInfo.getNumberOfDatasets());
+            failedDatasetCache = null;
+        } else if (!EdalCache.cacheManager.cacheExists(FAILED_CACHE_NAME)) {
+            failedDatasetCache = createCache(FAILED_CACHE_NAME, cacheInfo.getFailedDatasetCacheSize(),
+                    cacheInfo.getFailedDatasetLifetimeMinutes());
+        } else {
+            failedDatasetCache = EdalCache.cacheManager.getCache(FAILED_CACHE_NAME);
+            setLifetime(failedDatasetCache.getCacheConfiguration(),
+                    cacheInfo.getFailedDatasetLifetimeMinutes());
+            failedDatasetCache.getCacheConfiguration()
+                    .setMaxEntriesLocalHeap(cacheInfo.getFailedDatasetCacheSize());
+            /*
+             * The configuration may have changed such that these now load
+             */
+            failedDatasetCache.removeAll();
         }
     }
 
+    /**
+     * @return The total estimated size of the datasets in the dynamic dataset
+     *         cache, in bytes
+     */
+    public long getDynamicDatasetCacheWeightedSize() {
+        DynamicDatasetWeigher weigher = dynamicDatasetWeigher;
+        return weigher == null ? 0L : weigher.getWeightedSize();
+    }
+
+    /**
+     * @return The number of dynamic datasets which are currently open
+     */
+    public int getOpenDynamicDatasetCount() {
+        DynamicDatasetPool pool = dynamicDatasetPool;
+        return pool == null ? 0 : pool.getOpenCount();
+    }
+
+    /**
+     * @return The total number of dynamic datasets which have been closed
+     */
+    public long getClosedDynamicDatasetCount() {
+        DynamicDatasetPool pool = dynamicDatasetPool;
+        return pool == null ? 0L : pool.getCloseCount();
+    }
+
     public void emptyDynamicDatasetCache() {
         dynamicDatasetCache.removeAll();
+        Cache failedCache = failedDatasetCache;
+        if (failedCache != null) {
+            failedCache.removeAll();
+        }
     }
 
     public NcwmsSupportedCrsCodes getSupportedNcwmsCrsCodes() {
@@ -167,162 +976,363 @@ public class NcwmsCatalogue extends DataCatalogue implements WmsCatalogue {
         return ((NcwmsConfig) config).getContactInfo();
     }
 
+    /**
+     * Returns the {@link Dataset} with the given ID. Statically-configured
+     * datasets are returned directly from the superclass without any locking.
+     * Lazily-loaded datasets are loaded the first time they are requested.
+     * Dynamic datasets are returned from the dynamic dataset cache if present,
+     * otherwise they are created. Concurrent requests for the same dynamic
+     * dataset share a single load, whilst different dynamic datasets can be
+     * loaded in parallel.
+     */
     @Override
-    public synchronized Dataset getDatasetFromId(String datasetId) {
+    public Dataset getDatasetFromId(final String datasetId) {
+        /*
+         * This is called for each layer whose data is read, so is a good
+         * place to stop the work for a cancelled request
+         */
+        CancellationToken.checkCurrent();
         Dataset dataset = super.getDatasetFromId(datasetId);
         if (dataset != null) {
             return dataset;
+        }
+
+        DatasetConfig datasetConfig = config.getDatasetInfo(datasetId);
+        if (datasetConfig != null && lazyDatasets != null
+                && (isLazyDataset(datasetId) || lazyDatasets.isLoaded(datasetId))) {
+            return lazyDatasets.get(datasetConfig);
         } else {
             /*
              * We may have a dynamic dataset. First check the dynamic dataset cache.
              */
-            if (dynamicDatasetCache != null) {
-                Element element = dynamicDatasetCache.get(datasetId);
-                if (element != null && element.getObjectValue() != null) {
-                    return (Dataset) element.getObjectValue();
-                }
-            }
-
-            /*
-             * Check to see if we have a dynamic service defined which this dataset ID can
-             * map to
-             */
-            NcwmsDynamicService dynamicService = getDynamicServiceFromLayerName(datasetId);
-            if (dynamicService == null || dynamicService.isDisabled()) {
-                return null;
-            }
-
-            if (datasetId.equals(dynamicService.getAlias())) {
-                /*
-                 * Just the alias has been requested. This isn't a dataset!
-                 */
-                return null;
+            dataset = getCachedDynamicDataset(datasetId);
+            if (dataset != null) {
+                return dataset;
             }
-            /*
-             * We do the +1 so that the datasetPath doesn't start with a /
-             */
-            String datasetPath = datasetId.substring(dynamicService.getAlias().length() + 1);
 
             /*
-             * Check if we allow this path or if it is disallowed by the dynamic dataset
-             * regex
+             * Now check whether we have recently failed to load this dataset
              */
-            if (!dynamicService.getIdMatchPattern().matcher(datasetPath).matches()) {
-                return null;
+            Cache failedCache = failedDatasetCache;
+            if (failedCache != null) {
+                Element failure = failedCache.get(datasetId);
+                if (failure != null) {
+                    log.debug("Dynamic dataset {} previously failed to load: {}", datasetId,
+                            failure.getObjectValue());
+                    return null;
+                }
             }
 
-            String datasetUrl = dynamicService.getServicePath() + "/" + datasetPath;
-
-            String title = datasetId;
-            while (title.startsWith("/") && title.length() > 0)
-                title = title.substring(1);
-
             try {
-                DatasetFactory datasetFactory = DatasetFactory.forName(dynamicService.getDataReaderClass());
-                Dataset dynamicDataset = datasetFactory.createDataset(datasetId, datasetUrl);
+                Dataset loaded = dynamicDatasetLoads.get(datasetId, new Callable<Dataset>() {
+                    @Override
+                    public Dataset call() throws Exception {
+                        /*
+                         * Another thread may have finished loading this dataset
+                         * between our cache check and us starting this load
+                         */
+                        Dataset cached = getCachedDynamicDataset(datasetId);
+                        if (cached != null) {
+                            return cached;
+                        }
+                        return loadDynamicDataset(datasetId);
+                    }
+                });
                 /*
-                 * Store in the cache
+                 * The load may have been shared with another request, in
+                 * which case this one has not yet registered its use
                  */
-                if (dynamicDatasetCache != null) {
-                    dynamicDatasetCache.put(new Element(datasetId, dynamicDataset));
+                DynamicDatasetPool pool = dynamicDatasetPool;
+                if (loaded != null && pool != null && !useDynamicDataset(pool, datasetId, loaded)) {
+                    /*
+                     * Closed already - only possible with very few datasets
+                     * allowed open. Try once more.
+                     */
+                    loaded = getCachedDynamicDataset(datasetId);
+                    if (loaded == null) {
+                        loaded = loadDynamicDataset(datasetId);
+                    }
                 }
-                return dynamicDataset;
-            } catch (InstantiationException | IllegalAccessException | ClassNotFoundException | IOException
-                    | EdalException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException
-                    | SecurityException e) {
+                return loaded;
+            } catch (ExecutionException e) {
                 /*
-                 * TODO log error
+                 * loadDynamicDataset handles all expected exceptions itself
                  */
-                e.printStackTrace();
+                log.error("Problem loading dynamic dataset " + datasetId, e.getCause());
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 return null;
             }
         }
     }
 
-    @Override
-    public EnhancedVariableMetadata getLayerMetadata(final VariableMetadata variableMetadata)
-            throws EdalLayerNotFoundException {
-        try {
-            return super.getLayerMetadata(variableMetadata);
-        } catch (EdalLayerNotFoundException e) {
+    private Dataset getCachedDynamicDataset(String datasetId) {
+        Cache cache = dynamicDatasetCache;
+        if (cache != null) {
+            Element element = cache.get(datasetId);
+            if (element != null && element.getObjectValue() != null) {
+                DynamicDatasetValidator validator = dynamicDatasetValidator;
+                long checkInterval = changeCheckIntervalMillis;
+                if (validator != null && checkInterval >= 0
+                        && validator.hasChanged(datasetId, checkInterval)) {
+                    /*
+                     * The source has been modified. Removing this will close it,
+                     * and the caller will load it again.
+                     */
+                    log.info("Source of dynamic dataset {} has changed - reloading", datasetId);
+                    cache.remove(datasetId);
+                    return null;
+                }
+                Dataset dataset = (Dataset) element.getObjectValue();
+                DynamicDatasetPool pool = dynamicDatasetPool;
+                if (pool != null) {
+                    pool.touch(datasetId);
+                    if (!useDynamicDataset(pool, datasetId, dataset)) {
+                        /*
+                         * It has been closed since we fetched it from the
+                         * cache, so must be loaded again
+                         */
+                        return null;
+                    }
+                }
+                return dataset;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers the current request as a user of a dynamic dataset, so that it
+     * is not closed until the request has finished with it
+     *
+     * @return <code>false</code> if the dataset has already been closed
+     */
+    private static boolean useDynamicDataset(DynamicDatasetPool pool, String datasetId,
+            Dataset dataset) {
+        DatasetUsage usage = DatasetUsage.current();
+        return usage == null || usage.use(pool, datasetId, dataset);
+    }
+
+    /**
+     * Creates a dynamic dataset and stores it in the dynamic dataset cache.
+     * This should only be called via {@link #dynamicDatasetLoads} so that only
+     * a single thread loads a given dataset at once.
+     *
+     * @param datasetId
+     *            The ID of the dynamic dataset
+     * @return The newly-created {@link Dataset}, or <code>null</code> if the ID
+     *         does not refer to a dynamic dataset which can be loaded
+     */
+    private Dataset loadDynamicDataset(String datasetId) {
+        /*
+         * Check to see if we have a dynamic service defined which this dataset ID can
+         * map to
+         */
+        NcwmsDynamicService dynamicService = getDynamicServiceFromLayerName(datasetId);
+        if (dynamicService == null || dynamicService.isDisabled()) {
+            return null;
+        }
+
+        if (datasetId.equals(dynamicService.getAlias())) {
             /*
-             * The layer is not defined in the XmlDataCatalogue. However, we may still have
-             * a dynamic dataset
+             * Just the alias has been requested. This isn't a dataset!
              */
-            final String layerName = getLayerNameMapper().getLayerName(variableMetadata.getDataset().getId(),
-                    variableMetadata.getId());
+            return null;
+        }
+        /*
+         * We do the +1 so that the datasetPath doesn't start with a /
+         */
+        String datasetPath = datasetId.substring(dynamicService.getAlias().length() + 1);
 
-            final NcwmsDynamicService dynamicService = getDynamicServiceFromLayerName(layerName);
-            if (dynamicService == null) {
-                throw new EdalLayerNotFoundException("The layer: " + layerName + " doesn't exist");
-            }
+        /*
+         * Check if we allow this path or if it is disallowed by the dynamic dataset
+         * regex
+         */
+        if (!dynamicService.getIdMatchPattern().matcher(datasetPath).matches()) {
+            cacheFailure(datasetId, "Path is not allowed by the dynamic service " + dynamicService.getAlias());
+            return null;
+        }
+
+        String datasetUrl = dynamicService.getServicePath() + "/" + datasetPath;
+
+        /*
+         * The factory is resolved once per service, when it is configured
+         */
+        DatasetFactory datasetFactory = dynamicService.getDatasetFactory();
+        if (datasetFactory == null) {
+            cacheFailure(datasetId, dynamicService.getDatasetFactoryError());
+            return null;
+        }
+
+        /*
+         * Taken before reading, so that the source is seen as changed if it is
+         * modified whilst we read it
+         */
+        DynamicDatasetValidator validator = dynamicDatasetValidator;
+        DynamicDatasetValidator.SourceState sourceState = validator == null ? null
+                : DynamicDatasetValidator.getSourceState(datasetUrl);
+        try {
+            Dataset dynamicDataset = datasetFactory.createDataset(datasetId, datasetUrl);
             /*
-             * We have a dynamic dataset. Return sensible defaults
+             * Store in the cache
              */
-            EnhancedVariableMetadata metadata = new EnhancedVariableMetadata() {
-                @Override
-                public String getId() {
-                    return variableMetadata.getId();
+            Cache cache = dynamicDatasetCache;
+            if (cache != null) {
+                cache.put(new Element(datasetId, dynamicDataset));
+                DynamicDatasetPool pool = dynamicDatasetPool;
+                if (pool != null) {
+                    /*
+                     * Before anything is evicted, so that this cannot be
+                     * closed before the request has used it
+                     */
+                    useDynamicDataset(pool, datasetId, dynamicDataset);
                 }
-
-                @Override
-                public String getTitle() {
-                    return variableMetadata.getId();
+                if (validator != null) {
+                    validator.record(datasetId, sourceState);
                 }
-
-                @Override
-                public PlottingStyleParameters getDefaultPlottingParameters() {
-                    return new PlottingStyleParameters(null, ColourPalette.DEFAULT_PALETTE_NAME, null, null, null,
-                            false, ColourPalette.MAX_NUM_COLOURS, 1f);
+                DynamicDatasetWeigher weigher = dynamicDatasetWeigher;
+                long maxBytes = dynamicCacheMaxBytes;
+                if (weigher != null && maxBytes > 0) {
+                    weigher.evictToBudget(cache, maxBytes, datasetId);
                 }
-
-                @Override
-                public String getMoreInfo() {
-                    return null;
+                if (pool != null) {
+                    pool.closeLeastRecentlyUsed(cache, maxOpenDynamicDatasets);
                 }
+            }
+            return dynamicDataset;
+        } catch (IOException | EdalException | IllegalArgumentException e) {
+            log.warn("Could not create dynamic dataset " + datasetId + " from " + datasetUrl, e);
+            cacheFailure(datasetId, e.getClass().getSimpleName() + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-                @Override
-                public String getDescription() {
-                    return null;
-                }
+    /**
+     * Records that a dynamic dataset could not be loaded, so that it will not be
+     * attempted again until the failure expires from the cache
+     *
+     * @param datasetId
+     *            The ID of the dynamic dataset
+     * @param reason
+     *            A description of why it could not be loaded
+     */
+    private void cacheFailure(String datasetId, String reason) {
+        Cache failedCache = failedDatasetCache;
+        if (failedCache != null) {
+            failedCache.put(new Element(datasetId, reason));
+        }
+    }
 
-                @Override
-                public String getCopyright() {
-                    return null;
-                }
+    @Override
+    public EnhancedVariableMetadata getLayerMetadata(final VariableMetadata variableMetadata)
+            throws EdalLayerNotFoundException {
+        /*
+         * Called for every layer when building capabilities documents and
+         * menus
+         */
+        CancellationToken.checkCurrent();
+        String datasetId = variableMetadata.getDataset().getId();
+        DatasetConfig datasetConfig = config.getDatasetInfo(datasetId);
+        if (datasetConfig != null) {
+            if (loadScheduler == null || datasetConfig.getVariableById(variableMetadata.getId()) != null) {
+                return super.getLayerMetadata(variableMetadata);
+            }
+            /*
+             * We loaded this dataset, so variables without their own
+             * configuration need defaults
+             */
+            String layerName = getLayerNameMapper().getLayerName(datasetId, variableMetadata.getId());
+            EnhancedVariableMetadata metadata = defaultLayerMetadata.get(layerName);
+            if (metadata == null) {
+                metadata = new DefaultLayerMetadata(variableMetadata.getId(),
+                        datasetConfig.isQueryable(), datasetConfig.isDownloadable(),
+                        datasetConfig.isDisabled(), new PlottingStyleParameters(null,
+                                ColourPalette.DEFAULT_PALETTE_NAME, null, null, null, false,
+                                ColourPalette.MAX_NUM_COLOURS, 1f));
+                defaultLayerMetadata.put(layerName, metadata);
+            }
+            return metadata;
+        }
 
-                @Override
-                public boolean isQueryable() {
-                    return dynamicService.isQueryable();
-                }
+        /*
+         * The layer is not defined in the XmlDataCatalogue. However, we may still have
+         * a dynamic dataset
+         */
+        String layerName = getLayerNameMapper().getLayerName(datasetId, variableMetadata.getId());
+        DynamicLayerCache layerCache = getDynamicLayerCache();
+        EnhancedVariableMetadata metadata = layerCache.getMetadata(layerName);
+        if (metadata != null) {
+            return metadata;
+        }
 
-                @Override
-                public boolean isDownloadable() {
-                    return dynamicService.isDownloadable();
-                }
+        NcwmsDynamicService dynamicService = getDynamicServiceFromLayerName(layerName);
+        if (dynamicService == null) {
+            throw new EdalLayerNotFoundException("The layer: " + layerName + " doesn't exist");
+        }
 
-                @Override
-                public boolean isDisabled() {
-                    return dynamicService.isDisabled();
-                }
-            };
-            return metadata;
+        /*
+         * We have a dynamic dataset. Return sensible defaults, which are shared
+         * between all layers of the same service
+         */
+        PlottingStyleParameters defaults = layerCache.getDefaults(dynamicService);
+        if (defaults == null) {
+            defaults = layerCache.putDefaults(dynamicService, new PlottingStyleParameters(null,
+                    ColourPalette.DEFAULT_PALETTE_NAME, null, null, null, false,
+                    ColourPalette.MAX_NUM_COLOURS, 1f));
         }
+        metadata = new DefaultLayerMetadata(variableMetadata.getId(),
+                dynamicService.isQueryable(), dynamicService.isDownloadable(),
+                dynamicService.isDisabled(), defaults);
+        layerCache.putMetadata(layerName, metadata);
+        return metadata;
     }
 
+    /**
+     * Finds the dynamic service which a layer name (or dataset ID) refers to.
+     * The service with the longest alias which prefixes the layer name is
+     * used. Results are cached per layer name until the dynamic services are
+     * next changed.
+     *
+     * @param layerName
+     *            The layer name or dataset ID
+     * @return The {@link NcwmsDynamicService} providing the layer, or
+     *         <code>null</code> if there is none
+     */
     private NcwmsDynamicService getDynamicServiceFromLayerName(String layerName) {
-        NcwmsDynamicService dynamicService = null;
-        for (NcwmsDynamicService testDynamicService : ((NcwmsConfig) config).getDynamicServices()) {
-            if (layerName.startsWith(testDynamicService.getAlias())) {
-                dynamicService = testDynamicService;
-            }
+        DynamicLayerCache layerCache = getDynamicLayerCache();
+        if (layerCache.containsService(layerName)) {
+            return layerCache.getService(layerName);
         }
-        if (dynamicService == null || !dynamicService.getIdMatchPattern().matcher(layerName).matches()) {
-            return null;
+
+        NcwmsDynamicService dynamicService = layerCache.getIndex().longestPrefixMatch(layerName);
+        if (dynamicService != null
+                && !dynamicService.getIdMatchPattern().matcher(layerName).matches()) {
+            dynamicService = null;
         }
+        layerCache.putService(layerName, dynamicService);
         return dynamicService;
     }
 
+    /**
+     * @return The cache of resolved dynamic layers for the current dynamic
+     *         services
+     */
+    private DynamicLayerCache getDynamicLayerCache() {
+        DynamicServiceIndex index = getConfig().getDynamicServiceIndex();
+        DynamicLayerCache layerCache = dynamicLayers;
+        if (layerCache == null || layerCache.getIndex() != index) {
+            /*
+             * The dynamic services have changed since we cached anything. If
+             * two threads see this at once, one of the new caches is simply
+             * discarded.
+             */
+            layerCache = new DynamicLayerCache(index, MAX_CACHED_LAYER_SERVICES);
+            dynamicLayers = layerCache;
+        }
+        return layerCache;
+    }
+
     @Override
     public LayerNameMapper getLayerNameMapper() {
         return layerNameMapper;
@@ -335,7 +1345,7 @@ public class NcwmsCatalogue extends DataCatalogue implements WmsCatalogue {
 
     @Override
     public String getDatasetTitle(String datasetId) {
-        DatasetConfig datasetInfo = config.getDatasetInfo(datasetId);
+        DatasetConfig datasetInfo = getDatasetConfig(datasetId);
         if (datasetInfo != null) {
             return datasetInfo.getTitle();
         } else if (getDynamicServiceFromLayerName(datasetId) != null) {
@@ -350,6 +1360,14 @@ public class NcwmsCatalogue extends DataCatalogue implements WmsCatalogue {
         VariableConfig xmlVariable = getXmlVariable(layerName);
         if (xmlVariable != null) {
             return xmlVariable.isDownloadable();
+        }
+        DatasetConfig datasetConfig = config.getDatasetInfo(
+                getLayerNameMapper().getDatasetIdFromLayerName(layerName));
+        if (datasetConfig != null) {
+            /*
+             * A variable of a dataset we loaded, without its own configuration
+             */
+            return datasetConfig.isDownloadable();
         } else {
             /*
              * We may be dealing with a dynamic dataset
@@ -367,6 +1385,14 @@ public class NcwmsCatalogue extends DataCatalogue implements WmsCatalogue {
         VariableConfig xmlVariable = getXmlVariable(layerName);
         if (xmlVariable != null) {
             return xmlVariable.isQueryable();
+        }
+        DatasetConfig datasetConfig = config.getDatasetInfo(
+                getLayerNameMapper().getDatasetIdFromLayerName(layerName));
+        if (datasetConfig != null) {
+            /*
+             * A variable of a dataset we loaded, without its own configuration
+             */
+            return datasetConfig.isQueryable();
         } else {
             /*
              * We may be dealing with a dynamic dataset
@@ -384,6 +1410,14 @@ public class NcwmsCatalogue extends DataCatalogue implements WmsCatalogue {
         VariableConfig xmlVariable = getXmlVariable(layerName);
         if (xmlVariable != null) {
             return xmlVariable.isDisabled();
+        }
+        DatasetConfig datasetConfig = config.getDatasetInfo(
+                getLayerNameMapper().getDatasetIdFromLayerName(layerName));
+        if (datasetConfig != null) {
+            /*
+             * A variable of a dataset we loaded, without its own configuration
+             */
+            return datasetConfig.isDisabled();
         } else {
             /*
              * We may be dealing with a dynamic dataset
@@ -397,8 +1431,19 @@ public class NcwmsCatalogue extends DataCatalogue implements WmsCatalogue {
         }
     }
 
+    /**
+     * @param datasetId
+     *            The ID of the dataset
+     * @return The {@link DatasetConfig} of a configured dataset, whether it is
+     *         loaded at startup or lazily, or <code>null</code> if there is
+     *         none
+     */
+    DatasetConfig getDatasetConfig(String datasetId) {
+        return config.getDatasetInfo(datasetId);
+    }
+
     private VariableConfig getXmlVariable(String layerName) {
-        DatasetConfig datasetInfo = config.getDatasetInfo(getLayerNameMapper().getDatasetIdFromLayerName(layerName));
+        DatasetConfig datasetInfo = getDatasetConfig(getLayerNameMapper().getDatasetIdFromLayerName(layerName));
         if (datasetInfo != null) {
             return datasetInfo.getVariableById(getLayerNameMapper().getVariableIdFromLayerName(layerName));
         } else {
@@ -45,7 +45,9 @@ import uk.ac.rdg.resc.edal.cache.EdalCache;
 import org.json.JSONObject;
 
 /**
- * An {@link HttpServlet} that returns caching statistics in JSON format.
+ * An {@link HttpServlet} that returns caching statistics in JSON format,
+ * along with those of the limits on concurrent requests, the number of
+ * cancelled requests and the usage of the request executors.
  *
  * @author Jesse Lopez
  */
@@ -54,6 +56,7 @@ public class NcwmsEhcacheStatsServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
 
     private CacheManager cacheManager;
+    private NcwmsCatalogue catalogue = null;
 
     public NcwmsEhcacheStatsServlet() throws IOException, Exception {
         super();
@@ -67,6 +70,17 @@ public class NcwmsEhcacheStatsServlet extends HttpServlet {
          * Get the CacheManager
          */
         cacheManager = EdalCache.cacheManager;
+
+        /*
+         * The catalogue is only needed for the dynamic dataset cache details,
+         * request limits, cancellations and executor usage. The cache
+         * statistics can be reported without it.
+         */
+        Object catalogueAttr = servletConfig.getServletContext().getAttribute(
+                NcwmsApplicationServlet.CONTEXT_NCWMS_CATALOGUE);
+        if (catalogueAttr instanceof NcwmsCatalogue) {
+            catalogue = (NcwmsCatalogue) catalogueAttr;
+        }
     }
 
     @Override
@@ -92,8 +106,25 @@ public class NcwmsEhcacheStatsServlet extends HttpServlet {
             cacheStats.put("LocalDiskHitCount", statisticsGateway.localDiskHitCount());
             cacheStats.put("LocalDiskMissCount", statisticsGateway.localDiskMissCount());
 
+            if (catalogue != null && NcwmsCatalogue.CACHE_NAME.equals(name)) {
+                cacheStats.put("WeightedSizeBytes", catalogue.getDynamicDatasetCacheWeightedSize());
+                cacheStats.put("MaxSizeMB", catalogue.getConfig().getDynamicCacheInfo().getMaxSizeMB());
+                cacheStats.put("OpenDatasets", catalogue.getOpenDynamicDatasetCount());
+                cacheStats.put("ClosedDatasets", catalogue.getClosedDynamicDatasetCount());
+            }
+
             allStats.put(name, cacheStats);
         }
+        if (catalogue != null) {
+            /*
+             * Queue depths and wait times for limited request types
+             */
+            allStats.put("RequestLimits", catalogue.getAdmissionControl().getStatistics());
+            allStats.put("CancelledRequests", catalogue.getRequestDeadlines().getStatistics());
+            if (catalogue.getRequestExecutors() != null) {
+                allStats.put("Executors", catalogue.getRequestExecutors().getStatistics());
+            }
+        }
 
         response.setContentType("application/json");
         
@@ -78,7 +78,7 @@ public class NcwmsRefreshServlet extends HttpServlet {
         String datasetId = request.getParameter("id");
         NcwmsConfig ncwmsConfig = catalogue.getConfig();
         DatasetConfig dataset = ncwmsConfig.getDatasetInfo(datasetId);
-        dataset.forceRefresh();
+        catalogue.refreshDataset(dataset);
         // Return 202 for accepted
         response.setStatus(HttpServletResponse.SC_ACCEPTED);
     }
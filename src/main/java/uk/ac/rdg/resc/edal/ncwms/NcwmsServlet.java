@@ -28,10 +28,19 @@
 
 package uk.ac.rdg.resc.edal.ncwms;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
@@ -43,6 +52,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.ac.rdg.resc.edal.catalogue.jaxb.CatalogueConfig;
+import uk.ac.rdg.resc.edal.graphics.exceptions.EdalLayerNotFoundException;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsServerInfo;
 import uk.ac.rdg.resc.edal.util.GISUtils;
 import uk.ac.rdg.resc.edal.wms.RequestParams;
 import uk.ac.rdg.resc.edal.wms.WmsCatalogue;
@@ -58,7 +69,53 @@ public class NcwmsServlet extends WmsServlet implements Servlet {
     private static final long serialVersionUID = 1L;
     private static final Logger log = LoggerFactory.getLogger(NcwmsServlet.class);
 
+    private static final int MAX_CACHED_CAPABILITIES = 100;
+    private static final int SHARED_REQUEST_TIMEOUT_SECONDS = 60;
+    /*
+     * A request attribute which stops a GetMap response being stored in the
+     * rendered image cache, e.g. for metatiles which are only used to produce
+     * other images
+     */
+    static final String NO_IMAGE_CACHE = "uk.ac.rdg.resc.edal.ncwms.noImageCache";
+    /*
+     * A request attribute marking requests made by the server itself (e.g.
+     * for tile seeding), which are not subject to admission control
+     */
+    static final String OFFLINE_REQUEST = "uk.ac.rdg.resc.edal.ncwms.offline";
+    /*
+     * A request attribute holding the request's CancellationToken, so that it
+     * can be cancelled from outside of the thread processing it
+     */
+    static final String CANCELLATION_TOKEN = "uk.ac.rdg.resc.edal.ncwms.cancellationToken";
+    /*
+     * The parameters which can contain layer names, in the various WMS and
+     * GetMetadata requests
+     */
+    private static final String[] LAYER_PARAMETERS = new String[] { "LAYERS", "QUERY_LAYERS",
+            "LAYERNAME", "LAYER" };
+
     private NcwmsCatalogue ncwmsCatalogue = null;
+    /*
+     * The config-defined CRS codes currently in use, which may be changed in
+     * the config file whilst we are running
+     */
+    private volatile String crsCodesKey = "";
+    private final CapabilitiesCache capabilitiesCache = new CapabilitiesCache(
+            MAX_CACHED_CAPABILITIES);
+    private final SingleFlight<String, RenderedCapabilities> capabilitiesRenders = new SingleFlight<>();
+    /*
+     * Shares the responses of identical GetMap and GetMetadata requests which
+     * are in progress at the same time
+     */
+    private final SingleFlight<String, CapturedResponse> sharedRequests = new SingleFlight<>();
+    /*
+     * Pre-renders tiles into the rendered image cache
+     */
+    private TileSeeder tileSeeder = null;
+    /*
+     * Whether requests are processed away from the container's threads
+     */
+    private boolean async = false;
 
     /**
      * @see WmsServlet#WmsServlet()
@@ -67,9 +124,27 @@ public class NcwmsServlet extends WmsServlet implements Servlet {
         super();
     }
 
+    /**
+     * Creates a servlet which is only used to render images outside of a
+     * servlet container, with {@link #renderOffline(Map)}
+     *
+     * @param catalogue
+     *            The catalogue containing the layers to render
+     */
+    NcwmsServlet(NcwmsCatalogue catalogue) {
+        super();
+        useCatalogue(catalogue);
+    }
+
     @Override
     public void destroy() {
         super.destroy();
+        if (tileSeeder != null) {
+            tileSeeder.shutdown();
+        }
+        if (ncwmsCatalogue != null) {
+            ncwmsCatalogue.shutdown();
+        }
         CatalogueConfig.shutdown();
         GISUtils.releaseEpsgDatabase();
     }
@@ -83,12 +158,19 @@ public class NcwmsServlet extends WmsServlet implements Servlet {
         Object config = servletConfig.getServletContext().getAttribute(
                 NcwmsApplicationServlet.CONTEXT_NCWMS_CATALOGUE);
         if (config instanceof NcwmsCatalogue) {
-            ncwmsCatalogue = (NcwmsCatalogue) config;
-            setCatalogue(ncwmsCatalogue);
-            String[] configDefinedCrsCodes = ((NcwmsCatalogue) config).getSupportedNcwmsCrsCodes().getSupportedCrsCodes();
-            if (configDefinedCrsCodes != null) {
-                super.setCrsCodes(configDefinedCrsCodes);
-            }
+            useCatalogue((NcwmsCatalogue) config);
+            tileSeeder = new TileSeeder(ncwmsCatalogue, new TileSeeder.Renderer() {
+                @Override
+                public CapturedResponse render(Map<String, String[]> parameters)
+                        throws Exception {
+                    return renderOffline(parameters);
+                }
+            });
+            ncwmsCatalogue.setTileSeeder(tileSeeder);
+            async = ncwmsCatalogue.getConfig().getProcessingInfo().isAsyncEnabled()
+                    && AsyncRequests.isSupported(servletConfig.getServletContext());
+            log.info("WMS requests will be processed {}", async ? "asynchronously"
+                    : "on the container's threads");
         } else {
             String message;
             if (config == null) {
@@ -123,10 +205,87 @@ public class NcwmsServlet extends WmsServlet implements Servlet {
         }
     }
 
+    private void useCatalogue(NcwmsCatalogue catalogue) {
+        ncwmsCatalogue = catalogue;
+        setCatalogue(ncwmsCatalogue);
+        updateCrsCodes();
+    }
+
+    /**
+     * Applies any change to the CRS codes defined in the config
+     */
+    private void updateCrsCodes() {
+        String[] configDefinedCrsCodes = ncwmsCatalogue.getSupportedNcwmsCrsCodes()
+                .getSupportedCrsCodes();
+        if (configDefinedCrsCodes != null
+                && !Arrays.toString(configDefinedCrsCodes).equals(crsCodesKey)) {
+            synchronized (this) {
+                super.setCrsCodes(configDefinedCrsCodes);
+                crsCodesKey = Arrays.toString(configDefinedCrsCodes);
+            }
+        }
+    }
+
+    /**
+     * Renders a GetMap request which does not come from a client (e.g. for
+     * seeding tiles). The image is not stored in the rendered image cache.
+     *
+     * @param parameters
+     *            The GetMap parameters
+     * @return The response
+     * @throws Exception
+     *             If there is a problem with the request
+     */
+    CapturedResponse renderOffline(Map<String, String[]> parameters) throws Exception {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(NO_IMAGE_CACHE, Boolean.TRUE);
+        attributes.put(OFFLINE_REQUEST, Boolean.TRUE);
+        CapturingResponseWrapper capture = new CapturingResponseWrapper(
+                OfflineRequests.response());
+        dispatchWmsRequest("GetMap", new RequestParams(parameters),
+                OfflineRequests.request(parameters, attributes), capture, ncwmsCatalogue);
+        return capture.getCapturedResponse();
+    }
+
     @Override
     protected void dispatchWmsRequest(String request, RequestParams params,
             HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
             WmsCatalogue catalogue) throws Exception {
+        if (ncwmsCatalogue != null) {
+            updateCrsCodes();
+        }
+        /*
+         * Dynamic datasets used by this request are kept open until it has
+         * finished with them
+         */
+        DatasetUsage usage = new DatasetUsage();
+        DatasetUsage previousUsage = DatasetUsage.attach(usage);
+        boolean handedOver = false;
+        try {
+            handedOver = dispatchRequest(request, params, httpServletRequest,
+                    httpServletResponse, catalogue, usage);
+        } finally {
+            DatasetUsage.attach(previousUsage);
+            if (!handedOver) {
+                usage.end();
+            }
+        }
+    }
+
+    /**
+     * Answers a WMS request from the HTTP or rendered image caches if
+     * possible. Otherwise, once it has been admitted, the request is processed
+     * on the I/O executor if requests are processed asynchronously, or on the
+     * current thread if not.
+     *
+     * @param usage
+     *            The record of the dynamic datasets used by the request
+     * @return Whether the request has been handed over to be processed, in
+     *         which case whoever processes it ends the usage
+     */
+    private boolean dispatchRequest(final String request, RequestParams params,
+            HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+            final WmsCatalogue catalogue, final DatasetUsage usage) throws Exception {
         /*-
          * For dynamic datasets, users can either specify the DATASET URL
          * parameter, or they can prepend the layer names with the path:
@@ -180,8 +339,8 @@ public class NcwmsServlet extends WmsServlet implements Servlet {
          * End of code from NDP
          */
 
+        Map<String, String> newParams = new HashMap<>();
         if (dataset != null) {
-            Map<String, String> newParams = new HashMap<>();
             newParams.put("DATASET", dataset);
             String layersStr = params.getString("LAYERS");
             if (layersStr != null) {
@@ -209,7 +368,591 @@ public class NcwmsServlet extends WmsServlet implements Servlet {
             }
             params = params.mergeParameters(newParams);
         }
-        super.dispatchWmsRequest(request, params, httpServletRequest, httpServletResponse, catalogue);
+        /*
+         * Internal renders (e.g. of metatiles) are never sent to a client
+         * as-is, so they don't need any caching headers
+         */
+        boolean httpCaching = ncwmsCatalogue != null
+                && !"GetCapabilities".equalsIgnoreCase(request)
+                && httpServletRequest.getAttribute(NO_IMAGE_CACHE) == null
+                && ncwmsCatalogue.getConfig().getHttpCacheInfo().isEnabled();
+        if (httpCaching
+                && writeCacheHeaders(request, params, httpServletRequest, httpServletResponse,
+                        newParams)) {
+            httpServletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return false;
+        }
+        final String imageKey = "GetMap".equalsIgnoreCase(request) ? getImageKey(params,
+                httpServletRequest, newParams) : null;
+        if (imageKey != null && writeCachedImage(imageKey, httpServletResponse)) {
+            return false;
+        }
+
+        boolean online = ncwmsCatalogue != null
+                && httpServletRequest.getAttribute(OFFLINE_REQUEST) == null;
+        if (!online) {
+            processRequest(request, params, httpServletRequest, httpServletResponse, catalogue,
+                    dataset, newParams, imageKey, null, null, httpCaching);
+            return false;
+        }
+
+        /*
+         * Created first, so that the deadline includes any time spent waiting
+         * to be admitted
+         */
+        final CancellationToken token = ncwmsCatalogue.getRequestDeadlines().newToken(request);
+        httpServletRequest.setAttribute(CANCELLATION_TOKEN, token);
+        /*
+         * Requests wait for admission on this (the container's) thread, so
+         * that those waiting do not hold the I/O executor's threads
+         */
+        final AdmissionControl.Permit permit = admit(request, httpServletResponse, httpCaching);
+        if (permit == null) {
+            return false;
+        }
+        if (!async) {
+            processRequest(request, params, httpServletRequest, httpServletResponse, catalogue,
+                    dataset, newParams, imageKey, token, permit, httpCaching);
+            return false;
+        }
+
+        final RequestParams finalParams = params;
+        final String finalDataset = dataset;
+        final Map<String, String> finalNewParams = newParams;
+        final boolean finalHttpCaching = httpCaching;
+        boolean accepted = AsyncRequests.process(httpServletRequest, httpServletResponse,
+                ncwmsCatalogue.getRequestExecutors(), new AsyncRequests.Handler() {
+                    @Override
+                    public void handle(HttpServletRequest asyncRequest,
+                            HttpServletResponse asyncResponse) throws Exception {
+                        DatasetUsage previousUsage = DatasetUsage.attach(usage);
+                        try {
+                            processRequest(request, finalParams, asyncRequest, asyncResponse,
+                                    catalogue, finalDataset, finalNewParams, imageKey, token,
+                                    permit, finalHttpCaching);
+                        } finally {
+                            DatasetUsage.attach(previousUsage);
+                            usage.end();
+                        }
+                    }
+                });
+        if (!accepted) {
+            permit.release();
+        }
+        return accepted;
+    }
+
+    /**
+     * Processes a WMS request which has been admitted
+     *
+     * @param token
+     *            The request's {@link CancellationToken}, or <code>null</code>
+     *            if it is not a client request
+     * @param permit
+     *            The request's {@link AdmissionControl.Permit}, which is
+     *            released once it has been processed, or <code>null</code>
+     */
+    private void processRequest(String request, RequestParams params,
+            HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+            WmsCatalogue catalogue, String dataset, Map<String, String> newParams,
+            String imageKey, CancellationToken token, AdmissionControl.Permit permit,
+            boolean httpCaching) throws Exception {
+        CancellationToken previousToken = CancellationToken.attach(token);
+        try {
+            if (token == null) {
+                dispatchOperation(request, params, httpServletRequest, httpServletResponse,
+                        catalogue, dataset, newParams, imageKey);
+            } else {
+                /*
+                 * Don't start a request which has already run out of time
+                 */
+                token.checkpoint();
+                dispatchOperation(request, params, httpServletRequest,
+                        new CancellableResponseWrapper(httpServletResponse, token), catalogue,
+                        dataset, newParams, imageKey);
+            }
+        } catch (Exception e) {
+            if (token != null && token.isCancelled()) {
+                /*
+                 * EDAL may have wrapped the RequestCancelledException, so we
+                 * check the token rather than the type of the exception
+                 */
+                requestCancelled(token, httpServletResponse);
+                return;
+            }
+            if (httpCaching && !httpServletResponse.isCommitted()) {
+                /*
+                 * The error report is sent on this response, and must not be
+                 * reused in place of the real one
+                 */
+                httpServletResponse.setHeader("Cache-Control", "no-store");
+            }
+            throw e;
+        } finally {
+            CancellationToken.attach(previousToken);
+            if (permit != null) {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * Passes a WMS request to the appropriate handler, once any dataset has
+     * been combined with its layer names
+     */
+    private void dispatchOperation(String request, RequestParams params,
+            HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+            WmsCatalogue catalogue, String dataset, Map<String, String> newParams,
+            String imageKey) throws Exception {
+        if ("GetCapabilities".equalsIgnoreCase(request) && isCapabilitiesCacheable(dataset)) {
+            dispatchCachedCapabilities(request, params, httpServletRequest, httpServletResponse,
+                    catalogue, dataset);
+        } else if ("GetMap".equalsIgnoreCase(request) || "GetMetadata".equalsIgnoreCase(request)) {
+            dispatchShared(request, params, httpServletRequest, httpServletResponse, catalogue,
+                    newParams, imageKey);
+        } else {
+            super.dispatchWmsRequest(request, params, httpServletRequest, httpServletResponse,
+                    catalogue);
+        }
+    }
+
+    /**
+     * Sends a GetMap image from the rendered image cache
+     *
+     * @return Whether the image was in the cache
+     */
+    private boolean writeCachedImage(String imageKey, HttpServletResponse httpServletResponse)
+            throws IOException {
+        RenderedImageCache.CachedImage image = ncwmsCatalogue.getRenderedImageCache().get(
+                imageKey);
+        if (image == null) {
+            return false;
+        }
+        httpServletResponse.setContentType(image.getContentType());
+        httpServletResponse.setContentLength(image.getContent().length);
+        httpServletResponse.getOutputStream().write(image.getContent());
+        return true;
+    }
+
+    /**
+     * Waits for a slot in which to process a request, sending a 503 (Service
+     * Unavailable) response if it is rejected
+     *
+     * @param request
+     *            The WMS request type, e.g. GetMap
+     * @param httpServletResponse
+     *            The response to send any rejection on
+     * @param httpCaching
+     *            Whether HTTP caching headers are sent for this request, in
+     *            which case a rejection must not be cached
+     * @return A {@link AdmissionControl.Permit} which must be released once
+     *         the request has been processed, or <code>null</code> if the
+     *         request has been rejected
+     */
+    private AdmissionControl.Permit admit(String request,
+            HttpServletResponse httpServletResponse, boolean httpCaching)
+            throws IOException, InterruptedException {
+        AdmissionControl admissionControl = ncwmsCatalogue.getAdmissionControl();
+        AdmissionControl.Permit permit = admissionControl.acquire(request);
+        if (permit == null) {
+            log.debug("Rejected {} request - too many in progress", request);
+            if (httpCaching) {
+                httpServletResponse.setHeader("Cache-Control", "no-store");
+            }
+            httpServletResponse.setIntHeader("Retry-After",
+                    admissionControl.getRetryAfterSeconds(request));
+            httpServletResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many "
+                    + request + " requests are in progress - please try again later");
+        }
+        return permit;
+    }
+
+    /**
+     * Finishes a request whose work has been stopped. If the client has gone
+     * away there is no-one to send a response to, otherwise it is told that
+     * the request took too long.
+     */
+    private void requestCancelled(CancellationToken token, HttpServletResponse httpServletResponse)
+            throws IOException {
+        ncwmsCatalogue.getRequestDeadlines().cancelled(token);
+        if (token.getReason() == CancellationToken.Reason.CLIENT_DISCONNECTED) {
+            log.debug("Stopped {} request abandoned by the client", token.getRequest());
+            return;
+        }
+        log.warn("Stopped {} request which exceeded its deadline", token.getRequest());
+        if (!httpServletResponse.isCommitted()) {
+            httpServletResponse.setHeader("Cache-Control", "no-store");
+            httpServletResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "The " + token.getRequest() + " request took too long to process");
+        }
+    }
+
+    /**
+     * Adds validators and a Cache-Control header to the response to a WMS
+     * request. These are calculated from the request and the versions of the
+     * datasets it uses, so that conditional requests can be answered without
+     * reading any data.
+     *
+     * @param newParams
+     *            The parameters which have been rewritten to include the
+     *            dataset
+     * @return Whether the client already has the current response, in which
+     *         case only a 304 (Not Modified) status should be sent
+     */
+    private boolean writeCacheHeaders(String request, RequestParams params,
+            HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+            Map<String, String> newParams) {
+        Set<String> datasetIds;
+        try {
+            datasetIds = getDatasetIds(params);
+        } catch (EdalLayerNotFoundException e) {
+            /*
+             * The request will fail, and report this in the usual way
+             */
+            return false;
+        }
+        httpServletResponse.setHeader("Cache-Control",
+                HttpCaching.getCacheControl(ncwmsCatalogue, request, datasetIds));
+
+        @SuppressWarnings("unchecked")
+        Map<String, String[]> parameters = httpServletRequest.getParameterMap();
+        HttpCaching.Validators validators = HttpCaching.getValidators(ncwmsCatalogue,
+                httpServletRequest.getRequestURL() + "|"
+                        + WmsRequestKey.canonicalise(parameters, newParams), datasetIds);
+        if (validators == null) {
+            return false;
+        }
+        validators.write(httpServletResponse);
+        return validators.isNotModified(httpServletRequest);
+    }
+
+    /**
+     * @return The IDs of all datasets named in a request, either directly or
+     *         as part of a layer name
+     * @throws EdalLayerNotFoundException
+     *             If a layer name does not belong to any dataset
+     */
+    private Set<String> getDatasetIds(RequestParams params) throws EdalLayerNotFoundException {
+        Set<String> datasetIds = new TreeSet<>();
+        String dataset = params.getString("DATASET");
+        if (dataset != null) {
+            datasetIds.add(dataset);
+        }
+        for (String layerParam : LAYER_PARAMETERS) {
+            String layerNames = params.getString(layerParam);
+            if (layerNames != null) {
+                for (String layerName : layerNames.split(",")) {
+                    datasetIds.add(ncwmsCatalogue.getLayerNameMapper().getDatasetIdFromLayerName(
+                            layerName));
+                }
+            }
+        }
+        return datasetIds;
+    }
+
+    /**
+     * Capabilities documents are only cached for the whole server or for
+     * statically-configured datasets, since only changes to these are tracked
+     * by the catalogue version.
+     */
+    private boolean isCapabilitiesCacheable(String dataset) {
+        return ncwmsCatalogue != null
+                && (dataset == null || ncwmsCatalogue.getConfig().getDatasetInfo(dataset) != null);
+    }
+
+    /**
+     * Serves a capabilities document from the cache, rendering it first if the
+     * catalogue has changed since it was cached. Concurrent requests for the
+     * same uncached document share a single rendering.
+     */
+    private void dispatchCachedCapabilities(final String request, final RequestParams params,
+            final HttpServletRequest httpServletRequest,
+            final HttpServletResponse httpServletResponse, final WmsCatalogue catalogue,
+            String dataset) throws Exception {
+        /*
+         * The document contains the URL used to request it, so that is part of
+         * the key along with everything else which affects its content
+         */
+        final String key = httpServletRequest.getRequestURL() + "|" + params.getString("VERSION")
+                + "|" + dataset + "|" + crsCodesKey;
+        final long version = ncwmsCatalogue.getCatalogueVersion();
+
+        CapabilitiesCache.Document document = capabilitiesCache.get(key, version);
+        if (document == null) {
+            RenderedCapabilities rendered;
+            try {
+                rendered = capabilitiesRenders.get(key, new Callable<RenderedCapabilities>() {
+                    @Override
+                    public RenderedCapabilities call() throws Exception {
+                        return renderCapabilities(key, version, request, params,
+                                httpServletRequest, detached(httpServletResponse), catalogue);
+                    }
+                });
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+            if (rendered.document == null) {
+                /*
+                 * Not a successful response, so it is not cached, but there is
+                 * no need to generate it again
+                 */
+                if (ncwmsCatalogue.getConfig().getHttpCacheInfo().isEnabled()) {
+                    httpServletResponse.setHeader("Cache-Control", "no-store");
+                }
+                rendered.error.writeTo(httpServletResponse);
+                return;
+            }
+            document = rendered.document;
+        }
+        if (ncwmsCatalogue.getConfig().getHttpCacheInfo().isEnabled()) {
+            httpServletResponse.setHeader("Cache-Control", HttpCaching.getCacheControl(
+                    ncwmsCatalogue, request, dataset == null ? Collections.<String> emptySet()
+                            : Collections.singleton(dataset)));
+        }
+        document.write(httpServletRequest, httpServletResponse);
+    }
+
+    /**
+     * Builds the key used to cache a GetMap response. This is the canonical
+     * form of the request (after any dataset has been combined with the layer
+     * names) along with the current version of each dataset it uses, so that
+     * images are no longer used once their datasets have been refreshed.
+     *
+     * @return The key, or <code>null</code> if the response should not be
+     *         cached
+     */
+    private String getImageKey(RequestParams params, HttpServletRequest httpServletRequest,
+            Map<String, String> newParams) {
+        if (ncwmsCatalogue == null || httpServletRequest.getAttribute(NO_IMAGE_CACHE) != null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String[]> parameters = httpServletRequest.getParameterMap();
+        return getImageKey(ncwmsCatalogue, parameters, newParams, params.getString("LAYERS"));
+    }
+
+    /**
+     * Builds the key used to cache a GetMap response
+     *
+     * @param catalogue
+     *            The catalogue containing the requested layers
+     * @param parameters
+     *            The parameters of the request
+     * @param overrides
+     *            Parameters which replace those of the request (e.g. after
+     *            combining the dataset with the layer names). May be
+     *            <code>null</code>.
+     * @param layersStr
+     *            The comma-separated layer names, after any overrides
+     * @return The key, or <code>null</code> if the response should not be
+     *         cached
+     */
+    static String getImageKey(NcwmsCatalogue catalogue, Map<String, String[]> parameters,
+            Map<String, String> overrides, String layersStr) {
+        if (catalogue.getRenderedImageCache() == null
+                || !catalogue.getRenderedImageCache().isEnabled() || layersStr == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(WmsRequestKey.canonicalise(parameters, overrides));
+        for (String layer : layersStr.split(",")) {
+            String datasetId;
+            try {
+                datasetId = catalogue.getLayerNameMapper().getDatasetIdFromLayerName(layer);
+            } catch (EdalLayerNotFoundException e) {
+                return null;
+            }
+            /*
+             * Datasets which are not yet loaded have no version. These are
+             * rendered without caching, which will load them.
+             */
+            Long version = catalogue.getDatasetVersion(datasetId);
+            if (version == null) {
+                return null;
+            }
+            key.append('|').append(datasetId).append('@').append(version);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Handles a GetMap or GetMetadata request. Identical requests which arrive
+     * whilst one is being generated wait for it and are all sent its result,
+     * rather than each reading the data again. Map images are also served from
+     * (and stored in) the rendered image cache where possible.
+     *
+     * @param newParams
+     *            The parameters which have been rewritten to include the
+     *            dataset
+     * @param imageKey
+     *            The key of the image in the rendered image cache, or
+     *            <code>null</code> if it should not be cached
+     */
+    private void dispatchShared(final String request, final RequestParams params,
+            final HttpServletRequest httpServletRequest,
+            final HttpServletResponse httpServletResponse, final WmsCatalogue catalogue,
+            Map<String, String> newParams, final String imageKey) throws Exception {
+        String key;
+        if (imageKey != null) {
+            key = imageKey;
+        } else {
+            @SuppressWarnings("unchecked")
+            Map<String, String[]> parameters = httpServletRequest.getParameterMap();
+            key = WmsRequestKey.canonicalise(parameters, newParams);
+        }
+        /*
+         * Some responses (e.g. KMZ) refer back to the server by the URL used
+         */
+        key = httpServletRequest.getRequestURL() + "|" + key;
+
+        CapturedResponse response;
+        try {
+            response = sharedRequests.get(key, new Callable<CapturedResponse>() {
+                @Override
+                public CapturedResponse call() throws Exception {
+                    return renderShared(imageKey, request, params, httpServletRequest,
+                            detached(httpServletResponse), catalogue);
+                }
+            }, SHARED_REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            /*
+             * Every caller receives the original error, and reports it in the
+             * usual way
+             */
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } catch (TimeoutException e) {
+            log.warn("Timed out waiting for identical in-flight request: {}", key);
+            httpServletResponse.setHeader("Cache-Control", "no-store");
+            httpServletResponse.setIntHeader("Retry-After", SHARED_REQUEST_TIMEOUT_SECONDS);
+            httpServletResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Timed out waiting for an identical request to complete");
+            return;
+        }
+        response.writeTo(httpServletResponse);
+    }
+
+    /**
+     * Work shared with other requests runs under its own token (see
+     * {@link SingleFlight}), so must not be stopped by the cancellation of the
+     * request which happens to run it
+     *
+     * @return The response without any {@link CancellableResponseWrapper}
+     */
+    private static HttpServletResponse detached(HttpServletResponse httpServletResponse) {
+        if (httpServletResponse instanceof CancellableResponseWrapper) {
+            return (HttpServletResponse) ((CancellableResponseWrapper) httpServletResponse)
+                    .getResponse();
+        }
+        return httpServletResponse;
+    }
+
+    private CapturedResponse renderShared(String imageKey, String request, RequestParams params,
+            HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+            WmsCatalogue catalogue) throws Exception {
+        CapturedResponse response = null;
+        if ("GetMap".equalsIgnoreCase(request)) {
+            response = renderBanded(params, catalogue);
+        }
+        if (response == null) {
+            CapturingResponseWrapper capture = new CapturingResponseWrapper(httpServletResponse);
+            super.dispatchWmsRequest(request, params, httpServletRequest, capture, catalogue);
+            response = capture.getCapturedResponse();
+        }
+        if (imageKey != null && response.isImage()) {
+            /*
+             * Only successfully-rendered images are cached. Other formats
+             * (e.g. KMZ) may depend on headers which we do not store.
+             */
+            ncwmsCatalogue.getRenderedImageCache().put(imageKey, response.getContent(),
+                    response.getContentType());
+        }
+        return response;
+    }
+
+    /**
+     * Renders a large GetMap image as a number of bands in parallel. The bands
+     * are rendered on the executor for parts of requests, and decoded and
+     * joined on the render pool.
+     *
+     * @return The response, or <code>null</code> if the image should be
+     *         rendered in one piece
+     * @see BandedRendering
+     */
+    private CapturedResponse renderBanded(RequestParams params, final WmsCatalogue catalogue)
+            throws Exception {
+        if (ncwmsCatalogue == null || ncwmsCatalogue.getRequestExecutors() == null) {
+            return null;
+        }
+        RequestExecutors executors = ncwmsCatalogue.getRequestExecutors();
+        NcwmsServerInfo serverInfo = ncwmsCatalogue.getConfig().getServerInfo();
+        /*
+         * The number of bands follows the size of the render pool, which
+         * decodes and joins them
+         */
+        BandedRendering banded = BandedRendering.plan(params, ncwmsCatalogue.getConfig()
+                .getProcessingInfo().getBandedRenderingPixels(), serverInfo.getMaxImageWidth(),
+                serverInfo.getMaxImageHeight(), executors.getRenderPool().getParallelism());
+        if (banded == null) {
+            return null;
+        }
+        log.debug("Rendering GetMap image in {} bands", banded.getBandCount());
+        return banded.render(executors.getPartExecutor(), executors.getRenderPool(),
+                new BandedRendering.BandRenderer() {
+                    @Override
+                    public CapturedResponse render(RequestParams bandParams)
+                            throws Exception {
+                        return renderBand(bandParams, catalogue);
+                    }
+                });
+    }
+
+    /**
+     * Renders one band of a banded GetMap image. This bypasses all of the
+     * handling of client requests, which has already been applied to the
+     * whole image.
+     */
+    private CapturedResponse renderBand(RequestParams bandParams, WmsCatalogue catalogue)
+            throws Exception {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(NO_IMAGE_CACHE, Boolean.TRUE);
+        attributes.put(OFFLINE_REQUEST, Boolean.TRUE);
+        CapturingResponseWrapper capture = new CapturingResponseWrapper(
+                OfflineRequests.response());
+        super.dispatchWmsRequest("GetMap", bandParams,
+                OfflineRequests.request(Collections.<String, String[]> emptyMap(), attributes),
+                capture, catalogue);
+        return capture.getCapturedResponse();
+    }
+
+    private RenderedCapabilities renderCapabilities(String key, long version, String request,
+            RequestParams params, HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse, WmsCatalogue catalogue) throws Exception {
+        CapturingResponseWrapper capture = new CapturingResponseWrapper(httpServletResponse);
+        super.dispatchWmsRequest(request, params, httpServletRequest, capture, catalogue);
+        if (capture.getCapturedStatus() != HttpServletResponse.SC_OK) {
+            return new RenderedCapabilities(null, capture.getCapturedResponse());
+        }
+        return new RenderedCapabilities(capabilitiesCache.put(key, version, capture.getContent(),
+                capture.getCapturedContentType()), null);
+    }
+
+    /**
+     * The result of rendering a capabilities document: either the cached
+     * document, or the error response which was generated instead
+     */
+    private static final class RenderedCapabilities {
+        private final CapabilitiesCache.Document document;
+        private final CapturedResponse error;
+
+        private RenderedCapabilities(CapabilitiesCache.Document document, CapturedResponse error) {
+            this.document = document;
+            this.error = error;
+        }
     }
 
     /**
@@ -0,0 +1,872 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.ImageIO;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.app.event.EventCartridge;
+import org.apache.velocity.app.event.implement.EscapeXmlReference;
+import org.opengis.metadata.extent.GeographicBoundingBox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+import uk.ac.rdg.resc.edal.dataset.Dataset;
+import uk.ac.rdg.resc.edal.graphics.exceptions.EdalLayerNotFoundException;
+import uk.ac.rdg.resc.edal.metadata.VariableMetadata;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDatasetSettings;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsServerInfo;
+
+/**
+ * Serves map tiles from fixed tile grids (see {@link TileMatrixSet}), so that
+ * they can be cached by browsers and proxies. Three forms of request are
+ * supported:
+ * 
+ * <ul>
+ * <li>WMTS KVP, e.g.
+ * <code>/wmts?SERVICE=WMTS&amp;REQUEST=GetTile&amp;LAYER=dataset/var&amp;TILEMATRIXSET=EPSG:3857&amp;TILEMATRIX=3&amp;TILEROW=2&amp;TILECOL=5</code>
+ * </li>
+ * <li>WMTS REST, i.e.
+ * <code>/wmts/{layer}/{style}/{TileMatrixSet}/{TileMatrix}/{TileRow}/{TileCol}.png</code>
+ * </li>
+ * <li>XYZ tiles in spherical mercator, i.e. <code>/tiles/{layer}/{z}/{x}/{y}.png</code>
+ * </li>
+ * </ul>
+ * 
+ * Any other parameters (e.g. TIME, ELEVATION, COLORSCALERANGE) are passed
+ * through unchanged. Tiles are rendered by converting the request to a WMS
+ * GetMap request and passing it to the {@link NcwmsServlet}, so they use the
+ * same rendering and caching as any other map.
+ * 
+ * If a metatile factor has been configured for a dataset (see
+ * {@link NcwmsDatasetSettings#getMetatileFactor()}), 32-bit PNG tiles are
+ * rendered in blocks which are then cut up and stored in the rendered image
+ * cache.
+ */
+public class NcwmsTileServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private static final Logger log = LoggerFactory.getLogger(NcwmsTileServlet.class);
+
+    private static final String WMS_SERVLET_NAME = "NcwmsServlet";
+    private static final String XYZ_SERVLET_PATH = "/tiles";
+    private static final String REST_CAPABILITIES_PATH = "/1.0.0/WMTSCapabilities.xml";
+    private static final String DEFAULT_STYLE = "default";
+    private static final String DEFAULT_FORMAT = "image/png";
+    /*
+     * The only format whose tiles can be cut from a metatile and still be
+     * identical to tiles rendered on their own. Plain PNGs are encoded with a
+     * palette chosen for the whole image, and JPEGs would be compressed twice.
+     */
+    private static final String METATILE_FORMAT = "image/png;mode=32bit";
+    private static final int METATILE_TIMEOUT_SECONDS = 60;
+    private static final int MAX_CACHED_CAPABILITIES = 16;
+
+    private NcwmsCatalogue catalogue;
+    private VelocityEngine velocityEngine;
+    /*
+     * Ensures that each metatile is only rendered once when several of its
+     * tiles are requested at the same time
+     */
+    private final SingleFlight<String, Boolean> metatileRenders = new SingleFlight<>();
+    private final CapabilitiesCache capabilitiesCache = new CapabilitiesCache(
+            MAX_CACHED_CAPABILITIES);
+
+    @Override
+    public void init(ServletConfig servletConfig) throws ServletException {
+        super.init(servletConfig);
+        /*
+         * Retrieve the pre-loaded catalogue and velocity engine
+         */
+        Object config = servletConfig.getServletContext().getAttribute(
+                NcwmsApplicationServlet.CONTEXT_NCWMS_CATALOGUE);
+        if (config instanceof NcwmsCatalogue) {
+            catalogue = (NcwmsCatalogue) config;
+        } else {
+            throw new ServletException("ncWMS configuration object is incorrect type.  The \""
+                    + NcwmsApplicationServlet.CONTEXT_NCWMS_CATALOGUE
+                    + "\" attribute of the ServletContext has been incorrectly set.");
+        }
+        Object engine = servletConfig.getServletContext().getAttribute(
+                NcwmsApplicationServlet.CONTEXT_VELOCITY_ENGINE);
+        if (engine instanceof VelocityEngine) {
+            velocityEngine = (VelocityEngine) engine;
+        } else {
+            throw new ServletException("VelocityEngine object is incorrect type.  The \""
+                    + NcwmsApplicationServlet.CONTEXT_VELOCITY_ENGINE
+                    + "\" attribute of the ServletContext has been incorrectly set.");
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        String path = request.getPathInfo();
+        try {
+            if (XYZ_SERVLET_PATH.equals(request.getServletPath())) {
+                dispatchTile(parseXyzPath(path), request, response);
+            } else if (path == null || "/".equals(path)) {
+                /*
+                 * KVP request
+                 */
+                String operation = getParameter(request, "REQUEST");
+                if ("GetCapabilities".equalsIgnoreCase(operation)) {
+                    writeCapabilities(getParameter(request, "DATASET"), request, response);
+                } else if ("GetTile".equalsIgnoreCase(operation)) {
+                    dispatchTile(parseKvp(request), request, response);
+                } else {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                            "REQUEST must be GetCapabilities or GetTile");
+                }
+            } else if (REST_CAPABILITIES_PATH.equals(path)) {
+                writeCapabilities(getParameter(request, "DATASET"), request, response);
+            } else {
+                dispatchTile(parseRestPath(path), request, response);
+            }
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Parses <code>/{layer}/{z}/{x}/{y}.{ext}</code>
+     */
+    private TileRequest parseXyzPath(String path) {
+        String[] parts = splitPath(path, 4);
+        int lastPart = parts.length - 1;
+        String[] rowAndFormat = splitExtension(parts[lastPart]);
+        TileRequest tile = new TileRequest();
+        tile.layer = joinLayer(parts, lastPart - 3);
+        tile.style = DEFAULT_STYLE;
+        tile.tileMatrixSet = TileMatrixSet.WEB_MERCATOR;
+        tile.zoom = parseIndex(parts[lastPart - 2], "zoom level");
+        tile.col = parseIndex(parts[lastPart - 1], "x");
+        tile.row = parseIndex(rowAndFormat[0], "y");
+        tile.format = rowAndFormat[1];
+        if (TileMatrixSet.forIdentifier(tile.tileMatrixSet.getIdentifier(),
+                getSupportedCrsCodes()) == null) {
+            throw new IllegalArgumentException(tile.tileMatrixSet.getCrsCode()
+                    + " is not supported by this server");
+        }
+        return tile;
+    }
+
+    /**
+     * Parses
+     * <code>/{layer}/{style}/{TileMatrixSet}/{TileMatrix}/{TileRow}/{TileCol}.{ext}</code>
+     */
+    private TileRequest parseRestPath(String path) {
+        String[] parts = splitPath(path, 6);
+        int lastPart = parts.length - 1;
+        String[] colAndFormat = splitExtension(parts[lastPart]);
+        TileRequest tile = new TileRequest();
+        tile.layer = joinLayer(parts, lastPart - 5);
+        tile.style = parts[lastPart - 4];
+        tile.tileMatrixSet = getTileMatrixSet(parts[lastPart - 3]);
+        tile.zoom = parseIndex(parts[lastPart - 2], "TileMatrix");
+        tile.row = parseIndex(parts[lastPart - 1], "TileRow");
+        tile.col = parseIndex(colAndFormat[0], "TileCol");
+        tile.format = colAndFormat[1];
+        return tile;
+    }
+
+    private TileRequest parseKvp(HttpServletRequest request) {
+        TileRequest tile = new TileRequest();
+        tile.layer = getMandatoryParameter(request, "LAYER");
+        tile.style = getParameter(request, "STYLE");
+        tile.tileMatrixSet = getTileMatrixSet(getMandatoryParameter(request, "TILEMATRIXSET"));
+        tile.zoom = parseIndex(getMandatoryParameter(request, "TILEMATRIX"), "TILEMATRIX");
+        tile.row = parseIndex(getMandatoryParameter(request, "TILEROW"), "TILEROW");
+        tile.col = parseIndex(getMandatoryParameter(request, "TILECOL"), "TILECOL");
+        tile.format = getParameter(request, "FORMAT");
+        if (tile.format == null) {
+            tile.format = DEFAULT_FORMAT;
+        }
+        return tile;
+    }
+
+    private static String[] splitPath(String path, int minParts) {
+        String[] parts = path == null ? new String[0] : path.replaceAll("^/+", "").split("/");
+        if (parts.length < minParts) {
+            throw new IllegalArgumentException("Tile path must have at least " + minParts
+                    + " parts");
+        }
+        return parts;
+    }
+
+    /**
+     * Layer names may contain slashes, so they are made up of all parts of the
+     * path before the tile identifiers
+     */
+    private static String joinLayer(String[] parts, int nLayerParts) {
+        StringBuilder layer = new StringBuilder();
+        for (int i = 0; i < nLayerParts; i++) {
+            if (i > 0) {
+                layer.append('/');
+            }
+            layer.append(parts[i]);
+        }
+        return layer.toString();
+    }
+
+    /**
+     * Splits e.g. "5.png" into "5" and "image/png"
+     */
+    private static String[] splitExtension(String part) {
+        int dot = part.lastIndexOf('.');
+        if (dot < 0) {
+            return new String[] { part, DEFAULT_FORMAT };
+        }
+        String extension = part.substring(dot + 1).toLowerCase(Locale.ROOT);
+        String format;
+        if ("png".equals(extension)) {
+            format = "image/png";
+        } else if ("jpg".equals(extension) || "jpeg".equals(extension)) {
+            format = "image/jpeg";
+        } else if ("gif".equals(extension)) {
+            format = "image/gif";
+        } else {
+            throw new IllegalArgumentException("Unsupported tile format: " + extension);
+        }
+        return new String[] { part.substring(0, dot), format };
+    }
+
+    private static int parseIndex(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer");
+        }
+    }
+
+    private TileMatrixSet getTileMatrixSet(String identifier) {
+        TileMatrixSet tileMatrixSet = TileMatrixSet.forIdentifier(identifier,
+                getSupportedCrsCodes());
+        if (tileMatrixSet == null) {
+            throw new IllegalArgumentException("Unknown tile matrix set: " + identifier);
+        }
+        return tileMatrixSet;
+    }
+
+    private String[] getSupportedCrsCodes() {
+        return catalogue.getSupportedNcwmsCrsCodes().getSupportedCrsCodes();
+    }
+
+    /**
+     * Renders a tile by passing the equivalent GetMap request to the WMS
+     * servlet
+     */
+    private void dispatchTile(TileRequest tile, HttpServletRequest request,
+            HttpServletResponse response) throws ServletException, IOException {
+        double[] bounds = tile.tileMatrixSet.getTileBounds(tile.zoom, tile.row, tile.col);
+        int tileSize = tile.tileMatrixSet.getTileSize();
+        Map<String, String[]> getMapParams = getMapParameters(tile, request, bounds, tileSize,
+                tileSize);
+
+        RequestDispatcher dispatcher = getServletContext().getNamedDispatcher(WMS_SERVLET_NAME);
+        if (dispatcher == null) {
+            log.error("Cannot find the WMS servlet to render tiles with");
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+
+        int metatileFactor = getMetatileFactor(tile);
+        if (metatileFactor > 1) {
+            String key = NcwmsServlet.getImageKey(catalogue, getMapParams, null, tile.layer);
+            if (key != null && !catalogue.getRenderedImageCache().contains(key)) {
+                renderMetatile(tile, metatileFactor, request, response, dispatcher);
+            }
+        }
+        /*
+         * If a metatile has been rendered, this will be served from the image
+         * cache
+         */
+        dispatcher.forward(new GetMapRequest(request, getMapParams, false), response);
+    }
+
+    /**
+     * @return The GetMap parameters needed to render the given area for a tile
+     *         request
+     */
+    private static Map<String, String[]> getMapParameters(TileRequest tile,
+            HttpServletRequest request, double[] bounds, int width, int height) {
+        @SuppressWarnings("unchecked")
+        Map<String, String[]> requestParams = request.getParameterMap();
+        return getMapParameters(tile.layer, tile.style, tile.tileMatrixSet, tile.format,
+                requestParams, bounds, width, height);
+    }
+
+    /**
+     * Builds the GetMap parameters needed to render an area of a tile matrix
+     * set. The same parameters (and hence the same image cache keys) are used
+     * for any tile, however it was requested.
+     *
+     * @param layer
+     *            The layer name
+     * @param style
+     *            The style name, or <code>null</code> for the default style
+     * @param tileMatrixSet
+     *            The tile matrix set
+     * @param format
+     *            The image MIME type
+     * @param requestParams
+     *            Any other parameters (e.g. TIME, ELEVATION) to pass on
+     * @param bounds
+     *            The area to render, as [minx, miny, maxx, maxy]
+     * @param width
+     *            The width of the image
+     * @param height
+     *            The height of the image
+     * @return The GetMap parameters, with upper-case names
+     */
+    static Map<String, String[]> getMapParameters(String layer, String style,
+            TileMatrixSet tileMatrixSet, String format, Map<String, String[]> requestParams,
+            double[] bounds, int width, int height) {
+        Map<String, String[]> getMapParams = new HashMap<>();
+        for (Entry<String, String[]> param : requestParams.entrySet()) {
+            getMapParams.put(param.getKey().toUpperCase(Locale.ROOT), param.getValue());
+        }
+        /*
+         * Remove the WMTS parameters which have no WMS equivalent. Layer names
+         * always include the dataset, so DATASET is not needed either.
+         */
+        for (String wmtsParam : new String[] { "LAYER", "STYLE", "TILEMATRIXSET", "TILEMATRIX",
+                "TILEROW", "TILECOL", "DATASET" }) {
+            getMapParams.remove(wmtsParam);
+        }
+        /*
+         * Version 1.1.1 is used so that BBOX is always in x,y order
+         */
+        getMapParams.put("SERVICE", new String[] { "WMS" });
+        getMapParams.put("REQUEST", new String[] { "GetMap" });
+        getMapParams.put("VERSION", new String[] { "1.1.1" });
+        getMapParams.put("LAYERS", new String[] { layer });
+        getMapParams.put("STYLES", new String[] { style == null
+                || DEFAULT_STYLE.equalsIgnoreCase(style) ? "" : style });
+        getMapParams.put("SRS", new String[] { tileMatrixSet.getCrsCode() });
+        getMapParams.put("BBOX", new String[] { bounds[0] + "," + bounds[1] + "," + bounds[2]
+                + "," + bounds[3] });
+        getMapParams.put("WIDTH", new String[] { String.valueOf(width) });
+        getMapParams.put("HEIGHT", new String[] { String.valueOf(height) });
+        getMapParams.put("FORMAT", new String[] { format });
+        if (!getMapParams.containsKey("TRANSPARENT")) {
+            getMapParams.put("TRANSPARENT", new String[] { "true" });
+        }
+        return getMapParams;
+    }
+
+    /**
+     * @return The number of tiles along each side of the metatile which should
+     *         be used to render the given tile, or 1 if it should be rendered
+     *         on its own
+     */
+    private int getMetatileFactor(TileRequest tile) {
+        if (catalogue.getRenderedImageCache() == null
+                || !catalogue.getRenderedImageCache().isEnabled()) {
+            /*
+             * There would be nowhere to keep the other tiles
+             */
+            return 1;
+        }
+        return getConfiguredMetatileFactor(catalogue, tile.layer, tile.format,
+                tile.tileMatrixSet.getTileSize());
+    }
+
+    /**
+     * @return The number of tiles along each side of the metatiles which the
+     *         dataset of the given layer is configured to use, or 1 if tiles
+     *         of this format cannot be rendered in metatiles
+     */
+    static int getConfiguredMetatileFactor(NcwmsCatalogue catalogue, String layer,
+            String format, int tileSize) {
+        if (!METATILE_FORMAT.equals(format)) {
+            return 1;
+        }
+        String datasetId;
+        try {
+            datasetId = catalogue.getLayerNameMapper().getDatasetIdFromLayerName(layer);
+        } catch (EdalLayerNotFoundException e) {
+            return 1;
+        }
+        int factor = catalogue.getConfig().getSettingsForDataset(datasetId).getMetatileFactor();
+        /*
+         * The metatile must not be larger than the largest allowed GetMap
+         */
+        NcwmsServerInfo serverInfo = catalogue.getConfig().getServerInfo();
+        int maxFactor = Math.min(serverInfo.getMaxImageWidth(), serverInfo.getMaxImageHeight())
+                / tileSize;
+        return Math.max(1, Math.min(factor, maxFactor));
+    }
+
+    /**
+     * Renders the metatile containing the given tile, and stores each of the
+     * tiles it contains in the rendered image cache. Concurrent requests for
+     * tiles in the same metatile share a single rendering.
+     */
+    private void renderMetatile(final TileRequest tile, int factor,
+            final HttpServletRequest request, final HttpServletResponse response,
+            final RequestDispatcher dispatcher) {
+        TileMatrixSet tileMatrixSet = tile.tileMatrixSet;
+        final int metaRow = tile.row / factor * factor;
+        final int metaCol = tile.col / factor * factor;
+        /*
+         * Metatiles at the edge of the matrix may be smaller
+         */
+        final int nRows = Math.min(factor, tileMatrixSet.getMatrixHeight(tile.zoom) - metaRow);
+        final int nCols = Math.min(factor, tileMatrixSet.getMatrixWidth(tile.zoom) - metaCol);
+        final int tileSize = tileMatrixSet.getTileSize();
+
+        double[] topLeft = tileMatrixSet.getTileBounds(tile.zoom, metaRow, metaCol);
+        double[] bottomRight = tileMatrixSet.getTileBounds(tile.zoom, metaRow + nRows - 1,
+                metaCol + nCols - 1);
+        final Map<String, String[]> metatileParams = getMapParameters(tile, request,
+                new double[] { topLeft[0], bottomRight[1], bottomRight[2], topLeft[3] }, nCols
+                        * tileSize, nRows * tileSize);
+
+        try {
+            metatileRenders.get(WmsRequestKey.canonicalise(metatileParams, null),
+                    new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws Exception {
+                            CapturingResponseWrapper capture = new CapturingResponseWrapper(
+                                    response);
+                            dispatcher.forward(new GetMapRequest(request, metatileParams, true),
+                                    capture);
+                            storeTiles(tile, metaRow, metaCol, nRows, nCols,
+                                    capture.getCapturedResponse(), request);
+                            return Boolean.TRUE;
+                        }
+                    }, METATILE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            /*
+             * The tile will be rendered on its own, which will report any
+             * problem with the request
+             */
+            log.debug("Problem rendering metatile", e.getCause());
+        } catch (TimeoutException e) {
+            log.debug("Timed out waiting for metatile - rendering tile on its own");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cuts a rendered metatile into tiles, and stores them in the rendered
+     * image cache with the same keys as if they had been requested
+     * individually
+     */
+    private void storeTiles(TileRequest tile, int metaRow, int metaCol, int nRows, int nCols,
+            CapturedResponse metatile, HttpServletRequest request) throws IOException {
+        int tileSize = tile.tileMatrixSet.getTileSize();
+        /*
+         * Encoding the tiles is CPU-bound, so is shared out on the render pool
+         */
+        RequestExecutors executors = catalogue.getRequestExecutors();
+        byte[][][] tiles = splitMetatile(metatile, nRows, nCols, tileSize,
+                executors == null ? null : executors.getRenderPool());
+        if (tiles == null) {
+            return;
+        }
+        RenderedImageCache imageCache = catalogue.getRenderedImageCache();
+        for (int i = 0; i < nRows; i++) {
+            for (int j = 0; j < nCols; j++) {
+                double[] bounds = tile.tileMatrixSet.getTileBounds(tile.zoom, metaRow + i,
+                        metaCol + j);
+                String key = NcwmsServlet.getImageKey(catalogue,
+                        getMapParameters(tile, request, bounds, tileSize, tileSize), null,
+                        tile.layer);
+                if (key == null) {
+                    return;
+                }
+                imageCache.put(key, tiles[i][j], metatile.getContentType());
+            }
+        }
+    }
+
+    /**
+     * Cuts a rendered metatile into encoded tiles
+     *
+     * @param metatile
+     *            The rendered metatile, as a 32-bit PNG
+     * @param nRows
+     *            The number of rows of tiles in the metatile
+     * @param nCols
+     *            The number of columns of tiles in the metatile
+     * @param tileSize
+     *            The width and height of each tile
+     * @return The encoded tiles, indexed by row then column, or
+     *         <code>null</code> if the response is not a metatile of the
+     *         expected size
+     * @throws IOException
+     *             If the metatile cannot be decoded or the tiles encoded
+     */
+    static byte[][][] splitMetatile(CapturedResponse metatile, int nRows, int nCols,
+            int tileSize) throws IOException {
+        return splitMetatile(metatile, nRows, nCols, tileSize, null);
+    }
+
+    /**
+     * Cuts a rendered metatile into encoded tiles, encoding the tiles in
+     * parallel
+     *
+     * @param executor
+     *            The executor to encode the tiles on, or <code>null</code> to
+     *            encode them on the current thread
+     * @see #splitMetatile(CapturedResponse, int, int, int)
+     */
+    static byte[][][] splitMetatile(CapturedResponse metatile, int nRows, int nCols,
+            final int tileSize, ExecutorService executor) throws IOException {
+        if (!metatile.isImage()) {
+            return null;
+        }
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(metatile.getContent()));
+        if (image == null || image.getWidth() != nCols * tileSize
+                || image.getHeight() != nRows * tileSize) {
+            return null;
+        }
+        byte[][][] tiles = new byte[nRows][nCols][];
+        if (executor == null) {
+            for (int i = 0; i < nRows; i++) {
+                for (int j = 0; j < nCols; j++) {
+                    tiles[i][j] = encodeTile(image, i, j, tileSize);
+                }
+            }
+            return tiles;
+        }
+
+        List<Callable<byte[]>> tasks = new ArrayList<>();
+        for (int i = 0; i < nRows; i++) {
+            for (int j = 0; j < nCols; j++) {
+                final int row = i;
+                final int col = j;
+                tasks.add(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return encodeTile(image, row, col, tileSize);
+                    }
+                });
+            }
+        }
+        try {
+            List<Future<byte[]>> encoded = executor.invokeAll(tasks);
+            for (int i = 0; i < nRows; i++) {
+                for (int j = 0; j < nCols; j++) {
+                    tiles[i][j] = encoded.get(i * nCols + j).get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted whilst encoding tiles", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Problem encoding tiles", e.getCause());
+        }
+        return tiles;
+    }
+
+    /**
+     * Encodes a tile in the same way as EDAL encodes a 32-bit PNG, i.e. from
+     * an ARGB image, so that it is identical to the tile rendered on its own
+     */
+    private static byte[] encodeTile(BufferedImage image, int row, int col, int tileSize)
+            throws IOException {
+        int[] pixels = image.getRGB(col * tileSize, row * tileSize, tileSize, tileSize, null, 0,
+                tileSize);
+        BufferedImage tileImage = new BufferedImage(tileSize, tileSize,
+                BufferedImage.TYPE_INT_ARGB);
+        tileImage.setRGB(0, 0, tileSize, tileSize, pixels, 0, tileSize);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(tileImage, "png", encoded);
+        return encoded.toByteArray();
+    }
+
+    private void writeCapabilities(String datasetId, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        /*
+         * Only documents for the whole server or for configured datasets are
+         * cached, since only changes to these are tracked by the catalogue
+         * version
+         */
+        boolean cacheable = datasetId == null
+                || catalogue.getConfig().getDatasetInfo(datasetId) != null;
+        String key = request.getRequestURL() + "|" + datasetId + "|"
+                + Arrays.toString(getSupportedCrsCodes());
+        long version = catalogue.getCatalogueVersion();
+        if (cacheable) {
+            CapabilitiesCache.Document document = capabilitiesCache.get(key, version);
+            if (document != null) {
+                document.write(request, response);
+                return;
+            }
+        }
+
+        List<TileLayer> layers = new ArrayList<>();
+        if (datasetId != null) {
+            Dataset dataset = catalogue.getDatasetFromId(datasetId);
+            if (dataset == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown dataset: "
+                        + datasetId);
+                return;
+            }
+            addLayers(dataset, layers);
+        } else if (!catalogue.getConfig().getServerInfo().allowsGlobalCapabilities()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "Capabilities must be requested for a single DATASET");
+            return;
+        } else {
+            /*
+             * Only the datasets which are already loaded (or described by a
+             * snapshot), so that lazy datasets are not loaded just to list
+             * them
+             */
+            for (Dataset dataset : catalogue.getAllDatasets()) {
+                DatasetConfig datasetConfig = catalogue.getConfig().getDatasetInfo(dataset.getId());
+                if (datasetConfig != null && !datasetConfig.isDisabled()) {
+                    addLayers(dataset, layers);
+                }
+            }
+        }
+
+        /*
+         * The base URL of the webapp, so that tile URLs can be built from it
+         */
+        String requestUrl = request.getRequestURL().toString();
+        String path = request.getServletPath()
+                + (request.getPathInfo() == null ? "" : request.getPathInfo());
+        String baseUrl = requestUrl.endsWith(path) ? requestUrl.substring(0, requestUrl.length()
+                - path.length()) : requestUrl;
+
+        Template template = velocityEngine.getTemplate("templates/wmts_capabilities.vm");
+        VelocityContext context = new VelocityContext();
+        EventCartridge ec = new EventCartridge();
+        ec.addEventHandler(new EscapeXmlReference());
+        ec.attachToContext(context);
+
+        context.put("serverInfo", catalogue.getConfig().getServerInfo());
+        context.put("layers", layers);
+        context.put("tileMatrixSets", TileMatrixSet.getSupported(getSupportedCrsCodes()));
+        context.put("baseUrl", baseUrl);
+
+        StringWriter xml = new StringWriter();
+        try {
+            template.merge(context, xml);
+        } catch (Exception e) {
+            log.error("Problem writing WMTS capabilities", e);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    "Problem writing WMTS capabilities");
+            return;
+        }
+        byte[] content = xml.toString().getBytes(StandardCharsets.UTF_8);
+        String contentType = "text/xml;charset=UTF-8";
+        if (cacheable) {
+            capabilitiesCache.put(key, version, content, contentType).write(request, response);
+        } else {
+            response.setContentType(contentType);
+            response.setContentLength(content.length);
+            response.getOutputStream().write(content);
+        }
+    }
+
+    private void addLayers(Dataset dataset, List<TileLayer> layers) {
+        for (String variableId : dataset.getVariableIds()) {
+            String layerName = catalogue.getLayerNameMapper().getLayerName(dataset.getId(),
+                    variableId);
+            if (catalogue.isDisabled(layerName)) {
+                continue;
+            }
+            VariableMetadata metadata;
+            try {
+                metadata = dataset.getVariableMetadata(variableId);
+            } catch (Exception e) {
+                log.debug("Cannot get metadata for " + layerName, e);
+                continue;
+            }
+            if (metadata.getHorizontalDomain() == null) {
+                /*
+                 * Cannot be plotted on a map
+                 */
+                continue;
+            }
+            String title = catalogue.getLayerMetadata(metadata).getTitle();
+            layers.add(new TileLayer(layerName, title == null ? layerName : title, metadata
+                    .getHorizontalDomain().getGeographicBoundingBox()));
+        }
+    }
+
+    private static String getParameter(HttpServletRequest request, String name) {
+        /*
+         * Parameter names are not case-sensitive
+         */
+        @SuppressWarnings("unchecked")
+        Enumeration<String> names = request.getParameterNames();
+        while (names.hasMoreElements()) {
+            String paramName = names.nextElement();
+            if (paramName.equalsIgnoreCase(name)) {
+                return request.getParameter(paramName);
+            }
+        }
+        return null;
+    }
+
+    private static String getMandatoryParameter(HttpServletRequest request, String name) {
+        String value = getParameter(request, name);
+        if (value == null) {
+            throw new IllegalArgumentException("Must supply the " + name + " parameter");
+        }
+        return value;
+    }
+
+    private static final class TileRequest {
+        private String layer;
+        private String style;
+        private TileMatrixSet tileMatrixSet;
+        private int zoom;
+        private int row;
+        private int col;
+        private String format;
+    }
+
+    /**
+     * A layer as advertised in the WMTS capabilities document
+     */
+    public static final class TileLayer {
+        private final String name;
+        private final String title;
+        private final GeographicBoundingBox bbox;
+
+        private TileLayer(String name, String title, GeographicBoundingBox bbox) {
+            this.name = name;
+            this.title = title;
+            this.bbox = bbox;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public GeographicBoundingBox getBbox() {
+            return bbox;
+        }
+    }
+
+    /**
+     * A request with its parameters replaced by those of a GetMap request
+     */
+    private static final class GetMapRequest extends HttpServletRequestWrapper {
+        private final Map<String, String[]> parameters;
+
+        private final boolean noImageCache;
+
+        private GetMapRequest(HttpServletRequest request, Map<String, String[]> parameters,
+                boolean noImageCache) {
+            super(request);
+            this.parameters = Collections.unmodifiableMap(parameters);
+            this.noImageCache = noImageCache;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            /*
+             * Not set on the wrapped request, since that is also used to
+             * render the tile itself
+             */
+            if (noImageCache && NcwmsServlet.NO_IMAGE_CACHE.equals(name)) {
+                return Boolean.TRUE;
+            }
+            return super.getAttribute(name);
+        }
+
+        @Override
+        public String getParameter(String name) {
+            String[] values = parameters.get(name);
+            return values == null || values.length == 0 ? null : values[0];
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return parameters;
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(parameters.keySet());
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            return parameters.get(name);
+        }
+
+        @Override
+        public String getPathInfo() {
+            /*
+             * The WMS servlet would treat this as a dataset ID
+             */
+            return null;
+        }
+    }
+}
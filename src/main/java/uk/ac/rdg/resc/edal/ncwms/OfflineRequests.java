@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Creates requests and responses for generating WMS output when there is no
+ * client, e.g. when seeding tiles. The requests contain only parameters and
+ * attributes, and the responses discard everything sent to them, so they
+ * should be wrapped in a {@link CapturingResponseWrapper}.
+ */
+final class OfflineRequests {
+    /*
+     * The URL reported by offline requests. This is never sent anywhere.
+     */
+    private static final String REQUEST_URL = "http://localhost/ncWMS2/wms";
+
+    private OfflineRequests() {
+    }
+
+    /**
+     * @param parameters
+     *            The request parameters
+     * @param attributes
+     *            The request attributes
+     * @return A request with the given parameters
+     */
+    static HttpServletRequest request(Map<String, String[]> parameters,
+            Map<String, Object> attributes) {
+        final Map<String, String[]> params = Collections.unmodifiableMap(parameters);
+        final Map<String, Object> attrs = Collections.unmodifiableMap(attributes);
+        return (HttpServletRequest) Proxy.newProxyInstance(OfflineRequests.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                        case "getParameterMap":
+                            return params;
+                        case "getParameterNames":
+                            return Collections.enumeration(params.keySet());
+                        case "getParameterValues":
+                            return params.get(args[0]);
+                        case "getParameter":
+                            String[] values = params.get(args[0]);
+                            return values == null || values.length == 0 ? null : values[0];
+                        case "getAttribute":
+                            return attrs.get(args[0]);
+                        case "getAttributeNames":
+                            return Collections.enumeration(attrs.keySet());
+                        case "getRequestURL":
+                            return new StringBuffer(REQUEST_URL);
+                        case "getMethod":
+                            return "GET";
+                        case "getLocale":
+                            return Locale.getDefault();
+                        case "getHeaders":
+                            return Collections.emptyEnumeration();
+                        default:
+                            return defaultValue(proxy, method, args);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * @return A response which discards everything sent to it
+     */
+    static HttpServletResponse response() {
+        return (HttpServletResponse) Proxy.newProxyInstance(
+                OfflineRequests.class.getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return defaultValue(proxy, method, args);
+                    }
+                });
+    }
+
+    /**
+     * @return The value returned by methods which are not otherwise handled -
+     *         <code>null</code>, zero or <code>false</code> as appropriate
+     */
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+        case "equals":
+            return proxy == args[0];
+        case "hashCode":
+            return System.identityHashCode(proxy);
+        case "toString":
+            return method.getDeclaringClass().getSimpleName() + "(offline)";
+        default:
+            break;
+        }
+        Class<?> type = method.getReturnType();
+        if (type == Boolean.TYPE) {
+            return Boolean.FALSE;
+        } else if (type == Integer.TYPE) {
+            return 0;
+        } else if (type == Long.TYPE) {
+            return 0L;
+        } else {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.Serializable;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.PersistenceConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.cache.EdalCache;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsImageCacheInfo;
+
+/**
+ * A cache of rendered map images, keyed by a canonical form of the request
+ * which produced them (see {@link WmsRequestKey}).
+ *
+ * Images are held in memory, and may optionally overflow to a temporary disk
+ * store once they are evicted from memory. The cache is registered with the
+ * {@link EdalCache#cacheManager}, so its statistics are reported along with
+ * those of the other caches.
+ *
+ * Entries are never explicitly invalidated when a dataset changes. Instead,
+ * the version of each dataset is part of the key, so that once a dataset has
+ * been refreshed its old images are no longer requested and are eventually
+ * evicted.
+ *
+ * When the cache is replaced, requests may still be using the old one for a
+ * short time after it has been disposed of. They treat it as empty.
+ */
+class RenderedImageCache {
+    private static final Logger log = LoggerFactory.getLogger(RenderedImageCache.class);
+
+    static final String CACHE_NAME = "renderedImageCache";
+
+    /*
+     * null if the cache is disabled
+     */
+    private volatile Cache cache = null;
+
+    RenderedImageCache(NcwmsImageCacheInfo cacheInfo) {
+        update(cacheInfo);
+    }
+
+    /**
+     * Applies new settings to the cache. Changing the size of the memory tier
+     * or the lifetime of images keeps the existing images, but enabling,
+     * disabling or resizing the disk tier starts a new, empty, cache.
+     *
+     * @param cacheInfo
+     *            The new settings
+     */
+    synchronized void update(NcwmsImageCacheInfo cacheInfo) {
+        Cache existing = EdalCache.cacheManager.cacheExists(CACHE_NAME) ? EdalCache.cacheManager
+                .getCache(CACHE_NAME) : null;
+        if (!cacheInfo.isEnabled() || cacheInfo.getNumberOfImages() <= 0) {
+            cache = null;
+            if (existing != null) {
+                EdalCache.cacheManager.removeCache(CACHE_NAME);
+            }
+            return;
+        }
+
+        int nDiskImages = Math.max(cacheInfo.getNumberOfDiskImages(), 0);
+        if (existing != null
+                && existing.getCacheConfiguration().getMaxEntriesLocalDisk() == nDiskImages) {
+            /*
+             * Configure existing cache
+             */
+            CacheConfiguration cacheConfig = existing.getCacheConfiguration();
+            cacheConfig.setMaxEntriesLocalHeap(cacheInfo.getNumberOfImages());
+            setLifetime(cacheConfig, cacheInfo.getElementLifetimeMinutes());
+            cache = existing;
+            return;
+        }
+
+        if (existing != null) {
+            /*
+             * The new cache needs the same name, so the old one must go first.
+             * Stop handing it out before it is disposed of.
+             */
+            cache = null;
+            EdalCache.cacheManager.removeCache(CACHE_NAME);
+        }
+        CacheConfiguration cacheConfig = new CacheConfiguration(CACHE_NAME,
+                cacheInfo.getNumberOfImages())
+                .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU)
+                .transactionalMode(CacheConfiguration.TransactionalMode.OFF);
+        if (nDiskImages > 0) {
+            /*
+             * Images evicted from memory are written to a temporary disk store,
+             * which is discarded on restart
+             */
+            cacheConfig.persistence(new PersistenceConfiguration()
+                    .strategy(PersistenceConfiguration.Strategy.LOCALTEMPSWAP));
+            cacheConfig.setMaxEntriesLocalDisk(nDiskImages);
+        } else {
+            cacheConfig.persistence(new PersistenceConfiguration()
+                    .strategy(PersistenceConfiguration.Strategy.NONE));
+        }
+        setLifetime(cacheConfig, cacheInfo.getElementLifetimeMinutes());
+        Cache newCache = new Cache(cacheConfig);
+        EdalCache.cacheManager.addCache(newCache);
+        cache = newCache;
+        log.debug("Created rendered image cache holding {} images in memory and {} on disk",
+                cacheInfo.getNumberOfImages(), nDiskImages);
+    }
+
+    private static void setLifetime(CacheConfiguration cacheConfig, float lifetimeMinutes) {
+        if (lifetimeMinutes > 0) {
+            cacheConfig.setTimeToLiveSeconds((long) (lifetimeMinutes * 60));
+        } else {
+            cacheConfig.eternal(true);
+        }
+    }
+
+    /**
+     * @return Whether images are currently being cached
+     */
+    boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * @param key
+     *            The canonical key of the request
+     * @return The cached image, or <code>null</code> if it is not cached
+     */
+    CachedImage get(String key) {
+        Cache current = cache;
+        if (current == null) {
+            return null;
+        }
+        Element element;
+        try {
+            element = current.get(key);
+        } catch (IllegalStateException e) {
+            /*
+             * Disposed of since we fetched it
+             */
+            return null;
+        }
+        return element == null ? null : (CachedImage) element.getObjectValue();
+    }
+
+    /**
+     * @param key
+     *            The canonical key of the request
+     * @return Whether an image is cached for the key. Unlike
+     *         {@link #get(String)}, this does not affect the cache statistics.
+     */
+    boolean contains(String key) {
+        Cache current = cache;
+        try {
+            return current != null && current.isKeyInCache(key);
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stores a rendered image
+     *
+     * @param key
+     *            The canonical key of the request
+     * @param content
+     *            The encoded image
+     * @param contentType
+     *            The MIME type of the image
+     * @return The cached image
+     */
+    CachedImage put(String key, byte[] content, String contentType) {
+        CachedImage image = new CachedImage(content, contentType);
+        Cache current = cache;
+        if (current != null) {
+            try {
+                current.put(new Element(key, image));
+            } catch (IllegalStateException e) {
+                /*
+                 * The cache has been replaced, and this image is not needed in
+                 * the new one
+                 */
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Removes all cached images
+     */
+    void clear() {
+        Cache current = cache;
+        if (current != null) {
+            try {
+                current.removeAll();
+            } catch (IllegalStateException e) {
+                /*
+                 * Replaced by a new, empty, cache
+                 */
+            }
+        }
+    }
+
+    /**
+     * An encoded image and its MIME type. This is {@link Serializable} so that
+     * it can be written to the disk store.
+     */
+    static final class CachedImage implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] content;
+        private final String contentType;
+
+        CachedImage(byte[] content, String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+        }
+
+        byte[] getContent() {
+            return content;
+        }
+
+        String getContentType() {
+            return contentType;
+        }
+    }
+}
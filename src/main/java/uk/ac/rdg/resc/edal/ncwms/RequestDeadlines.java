@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsRequestDeadline;
+
+/**
+ * Creates the {@link CancellationToken}s for requests, with the deadline
+ * configured for their type, and counts the requests which are cancelled.
+ */
+final class RequestDeadlines {
+    /*
+     * Cancellations are counted under these names, so that clients cannot add
+     * any number of entries with made-up request types
+     */
+    private static final String[] OPERATIONS = new String[] { "GetCapabilities", "GetMap",
+            "GetFeatureInfo", "GetLegendGraphic", "GetMetadata", "GetTimeseries",
+            "GetVerticalProfile", "GetTransect" };
+    private static final String OTHER_OPERATIONS = "Other";
+
+    /*
+     * Deadlines in milliseconds, keyed by lower-case request type. Replaced
+     * rather than modified, so that it can be read without locking.
+     */
+    private volatile Map<String, Long> deadlines = new HashMap<>();
+    /*
+     * Keyed by operation name
+     */
+    private final ConcurrentMap<String, AtomicLong> deadlinesExceeded = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> disconnections = new ConcurrentHashMap<>();
+
+    /**
+     * Applies a new set of deadlines to requests which start from now on
+     */
+    void configure(Iterable<NcwmsRequestDeadline> requestDeadlines) {
+        Map<String, Long> newDeadlines = new HashMap<>();
+        for (NcwmsRequestDeadline deadline : requestDeadlines) {
+            if (deadline.getRequest() != null && deadline.getSeconds() > 0) {
+                newDeadlines.put(deadline.getRequest().toLowerCase(Locale.ROOT),
+                        deadline.getSeconds() * 1000L);
+            }
+        }
+        deadlines = newDeadlines;
+    }
+
+    /**
+     * @param request
+     *            The WMS request type, e.g. GetMap
+     * @return A new token for a request, which is cancelled once its deadline
+     *         has passed
+     */
+    CancellationToken newToken(String request) {
+        Long deadline = request == null ? null : deadlines.get(request.toLowerCase(Locale.ROOT));
+        return new CancellationToken(request, deadline == null ? 0L : deadline);
+    }
+
+    /**
+     * Records that a request has been cancelled
+     */
+    void cancelled(CancellationToken token) {
+        ConcurrentMap<String, AtomicLong> counts = token
+                .getReason() == CancellationToken.Reason.DEADLINE_EXCEEDED ? deadlinesExceeded
+                : disconnections;
+        String operation = getOperationName(token.getRequest());
+        AtomicLong count = counts.get(operation);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong(0L);
+            count = counts.putIfAbsent(operation, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private static String getOperationName(String request) {
+        for (String operation : OPERATIONS) {
+            if (operation.equalsIgnoreCase(request)) {
+                return operation;
+            }
+        }
+        return OTHER_OPERATIONS;
+    }
+
+    /**
+     * @return The number of cancelled requests of each type
+     */
+    JSONObject getStatistics() {
+        JSONObject statistics = new JSONObject();
+        for (Map.Entry<String, AtomicLong> entry : deadlinesExceeded.entrySet()) {
+            getRequestStatistics(statistics, entry.getKey()).put("DeadlineExceededCount",
+                    entry.getValue().get());
+        }
+        for (Map.Entry<String, AtomicLong> entry : disconnections.entrySet()) {
+            getRequestStatistics(statistics, entry.getKey()).put("ClientDisconnectedCount",
+                    entry.getValue().get());
+        }
+        return statistics;
+    }
+
+    private static JSONObject getRequestStatistics(JSONObject statistics, String request) {
+        JSONObject requestStatistics = statistics.optJSONObject(request);
+        if (requestStatistics == null) {
+            requestStatistics = new JSONObject();
+            requestStatistics.put("DeadlineExceededCount", 0L);
+            requestStatistics.put("ClientDisconnectedCount", 0L);
+            statistics.put(request, requestStatistics);
+        }
+        return requestStatistics;
+    }
+}
@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsProcessingInfo;
+
+/**
+ * The threads which process WMS requests away from the servlet container's
+ * own threads. Requests, which spend much of their time waiting for data to
+ * be read, run on an I/O executor which uses virtual threads where the JVM
+ * supports them. CPU-bound work which can be split up (e.g. encoding the
+ * tiles of a metatile) runs on a separate pool with one thread per processor.
+ * Parts of a request which read data (e.g. the bands of a large image) run
+ * on a third executor, so that they never take the place of a request.
+ *
+ * The number of requests waiting for the I/O executor is limited, and
+ * requests beyond this are rejected rather than queued.
+ */
+final class RequestExecutors {
+    private static final Logger log = LoggerFactory.getLogger(RequestExecutors.class);
+
+    private final ExecutorService ioExecutor;
+    private final boolean virtualThreads;
+    private final int ioThreads;
+    private final int ioQueueSize;
+    /*
+     * Limits the number of requests running at once on virtual threads, which
+     * are otherwise unbounded
+     */
+    private final Semaphore ioSlots;
+    private final ExecutorService partExecutor;
+    private final ForkJoinPool renderPool;
+
+    /*
+     * Requests which have been accepted but not yet finished
+     */
+    private final AtomicInteger ioPending = new AtomicInteger(0);
+    private final AtomicInteger ioQueued = new AtomicInteger(0);
+    private final AtomicInteger ioActive = new AtomicInteger(0);
+    private final AtomicLong ioCompleted = new AtomicLong(0L);
+    private final AtomicLong ioRejected = new AtomicLong(0L);
+
+    RequestExecutors(NcwmsProcessingInfo processingInfo) {
+        ioThreads = Math.max(1, processingInfo.getIoThreads());
+        ioQueueSize = Math.max(0, processingInfo.getIoQueueSize());
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        if (virtualExecutor != null) {
+            ioExecutor = virtualExecutor;
+            virtualThreads = true;
+            ioSlots = new Semaphore(ioThreads);
+        } else {
+            /*
+             * Requests are limited by execute(), but a thread can briefly
+             * hold on to a request which it has finished, so the queue has
+             * room for every request which may be pending
+             */
+            ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(ioThreads + ioQueueSize),
+                    newThreadFactory("ncwms-request-"));
+            virtualThreads = false;
+            ioSlots = null;
+        }
+        ExecutorService virtualPartExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtualPartExecutor != null) {
+            partExecutor = virtualPartExecutor;
+        } else {
+            /*
+             * Parts which find no room are done by the request itself, so the
+             * threads are only kept whilst in use
+             */
+            ThreadPoolExecutor partPool = new ThreadPoolExecutor(ioThreads, ioThreads, 60L,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(ioThreads),
+                    newThreadFactory("ncwms-part-"));
+            partPool.allowCoreThreadTimeOut(true);
+            partExecutor = partPool;
+        }
+
+        int renderThreads = processingInfo.getRenderThreads() > 0 ? processingInfo
+                .getRenderThreads() : Runtime.getRuntime().availableProcessors();
+        renderPool = new ForkJoinPool(renderThreads);
+        log.info("Processing requests on {} (up to {} at once, {} waiting), rendering on {} threads",
+                virtualThreads ? "virtual threads" : "platform threads", ioThreads, ioQueueSize,
+                renderThreads);
+    }
+
+    private static ThreadFactory newThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * @return An executor which starts a new virtual thread for each task, or
+     *         <code>null</code> if this JVM does not support virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            /*
+             * Virtual threads are only available from Java 21, whilst we build
+             * for earlier versions
+             */
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            log.warn("Cannot create virtual threads - using platform threads", e);
+            return null;
+        }
+    }
+
+    /**
+     * Runs a request on the I/O executor. If all of its threads are busy, the
+     * request waits for one to become free.
+     *
+     * @param task
+     *            The work for the request
+     * @throws RejectedExecutionException
+     *             If too many requests are already waiting, or the executor
+     *             has been shut down
+     */
+    void execute(final Runnable task) {
+        if (ioPending.incrementAndGet() > ioThreads + ioQueueSize) {
+            ioPending.decrementAndGet();
+            ioRejected.incrementAndGet();
+            throw new RejectedExecutionException("the request queue is full");
+        }
+        ioQueued.incrementAndGet();
+        try {
+            ioExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (ioSlots != null) {
+                        ioSlots.acquireUninterruptibly();
+                    }
+                    ioQueued.decrementAndGet();
+                    ioActive.incrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        ioActive.decrementAndGet();
+                        ioCompleted.incrementAndGet();
+                        if (ioSlots != null) {
+                            ioSlots.release();
+                        }
+                        ioPending.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ioQueued.decrementAndGet();
+            ioPending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * @return An executor for parts of a request which is already being
+     *         processed, e.g. the bands of a large image. Its queue is
+     *         bounded and separate from that of requests, so whoever submits
+     *         parts must be prepared to do the work itself if they are
+     *         rejected or have not started.
+     */
+    Executor getPartExecutor() {
+        return partExecutor;
+    }
+
+    /**
+     * @return The pool for CPU-bound rendering work
+     */
+    ForkJoinPool getRenderPool() {
+        return renderPool;
+    }
+
+    /**
+     * @return The sizes and usage of the executors
+     */
+    JSONObject getStatistics() {
+        JSONObject io = new JSONObject();
+        io.put("VirtualThreads", virtualThreads);
+        io.put("MaxActive", ioThreads);
+        io.put("Active", ioActive.get());
+        io.put("Queued", ioQueued.get());
+        io.put("MaxQueued", ioQueueSize);
+        io.put("RejectedCount", ioRejected.get());
+        io.put("CompletedCount", ioCompleted.get());
+
+        JSONObject render = new JSONObject();
+        render.put("Parallelism", renderPool.getParallelism());
+        render.put("PoolSize", renderPool.getPoolSize());
+        render.put("Active", renderPool.getActiveThreadCount());
+        render.put("Queued", renderPool.getQueuedSubmissionCount()
+                + renderPool.getQueuedTaskCount());
+        render.put("StealCount", renderPool.getStealCount());
+
+        JSONObject statistics = new JSONObject();
+        statistics.put("Io", io);
+        statistics.put("Render", render);
+        return statistics;
+    }
+
+    /**
+     * Stops accepting work. Requests which are already running are left to
+     * finish.
+     */
+    void shutdown() {
+        ioExecutor.shutdown();
+        partExecutor.shutdown();
+        renderPool.shutdown();
+    }
+}
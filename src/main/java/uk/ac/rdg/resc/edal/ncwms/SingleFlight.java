@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Ensures that concurrent calls for the same key share a single computation.
+ * The first caller for a key runs the computation on its own thread, and any
+ * other caller arriving while it is in progress waits for and receives the
+ * same result. Calls for different keys run independently.
+ *
+ * The computation runs under a shared {@link CancellationToken} rather than
+ * that of the caller which happens to run it, so that it is only stopped once
+ * every caller waiting for it has been cancelled. A caller which is cancelled
+ * stops waiting straight away. A caller which finds that the computation was
+ * stopped because all of the others were cancelled runs it again for itself.
+ *
+ * Results are not retained once the computation has completed - callers
+ * should store them elsewhere (e.g. a cache) if required.
+ *
+ * @param <K>
+ *            The type of the key
+ * @param <V>
+ *            The type of the computed value
+ */
+class SingleFlight<K, V> {
+    /*
+     * How often a waiting caller checks whether it has been cancelled
+     */
+    private static final long CANCELLATION_CHECK_MILLIS = 100L;
+
+    private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the result of the given computation, sharing it with any other
+     * concurrent callers using the same key.
+     *
+     * @param key
+     *            The key identifying the computation
+     * @param loader
+     *            The computation to run if no other caller is currently
+     *            running one for this key
+     * @return The computed value
+     * @throws ExecutionException
+     *             If the computation threw an exception. The cause is the
+     *             original exception
+     * @throws InterruptedException
+     *             If the calling thread was interrupted whilst waiting for
+     *             another caller's computation
+     * @throws RequestCancelledException
+     *             If the caller's own request was cancelled whilst waiting
+     */
+    V get(K key, Callable<V> loader) throws ExecutionException, InterruptedException {
+        try {
+            return get(key, loader, -1L, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            /*
+             * Cannot happen without a time limit
+             */
+            throw new ExecutionException(e);
+        }
+    }
+
+    /**
+     * Returns the result of the given computation, sharing it with any other
+     * concurrent callers using the same key, and waiting for a limited time
+     * for another caller's computation.
+     *
+     * A caller which runs the computation itself is not subject to the time
+     * limit, since it cannot be abandoned without also failing any callers
+     * waiting for it.
+     *
+     * @param key
+     *            The key identifying the computation
+     * @param loader
+     *            The computation to run if no other caller is currently
+     *            running one for this key
+     * @param timeout
+     *            The maximum time to wait for another caller's computation.
+     *            Negative values mean no limit.
+     * @param unit
+     *            The unit of the timeout
+     * @return The computed value
+     * @throws ExecutionException
+     *             If the computation threw an exception. The cause is the
+     *             original exception
+     * @throws InterruptedException
+     *             If the calling thread was interrupted whilst waiting for
+     *             another caller's computation
+     * @throws TimeoutException
+     *             If another caller's computation did not complete in time
+     * @throws RequestCancelledException
+     *             If the caller's own request was cancelled whilst waiting
+     */
+    V get(K key, Callable<V> loader, long timeout, TimeUnit unit) throws ExecutionException,
+            InterruptedException, TimeoutException {
+        CancellationToken own = CancellationToken.current();
+        long deadline = timeout < 0 ? Long.MAX_VALUE : System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            Flight<V> flight = new Flight<>(loader, own);
+            Flight<V> existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                return run(key, flight, own);
+            }
+            if (!existing.token.join(own)) {
+                /*
+                 * Stopping, because everyone else has gone. Wait for it to
+                 * finish, then start again.
+                 */
+                await(existing, own, deadline, true);
+                continue;
+            }
+            try {
+                return await(existing, own, deadline, false);
+            } catch (ExecutionException e) {
+                if (existing.token.isCancelled() && (own == null || !own.isCancelled())) {
+                    /*
+                     * Stopped because the other callers were cancelled, but
+                     * we still want the result
+                     */
+                    continue;
+                }
+                throw e;
+            } finally {
+                existing.token.leave(own);
+            }
+        }
+    }
+
+    private V run(K key, Flight<V> flight, CancellationToken own) throws ExecutionException,
+            InterruptedException {
+        CancellationToken previous = CancellationToken.attach(flight.token);
+        try {
+            flight.task.run();
+        } finally {
+            CancellationToken.attach(previous);
+            inFlight.remove(key, flight);
+        }
+        return flight.task.get();
+    }
+
+    /**
+     * Waits for another caller's computation, checking periodically whether
+     * the caller has been cancelled
+     *
+     * @param ignoreFailure
+     *            <code>true</code> if the result is not wanted, only to know
+     *            that the computation has finished
+     */
+    private V await(Flight<V> flight, CancellationToken own, long deadline,
+            boolean ignoreFailure) throws ExecutionException, InterruptedException,
+            TimeoutException {
+        while (true) {
+            if (own != null) {
+                own.checkpoint();
+            }
+            long remaining = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline
+                    - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            try {
+                return flight.task.get(Math.min(remaining,
+                        TimeUnit.MILLISECONDS.toNanos(CANCELLATION_CHECK_MILLIS)),
+                        TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                /*
+                 * Check for cancellation and try again
+                 */
+            } catch (ExecutionException e) {
+                if (ignoreFailure) {
+                    return null;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return The number of computations currently in progress
+     */
+    int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * A computation in progress, and the token it runs under
+     */
+    private static final class Flight<V> {
+        private final FutureTask<V> task;
+        private final CancellationToken token;
+
+        private Flight(Callable<V> loader, CancellationToken own) {
+            this.task = new FutureTask<>(loader);
+            this.token = CancellationToken.shared(own == null ? null : own.getRequest());
+            this.token.join(own);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * The modification time and size of a file, used to cheaply detect whether
+ * the source of a dataset has changed. For a directory, this is the latest
+ * modification time and total size of the files it contains, along with the
+ * number of files.
+ *
+ * Only local files and directories have signatures. Remote locations and glob
+ * expressions cannot be checked this way.
+ */
+class SourceSignature implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long lastModified;
+    private final long size;
+    private final int nFiles;
+
+    private SourceSignature(long lastModified, long size, int nFiles) {
+        this.lastModified = lastModified;
+        this.size = size;
+        this.nFiles = nFiles;
+    }
+
+    static SourceSignature of(File source) {
+        if (!source.isDirectory()) {
+            return new SourceSignature(source.lastModified(), source.length(), 1);
+        }
+        long lastModified = source.lastModified();
+        long size = 0L;
+        int nFiles = 0;
+        File[] files = source.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                lastModified = Math.max(lastModified, file.lastModified());
+                size += file.length();
+                nFiles++;
+            }
+        }
+        return new SourceSignature(lastModified, size, nFiles);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + (int) (lastModified ^ (lastModified >>> 32));
+        result = prime * result + (int) (size ^ (size >>> 32));
+        result = prime * result + nFiles;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        SourceSignature other = (SourceSignature) obj;
+        if (lastModified != other.lastModified)
+            return false;
+        if (size != other.size)
+            return false;
+        if (nFiles != other.nFiles)
+            return false;
+        return true;
+    }
+
+    /**
+     * @return The local file or directory a dataset location refers to, or
+     *         <code>null</code> if it is not a single local file or directory
+     */
+    static File getLocalSource(String location) {
+        if (location.startsWith("file:")) {
+            location = location.substring("file:".length());
+        } else if (location.matches("^[a-zA-Z][a-zA-Z0-9+.-]+://.*")) {
+            /*
+             * Remote dataset
+             */
+            return null;
+        }
+        if (location.contains("*") || location.contains("?")) {
+            return null;
+        }
+        File file = new File(location);
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * @return The signature of the local file or directory a dataset location
+     *         refers to, or <code>null</code> if it is not a single local file
+     *         or directory
+     */
+    static SourceSignature forLocation(String location) {
+        File source = getLocalSource(location);
+        return source == null ? null : of(source);
+    }
+}
@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A fixed grid of map tiles in a given CRS, as used by WMTS and XYZ tile
+ * clients. Zoom level 0 covers the whole extent of the set with
+ * {@link #getMatrixWidth(int)} by {@link #getMatrixHeight(int)} tiles, and
+ * each subsequent level doubles the number of tiles in each direction. Tile
+ * rows are counted from the top.
+ */
+public final class TileMatrixSet {
+    static final int TILE_SIZE = 256;
+    static final int MAX_ZOOM = 18;
+
+    /*
+     * The size of a pixel in metres, as defined by WMTS for calculating scale
+     * denominators
+     */
+    private static final double PIXEL_SIZE_METRES = 0.00028;
+    private static final double WEB_MERCATOR_HALF_WIDTH = 20037508.3427892;
+    private static final double EARTH_RADIUS = 6378137;
+    private static final double METRES_PER_DEGREE = 2 * Math.PI * EARTH_RADIUS / 360;
+    /*
+     * The latitude at which the spherical mercator tile set is square
+     */
+    private static final double MAX_MERCATOR_LATITUDE = 85.0511287798;
+
+    /**
+     * The spherical mercator tile set used by most web maps (as
+     * GoogleMapsCompatible), with a single tile at zoom level 0
+     */
+    static final TileMatrixSet WEB_MERCATOR = new TileMatrixSet("EPSG:3857", "EPSG:3857",
+            -WEB_MERCATOR_HALF_WIDTH, -WEB_MERCATOR_HALF_WIDTH, WEB_MERCATOR_HALF_WIDTH,
+            WEB_MERCATOR_HALF_WIDTH, 1, 1, 1.0, false, true);
+    /**
+     * A global lat-lon tile set (as WorldCRS84Quad), with two tiles at zoom
+     * level 0
+     */
+    static final TileMatrixSet WGS84 = new TileMatrixSet("EPSG:4326", "EPSG:4326", -180.0, -90.0,
+            180.0, 90.0, 2, 1, METRES_PER_DEGREE, true, false);
+
+    private static final List<TileMatrixSet> ALL = Collections.unmodifiableList(Arrays.asList(
+            WEB_MERCATOR, WGS84));
+
+    private final String identifier;
+    private final String crsCode;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final int baseMatrixWidth;
+    private final int baseMatrixHeight;
+    private final double metresPerUnit;
+    /*
+     * Whether the CRS has latitude (y) as its first axis, which affects how
+     * the corner of the set is written in capabilities documents
+     */
+    private final boolean latLonAxisOrder;
+    /*
+     * Whether the CRS is spherical mercator, rather than lat-lon
+     */
+    private final boolean mercator;
+
+    private TileMatrixSet(String identifier, String crsCode, double minX, double minY,
+            double maxX, double maxY, int baseMatrixWidth, int baseMatrixHeight,
+            double metresPerUnit, boolean latLonAxisOrder, boolean mercator) {
+        this.identifier = identifier;
+        this.crsCode = crsCode;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.baseMatrixWidth = baseMatrixWidth;
+        this.baseMatrixHeight = baseMatrixHeight;
+        this.metresPerUnit = metresPerUnit;
+        this.latLonAxisOrder = latLonAxisOrder;
+        this.mercator = mercator;
+    }
+
+    /**
+     * @param supportedCrsCodes
+     *            The CRS codes supported by the server, or <code>null</code>
+     *            if the defaults are used
+     * @return The tile matrix sets whose CRS is supported
+     */
+    static List<TileMatrixSet> getSupported(String[] supportedCrsCodes) {
+        if (supportedCrsCodes == null) {
+            return ALL;
+        }
+        List<String> codes = Arrays.asList(supportedCrsCodes);
+        List<TileMatrixSet> supported = new ArrayList<>();
+        for (TileMatrixSet tileMatrixSet : ALL) {
+            if (codes.contains(tileMatrixSet.crsCode)) {
+                supported.add(tileMatrixSet);
+            }
+        }
+        return supported;
+    }
+
+    /**
+     * @param identifier
+     *            The identifier of a tile matrix set
+     * @param supportedCrsCodes
+     *            The CRS codes supported by the server, or <code>null</code>
+     *            if the defaults are used
+     * @return The supported tile matrix set with the given identifier, or
+     *         <code>null</code> if there is none
+     */
+    static TileMatrixSet forIdentifier(String identifier, String[] supportedCrsCodes) {
+        for (TileMatrixSet tileMatrixSet : getSupported(supportedCrsCodes)) {
+            if (tileMatrixSet.identifier.equalsIgnoreCase(identifier)) {
+                return tileMatrixSet;
+            }
+        }
+        return null;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public String getCrsCode() {
+        return crsCode;
+    }
+
+    public int getMaxZoom() {
+        return MAX_ZOOM;
+    }
+
+    public int getTileSize() {
+        return TILE_SIZE;
+    }
+
+    public int getMatrixWidth(int zoom) {
+        return baseMatrixWidth << zoom;
+    }
+
+    public int getMatrixHeight(int zoom) {
+        return baseMatrixHeight << zoom;
+    }
+
+    /**
+     * @return The size of a pixel at the given zoom level, in CRS units
+     */
+    public double getResolution(int zoom) {
+        return (maxX - minX) / getMatrixWidth(zoom) / TILE_SIZE;
+    }
+
+    /**
+     * @return The WMTS scale denominator of the given zoom level
+     */
+    public double getScaleDenominator(int zoom) {
+        return getResolution(zoom) * metresPerUnit / PIXEL_SIZE_METRES;
+    }
+
+    /**
+     * @return The top-left corner of the set, in the axis order of its CRS
+     */
+    public String getTopLeftCorner() {
+        return latLonAxisOrder ? maxY + " " + minX : minX + " " + maxY;
+    }
+
+    /**
+     * Calculates the bounding box of a tile
+     *
+     * @param zoom
+     *            The zoom level
+     * @param row
+     *            The row of the tile, counted from the top
+     * @param col
+     *            The column of the tile, counted from the left
+     * @return The bounding box of the tile as [minx, miny, maxx, maxy], with x
+     *         always being the easting / longitude
+     * @throws IllegalArgumentException
+     *             If the tile is not part of this set
+     */
+    double[] getTileBounds(int zoom, int row, int col) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("Zoom level must be between 0 and " + MAX_ZOOM);
+        }
+        if (row < 0 || row >= getMatrixHeight(zoom) || col < 0 || col >= getMatrixWidth(zoom)) {
+            throw new IllegalArgumentException("Tile " + row + "," + col
+                    + " is outside tile matrix " + zoom + " of " + identifier);
+        }
+        double tileWidth = (maxX - minX) / getMatrixWidth(zoom);
+        double tileHeight = (maxY - minY) / getMatrixHeight(zoom);
+        return new double[] { minX + col * tileWidth, maxY - (row + 1) * tileHeight,
+                minX + (col + 1) * tileWidth, maxY - row * tileHeight };
+    }
+
+    /**
+     * Finds the tiles which cover a geographic area
+     *
+     * @param zoom
+     *            The zoom level
+     * @param west
+     *            The western edge of the area, in degrees
+     * @param south
+     *            The southern edge of the area, in degrees
+     * @param east
+     *            The eastern edge of the area, in degrees
+     * @param north
+     *            The northern edge of the area, in degrees
+     * @return The range of tiles as [minCol, minRow, maxCol, maxRow]
+     *         (inclusive)
+     */
+    int[] getTileRange(int zoom, double west, double south, double east, double north) {
+        double[] min = fromLonLat(west, south);
+        double[] max = fromLonLat(east, north);
+        double tileWidth = (maxX - minX) / getMatrixWidth(zoom);
+        double tileHeight = (maxY - minY) / getMatrixHeight(zoom);
+        int minCol = (int) Math.floor((min[0] - minX) / tileWidth);
+        int maxCol = (int) Math.ceil((max[0] - minX) / tileWidth) - 1;
+        int minRow = (int) Math.floor((maxY - max[1]) / tileHeight);
+        int maxRow = (int) Math.ceil((maxY - min[1]) / tileHeight) - 1;
+        return new int[] { clamp(minCol, getMatrixWidth(zoom)), clamp(minRow, getMatrixHeight(zoom)),
+                clamp(Math.max(minCol, maxCol), getMatrixWidth(zoom)),
+                clamp(Math.max(minRow, maxRow), getMatrixHeight(zoom)) };
+    }
+
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(index, size - 1));
+    }
+
+    private double[] fromLonLat(double lon, double lat) {
+        lon = Math.max(-180.0, Math.min(lon, 180.0));
+        if (mercator) {
+            lat = Math.max(-MAX_MERCATOR_LATITUDE, Math.min(lat, MAX_MERCATOR_LATITUDE));
+            return new double[] { EARTH_RADIUS * Math.toRadians(lon),
+                    EARTH_RADIUS * Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2)) };
+        } else {
+            return new double[] { lon, Math.max(-90.0, Math.min(lat, 90.0)) };
+        }
+    }
+}
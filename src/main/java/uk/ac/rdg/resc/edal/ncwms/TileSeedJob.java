@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.json.JSONObject;
+
+import uk.ac.rdg.resc.edal.util.TimeUtils;
+
+/**
+ * Tracks the progress of a tile seeding job run by a {@link TileSeeder}
+ */
+final class TileSeedJob {
+    enum State {
+        /* Waiting for the dataset to become available */
+        WAITING,
+        RUNNING,
+        COMPLETE,
+        CANCELLED,
+        FAILED
+    }
+
+    private final String id;
+    private final String description;
+    private final DateTime submitted = new DateTime();
+    private final AtomicLong rendered = new AtomicLong(0L);
+    private final AtomicLong skipped = new AtomicLong(0L);
+    private final AtomicLong failed = new AtomicLong(0L);
+    private volatile long totalTiles = 0L;
+    private volatile State state = State.WAITING;
+    private volatile String error = null;
+    private volatile long startMillis = 0L;
+    private volatile long endMillis = 0L;
+
+    /**
+     * @param id
+     *            The ID of this job
+     * @param description
+     *            A description of what is being seeded, for reporting
+     */
+    TileSeedJob(String id, String description) {
+        this.id = id;
+        this.description = description;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getDescription() {
+        return description;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    /**
+     * @return Whether this job has stopped, for whatever reason
+     */
+    boolean isFinished() {
+        State current = state;
+        return current == State.COMPLETE || current == State.CANCELLED
+                || current == State.FAILED;
+    }
+
+    /**
+     * Requests that this job stops. Tiles which are already being rendered
+     * are completed.
+     */
+    void cancel() {
+        synchronized (this) {
+            if (!isFinished()) {
+                state = State.CANCELLED;
+                endMillis = System.currentTimeMillis();
+            }
+        }
+    }
+
+    boolean isCancelled() {
+        return state == State.CANCELLED;
+    }
+
+    void started(long totalTiles) {
+        synchronized (this) {
+            this.totalTiles = totalTiles;
+            if (state == State.WAITING) {
+                startMillis = System.currentTimeMillis();
+                state = State.RUNNING;
+            }
+        }
+    }
+
+    void finished() {
+        synchronized (this) {
+            if (!isFinished()) {
+                state = State.COMPLETE;
+                endMillis = System.currentTimeMillis();
+            }
+        }
+    }
+
+    void failed(String error) {
+        synchronized (this) {
+            if (!isFinished()) {
+                this.error = error;
+                state = State.FAILED;
+                endMillis = System.currentTimeMillis();
+            }
+        }
+    }
+
+    void tilesRendered(int n) {
+        rendered.addAndGet(n);
+    }
+
+    void tilesSkipped(int n) {
+        skipped.addAndGet(n);
+    }
+
+    void tilesFailed(int n) {
+        failed.addAndGet(n);
+    }
+
+    long getFailedTiles() {
+        return failed.get();
+    }
+
+    long getTotalTiles() {
+        return totalTiles;
+    }
+
+    /**
+     * @return The number of tiles which have been rendered, skipped because
+     *         they already existed, or failed
+     */
+    long getDoneTiles() {
+        return rendered.get() + skipped.get() + failed.get();
+    }
+
+    /**
+     * @return The number of tiles rendered per second since the job started
+     */
+    double getTilesPerSecond() {
+        long start = startMillis;
+        if (start == 0L) {
+            return 0.0;
+        }
+        long end = endMillis == 0L ? System.currentTimeMillis() : endMillis;
+        return end > start ? rendered.get() * 1000.0 / (end - start) : 0.0;
+    }
+
+    /**
+     * @return The current status of this job, as JSON
+     */
+    JSONObject toJson() {
+        JSONObject status = new JSONObject();
+        status.put("jobId", id);
+        status.put("description", description);
+        status.put("submitted", TimeUtils.dateTimeToISO8601(submitted));
+        status.put("state", state.name());
+        status.put("total", totalTiles);
+        status.put("rendered", rendered.get());
+        status.put("skipped", skipped.get());
+        status.put("failed", failed.get());
+        long total = totalTiles;
+        status.put("percentComplete", total == 0L ? (isFinished() ? 100.0 : 0.0) : Math.round(
+                getDoneTiles() * 1000.0 / total) / 10.0);
+        status.put("tilesPerSecond", Math.round(getTilesPerSecond() * 10.0) / 10.0);
+        status.put("complete", isFinished());
+        if (error != null) {
+            status.put("error", error);
+        }
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        long total = totalTiles;
+        return String.format("Tile seeding job %s (%s): %s, %d/%d tiles "
+                + "(%d rendered, %d skipped, %d failed), %.1f tiles/s", id, description, state,
+                getDoneTiles(), total, rendered.get(), skipped.get(), failed.get(),
+                getTilesPerSecond());
+    }
+}
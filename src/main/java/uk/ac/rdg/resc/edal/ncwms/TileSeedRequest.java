@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDatasetSettings;
+import uk.ac.rdg.resc.edal.wms.RequestParams;
+
+/**
+ * Describes which tiles should be rendered by a {@link TileSeeder}: every tile
+ * within the bounding box of each layer, for each combination of style, time
+ * and elevation, at each zoom level in a range.
+ */
+final class TileSeedRequest {
+    static final String DEFAULT_TILE_MATRIX_SET = TileMatrixSet.WEB_MERCATOR.getIdentifier();
+    static final String DEFAULT_STYLE = "default";
+    static final String DEFAULT_FORMAT = "image/png";
+
+    private final String datasetId;
+    private final List<String> layers;
+    private final List<String> styles;
+    private final List<String> times;
+    private final List<String> elevations;
+    private final int minZoom;
+    private final int maxZoom;
+    private final String tileMatrixSet;
+    private final String format;
+    private final int threads;
+
+    /**
+     * @param datasetId
+     *            The dataset whose layers should all be seeded, or
+     *            <code>null</code> to use the given layers
+     * @param layers
+     *            The layers to seed, if no dataset is given
+     * @param styles
+     *            The styles to seed
+     * @param times
+     *            The times to seed. An empty list means the default time.
+     * @param elevations
+     *            The elevations to seed. An empty list means the default
+     *            elevation.
+     * @param minZoom
+     *            The lowest zoom level to seed
+     * @param maxZoom
+     *            The highest zoom level to seed
+     * @param tileMatrixSet
+     *            The identifier of the tile matrix set
+     * @param format
+     *            The MIME type of the tiles
+     * @param threads
+     *            The number of tiles to render at once
+     */
+    TileSeedRequest(String datasetId, List<String> layers, List<String> styles,
+            List<String> times, List<String> elevations, int minZoom, int maxZoom,
+            String tileMatrixSet, String format, int threads) {
+        if (datasetId == null && layers.isEmpty()) {
+            throw new IllegalArgumentException("Must supply either a dataset or some layers");
+        }
+        if (minZoom < 0 || maxZoom > TileMatrixSet.MAX_ZOOM || minZoom > maxZoom) {
+            throw new IllegalArgumentException("Zoom levels must be between 0 and "
+                    + TileMatrixSet.MAX_ZOOM + ", lowest first");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Must use at least one thread");
+        }
+        this.datasetId = datasetId;
+        this.layers = Collections.unmodifiableList(new ArrayList<>(layers));
+        this.styles = Collections.unmodifiableList(new ArrayList<>(
+                styles.isEmpty() ? Collections.singletonList(DEFAULT_STYLE) : styles));
+        /*
+         * null means that the parameter is not supplied
+         */
+        this.times = Collections.unmodifiableList(new ArrayList<>(
+                times.isEmpty() ? Collections.<String> singletonList(null) : times));
+        this.elevations = Collections.unmodifiableList(new ArrayList<>(
+                elevations.isEmpty() ? Collections.<String> singletonList(null) : elevations));
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.tileMatrixSet = tileMatrixSet;
+        this.format = format;
+        this.threads = threads;
+    }
+
+    /**
+     * Reads a seeding request from a set of parameters. The parameters are
+     * <code>dataset</code> or <code>layers</code>, <code>zoom</code> (e.g.
+     * "0-5"), and optionally <code>styles</code>, <code>times</code> and
+     * <code>elevations</code> (all comma-separated), along with
+     * <code>tileMatrixSet</code>, <code>format</code> and
+     * <code>threads</code>.
+     *
+     * @param params
+     *            The parameters
+     * @return The request
+     * @throws IllegalArgumentException
+     *             If the parameters are invalid
+     */
+    static TileSeedRequest parse(RequestParams params) {
+        String zoom = params.getString("zoom");
+        if (zoom == null) {
+            throw new IllegalArgumentException("Must supply the zoom parameter");
+        }
+        int[] zoomLevels = parseZoomLevels(zoom);
+        String tileMatrixSet = params.getString("tileMatrixSet");
+        String format = params.getString("format");
+        String threads = params.getString("threads");
+        return new TileSeedRequest(params.getString("dataset"), split(params.getString("layers")),
+                split(params.getString("styles")), split(params.getString("times")),
+                split(params.getString("elevations")), zoomLevels[0], zoomLevels[1],
+                tileMatrixSet == null ? DEFAULT_TILE_MATRIX_SET : tileMatrixSet,
+                format == null ? DEFAULT_FORMAT : format,
+                threads == null ? getDefaultThreads() : parseInt(threads, "threads"));
+    }
+
+    /**
+     * @param datasetId
+     *            The ID of a configured dataset
+     * @param settings
+     *            The ncWMS settings for the dataset
+     * @return The request to seed the dataset automatically, or
+     *         <code>null</code> if it is not configured to be seeded
+     */
+    static TileSeedRequest forDataset(String datasetId, NcwmsDatasetSettings settings) {
+        if (settings.getSeedZoomLevels() == null) {
+            return null;
+        }
+        int[] zoomLevels = parseZoomLevels(settings.getSeedZoomLevels());
+        String tileMatrixSet = settings.getSeedTileMatrixSet();
+        return new TileSeedRequest(datasetId, Collections.<String> emptyList(),
+                split(settings.getSeedStyles()), Collections.<String> emptyList(),
+                Collections.<String> emptyList(), zoomLevels[0], zoomLevels[1],
+                tileMatrixSet == null ? DEFAULT_TILE_MATRIX_SET : tileMatrixSet, DEFAULT_FORMAT,
+                getDefaultThreads());
+    }
+
+    /**
+     * @param zoom
+     *            A single zoom level, or a range such as "0-5"
+     * @return The lowest and highest zoom levels
+     */
+    static int[] parseZoomLevels(String zoom) {
+        String[] parts = zoom.trim().split("\\s*-\\s*");
+        if (parts.length == 1) {
+            int level = parseInt(parts[0], "zoom");
+            return new int[] { level, level };
+        } else if (parts.length == 2) {
+            return new int[] { parseInt(parts[0], "zoom"), parseInt(parts[1], "zoom") };
+        }
+        throw new IllegalArgumentException("Zoom levels must be a number or a range, e.g. 0-5");
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer");
+        }
+    }
+
+    private static List<String> split(String values) {
+        List<String> list = new ArrayList<>();
+        if (values != null) {
+            for (String value : values.split(",")) {
+                if (!value.trim().isEmpty()) {
+                    list.add(value.trim());
+                }
+            }
+        }
+        return list;
+    }
+
+    private static int getDefaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    String getDatasetId() {
+        return datasetId;
+    }
+
+    List<String> getLayers() {
+        return layers;
+    }
+
+    List<String> getStyles() {
+        return styles;
+    }
+
+    /**
+     * @return The times to seed. A <code>null</code> entry means the default
+     *         time.
+     */
+    List<String> getTimes() {
+        return times;
+    }
+
+    /**
+     * @return The elevations to seed. A <code>null</code> entry means the
+     *         default elevation.
+     */
+    List<String> getElevations() {
+        return elevations;
+    }
+
+    int getMinZoom() {
+        return minZoom;
+    }
+
+    int getMaxZoom() {
+        return maxZoom;
+    }
+
+    String getTileMatrixSet() {
+        return tileMatrixSet;
+    }
+
+    String getFormat() {
+        return format;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+}
@@ -0,0 +1,778 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opengis.metadata.extent.GeographicBoundingBox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig.DatasetState;
+import uk.ac.rdg.resc.edal.dataset.Dataset;
+import uk.ac.rdg.resc.edal.graphics.exceptions.EdalLayerNotFoundException;
+import uk.ac.rdg.resc.edal.metadata.VariableMetadata;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsConfig;
+import uk.ac.rdg.resc.edal.wms.RequestParams;
+
+/**
+ * Renders tiles ahead of time, so that they can be served without reading any
+ * data. Each {@link TileSeedJob} renders every tile covering the bounding box
+ * of its layers, for each requested style, time, elevation and zoom level, and
+ * passes them to a {@link TileSink} - either the rendered image cache (when
+ * running in the web application) or a directory of files (when run from the
+ * command line with {@link #main(String[])}).
+ *
+ * Tiles are rendered in metatiles if their dataset is configured to use them,
+ * and tiles which the sink already holds are skipped.
+ */
+public final class TileSeeder {
+    private static final Logger log = LoggerFactory.getLogger(TileSeeder.class);
+
+    /* The number of finished jobs whose status is kept */
+    private static final int MAX_JOBS = 100;
+    /* The longest time to wait for a dataset to load before seeding it */
+    private static final long DATASET_WAIT_MILLIS = 30 * 60 * 1000L;
+    private static final long DATASET_POLL_MILLIS = 1000L;
+    /* How often the command-line tool reports progress */
+    private static final long PROGRESS_INTERVAL_MILLIS = 10 * 1000L;
+
+    /**
+     * Renders GetMap requests
+     */
+    interface Renderer {
+        /**
+         * @param parameters
+         *            The GetMap parameters
+         * @return The response to the GetMap request
+         * @throws Exception
+         *             If the request fails
+         */
+        CapturedResponse render(Map<String, String[]> parameters) throws Exception;
+    }
+
+    /**
+     * Stores seeded tiles
+     */
+    interface TileSink {
+        /**
+         * @return Whether the given tile is already stored
+         */
+        boolean contains(Tile tile) throws IOException;
+
+        /**
+         * Stores an encoded tile
+         */
+        void store(Tile tile, byte[] content, String contentType) throws IOException;
+    }
+
+    private final NcwmsCatalogue catalogue;
+    private final Renderer renderer;
+    /*
+     * Runs the loop which submits the tiles of each job to its workers
+     */
+    private final ExecutorService jobRunner = Executors
+            .newCachedThreadPool(daemonThreads("ncwms-tile-seeder"));
+    private final Map<String, TileSeedJob> jobs = new LinkedHashMap<String, TileSeedJob>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TileSeedJob> eldest) {
+            return size() > MAX_JOBS && eldest.getValue().isFinished();
+        }
+    };
+    /*
+     * The most recent automatic job for each dataset. Guarded by jobs.
+     */
+    private final Map<String, TileSeedJob> datasetJobs = new HashMap<>();
+
+    /**
+     * @param catalogue
+     *            The catalogue containing the layers to seed
+     * @param renderer
+     *            Used to render the tiles
+     */
+    TileSeeder(NcwmsCatalogue catalogue, Renderer renderer) {
+        this.catalogue = catalogue;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Starts seeding tiles in the background
+     *
+     * @param request
+     *            Describes the tiles to seed
+     * @param sink
+     *            Where to store the tiles
+     * @return The job, which can be used to follow its progress
+     * @throws IllegalArgumentException
+     *             If the tile matrix set is not supported
+     */
+    TileSeedJob start(final TileSeedRequest request, final TileSink sink) {
+        final TileMatrixSet tileMatrixSet = TileMatrixSet.forIdentifier(
+                request.getTileMatrixSet(), catalogue.getSupportedNcwmsCrsCodes()
+                        .getSupportedCrsCodes());
+        if (tileMatrixSet == null) {
+            throw new IllegalArgumentException("Unsupported tile matrix set: "
+                    + request.getTileMatrixSet());
+        }
+        String description = request.getDatasetId() != null ? "dataset "
+                + request.getDatasetId() : "layers " + request.getLayers();
+        final TileSeedJob job = new TileSeedJob(UUID.randomUUID().toString(), description
+                + ", zoom " + request.getMinZoom() + "-" + request.getMaxZoom() + ", "
+                + tileMatrixSet.getIdentifier());
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+        }
+        jobRunner.execute(new Runnable() {
+            @Override
+            public void run() {
+                runJob(job, request, tileMatrixSet, sink);
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Seeds the tiles of a dataset into the rendered image cache, if the
+     * dataset's settings ask for it. Any seeding of a previous version of the
+     * dataset is cancelled.
+     *
+     * @param datasetId
+     *            The ID of a configured dataset which has just been loaded
+     */
+    void seedDataset(String datasetId) {
+        TileSeedRequest request;
+        try {
+            request = TileSeedRequest.forDataset(datasetId, catalogue.getConfig()
+                    .getSettingsForDataset(datasetId));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid tile seeding settings for dataset " + datasetId + ": "
+                    + e.getMessage());
+            return;
+        }
+        if (request == null) {
+            return;
+        }
+        if (!isImageCacheEnabled()) {
+            log.warn("Not seeding tiles for dataset " + datasetId
+                    + " - the rendered image cache is disabled");
+            return;
+        }
+        TileSeedJob job;
+        try {
+            job = start(request, imageCacheSink());
+        } catch (IllegalArgumentException e) {
+            log.warn("Cannot seed tiles for dataset " + datasetId + ": " + e.getMessage());
+            return;
+        }
+        TileSeedJob previous;
+        synchronized (jobs) {
+            previous = datasetJobs.put(datasetId, job);
+        }
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * @param jobId
+     *            The ID of a job
+     * @return The job, or <code>null</code> if it is not known
+     */
+    TileSeedJob getJob(String jobId) {
+        synchronized (jobs) {
+            return jobs.get(jobId);
+        }
+    }
+
+    /**
+     * @return All known jobs, oldest first
+     */
+    List<TileSeedJob> getJobs() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    /**
+     * Cancels all running jobs
+     */
+    void shutdown() {
+        for (TileSeedJob job : getJobs()) {
+            job.cancel();
+        }
+        jobRunner.shutdownNow();
+    }
+
+    /**
+     * Seeds tiles from the command line, writing them to a directory. The
+     * datasets are read from an ncWMS config file, and loaded in the same way
+     * as by the web application. Arguments are given as
+     * <code>--name=value</code>:
+     *
+     * <ul>
+     * <li><code>config</code>: the ncWMS config file (or the directory
+     * containing it)</li>
+     * <li><code>output</code>: the directory to write tiles to</li>
+     * <li>The parameters of the seeding request, as described by
+     * {@link TileSeedRequest#parse(RequestParams)}</li>
+     * </ul>
+     *
+     * The exit status is 0 if every tile was seeded successfully.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String[]> params = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                exitWithUsage("Invalid argument: " + arg);
+            }
+            params.put(arg.substring(2, equals), new String[] { arg.substring(equals + 1) });
+        }
+        RequestParams requestParams = new RequestParams(params);
+        String configPath = requestParams.getString("config");
+        String outputPath = requestParams.getString("output");
+        if (configPath == null || outputPath == null) {
+            exitWithUsage("Must supply the config and output arguments");
+        }
+        TileSeedRequest request = null;
+        try {
+            request = TileSeedRequest.parse(requestParams);
+        } catch (IllegalArgumentException e) {
+            exitWithUsage(e.getMessage());
+        }
+        File configFile = new File(configPath);
+        if (configFile.isDirectory()) {
+            configFile = new File(configFile, "config.xml");
+        }
+
+        NcwmsCatalogue catalogue = new NcwmsCatalogue(NcwmsConfig.readFromFile(configFile));
+        final NcwmsServlet wmsServlet = new NcwmsServlet(catalogue);
+        TileSeeder seeder = new TileSeeder(catalogue, new Renderer() {
+            @Override
+            public CapturedResponse render(Map<String, String[]> parameters) throws Exception {
+                return wmsServlet.renderOffline(parameters);
+            }
+        });
+        TileSeedJob job;
+        try {
+            job = seeder.start(request, directorySink(new File(outputPath)));
+            long lastReport = System.currentTimeMillis();
+            while (!job.isFinished()) {
+                Thread.sleep(DATASET_POLL_MILLIS);
+                if (System.currentTimeMillis() - lastReport >= PROGRESS_INTERVAL_MILLIS) {
+                    System.out.println(job);
+                    lastReport = System.currentTimeMillis();
+                }
+            }
+            System.out.println(job);
+        } finally {
+            seeder.shutdown();
+            catalogue.shutdown();
+        }
+        System.exit(job.getState() == TileSeedJob.State.COMPLETE && job.getFailedTiles() == 0 ? 0
+                : 1);
+    }
+
+    private static void exitWithUsage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: " + TileSeeder.class.getName()
+                + " --config=<config file> --output=<directory>"
+                + " (--dataset=<id> | --layers=<layer,...>) --zoom=<min-max>"
+                + " [--styles=<style,...>] [--times=<time,...>] [--elevations=<elevation,...>]"
+                + " [--tileMatrixSet=<id>] [--format=<mime type>] [--threads=<n>]");
+        System.exit(1);
+    }
+
+    boolean isImageCacheEnabled() {
+        return catalogue.getRenderedImageCache() != null
+                && catalogue.getRenderedImageCache().isEnabled();
+    }
+
+    /**
+     * @return A sink which stores tiles in the rendered image cache, with the
+     *         same keys as if they had been requested from the tile endpoints
+     */
+    TileSink imageCacheSink() {
+        return new TileSink() {
+            @Override
+            public boolean contains(Tile tile) {
+                String key = getKey(tile);
+                return key != null && catalogue.getRenderedImageCache().contains(key);
+            }
+
+            @Override
+            public void store(Tile tile, byte[] content, String contentType) throws IOException {
+                String key = getKey(tile);
+                if (key == null) {
+                    throw new IOException("Tile cannot be cached - the dataset may have been "
+                            + "removed, or the rendered image cache disabled");
+                }
+                catalogue.getRenderedImageCache().put(key, content, contentType);
+            }
+
+            private String getKey(Tile tile) {
+                return NcwmsServlet.getImageKey(catalogue, tile.getMapParameters(), null,
+                        tile.layer);
+            }
+        };
+    }
+
+    /**
+     * @param directory
+     *            The directory to write tiles to
+     * @return A sink which writes each tile to a file named
+     *         <code>{layer}/{style}/{time}/{elevation}/{tileMatrixSet}/{z}/{x}/{y}.{ext}</code>
+     *         , where x is the column and y is the row of the tile
+     */
+    static TileSink directorySink(final File directory) {
+        return new TileSink() {
+            @Override
+            public boolean contains(Tile tile) {
+                return getFile(tile).exists();
+            }
+
+            @Override
+            public void store(Tile tile, byte[] content, String contentType) throws IOException {
+                Path file = getFile(tile).toPath();
+                Files.createDirectories(file.getParent());
+                /*
+                 * Write to a temporary file first, so that a partial tile is
+                 * never seen
+                 */
+                Path temp = Files.createTempFile(file.getParent(), ".tile", null);
+                try {
+                    Files.write(temp, content);
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+
+            private File getFile(Tile tile) {
+                String extension = tile.format.substring(tile.format.indexOf('/') + 1);
+                if ("jpeg".equals(extension)) {
+                    extension = "jpg";
+                }
+                String path = safeName(tile.layer) + File.separator + safeName(tile.style)
+                        + File.separator + safeName(tile.time) + File.separator
+                        + safeName(tile.elevation) + File.separator
+                        + safeName(tile.tileMatrixSet.getIdentifier()) + File.separator
+                        + tile.zoom + File.separator + tile.col + File.separator + tile.row
+                        + "." + safeName(extension);
+                return new File(directory, path);
+            }
+        };
+    }
+
+    private static String safeName(String name) {
+        if (name == null) {
+            return "default";
+        }
+        return name.replaceAll("[^A-Za-z0-9._-]", "_").replaceAll("^\\.+", "_");
+    }
+
+    private void runJob(TileSeedJob job, TileSeedRequest request, TileMatrixSet tileMatrixSet,
+            TileSink sink) {
+        ThreadPoolExecutor workers = null;
+        try {
+            if (!waitForDatasets(job, request)) {
+                return;
+            }
+            List<SeedLayer> layers = getLayers(request);
+            int minZoom = request.getMinZoom();
+            int maxZoom = request.getMaxZoom();
+            long total = 0L;
+            for (SeedLayer layer : layers) {
+                for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+                    int[] range = layer.getTileRange(tileMatrixSet, zoom);
+                    total += (long) (range[2] - range[0] + 1) * (range[3] - range[1] + 1);
+                }
+            }
+            total *= request.getStyles().size() * request.getTimes().size()
+                    * request.getElevations().size();
+            job.started(total);
+            log.info("Starting " + job);
+
+            /*
+             * A bounded queue, so that the tiles are not all queued up front.
+             * When it is full, this thread renders tiles itself.
+             */
+            int threads = request.getThreads();
+            workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(threads * 2),
+                    daemonThreads("ncwms-tile-seed-" + job.getId().substring(0, 8)),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            for (SeedLayer layer : layers) {
+                int factor = NcwmsTileServlet.getConfiguredMetatileFactor(catalogue, layer.name,
+                        request.getFormat(), tileMatrixSet.getTileSize());
+                for (String style : request.getStyles()) {
+                    for (String time : request.getTimes()) {
+                        for (String elevation : request.getElevations()) {
+                            Tile origin = new Tile(layer.name, style, time, elevation,
+                                    tileMatrixSet, request.getFormat(), 0, 0, 0);
+                            for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+                                if (!submitTiles(job, sink, workers, origin.atZoom(zoom),
+                                        layer.getTileRange(tileMatrixSet, zoom), factor)) {
+                                    return;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            job.finished();
+            log.info("Finished " + job);
+        } catch (InterruptedException e) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Problem seeding tiles", e);
+            job.failed(e.getMessage());
+        } finally {
+            if (workers != null) {
+                workers.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Submits the metatiles covering a range of tiles for rendering
+     *
+     * @param origin
+     *            A tile with the layer, style etc. and zoom level to render
+     * @param range
+     *            The range of tiles to render, as [minCol, minRow, maxCol,
+     *            maxRow]
+     * @param factor
+     *            The number of tiles along each side of a metatile
+     * @return Whether the job should continue
+     */
+    private boolean submitTiles(TileSeedJob job, TileSink sink, ThreadPoolExecutor workers,
+            Tile origin, int[] range, int factor) {
+        for (int metaRow = range[1] / factor * factor; metaRow <= range[3]; metaRow += factor) {
+            for (int metaCol = range[0] / factor * factor; metaCol <= range[2]; metaCol += factor) {
+                if (job.isCancelled()) {
+                    return false;
+                }
+                workers.execute(new MetatileTask(job, sink, origin.at(metaRow, metaCol), factor,
+                        range));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the configured datasets used by a job to finish loading
+     *
+     * @return Whether the job should continue
+     */
+    private boolean waitForDatasets(TileSeedJob job, TileSeedRequest request)
+            throws InterruptedException {
+        Set<String> datasetIds = new LinkedHashSet<>();
+        if (request.getDatasetId() != null) {
+            datasetIds.add(request.getDatasetId());
+        }
+        for (String layer : request.getLayers()) {
+            try {
+                datasetIds.add(catalogue.getLayerNameMapper().getDatasetIdFromLayerName(layer));
+            } catch (EdalLayerNotFoundException e) {
+                job.failed("Layer " + layer + " not found");
+                return false;
+            }
+        }
+        long end = System.currentTimeMillis() + DATASET_WAIT_MILLIS;
+        for (String datasetId : datasetIds) {
+            /*
+             * Lazy and dynamic datasets are loaded when they are first used
+             */
+            DatasetConfig datasetConfig = catalogue.isLazyDataset(datasetId) ? null
+                    : catalogue.getConfig().getDatasetInfo(datasetId);
+            while (datasetConfig != null && datasetConfig.getState() != DatasetState.READY) {
+                if (job.isCancelled()) {
+                    return false;
+                }
+                if (datasetConfig.getState() == DatasetState.ERROR
+                        || System.currentTimeMillis() > end) {
+                    job.failed("Dataset " + datasetId + " is not available");
+                    return false;
+                }
+                Thread.sleep(DATASET_POLL_MILLIS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The layers to seed, along with their bounding boxes
+     */
+    private List<SeedLayer> getLayers(TileSeedRequest request) throws Exception {
+        List<SeedLayer> layers = new ArrayList<>();
+        if (request.getDatasetId() != null) {
+            Dataset dataset = catalogue.getDatasetFromId(request.getDatasetId());
+            if (dataset == null) {
+                throw new IllegalArgumentException("Dataset " + request.getDatasetId()
+                        + " not found");
+            }
+            for (String variableId : dataset.getVariableIds()) {
+                String layerName = catalogue.getLayerNameMapper().getLayerName(dataset.getId(),
+                        variableId);
+                VariableMetadata metadata = dataset.getVariableMetadata(variableId);
+                if (!catalogue.isDisabled(layerName) && metadata.getHorizontalDomain() != null) {
+                    layers.add(new SeedLayer(layerName, metadata.getHorizontalDomain()
+                            .getGeographicBoundingBox()));
+                }
+            }
+        }
+        for (String layerName : request.getLayers()) {
+            String datasetId = catalogue.getLayerNameMapper().getDatasetIdFromLayerName(
+                    layerName);
+            String variableId = catalogue.getLayerNameMapper().getVariableIdFromLayerName(
+                    layerName);
+            Dataset dataset = catalogue.getDatasetFromId(datasetId);
+            if (dataset == null) {
+                throw new IllegalArgumentException("Dataset " + datasetId + " not found");
+            }
+            VariableMetadata metadata = dataset.getVariableMetadata(variableId);
+            if (metadata.getHorizontalDomain() == null) {
+                throw new IllegalArgumentException("Layer " + layerName
+                        + " cannot be plotted on a map");
+            }
+            layers.add(new SeedLayer(layerName, metadata.getHorizontalDomain()
+                    .getGeographicBoundingBox()));
+        }
+        return layers;
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        final AtomicInteger count = new AtomicInteger(0);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * A single tile to be seeded
+     */
+    static final class Tile {
+        private final String layer;
+        private final String style;
+        private final String time;
+        private final String elevation;
+        private final TileMatrixSet tileMatrixSet;
+        private final String format;
+        private final int zoom;
+        private final int row;
+        private final int col;
+
+        private Tile(String layer, String style, String time, String elevation,
+                TileMatrixSet tileMatrixSet, String format, int zoom, int row, int col) {
+            this.layer = layer;
+            this.style = style;
+            this.time = time;
+            this.elevation = elevation;
+            this.tileMatrixSet = tileMatrixSet;
+            this.format = format;
+            this.zoom = zoom;
+            this.row = row;
+            this.col = col;
+        }
+
+        private Tile atZoom(int zoom) {
+            return new Tile(layer, style, time, elevation, tileMatrixSet, format, zoom, row, col);
+        }
+
+        private Tile at(int row, int col) {
+            return new Tile(layer, style, time, elevation, tileMatrixSet, format, zoom, row, col);
+        }
+
+        /**
+         * @return The parameters of the GetMap request for this tile
+         */
+        Map<String, String[]> getMapParameters() {
+            int tileSize = tileMatrixSet.getTileSize();
+            return getMapParameters(tileMatrixSet.getTileBounds(zoom, row, col), tileSize,
+                    tileSize);
+        }
+
+        private Map<String, String[]> getMapParameters(double[] bounds, int width, int height) {
+            Map<String, String[]> params = new HashMap<>();
+            if (time != null) {
+                params.put("TIME", new String[] { time });
+            }
+            if (elevation != null) {
+                params.put("ELEVATION", new String[] { elevation });
+            }
+            return NcwmsTileServlet.getMapParameters(layer, style, tileMatrixSet, format, params,
+                    bounds, width, height);
+        }
+    }
+
+    /**
+     * Renders the tiles of one metatile which are within the area being
+     * seeded
+     */
+    private final class MetatileTask implements Runnable {
+        private final TileSeedJob job;
+        private final TileSink sink;
+        private final Tile topLeft;
+        private final int nRows;
+        private final int nCols;
+        private final List<Tile> tiles = new ArrayList<>();
+
+        private MetatileTask(TileSeedJob job, TileSink sink, Tile topLeft, int factor,
+                int[] range) {
+            this.job = job;
+            this.sink = sink;
+            this.topLeft = topLeft;
+            /*
+             * Metatiles at the edge of the matrix may be smaller
+             */
+            nRows = Math.min(factor, topLeft.tileMatrixSet.getMatrixHeight(topLeft.zoom)
+                    - topLeft.row);
+            nCols = Math.min(factor, topLeft.tileMatrixSet.getMatrixWidth(topLeft.zoom)
+                    - topLeft.col);
+            for (int row = Math.max(topLeft.row, range[1]); row < topLeft.row + nRows
+                    && row <= range[3]; row++) {
+                for (int col = Math.max(topLeft.col, range[0]); col < topLeft.col + nCols
+                        && col <= range[2]; col++) {
+                    tiles.add(topLeft.at(row, col));
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            if (job.isCancelled()) {
+                return;
+            }
+            try {
+                if (allStored()) {
+                    job.tilesSkipped(tiles.size());
+                    return;
+                }
+                if (nRows == 1 && nCols == 1) {
+                    CapturedResponse response = render(topLeft.getMapParameters());
+                    sink.store(topLeft, response.getContent(), response.getContentType());
+                } else {
+                    renderMetatile();
+                }
+                job.tilesRendered(tiles.size());
+            } catch (Exception e) {
+                log.debug("Problem seeding tiles", e);
+                job.tilesFailed(tiles.size());
+            }
+        }
+
+        private boolean allStored() throws IOException {
+            for (Tile tile : tiles) {
+                if (!sink.contains(tile)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void renderMetatile() throws Exception {
+            TileMatrixSet tileMatrixSet = topLeft.tileMatrixSet;
+            int tileSize = tileMatrixSet.getTileSize();
+            double[] topLeftBounds = tileMatrixSet.getTileBounds(topLeft.zoom, topLeft.row,
+                    topLeft.col);
+            double[] bottomRightBounds = tileMatrixSet.getTileBounds(topLeft.zoom, topLeft.row
+                    + nRows - 1, topLeft.col + nCols - 1);
+            CapturedResponse response = render(topLeft.getMapParameters(new double[] {
+                    topLeftBounds[0], bottomRightBounds[1], bottomRightBounds[2],
+                    topLeftBounds[3] }, nCols * tileSize, nRows * tileSize));
+            byte[][][] encoded = NcwmsTileServlet.splitMetatile(response, nRows, nCols, tileSize);
+            if (encoded == null) {
+                throw new IOException("Metatile could not be split into tiles");
+            }
+            for (Tile tile : tiles) {
+                sink.store(tile, encoded[tile.row - topLeft.row][tile.col - topLeft.col],
+                        response.getContentType());
+            }
+        }
+
+        private CapturedResponse render(Map<String, String[]> parameters) throws Exception {
+            CapturedResponse response = renderer.render(parameters);
+            if (!response.isImage()) {
+                throw new IOException("GetMap failed with status " + response.getStatus());
+            }
+            return response;
+        }
+    }
+
+    /**
+     * A layer to seed, with the area it covers
+     */
+    private static final class SeedLayer {
+        private final String name;
+        private final GeographicBoundingBox bbox;
+
+        private SeedLayer(String name, GeographicBoundingBox bbox) {
+            this.name = name;
+            this.bbox = bbox;
+        }
+
+        private int[] getTileRange(TileMatrixSet tileMatrixSet, int zoom) {
+            return tileMatrixSet.getTileRange(zoom, bbox.getWestBoundLongitude(),
+                    bbox.getSouthBoundLatitude(), bbox.getEastBoundLongitude(),
+                    bbox.getNorthBoundLatitude());
+        }
+    }
+}
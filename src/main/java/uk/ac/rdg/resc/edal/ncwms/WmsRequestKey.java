@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Builds canonical keys for WMS requests, so that requests which differ only
+ * in parameter order, the case of parameter names and case-insensitive values,
+ * or the formatting of numbers, have the same key.
+ */
+class WmsRequestKey {
+    /*
+     * Parameters whose values are not case-sensitive
+     */
+    private static final Set<String> CASE_INSENSITIVE = new HashSet<>(Arrays.asList("SERVICE",
+            "REQUEST", "VERSION", "FORMAT", "TRANSPARENT", "CRS", "SRS", "EXCEPTIONS",
+            "INFO_FORMAT", "COLORSCALERANGE", "LOGSCALE", "ABOVEMAXCOLOR", "BELOWMINCOLOR",
+            "BGCOLOR"));
+    /*
+     * Parameters whose values are comma-separated lists of numbers
+     */
+    private static final Set<String> NUMERIC = new HashSet<>(Arrays.asList("BBOX", "WIDTH",
+            "HEIGHT", "ELEVATION", "NUMCOLORBANDS", "OPACITY", "I", "J", "X", "Y",
+            "FEATURE_COUNT"));
+
+    private WmsRequestKey() {
+    }
+
+    /**
+     * @param parameters
+     *            The parameters of the request, as supplied by the client
+     * @param overrides
+     *            Parameters which replace those supplied by the client, e.g.
+     *            layer names which have been combined with a dataset ID. May
+     *            be <code>null</code>.
+     * @return The canonical key for the request
+     */
+    static String canonicalise(Map<String, String[]> parameters, Map<String, String> overrides) {
+        Map<String, String> canonical = new TreeMap<>();
+        for (Entry<String, String[]> parameter : parameters.entrySet()) {
+            String[] values = parameter.getValue();
+            if (values != null && values.length > 0 && values[0] != null) {
+                canonical.put(parameter.getKey().trim().toUpperCase(), values[0]);
+            }
+        }
+        if (overrides != null) {
+            for (Entry<String, String> override : overrides.entrySet()) {
+                canonical.put(override.getKey().toUpperCase(), override.getValue());
+            }
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (Entry<String, String> parameter : canonical.entrySet()) {
+            String name = parameter.getKey();
+            String value = parameter.getValue().trim();
+            if (CASE_INSENSITIVE.contains(name)) {
+                value = value.toLowerCase();
+            } else if (NUMERIC.contains(name)) {
+                value = normaliseNumbers(value);
+            }
+            if (key.length() > 0) {
+                key.append('&');
+            }
+            key.append(name).append('=').append(value);
+        }
+        return key.toString();
+    }
+
+    private static String normaliseNumbers(String value) {
+        String[] parts = value.split(",");
+        StringBuilder normalised = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                normalised.append(',');
+            }
+            String part = parts[i].trim();
+            try {
+                double number = Double.parseDouble(part);
+                if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+                    normalised.append((long) number);
+                } else {
+                    normalised.append(number);
+                }
+            } catch (NumberFormatException e) {
+                /*
+                 * Not a number (e.g. an elevation range) - leave it as it is
+                 */
+                normalised.append(part);
+            }
+        }
+        return normalised.toString();
+    }
+}
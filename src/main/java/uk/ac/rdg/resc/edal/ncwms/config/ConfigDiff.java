@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.JAXBException;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.CacheInfo;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.VariableConfig;
+
+/**
+ * The differences between a live {@link NcwmsConfig} and a newer version of
+ * it, e.g. one which has been edited on disk.
+ *
+ * Datasets and dynamic services are matched by ID and alias respectively. A
+ * dataset needs reloading if its location, data reading class or the settings
+ * of any of its variables have changed. Other changes to a dataset (its title,
+ * flags, metadata links etc.) can be applied without reloading it.
+ *
+ * Variables which are only present in the live config are ignored, since they
+ * are normally those which have been added with default settings when the
+ * dataset loaded.
+ */
+public class ConfigDiff {
+    private final List<DatasetConfig> addedDatasets = new ArrayList<>();
+    private final List<DatasetConfig> removedDatasets = new ArrayList<>();
+    private final List<DatasetConfig> reloadedDatasets = new ArrayList<>();
+    private final Map<DatasetConfig, DatasetConfig> updatedDatasets = new IdentityHashMap<>();
+    private final List<NcwmsDynamicService> addedDynamicServices = new ArrayList<>();
+    private final List<NcwmsDynamicService> removedDynamicServices = new ArrayList<>();
+    private final Map<NcwmsDynamicService, NcwmsDynamicService> updatedDynamicServices = new IdentityHashMap<>();
+    private boolean cacheChanged = false;
+    private boolean dynamicCacheChanged = false;
+    private boolean imageCacheChanged = false;
+    private boolean httpCacheChanged = false;
+    private boolean settingsChanged = false;
+    private boolean crsCodesChanged = false;
+
+    private ConfigDiff() {
+    }
+
+    /**
+     * Compares two configs
+     *
+     * @param live
+     *            The config currently in use
+     * @param updated
+     *            The new version of the config
+     * @return The differences between them
+     * @throws JAXBException
+     *             If part of either config cannot be serialised for comparison
+     */
+    public static ConfigDiff between(NcwmsConfig live, NcwmsConfig updated) throws JAXBException {
+        ConfigDiff diff = new ConfigDiff();
+
+        Map<String, DatasetConfig> liveDatasets = byId(live.getDatasets());
+        for (DatasetConfig dataset : updated.getDatasets()) {
+            DatasetConfig liveDataset = liveDatasets.remove(dataset.getId());
+            if (liveDataset == null) {
+                diff.addedDatasets.add(dataset);
+            } else if (needsReload(liveDataset, dataset)) {
+                diff.reloadedDatasets.add(dataset);
+            } else if (!sameXml(liveDataset, dataset, DatasetConfig.class)) {
+                diff.updatedDatasets.put(liveDataset, dataset);
+            }
+        }
+        diff.removedDatasets.addAll(liveDatasets.values());
+
+        Map<String, NcwmsDynamicService> liveServices = new LinkedHashMap<>();
+        for (NcwmsDynamicService service : live.getDynamicServices()) {
+            liveServices.put(service.getAlias(), service);
+        }
+        for (NcwmsDynamicService service : updated.getDynamicServices()) {
+            NcwmsDynamicService liveService = liveServices.remove(service.getAlias());
+            if (liveService == null) {
+                diff.addedDynamicServices.add(service);
+            } else if (!sameXml(liveService, service, NcwmsDynamicService.class)) {
+                diff.updatedDynamicServices.put(liveService, service);
+            }
+        }
+        diff.removedDynamicServices.addAll(liveServices.values());
+
+        diff.cacheChanged = !sameXml(live.getCacheSettings(), updated.getCacheSettings(),
+                CacheInfo.class);
+        diff.dynamicCacheChanged = !sameXml(live.getDynamicCacheInfo(),
+                updated.getDynamicCacheInfo(), NcwmsDynamicCacheInfo.class);
+        diff.imageCacheChanged = !sameXml(live.getImageCacheInfo(), updated.getImageCacheInfo(),
+                NcwmsImageCacheInfo.class);
+        diff.httpCacheChanged = !sameXml(live.getHttpCacheInfo(), updated.getHttpCacheInfo(),
+                NcwmsHttpCacheInfo.class);
+        diff.settingsChanged = !sameXml(live.getContactInfo(), updated.getContactInfo(),
+                NcwmsContact.class)
+                || !sameXml(live.getServerInfo(), updated.getServerInfo(), NcwmsServerInfo.class)
+                || !sameXml(live.getLoadingInfo(), updated.getLoadingInfo(),
+                        NcwmsLoadingInfo.class)
+                || !sameXml(live.getProcessingInfo(), updated.getProcessingInfo(),
+                        NcwmsProcessingInfo.class)
+                || !sameXml(live.getDatasetSettings(), updated.getDatasetSettings(),
+                        NcwmsDatasetSettings.class);
+        diff.crsCodesChanged = !sameXml(live.getSupportedNcwmsCrsCodes(),
+                updated.getSupportedNcwmsCrsCodes(), NcwmsSupportedCrsCodes.class);
+        return diff;
+    }
+
+    private static Map<String, DatasetConfig> byId(DatasetConfig[] datasets) {
+        Map<String, DatasetConfig> map = new LinkedHashMap<>();
+        for (DatasetConfig dataset : datasets) {
+            map.put(dataset.getId(), dataset);
+        }
+        return map;
+    }
+
+    private static boolean needsReload(DatasetConfig live, DatasetConfig updated)
+            throws JAXBException {
+        if (!equal(live.getLocation(), updated.getLocation())
+                || !equal(live.getDataReaderClass(), updated.getDataReaderClass())) {
+            return true;
+        }
+        for (VariableConfig variable : updated.getVariables()) {
+            VariableConfig liveVariable = live.getVariableById(variable.getId());
+            if (liveVariable == null
+                    || !sameXml(liveVariable, variable, VariableConfig.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equal(String a, String b) {
+        return (a == null ? "" : a.trim()).equals(b == null ? "" : b.trim());
+    }
+
+    private static <T> boolean sameXml(T a, T b, Class<T> type) throws JAXBException {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return NcwmsConfig.toXml(a, type, "value").equals(NcwmsConfig.toXml(b, type, "value"));
+    }
+
+    private static <T> boolean sameXml(T[] a, T[] b, Class<T> type) throws JAXBException {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (!sameXml(a[i], b[i], type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether there are no differences
+     */
+    public boolean isEmpty() {
+        return addedDatasets.isEmpty() && removedDatasets.isEmpty() && reloadedDatasets.isEmpty()
+                && updatedDatasets.isEmpty() && addedDynamicServices.isEmpty()
+                && removedDynamicServices.isEmpty() && updatedDynamicServices.isEmpty()
+                && !cacheChanged && !dynamicCacheChanged && !imageCacheChanged
+                && !httpCacheChanged && !settingsChanged && !crsCodesChanged;
+    }
+
+    /**
+     * @return Datasets which are only in the new config
+     */
+    public List<DatasetConfig> getAddedDatasets() {
+        return Collections.unmodifiableList(addedDatasets);
+    }
+
+    /**
+     * @return Datasets (from the live config) which are not in the new config
+     */
+    public List<DatasetConfig> getRemovedDatasets() {
+        return Collections.unmodifiableList(removedDatasets);
+    }
+
+    /**
+     * @return Datasets (from the new config) which have changed in a way which
+     *         requires them to be reloaded
+     */
+    public List<DatasetConfig> getReloadedDatasets() {
+        return Collections.unmodifiableList(reloadedDatasets);
+    }
+
+    /**
+     * @return Datasets from the live config mapped to their new versions, for
+     *         datasets which have changed without needing to be reloaded
+     */
+    public Map<DatasetConfig, DatasetConfig> getUpdatedDatasets() {
+        return Collections.unmodifiableMap(updatedDatasets);
+    }
+
+    /**
+     * @return Dynamic services which are only in the new config
+     */
+    public List<NcwmsDynamicService> getAddedDynamicServices() {
+        return Collections.unmodifiableList(addedDynamicServices);
+    }
+
+    /**
+     * @return Dynamic services (from the live config) which are not in the new
+     *         config
+     */
+    public List<NcwmsDynamicService> getRemovedDynamicServices() {
+        return Collections.unmodifiableList(removedDynamicServices);
+    }
+
+    /**
+     * @return Dynamic services from the live config mapped to their new
+     *         versions, for services whose settings have changed
+     */
+    public Map<NcwmsDynamicService, NcwmsDynamicService> getUpdatedDynamicServices() {
+        return Collections.unmodifiableMap(updatedDynamicServices);
+    }
+
+    /**
+     * @return Whether the settings of the data cache have changed
+     */
+    public boolean isCacheChanged() {
+        return cacheChanged;
+    }
+
+    /**
+     * @return Whether the settings of the dynamic dataset cache have changed
+     */
+    public boolean isDynamicCacheChanged() {
+        return dynamicCacheChanged;
+    }
+
+    /**
+     * @return Whether the settings of the rendered image cache have changed
+     */
+    public boolean isImageCacheChanged() {
+        return imageCacheChanged;
+    }
+
+    /**
+     * @return Whether the HTTP caching settings have changed
+     */
+    public boolean isHttpCacheChanged() {
+        return httpCacheChanged;
+    }
+
+    /**
+     * @return Whether the contact, server, dataset loading, request
+     *         processing or per-dataset settings have changed
+     */
+    public boolean isSettingsChanged() {
+        return settingsChanged;
+    }
+
+    /**
+     * @return Whether the supported CRS codes have changed
+     */
+    public boolean isCrsCodesChanged() {
+        return crsCodesChanged;
+    }
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only journal of changes made to a config file since it was last
+ * written in full. Each entry is a single line of JSON, so that a partially
+ * written entry (e.g. if the server is killed mid-write) only affects that
+ * entry.
+ *
+ * Writing a single entry is much cheaper than rewriting the whole config file,
+ * which matters when many datasets are added or removed one after the other.
+ * The journal is replayed when the config is read, and is cleared whenever the
+ * config file is written in full.
+ */
+class ConfigJournal {
+    private static final Logger log = LoggerFactory.getLogger(ConfigJournal.class);
+
+    static final String OPERATION = "op";
+
+    private final File journalFile;
+    private int nEntries = 0;
+
+    /**
+     * @param configFile
+     *            The config file which this journal records changes to. The
+     *            journal is stored alongside it.
+     */
+    ConfigJournal(File configFile) {
+        this.journalFile = new File(configFile.getAbsolutePath() + ".journal");
+    }
+
+    /**
+     * Appends an entry to the journal and flushes it to disk
+     *
+     * @param entry
+     *            The entry to append. This must contain an {@link #OPERATION}
+     *            field.
+     * @throws IOException
+     *             If the entry cannot be written
+     */
+    synchronized void append(JSONObject entry) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(journalFile, true),
+                StandardCharsets.UTF_8)) {
+            writer.write(entry.toString());
+            writer.write('\n');
+        }
+        nEntries++;
+    }
+
+    /**
+     * Reads all complete entries from the journal. Lines which cannot be
+     * parsed are logged and skipped.
+     *
+     * @return The entries, in the order in which they were written
+     * @throws IOException
+     *             If the journal exists but cannot be read
+     */
+    synchronized List<JSONObject> read() throws IOException {
+        List<JSONObject> entries = new ArrayList<>();
+        if (!journalFile.exists()) {
+            return entries;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    JSONObject entry = new JSONObject(line);
+                    if (entry.has(OPERATION)) {
+                        entries.add(entry);
+                        continue;
+                    }
+                } catch (JSONException e) {
+                    /* Logged below */
+                }
+                log.warn("Ignoring unreadable entry in config journal " + journalFile + ": " + line);
+            }
+        }
+        nEntries = entries.size();
+        return entries;
+    }
+
+    /**
+     * @return The number of entries in the journal
+     */
+    synchronized int size() {
+        return nEntries;
+    }
+
+    /**
+     * Removes all entries. This should be called once the config file has
+     * been written in full.
+     */
+    synchronized void clear() {
+        if (journalFile.exists() && !journalFile.delete()) {
+            log.warn("Could not delete config journal " + journalFile);
+        }
+        nEntries = 0;
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable prefix trie of {@link NcwmsDynamicService}s, keyed by their
+ * aliases. This allows the service for a given layer name to be found by
+ * walking the layer name once, rather than testing it against every configured
+ * alias.
+ *
+ * A new index is built by {@link NcwmsConfig} whenever the set of dynamic
+ * services changes, so an instance can be safely shared between threads and
+ * can also be used to detect that the services have changed.
+ */
+public final class DynamicServiceIndex {
+    static final DynamicServiceIndex EMPTY = new DynamicServiceIndex(
+            Collections.<NcwmsDynamicService> emptyList());
+
+    private final Node root = new Node();
+
+    DynamicServiceIndex(Collection<NcwmsDynamicService> dynamicServices) {
+        for (NcwmsDynamicService dynamicService : dynamicServices) {
+            String alias = dynamicService.getAlias();
+            if (alias == null) {
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < alias.length(); i++) {
+                char c = alias.charAt(i);
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.service = dynamicService;
+        }
+    }
+
+    /**
+     * Finds the dynamic service whose alias is the longest prefix of the
+     * supplied name
+     *
+     * @param name
+     *            The layer name or dataset ID to test
+     * @return The matching {@link NcwmsDynamicService}, or <code>null</code> if
+     *         no alias is a prefix of the name
+     */
+    public NcwmsDynamicService longestPrefixMatch(String name) {
+        NcwmsDynamicService match = root.service;
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.children.get(name.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.service != null) {
+                match = node.service;
+            }
+        }
+        return match;
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private NcwmsDynamicService service = null;
+    }
+}
@@ -32,19 +32,33 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
 import javax.xml.transform.Source;
+import javax.xml.namespace.QName;
 import javax.xml.transform.stream.StreamSource;
 
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,16 +73,62 @@ import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
  * 
  * @author Guy Griffiths
  */
-@XmlType(propOrder = { "dynamicServices", "dynamicCache", "contact", "serverInfo", "crsCodes" })
+@XmlType(propOrder = { "dynamicServices", "dynamicCache", "imageCache", "httpCache", "loading", "processing", "datasetSettings", "contact", "serverInfo", "crsCodes" })
 @XmlRootElement(name = "config")
 public class NcwmsConfig extends CatalogueConfig {
     private static final Logger log = LoggerFactory.getLogger(NcwmsConfig.class);
 
+    /*
+     * Creating a JAXBContext is expensive, and they are thread-safe, so we
+     * only create one
+     */
+    private static JAXBContext jaxbContext = null;
+
+    /*
+     * Journal entry types and fields
+     */
+    private static final String ADD_DATASET = "addDataset";
+    private static final String REMOVE_DATASET = "removeDataset";
+    private static final String DATASET = "dataset";
+    private static final String ID = "id";
+    /*
+     * The number of journal entries after which the config file is rewritten
+     * in full and the journal cleared
+     */
+    private static final int MAX_JOURNAL_ENTRIES = 100;
+
+    @XmlTransient
+    private ConfigJournal journal = null;
+    @XmlTransient
+    private final AtomicBoolean compactionPending = new AtomicBoolean(false);
+    @XmlTransient
+    private ExecutorService compactor = null;
+    /*
+     * The number of writes to the config file or journal in progress
+     */
+    @XmlTransient
+    private final AtomicInteger writesInProgress = new AtomicInteger(0);
+
     /* Included in XML - see setDynamicServices for details */
     private Map<String, NcwmsDynamicService> dynamicServices = new LinkedHashMap<String, NcwmsDynamicService>();
-    
+    /*
+     * Prefix index of the dynamic services, rebuilt whenever they change
+     */
+    @XmlTransient
+    private volatile DynamicServiceIndex dynamicServiceIndex = DynamicServiceIndex.EMPTY;
+
     @XmlElement(name = "dynamicCache")
     private NcwmsDynamicCacheInfo dynamicCache = new NcwmsDynamicCacheInfo();
+    @XmlElement(name = "imageCache")
+    private NcwmsImageCacheInfo imageCache = new NcwmsImageCacheInfo();
+    @XmlElement(name = "httpCache")
+    private NcwmsHttpCacheInfo httpCache = new NcwmsHttpCacheInfo();
+    @XmlElement(name = "datasetLoading")
+    private NcwmsLoadingInfo loading = new NcwmsLoadingInfo();
+    @XmlElement(name = "requestProcessing")
+    private NcwmsProcessingInfo processing = new NcwmsProcessingInfo();
+    /* Included in XML - see setDatasetSettings for details */
+    private Map<String, NcwmsDatasetSettings> datasetSettings = new LinkedHashMap<String, NcwmsDatasetSettings>();
     @XmlElement(name = "contact")
     private NcwmsContact contact = new NcwmsContact();
     @XmlElement(name = "server")
@@ -130,14 +190,29 @@ public class NcwmsConfig extends CatalogueConfig {
         for (NcwmsDynamicService dynamicService : dynamicServices) {
             this.dynamicServices.put(dynamicService.getAlias(), dynamicService);
         }
+        refreshDynamicServiceIndex();
     }
 
+    /**
+     * Adds a dynamic service to the configuration
+     *
+     * @param dynamicService
+     *            The {@link NcwmsDynamicService} to add
+     * @throws IllegalArgumentException
+     *             If the data reader class of the service cannot be used
+     */
     public synchronized void addDynamicService(NcwmsDynamicService dynamicService) {
+        if (dynamicService.getDatasetFactoryError() != null) {
+            throw new IllegalArgumentException("Cannot add dynamic service "
+                    + dynamicService.getAlias() + ": " + dynamicService.getDatasetFactoryError());
+        }
         dynamicServices.put(dynamicService.getAlias(), dynamicService);
+        refreshDynamicServiceIndex();
     }
 
     public synchronized void removeDynamicService(NcwmsDynamicService dynamicService) {
         dynamicServices.remove(dynamicService.getAlias());
+        refreshDynamicServiceIndex();
     }
 
     public synchronized void changeDynamicServiceId(NcwmsDynamicService dynamicService,
@@ -146,12 +221,371 @@ public class NcwmsConfig extends CatalogueConfig {
         dynamicService.setAlias(newAlias);
 
         dynamicServices.put(newAlias, dynamicService);
+        refreshDynamicServiceIndex();
+    }
+
+    /**
+     * @return An index of the {@link NcwmsDynamicService}s on this server,
+     *         allowing the service for a given layer name to be looked up
+     *         efficiently. A new index is created whenever the dynamic services
+     *         change.
+     */
+    public DynamicServiceIndex getDynamicServiceIndex() {
+        return dynamicServiceIndex;
+    }
+
+    /**
+     * Rebuilds the index of dynamic services. This is called automatically
+     * when services are added, removed, or have their alias changed, but
+     * should also be called if the properties of an existing service are
+     * modified, so that any information derived from the previous index is
+     * discarded.
+     *
+     * This also resolves the data reader of each service, so that any which
+     * are misconfigured are reported now rather than when they are first used.
+     */
+    public synchronized void refreshDynamicServiceIndex() {
+        for (NcwmsDynamicService dynamicService : dynamicServices.values()) {
+            if (dynamicService.getDatasetFactoryError() != null) {
+                log.error("Dynamic service " + dynamicService.getAlias()
+                        + " will not work: " + dynamicService.getDatasetFactoryError());
+            }
+        }
+        dynamicServiceIndex = new DynamicServiceIndex(dynamicServices.values());
     }
     
+    /**
+     * @return The {@link NcwmsDatasetSettings} which have been configured
+     */
+    public NcwmsDatasetSettings[] getDatasetSettings() {
+        return datasetSettings.values().toArray(new NcwmsDatasetSettings[0]);
+    }
+
+    @XmlElementWrapper(name = "datasetSettings")
+    @XmlElement(name = "dataset", required = false)
+    private void setDatasetSettings(NcwmsDatasetSettings[] datasetSettings) {
+        this.datasetSettings = new LinkedHashMap<String, NcwmsDatasetSettings>();
+        for (NcwmsDatasetSettings settings : datasetSettings) {
+            this.datasetSettings.put(settings.getId(), settings);
+        }
+    }
+
+    /**
+     * @param datasetId
+     *            The ID of a dataset
+     * @return The {@link NcwmsDatasetSettings} for the dataset. If none have
+     *         been configured, default settings are returned, which are not
+     *         stored unless passed to
+     *         {@link #addDatasetSettings(NcwmsDatasetSettings)}
+     */
+    public synchronized NcwmsDatasetSettings getSettingsForDataset(String datasetId) {
+        NcwmsDatasetSettings settings = datasetSettings.get(datasetId);
+        if (settings == null) {
+            settings = new NcwmsDatasetSettings(datasetId);
+        }
+        return settings;
+    }
+
+    public synchronized void addDatasetSettings(NcwmsDatasetSettings settings) {
+        datasetSettings.put(settings.getId(), settings);
+    }
+
+    /**
+     * Replaces all of the per-dataset settings, so that datasets which are
+     * not included go back to the default settings
+     *
+     * @param settings
+     *            The new {@link NcwmsDatasetSettings}
+     */
+    public synchronized void replaceDatasetSettings(NcwmsDatasetSettings[] settings) {
+        setDatasetSettings(settings);
+    }
+
+    /**
+     * @param datasetId
+     *            The ID of a configured dataset
+     * @return Whether the dataset is only loaded when it is first requested
+     */
+    public boolean isLazy(String datasetId) {
+        Boolean lazy = getSettingsForDataset(datasetId).getLazy();
+        return lazy == null ? loading.isLazy() : lazy;
+    }
+
+    /**
+     * @return Whether the catalogue loads the configured datasets itself,
+     *         rather than leaving it to this config. It does so if the number
+     *         of datasets loaded at once is limited, or if any dataset is
+     *         lazy.
+     */
+    public boolean isLoadingManaged() {
+        if (loading.getLoadingThreads() > 0) {
+            return true;
+        }
+        for (DatasetConfig dataset : getDatasets()) {
+            if (isLazy(dataset.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public NcwmsLoadingInfo getLoadingInfo() {
+        return loading;
+    }
+
+    public NcwmsProcessingInfo getProcessingInfo() {
+        return processing;
+    }
+
+    /**
+     * @return The directory containing the config file, or <code>null</code>
+     *         if this config was not read from a file
+     */
+    @XmlTransient
+    public File getConfigDirectory() {
+        return configFile == null ? null : configFile.getAbsoluteFile().getParentFile();
+    }
+
+    /**
+     * Records that a dataset has been added to this config, without rewriting
+     * the whole config file. This should be called after
+     * {@link #addDataset(DatasetConfig)}.
+     *
+     * @param dataset
+     *            The {@link DatasetConfig} which has been added
+     * @throws IOException
+     *             If the change cannot be written
+     */
+    public void saveAddedDataset(DatasetConfig dataset) throws IOException {
+        if (journal == null) {
+            save();
+            return;
+        }
+        String xml;
+        try {
+            xml = toXml(dataset, DatasetConfig.class, DATASET);
+        } catch (JAXBException e) {
+            throw new IOException("Problem serialising dataset " + dataset.getId(), e);
+        }
+        JSONObject entry = new JSONObject();
+        entry.put(ConfigJournal.OPERATION, ADD_DATASET);
+        entry.put(DATASET, xml);
+        appendToJournal(entry);
+    }
+
+    /**
+     * Records that a dataset has been removed from this config, without
+     * rewriting the whole config file. This should be called after the
+     * dataset has been removed.
+     *
+     * @param datasetId
+     *            The ID of the dataset which has been removed
+     * @throws IOException
+     *             If the change cannot be written
+     */
+    public void saveRemovedDataset(String datasetId) throws IOException {
+        if (journal == null) {
+            save();
+            return;
+        }
+        JSONObject entry = new JSONObject();
+        entry.put(ConfigJournal.OPERATION, REMOVE_DATASET);
+        entry.put(ID, datasetId);
+        appendToJournal(entry);
+    }
+
+    private void appendToJournal(JSONObject entry) throws IOException {
+        writesInProgress.incrementAndGet();
+        try {
+            journal.append(entry);
+        } finally {
+            writesInProgress.decrementAndGet();
+        }
+        if (journal.size() >= MAX_JOURNAL_ENTRIES) {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * @return Whether this config is currently being written to file or to
+     *         the journal, or a rewrite of the file has been queued. The file
+     *         may not match this config until it has finished.
+     */
+    public boolean isWritePending() {
+        return writesInProgress.get() > 0 || compactionPending.get();
+    }
+
+    /**
+     * Rewrites the config file in full in the background, clearing the
+     * journal. Only one rewrite is queued at a time.
+     */
+    private void scheduleCompaction() {
+        if (compactionPending.compareAndSet(false, true)) {
+            compactor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compactionPending.set(false);
+                    try {
+                        save();
+                    } catch (IOException e) {
+                        log.error("Problem compacting config journal", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Serialises part of the config as an XML fragment
+     *
+     * @param value
+     *            The object to serialise
+     * @param type
+     *            The type of the object
+     * @param elementName
+     *            The name of the XML element to serialise it as
+     * @return The XML
+     * @throws JAXBException
+     *             If the object cannot be serialised
+     */
+    static <T> String toXml(T value, Class<T> type, String elementName) throws JAXBException {
+        StringWriter xml = new StringWriter();
+        Marshaller marshaller = getJaxbContext().createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+        marshaller.marshal(new JAXBElement<T>(new QName(elementName), type, value), xml);
+        return xml.toString();
+    }
+
+    /**
+     * Reads the config file as it currently is on disk, including any changes
+     * which have been journalled but not yet written to it. This does not
+     * affect this config.
+     *
+     * @return The config which is currently stored on disk, or
+     *         <code>null</code> if this config is not stored in a file
+     * @throws IOException
+     *             If the file cannot be read
+     * @throws JAXBException
+     *             If the file is not a valid config
+     */
+    public NcwmsConfig readCurrentFile() throws IOException, JAXBException {
+        if (configFile == null || !configFile.exists()) {
+            return null;
+        }
+        NcwmsConfig current;
+        try (Reader reader = new FileReader(configFile)) {
+            current = deserialise(reader);
+        }
+        if (journal != null) {
+            synchronized (journal) {
+                current.applyJournal(journal.read());
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return The file which this config is stored in, or <code>null</code>
+     *         if it is not stored in a file
+     */
+    @XmlTransient
+    public File getConfigFile() {
+        return configFile;
+    }
+
+    private void replayJournal() throws IOException, JAXBException {
+        List<JSONObject> entries = journal.read();
+        applyJournal(entries);
+        if (!entries.isEmpty()) {
+            log.info("Replayed " + entries.size() + " changes from the config journal");
+            scheduleCompaction();
+        }
+    }
+
+    private void applyJournal(List<JSONObject> entries) throws JAXBException {
+        for (JSONObject entry : entries) {
+            String operation = entry.getString(ConfigJournal.OPERATION);
+            if (ADD_DATASET.equals(operation)) {
+                Unmarshaller unmarshaller = getJaxbContext().createUnmarshaller();
+                DatasetConfig dataset = unmarshaller.unmarshal(
+                        new StreamSource(new StringReader(entry.getString(DATASET))),
+                        DatasetConfig.class).getValue();
+                addDataset(dataset);
+            } else if (REMOVE_DATASET.equals(operation)) {
+                DatasetConfig dataset = getDatasetInfo(entry.getString(ID));
+                if (dataset != null) {
+                    removeDataset(dataset);
+                }
+            } else {
+                log.warn("Ignoring unknown config journal operation: " + operation);
+            }
+        }
+    }
+
+    /**
+     * Starts loading the configured datasets. If the catalogue manages their
+     * loading (see {@link #isLoadingManaged()}), this does nothing, so that
+     * the catalogue can queue them by priority and leave lazy datasets
+     * unloaded.
+     */
+    @Override
+    public void loadDatasets() {
+        if (!isLoadingManaged()) {
+            super.loadDatasets();
+        }
+    }
+
+    /**
+     * Writes the whole config to file, and clears any journalled changes
+     */
+    @Override
+    public void save() throws IOException {
+        writesInProgress.incrementAndGet();
+        try {
+            if (journal == null) {
+                super.save();
+            } else {
+                /*
+                 * Hold the journal lock whilst writing, so that a change which
+                 * is journalled after the config has been serialised cannot be
+                 * lost when the journal is cleared
+                 */
+                synchronized (journal) {
+                    super.save();
+                    journal.clear();
+                }
+            }
+        } finally {
+            writesInProgress.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void serialise(Writer writer) throws JAXBException {
+        Marshaller marshaller = getJaxbContext().createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        marshaller.marshal(this, writer);
+    }
+
+    private static synchronized JAXBContext getJaxbContext() throws JAXBException {
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(NcwmsConfig.class);
+        }
+        return jaxbContext;
+    }
+
     public NcwmsDynamicCacheInfo getDynamicCacheInfo() {
         return dynamicCache;
     }
 
+    public NcwmsImageCacheInfo getImageCacheInfo() {
+        return imageCache;
+    }
+
+    public NcwmsHttpCacheInfo getHttpCacheInfo() {
+        return httpCache;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(super.toString());
@@ -170,9 +604,7 @@ public class NcwmsConfig extends CatalogueConfig {
     }
 
     public static NcwmsConfig deserialise(Reader xmlConfig) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(NcwmsConfig.class);
-
-        Unmarshaller unmarshaller = context.createUnmarshaller();
+        Unmarshaller unmarshaller = getJaxbContext().createUnmarshaller();
         Source source = new StreamSource(xmlConfig);
         NcwmsConfig config = unmarshaller.unmarshal(source, NcwmsConfig.class).getValue();
         return config;
@@ -197,6 +629,16 @@ public class NcwmsConfig extends CatalogueConfig {
             config = deserialise(new FileReader(configFile));
             config.configFile = configFile;
         }
+        config.journal = new ConfigJournal(configFile);
+        config.compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ncwms-config-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        config.replayJournal();
         return config;
     }
 }
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * ncWMS-specific settings for a configured dataset, which are not part of the
+ * dataset's own configuration. These are linked to the dataset by its ID.
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class NcwmsDatasetSettings {
+    @XmlAttribute(name = "id", required = true)
+    private String id;
+
+    /*
+     * Datasets with a higher priority are loaded before those with a lower
+     * priority
+     */
+    @XmlAttribute(name = "priority", required = false)
+    private int priority = 0;
+
+    /*
+     * Whether the dataset is only loaded when it is first requested, or null
+     * to use the default for all datasets
+     */
+    @XmlAttribute(name = "lazy", required = false)
+    private Boolean lazy = null;
+
+    /*
+     * The number of tiles along each side of the metatiles used to render
+     * tiles of this dataset. 1 means that tiles are rendered individually.
+     */
+    @XmlAttribute(name = "metatileFactor", required = false)
+    private int metatileFactor = 1;
+
+    /*
+     * The zoom levels (e.g. "0-5") at which tiles of this dataset are seeded
+     * whenever it is loaded, or null if it is not seeded automatically
+     */
+    @XmlAttribute(name = "seedZoomLevels", required = false)
+    private String seedZoomLevels = null;
+
+    /*
+     * The comma-separated styles to seed, or null for the default style
+     */
+    @XmlAttribute(name = "seedStyles", required = false)
+    private String seedStyles = null;
+
+    /*
+     * The tile matrix set to seed, or null for spherical mercator
+     */
+    @XmlAttribute(name = "seedTileMatrixSet", required = false)
+    private String seedTileMatrixSet = null;
+
+    /*
+     * Used for JAX-B
+     */
+    @SuppressWarnings("unused")
+    private NcwmsDatasetSettings() {
+    }
+
+    public NcwmsDatasetSettings(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public Boolean getLazy() {
+        return lazy;
+    }
+
+    public void setLazy(Boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public int getMetatileFactor() {
+        return metatileFactor;
+    }
+
+    public void setMetatileFactor(int metatileFactor) {
+        this.metatileFactor = metatileFactor;
+    }
+
+    public String getSeedZoomLevels() {
+        return seedZoomLevels;
+    }
+
+    public void setSeedZoomLevels(String seedZoomLevels) {
+        this.seedZoomLevels = seedZoomLevels;
+    }
+
+    public String getSeedStyles() {
+        return seedStyles;
+    }
+
+    public void setSeedStyles(String seedStyles) {
+        this.seedStyles = seedStyles;
+    }
+
+    public String getSeedTileMatrixSet() {
+        return seedTileMatrixSet;
+    }
+
+    public void setSeedTileMatrixSet(String seedTileMatrixSet) {
+        this.seedTileMatrixSet = seedTileMatrixSet;
+    }
+}
@@ -48,6 +48,35 @@ public class NcwmsDynamicCacheInfo {
     private int nDatasets = 10;
     @XmlElement(name = "elementLifetimeMinutes")
     private float elementLifetimeMinutes = 0;
+    /*
+     * If this is greater than zero, the cache is limited by the estimated size
+     * of the datasets it holds rather than by their number
+     */
+    @XmlElement(name = "maxSizeMB")
+    private int maxSizeMB = 0;
+    /*
+     * The maximum number of dynamic datasets to hold open at once. Zero means
+     * no limit
+     */
+    @XmlElement(name = "maxOpenDatasets")
+    private int maxOpenDatasets = 100;
+    /*
+     * Whether to reload cached datasets when their files are modified, and
+     * how often to check them
+     */
+    @XmlElement(name = "reloadOnChange")
+    private boolean reloadOnChange = false;
+    @XmlElement(name = "changeCheckIntervalSeconds")
+    private int changeCheckIntervalSeconds = 10;
+    /*
+     * Dynamic dataset IDs which could not be loaded are remembered for a short
+     * time, so that repeated requests for them fail quickly. A size of zero
+     * disables this.
+     */
+    @XmlElement(name = "failedDatasetCacheSize")
+    private int failedDatasetCacheSize = 1000;
+    @XmlElement(name = "failedDatasetLifetimeMinutes")
+    private float failedDatasetLifetimeMinutes = 5;
 
     public NcwmsDynamicCacheInfo() {
     }
@@ -81,4 +110,60 @@ public class NcwmsDynamicCacheInfo {
     public float getElementLifetimeMinutes() {
         return elementLifetimeMinutes;
     }
+
+    public int getMaxSizeMB() {
+        return maxSizeMB;
+    }
+
+    public void setMaxSizeMB(int maxSizeMB) {
+        this.maxSizeMB = maxSizeMB;
+    }
+
+    /**
+     * @return Whether the cache is limited by the estimated size of the
+     *         datasets, rather than by {@link #getNumberOfDatasets()}
+     */
+    public boolean isSizeLimited() {
+        return maxSizeMB > 0;
+    }
+
+    public int getMaxOpenDatasets() {
+        return maxOpenDatasets;
+    }
+
+    public void setMaxOpenDatasets(int maxOpenDatasets) {
+        this.maxOpenDatasets = maxOpenDatasets;
+    }
+
+    public boolean isReloadOnChange() {
+        return reloadOnChange;
+    }
+
+    public void setReloadOnChange(boolean reloadOnChange) {
+        this.reloadOnChange = reloadOnChange;
+    }
+
+    public int getChangeCheckIntervalSeconds() {
+        return changeCheckIntervalSeconds;
+    }
+
+    public void setChangeCheckIntervalSeconds(int changeCheckIntervalSeconds) {
+        this.changeCheckIntervalSeconds = changeCheckIntervalSeconds;
+    }
+
+    public int getFailedDatasetCacheSize() {
+        return failedDatasetCacheSize;
+    }
+
+    public void setFailedDatasetCacheSize(int failedDatasetCacheSize) {
+        this.failedDatasetCacheSize = failedDatasetCacheSize;
+    }
+
+    public float getFailedDatasetLifetimeMinutes() {
+        return failedDatasetLifetimeMinutes;
+    }
+
+    public void setFailedDatasetLifetimeMinutes(float failedDatasetLifetimeMinutes) {
+        this.failedDatasetLifetimeMinutes = failedDatasetLifetimeMinutes;
+    }
 }
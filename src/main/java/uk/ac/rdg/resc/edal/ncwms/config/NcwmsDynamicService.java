@@ -8,6 +8,8 @@ import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 
+import uk.ac.rdg.resc.edal.dataset.DatasetFactory;
+
 /**
  * A dynamic dataset object in the ncWMS configuration system: This object links
  * a dynamic location (local or remote) to the ncWMS system. Once a dynamic
@@ -66,6 +68,16 @@ public class NcwmsDynamicService {
     @XmlTransient
     private Pattern idMatchPattern;
 
+    /*
+     * The factory used to create datasets for this service, resolved from
+     * dataReaderClass when first needed. If that fails, the reason is stored
+     * instead, so that we don't try again until the reader is changed.
+     */
+    @XmlTransient
+    private DatasetFactory datasetFactory = null;
+    @XmlTransient
+    private String datasetFactoryError = null;
+
     public String getAlias() {
         return alias;
     }
@@ -103,8 +115,40 @@ public class NcwmsDynamicService {
         return dataReaderClass;
     }
 
-    public void setDataReaderClass(String dataReaderClass) {
-        this.dataReaderClass = dataReaderClass.trim();
+    public synchronized void setDataReaderClass(String dataReaderClass) {
+        dataReaderClass = dataReaderClass.trim();
+        if (!dataReaderClass.equals(this.dataReaderClass)) {
+            datasetFactory = null;
+            datasetFactoryError = null;
+        }
+        this.dataReaderClass = dataReaderClass;
+    }
+
+    /**
+     * @return The {@link DatasetFactory} which creates datasets for this
+     *         service, or <code>null</code> if the data reader class cannot be
+     *         used. In that case, {@link #getDatasetFactoryError()} gives the
+     *         reason.
+     */
+    public synchronized DatasetFactory getDatasetFactory() {
+        if (datasetFactory == null && datasetFactoryError == null) {
+            try {
+                datasetFactory = DatasetFactory.forName(dataReaderClass);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                datasetFactoryError = "Data reading class: " + dataReaderClass
+                        + " is not available (" + e + ")";
+            }
+        }
+        return datasetFactory;
+    }
+
+    /**
+     * @return A description of why the data reader class cannot be used, or
+     *         <code>null</code> if it is valid
+     */
+    public synchronized String getDatasetFactoryError() {
+        getDatasetFactory();
+        return datasetFactoryError;
     }
 
     public String getCopyrightStatement() {
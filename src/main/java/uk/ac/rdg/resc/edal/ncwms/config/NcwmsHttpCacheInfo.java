@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Controls how clients and proxies may cache WMS responses
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class NcwmsHttpCacheInfo {
+    /*
+     * Whether responses carry validators (ETag and Last-Modified), and
+     * conditional requests are answered with 304 (Not Modified)
+     */
+    @XmlAttribute(name = "enabled")
+    private boolean enabled = true;
+    /*
+     * Replaced rather than modified, so that it can be read without locking
+     */
+    @XmlElement(name = "maxAge")
+    private volatile List<NcwmsMaxAgeRule> maxAgeRules = new ArrayList<>();
+
+    public NcwmsHttpCacheInfo() {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<NcwmsMaxAgeRule> getMaxAgeRules() {
+        return Collections.unmodifiableList(maxAgeRules);
+    }
+
+    public void setMaxAgeRules(List<NcwmsMaxAgeRule> maxAgeRules) {
+        this.maxAgeRules = new ArrayList<>(maxAgeRules);
+    }
+
+    /**
+     * @param request
+     *            The WMS request type, e.g. GetMap
+     * @return The number of seconds for which responses to this type of
+     *         request may be reused without revalidating them. 0 means that
+     *         they must always be revalidated.
+     */
+    public int getMaxAge(String request) {
+        for (NcwmsMaxAgeRule rule : maxAgeRules) {
+            if (rule.getRequest().equalsIgnoreCase(request)) {
+                return Math.max(0, rule.getSeconds());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param request
+     *            The WMS request type, e.g. GetMap
+     * @param seconds
+     *            The number of seconds for which responses to this type of
+     *            request may be reused without revalidating them
+     */
+    public synchronized void setMaxAge(String request, int seconds) {
+        List<NcwmsMaxAgeRule> rules = new ArrayList<>();
+        for (NcwmsMaxAgeRule rule : maxAgeRules) {
+            if (!rule.getRequest().equalsIgnoreCase(request)) {
+                rules.add(rule);
+            }
+        }
+        if (seconds > 0) {
+            rules.add(new NcwmsMaxAgeRule(request, seconds));
+        }
+        maxAgeRules = rules;
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The configuration of the cache of rendered map images
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class NcwmsImageCacheInfo {
+    @XmlAttribute(name = "enabled")
+    private boolean enabled = true;
+    /*
+     * The number of images to hold in memory
+     */
+    @XmlElement(name = "numberOfImages")
+    private int nImages = 1000;
+    /*
+     * The number of images to hold on disk once they have been evicted from
+     * memory. Zero disables the disk tier.
+     */
+    @XmlElement(name = "numberOfDiskImages")
+    private int nDiskImages = 0;
+    @XmlElement(name = "elementLifetimeMinutes")
+    private float elementLifetimeMinutes = 0;
+
+    public NcwmsImageCacheInfo() {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getNumberOfImages() {
+        return nImages;
+    }
+
+    public void setNumberOfImages(int nImages) {
+        this.nImages = nImages;
+    }
+
+    public int getNumberOfDiskImages() {
+        return nDiskImages;
+    }
+
+    public void setNumberOfDiskImages(int nDiskImages) {
+        this.nDiskImages = nDiskImages;
+    }
+
+    public float getElementLifetimeMinutes() {
+        return elementLifetimeMinutes;
+    }
+
+    public void setElementLifetimeMinutes(float elementLifetimeMinutes) {
+        this.elementLifetimeMinutes = elementLifetimeMinutes;
+    }
+}
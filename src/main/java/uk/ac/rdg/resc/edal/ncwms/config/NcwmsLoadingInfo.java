@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Settings controlling how the configured datasets are loaded
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class NcwmsLoadingInfo {
+    /*
+     * Whether to store snapshots of loaded datasets in the config directory,
+     * so that they can be served immediately after a restart
+     */
+    @XmlElement(name = "snapshots")
+    private boolean snapshots = true;
+    /*
+     * The maximum number of datasets to load at once. Zero means that loading
+     * is not limited, and is left to the catalogue
+     */
+    @XmlElement(name = "loadingThreads")
+    private int loadingThreads = 0;
+    /*
+     * Whether datasets are only loaded when they are first requested, unless
+     * their own settings say otherwise
+     */
+    @XmlElement(name = "lazy")
+    private boolean lazy = false;
+    /*
+     * How long a lazily-loaded dataset can go unused before it is unloaded.
+     * Zero means that they are never unloaded
+     */
+    @XmlElement(name = "lazyIdleMinutes")
+    private float lazyIdleMinutes = 30;
+
+    public NcwmsLoadingInfo() {
+    }
+
+    public boolean isSnapshotsEnabled() {
+        return snapshots;
+    }
+
+    public void setSnapshotsEnabled(boolean snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    public int getLoadingThreads() {
+        return loadingThreads;
+    }
+
+    public void setLoadingThreads(int loadingThreads) {
+        this.loadingThreads = loadingThreads;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public float getLazyIdleMinutes() {
+        return lazyIdleMinutes;
+    }
+
+    public void setLazyIdleMinutes(float lazyIdleMinutes) {
+        this.lazyIdleMinutes = lazyIdleMinutes;
+    }
+}
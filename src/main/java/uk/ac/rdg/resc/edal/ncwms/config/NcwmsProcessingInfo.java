@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Settings controlling the threads which process WMS requests
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class NcwmsProcessingInfo {
+    /*
+     * Whether WMS requests are processed asynchronously, freeing the
+     * container's threads whilst data is read. This has no effect in
+     * containers which do not support Servlet 3.0.
+     */
+    @XmlElement(name = "async")
+    private boolean async = true;
+    /*
+     * The maximum number of requests processed at once on the I/O executor
+     */
+    @XmlElement(name = "ioThreads")
+    private int ioThreads = 200;
+    /*
+     * The maximum number of requests waiting for the I/O executor. Requests
+     * beyond this are rejected.
+     */
+    @XmlElement(name = "ioQueueSize")
+    private int ioQueueSize = 1000;
+    /*
+     * The number of threads for CPU-bound rendering work. Zero means one per
+     * processor.
+     */
+    @XmlElement(name = "renderThreads")
+    private int renderThreads = 0;
+    /*
+     * GetMap images with at least this many pixels are rendered as a number
+     * of horizontal bands in parallel. Zero disables this.
+     */
+    @XmlElement(name = "bandedRenderingPixels")
+    private int bandedRenderingPixels = 2048 * 2048;
+
+    public NcwmsProcessingInfo() {
+    }
+
+    public boolean isAsyncEnabled() {
+        return async;
+    }
+
+    public void setAsyncEnabled(boolean async) {
+        this.async = async;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public int getIoQueueSize() {
+        return ioQueueSize;
+    }
+
+    public void setIoQueueSize(int ioQueueSize) {
+        this.ioQueueSize = ioQueueSize;
+    }
+
+    public int getRenderThreads() {
+        return renderThreads;
+    }
+
+    public void setRenderThreads(int renderThreads) {
+        this.renderThreads = renderThreads;
+    }
+
+    public int getBandedRenderingPixels() {
+        return bandedRenderingPixels;
+    }
+
+    public void setBandedRenderingPixels(int bandedRenderingPixels) {
+        this.bandedRenderingPixels = bandedRenderingPixels;
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Limits the number of requests of one type (e.g. GetTimeseries) which are
+ * processed at once, so that expensive operations cannot starve cheaper ones
+ * of threads
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class NcwmsRequestLimit {
+    /*
+     * The WMS request type, e.g. GetMap
+     */
+    @XmlAttribute(name = "request", required = true)
+    private String request;
+    /*
+     * The number of requests which may be processed at once
+     */
+    @XmlAttribute(name = "maxConcurrent", required = true)
+    private int maxConcurrent;
+    /*
+     * The number of further requests which may wait for a free slot. Any more
+     * are rejected straight away.
+     */
+    @XmlAttribute(name = "maxQueued")
+    private int maxQueued = 0;
+    /*
+     * The longest time a request waits for a free slot before it is rejected
+     */
+    @XmlAttribute(name = "maxWaitSeconds")
+    private int maxWaitSeconds = 30;
+
+    /*
+     * Used for JAX-B
+     */
+    @SuppressWarnings("unused")
+    private NcwmsRequestLimit() {
+    }
+
+    public NcwmsRequestLimit(String request, int maxConcurrent, int maxQueued,
+            int maxWaitSeconds) {
+        this.request = request;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitSeconds = maxWaitSeconds;
+    }
+
+    public String getRequest() {
+        return request;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public int getMaxWaitSeconds() {
+        return maxWaitSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return request + ": " + maxConcurrent + " at once, " + maxQueued + " queued for up to "
+                + maxWaitSeconds + "s";
+    }
+}
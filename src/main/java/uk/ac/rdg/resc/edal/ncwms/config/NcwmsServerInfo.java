@@ -28,7 +28,9 @@
 
 package uk.ac.rdg.resc.edal.ncwms.config;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javax.xml.bind.annotation.XmlAccessType;
@@ -51,6 +53,12 @@ public class NcwmsServerInfo implements ServerInfo {
     private int maxImageWidth = 1024;
     @XmlElement(name = "maxImageHeight")
     private int maxImageHeight = 1024;
+    /* Limits on the number of requests of each type processed at once */
+    @XmlElement(name = "requestLimit")
+    private List<NcwmsRequestLimit> requestLimits = new ArrayList<>();
+    /* The time after which requests of each type are abandoned */
+    @XmlElement(name = "requestDeadline")
+    private List<NcwmsRequestDeadline> requestDeadlines = new ArrayList<>();
     @XmlElement(name = "abstract")
     private String description = "";
     /* Comma-separated keywords list */
@@ -104,6 +112,21 @@ public class NcwmsServerInfo implements ServerInfo {
         return 1;
     }
 
+    /**
+     * @return The limits on the number of requests of each type which are
+     *         processed at once
+     */
+    public List<NcwmsRequestLimit> getRequestLimits() {
+        return Collections.unmodifiableList(requestLimits);
+    }
+
+    /**
+     * @return The time after which requests of each type are abandoned
+     */
+    public List<NcwmsRequestDeadline> getRequestDeadlines() {
+        return Collections.unmodifiableList(requestDeadlines);
+    }
+
     @Override
     public List<String> getKeywords() {
         return keywords;
@@ -137,6 +160,14 @@ public class NcwmsServerInfo implements ServerInfo {
         this.maxImageHeight = maxImageHeight;
     }
 
+    public void setRequestLimits(List<NcwmsRequestLimit> requestLimits) {
+        this.requestLimits = new ArrayList<>(requestLimits);
+    }
+
+    public void setRequestDeadlines(List<NcwmsRequestDeadline> requestDeadlines) {
+        this.requestDeadlines = new ArrayList<>(requestDeadlines);
+    }
+
     public void setDescription(String description) {
         this.description = description;
     }
@@ -165,6 +196,10 @@ public class NcwmsServerInfo implements ServerInfo {
         sb.append(maxImageWidth);
         sb.append(", ");
         sb.append(maxImageHeight);
+        sb.append("\nRequest limits: ");
+        sb.append(requestLimits);
+        sb.append("\nRequest deadlines: ");
+        sb.append(requestDeadlines);
         sb.append("\nAbstract: ");
         sb.append(description);
         sb.append("\nKeywords: ");
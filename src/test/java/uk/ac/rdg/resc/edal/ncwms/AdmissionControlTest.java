@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsRequestLimit;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void testRequestsBeyondLimitAreRejected() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl();
+        admissionControl.configure(Arrays.asList(new NcwmsRequestLimit("GetTimeseries", 1, 0,
+                30)));
+
+        AdmissionControl.Permit permit = admissionControl.acquire("GetTimeseries");
+        assertNotNull(permit);
+        /*
+         * Nothing may queue, so this is rejected straight away
+         */
+        assertNull(admissionControl.acquire("gettimeseries"));
+        /*
+         * Other requests are not limited
+         */
+        assertNotNull(admissionControl.acquire("GetMap"));
+
+        permit.release();
+        /*
+         * Releasing twice must not free a second slot
+         */
+        permit.release();
+        assertNotNull(admissionControl.acquire("GetTimeseries"));
+        assertNull(admissionControl.acquire("GetTimeseries"));
+    }
+
+    @Test
+    public void testQueuedRequestIsAdmitted() throws Exception {
+        final AdmissionControl admissionControl = new AdmissionControl();
+        admissionControl.configure(Arrays.asList(new NcwmsRequestLimit("GetTransect", 1, 1,
+                30)));
+
+        AdmissionControl.Permit permit = admissionControl.acquire("GetTransect");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<AdmissionControl.Permit> queued = executor
+                    .submit(new Callable<AdmissionControl.Permit>() {
+                        @Override
+                        public AdmissionControl.Permit call() throws Exception {
+                            return admissionControl.acquire("GetTransect");
+                        }
+                    });
+            /*
+             * Wait for the second request to join the queue
+             */
+            long end = System.currentTimeMillis() + 5000L;
+            while (admissionControl.getStatistics().getJSONObject("GetTransect")
+                    .getInt("QueueDepth") < 1 && System.currentTimeMillis() < end) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, admissionControl.getStatistics().getJSONObject("GetTransect")
+                    .getInt("QueueDepth"));
+            /*
+             * The queue is full
+             */
+            assertNull(admissionControl.acquire("GetTransect"));
+
+            permit.release();
+            assertNotNull(queued.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, admissionControl.getStatistics().getJSONObject("GetTransect")
+                .getLong("RejectedCount"));
+    }
+
+    @Test
+    public void testWaitIsTimeLimited() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl();
+        admissionControl.configure(Arrays.asList(new NcwmsRequestLimit("GetMap", 1, 5, 1)));
+
+        assertNotNull(admissionControl.acquire("GetMap"));
+        long start = System.currentTimeMillis();
+        assertNull(admissionControl.acquire("GetMap"));
+        assertEquals(1.0, (System.currentTimeMillis() - start) / 1000.0, 0.5);
+        assertEquals(1, admissionControl.getRetryAfterSeconds("GetMap"));
+    }
+
+    /**
+     * Waits for a thread to block, e.g. in the queue for admission
+     */
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000L;
+        while (thread.getState() != Thread.State.TIMED_WAITING
+                && thread.getState() != Thread.State.WAITING) {
+            if (System.currentTimeMillis() > end) {
+                throw new AssertionError("Thread did not block");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testRequestsAreAdmittedInOrder() throws Exception {
+        final AdmissionControl admissionControl = new AdmissionControl();
+        admissionControl.configure(Arrays.asList(new NcwmsRequestLimit("GetTransect", 1, 5,
+                30)));
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        AdmissionControl.Permit permit = admissionControl.acquire("GetTransect");
+        List<Thread> waiters = new ArrayList<>();
+        for (final String name : new String[] { "first", "second", "third" }) {
+            Thread waiter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        AdmissionControl.Permit waiterPermit = admissionControl
+                                .acquire("GetTransect");
+                        order.add(name);
+                        waiterPermit.release();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            waiter.start();
+            awaitBlocked(waiter);
+            waiters.add(waiter);
+        }
+
+        /*
+         * A request arriving just as a slot is freed must not take it ahead of
+         * those already waiting
+         */
+        permit.release();
+        AdmissionControl.Permit newcomer = admissionControl.acquire("GetTransect");
+        order.add("newcomer");
+        newcomer.release();
+        for (Thread waiter : waiters) {
+            waiter.join(5000L);
+        }
+        assertEquals(Arrays.asList("first", "second", "third", "newcomer"), order);
+    }
+}
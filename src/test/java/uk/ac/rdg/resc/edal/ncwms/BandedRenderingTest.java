@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import uk.ac.rdg.resc.edal.wms.RequestParams;
+
+public class BandedRenderingTest {
+    private static final int MAX_SIZE = 8192;
+
+    private static RequestParams params(String... overrides) {
+        Map<String, String[]> params = new HashMap<>();
+        params.put("REQUEST", new String[] { "GetMap" });
+        params.put("VERSION", new String[] { "1.1.1" });
+        params.put("SRS", new String[] { "CRS:84" });
+        params.put("LAYERS", new String[] { "ds/sst" });
+        params.put("STYLES", new String[] { "default-scalar/default" });
+        params.put("FORMAT", new String[] { "image/png;mode=32bit" });
+        params.put("BBOX", new String[] { "-180,-90,180,90" });
+        params.put("WIDTH", new String[] { "1024" });
+        params.put("HEIGHT", new String[] { "512" });
+        for (int i = 0; i < overrides.length; i += 2) {
+            params.put(overrides[i], new String[] { overrides[i + 1] });
+        }
+        return new RequestParams(params);
+    }
+
+    @Test
+    public void testOnlySuitableRequestsAreBanded() {
+        assertNotNull(BandedRendering.plan(params(), 1, MAX_SIZE, MAX_SIZE, 4));
+        /*
+         * Too small, disabled, or nothing to run the bands on
+         */
+        assertNull(BandedRendering.plan(params(), 1024 * 1024, MAX_SIZE, MAX_SIZE, 4));
+        assertNull(BandedRendering.plan(params(), 0, MAX_SIZE, MAX_SIZE, 4));
+        assertNull(BandedRendering.plan(params(), 1, MAX_SIZE, MAX_SIZE, 1));
+        assertNull(BandedRendering.plan(params("HEIGHT", "100"), 1, MAX_SIZE, MAX_SIZE, 4));
+        /*
+         * Left for the normal rendering to reject
+         */
+        assertNull(BandedRendering.plan(params(), 1, MAX_SIZE, 256, 4));
+        assertNull(BandedRendering.plan(params("BBOX", "-180,-90,180"), 1, MAX_SIZE, MAX_SIZE, 4));
+        assertNull(BandedRendering.plan(params("WIDTH", "wide"), 1, MAX_SIZE, MAX_SIZE, 4));
+        /*
+         * Bands would not join up correctly
+         */
+        assertNull(BandedRendering.plan(params("STYLES", "colored_contours/default"), 1,
+                MAX_SIZE, MAX_SIZE, 4));
+        assertNull(BandedRendering.plan(params("STYLES", ""), 1, MAX_SIZE, MAX_SIZE, 4));
+        assertNull(BandedRendering.plan(params("COLORSCALERANGE", "auto"), 1, MAX_SIZE,
+                MAX_SIZE, 4));
+        assertNull(BandedRendering.plan(params("FORMAT", "image/jpeg"), 1, MAX_SIZE, MAX_SIZE,
+                4));
+        /*
+         * Encoded with a palette for the whole image
+         */
+        assertNull(BandedRendering.plan(params("FORMAT", "image/png"), 1, MAX_SIZE, MAX_SIZE,
+                4));
+        assertNotNull(BandedRendering.plan(params("COLORSCALERANGE", "-5,30"), 1, MAX_SIZE,
+                MAX_SIZE, 4));
+    }
+
+    @Test
+    public void testBandsCoverTheImage() {
+        BandedRendering banded = BandedRendering.plan(
+                params("BBOX", "0,0,100,500", "HEIGHT", "500"), 1, MAX_SIZE, MAX_SIZE, 3);
+        assertEquals(3, banded.getBandCount());
+        assertEquals(0, banded.getFirstRow(0));
+        assertEquals(500, banded.getFirstRow(3));
+
+        assertEquals("0,334.0,100,500.0", banded.getBandParameters(0).getString("BBOX"));
+        assertEquals("166", banded.getBandParameters(0).getString("HEIGHT"));
+        assertEquals("0,167.0,100,334.0", banded.getBandParameters(1).getString("BBOX"));
+        assertEquals("167", banded.getBandParameters(1).getString("HEIGHT"));
+        assertEquals("0,0.0,100,167.0", banded.getBandParameters(2).getString("BBOX"));
+        assertEquals("167", banded.getBandParameters(2).getString("HEIGHT"));
+        /*
+         * Everything else is unchanged
+         */
+        assertEquals("1024", banded.getBandParameters(1).getString("WIDTH"));
+        assertEquals("ds/sst", banded.getBandParameters(1).getString("LAYERS"));
+    }
+
+    @Test
+    public void testLatitudeFirstBoundingBox() {
+        BandedRendering banded = BandedRendering.plan(
+                params("VERSION", "1.3.0", "CRS", "EPSG:4326", "BBOX", "-90,-180,90,180"), 1,
+                MAX_SIZE, MAX_SIZE, 2);
+        assertEquals("0.0,-180,90.0,180", banded.getBandParameters(0).getString("BBOX"));
+        assertEquals("-90.0,-180,0.0,180", banded.getBandParameters(1).getString("BBOX"));
+    }
+
+    @Test
+    public void testBandsAreJoined() throws Exception {
+        BandedRendering banded = BandedRendering.plan(params("WIDTH", "100", "HEIGHT", "200"),
+                1, MAX_SIZE, MAX_SIZE, 3);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CapturedResponse response = banded.render(executor, executor,
+                    new BandedRendering.BandRenderer() {
+                        @Override
+                        public CapturedResponse render(RequestParams bandParams)
+                                throws IOException {
+                            /*
+                             * Colour each band by its top edge, so we can
+                             * check that it ends up in the right place
+                             */
+                            double top = Double.parseDouble(bandParams.getString("BBOX")
+                                    .split(",")[3]);
+                            int height = Integer.parseInt(bandParams.getString("HEIGHT"));
+                            return image(100, height, top > 80 ? 0xffff0000
+                                    : top > 0 ? 0xff00ff00 : 0xff0000ff);
+                        }
+                    });
+            assertEquals("image/png", response.getContentType());
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(response.getContent()));
+            assertEquals(100, image.getWidth());
+            assertEquals(200, image.getHeight());
+            assertEquals(0xffff0000, image.getRGB(50, 0));
+            assertEquals(0xffff0000, image.getRGB(50, 65));
+            assertEquals(0xff00ff00, image.getRGB(50, 66));
+            assertEquals(0xff00ff00, image.getRGB(50, 132));
+            assertEquals(0xff0000ff, image.getRGB(50, 133));
+            assertEquals(0xff0000ff, image.getRGB(50, 199));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBandsAreRenderedByCaller() throws Exception {
+        BandedRendering banded = BandedRendering.plan(params("WIDTH", "100", "HEIGHT", "200"),
+                1, MAX_SIZE, MAX_SIZE, 3);
+        BandedRendering.BandRenderer renderer = new BandedRendering.BandRenderer() {
+            @Override
+            public CapturedResponse render(RequestParams bandParams) throws IOException {
+                return image(100, Integer.parseInt(bandParams.getString("HEIGHT")), 0xffff0000);
+            }
+        };
+        /*
+         * An executor which is too busy to start the bands, or has no room
+         * for them
+         */
+        Executor busy = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+            }
+        };
+        Executor full = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+        ExecutorService decoder = Executors.newFixedThreadPool(2);
+        try {
+            for (Executor executor : new Executor[] { busy, full }) {
+                CapturedResponse response = banded.render(executor, decoder, renderer);
+                BufferedImage image = ImageIO.read(new ByteArrayInputStream(response
+                        .getContent()));
+                assertEquals(200, image.getHeight());
+                assertEquals(0xffff0000, image.getRGB(50, 199));
+            }
+        } finally {
+            decoder.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedBandIsReturned() throws Exception {
+        BandedRendering banded = BandedRendering.plan(params(), 1, MAX_SIZE, MAX_SIZE, 2);
+        final CapturedResponse error = new CapturedResponse(400, null, "text/xml",
+                Collections.<CapturedResponse.Header> emptyList(), new byte[] { 1 });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertSame(error, banded.render(executor, executor, new BandedRendering.BandRenderer() {
+                @Override
+                public CapturedResponse render(RequestParams bandParams) {
+                    return error;
+                }
+            }));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CapturedResponse image(int width, int height, int argb) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", encoded);
+        return new CapturedResponse(200, null, "image/png",
+                Collections.<CapturedResponse.Header> emptyList(), encoded.toByteArray());
+    }
+}
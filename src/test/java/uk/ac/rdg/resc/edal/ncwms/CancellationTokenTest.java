@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class CancellationTokenTest {
+
+    @Test
+    public void testDeadline() throws Exception {
+        CancellationToken token = new CancellationToken("GetTimeseries", 50L);
+        assertFalse(token.isCancelled());
+        token.checkpoint();
+
+        long end = System.currentTimeMillis() + 5000L;
+        while (!token.isCancelled() && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        assertEquals(CancellationToken.Reason.DEADLINE_EXCEEDED, token.getReason());
+        try {
+            token.checkpoint();
+            fail("Expected a RequestCancelledException");
+        } catch (RequestCancelledException e) {
+            assertTrue(e.isDeadlineExceeded());
+        }
+    }
+
+    @Test
+    public void testNoDeadline() {
+        CancellationToken token = new CancellationToken("GetMap", 0L);
+        assertNull(token.getReason());
+
+        token.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+        /*
+         * The first reason is kept
+         */
+        token.cancel(CancellationToken.Reason.DEADLINE_EXCEEDED);
+        assertEquals(CancellationToken.Reason.CLIENT_DISCONNECTED, token.getReason());
+    }
+
+    @Test
+    public void testCurrentToken() {
+        /*
+         * Threads without a token are never cancelled
+         */
+        CancellationToken.checkCurrent();
+
+        CancellationToken token = new CancellationToken("GetMap", 0L);
+        CancellationToken previous = CancellationToken.attach(token);
+        try {
+            assertSame(token, CancellationToken.current());
+            CancellationToken.checkCurrent();
+            token.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+            try {
+                CancellationToken.checkCurrent();
+                fail("Expected a RequestCancelledException");
+            } catch (RequestCancelledException e) {
+                assertFalse(e.isDeadlineExceeded());
+            }
+        } finally {
+            CancellationToken.attach(previous);
+        }
+        assertNull(CancellationToken.current());
+    }
+
+    @Test
+    public void testSharedToken() {
+        CancellationToken first = new CancellationToken("GetMap", 0L);
+        CancellationToken second = new CancellationToken("GetMap", 0L);
+        CancellationToken shared = CancellationToken.shared("GetMap");
+        assertTrue(shared.join(first));
+        assertTrue(shared.join(second));
+
+        first.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+        assertFalse(shared.isCancelled());
+        second.cancel(CancellationToken.Reason.DEADLINE_EXCEEDED);
+        assertEquals(CancellationToken.Reason.DEADLINE_EXCEEDED, shared.getReason());
+        /*
+         * Too late to share it
+         */
+        assertFalse(shared.join(new CancellationToken("GetMap", 0L)));
+    }
+
+    @Test
+    public void testSharedTokenAfterLeaving() {
+        CancellationToken first = new CancellationToken("GetMap", 0L);
+        CancellationToken second = new CancellationToken("GetMap", 0L);
+        CancellationToken shared = CancellationToken.shared("GetMap");
+        shared.join(first);
+        shared.join(second);
+        shared.leave(second);
+        first.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+        assertTrue(shared.isCancelled());
+
+        /*
+         * Requests without a token never give up
+         */
+        CancellationToken untokenised = CancellationToken.shared("GetMap");
+        CancellationToken third = new CancellationToken("GetMap", 0L);
+        untokenised.join(third);
+        untokenised.join(null);
+        third.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+        assertFalse(untokenised.isCancelled());
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class CapabilitiesCacheTest {
+    private static final byte[] CONTENT = "<WMS_Capabilities/>".getBytes(StandardCharsets.UTF_8);
+
+    private CapabilitiesCache cache;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private ByteArrayOutputStream written;
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new CapabilitiesCache(2);
+        request = mock(HttpServletRequest.class);
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+        response = mock(HttpServletResponse.class);
+        written = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                written.write(b);
+            }
+        });
+    }
+
+    @Test
+    public void testStaleVersionIgnored() throws IOException {
+        cache.put("key", 1L, CONTENT, "text/xml");
+        assertNotNull(cache.get("key", 1L));
+        assertNull(cache.get("key", 2L));
+        assertNull(cache.get("key", 1L));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws IOException {
+        cache.put("a", 1L, CONTENT, "text/xml");
+        cache.put("b", 1L, CONTENT, "text/xml");
+        cache.get("a", 1L);
+        cache.put("c", 1L, CONTENT, "text/xml");
+        assertNotNull(cache.get("a", 1L));
+        assertNull(cache.get("b", 1L));
+    }
+
+    @Test
+    public void testUncompressed() throws IOException {
+        cache.put("key", 1L, CONTENT, "text/xml").write(request, response);
+        assertArrayEquals(CONTENT, written.toByteArray());
+        verify(response).setContentType("text/xml");
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+    }
+
+    @Test
+    public void testCompressed() throws IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+        cache.put("key", 1L, CONTENT, "text/xml").write(request, response);
+        verify(response).setHeader("Content-Encoding", "gzip");
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(written.toByteArray()))) {
+            byte[] buf = new byte[256];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                decompressed.write(buf, 0, n);
+            }
+        }
+        assertArrayEquals(CONTENT, decompressed.toByteArray());
+    }
+
+    @Test
+    public void testRevalidation() throws IOException {
+        CapabilitiesCache.Document document = cache.put("key", 1L, CONTENT, "text/xml");
+        document.write(request, response);
+        ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(eq("ETag"), etag.capture());
+
+        HttpServletRequest revalidate = mock(HttpServletRequest.class);
+        when(revalidate.getHeader("If-None-Match")).thenReturn(etag.getValue());
+        HttpServletResponse notModified = mock(HttpServletResponse.class);
+        document.write(revalidate, notModified);
+        verify(notModified).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(notModified, never()).getOutputStream();
+        verify(notModified, never()).setContentLength(anyInt());
+        assertEquals(CONTENT.length, written.size());
+    }
+
+    @Test
+    public void testCompressedCopyHasOwnEtag() throws IOException {
+        CapabilitiesCache.Document document = cache.put("key", 1L, CONTENT, "text/xml");
+        document.write(request, response);
+        ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(eq("ETag"), etag.capture());
+
+        HttpServletRequest gzipRequest = mock(HttpServletRequest.class);
+        when(gzipRequest.getHeader("Accept-Encoding")).thenReturn("gzip");
+        when(gzipRequest.getHeader("If-None-Match")).thenReturn(etag.getValue());
+        when(gzipRequest.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+        HttpServletResponse gzipResponse = mock(HttpServletResponse.class);
+        when(gzipResponse.getOutputStream()).thenReturn(response.getOutputStream());
+        document.write(gzipRequest, gzipResponse);
+        ArgumentCaptor<String> gzipEtag = ArgumentCaptor.forClass(String.class);
+        verify(gzipResponse).setHeader(eq("ETag"), gzipEtag.capture());
+        assertFalse(etag.getValue().equals(gzipEtag.getValue()));
+        verify(gzipResponse, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(gzipResponse).setHeader("Content-Encoding", "gzip");
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DatasetImportParserTest {
+
+    @Test
+    public void testJsonArray() throws IOException {
+        List<Map<String, String>> datasets = DatasetImportParser.parse("application/json",
+                new StringReader("[{\"id\":\"run1\",\"location\":\"/data/run1.nc\",\"queryable\":false},"
+                        + "{\"id\":\"run2\",\"location\":\"/data/run2.nc\",\"title\":null}]"));
+        assertEquals(2, datasets.size());
+        assertEquals("run1", datasets.get(0).get("id"));
+        assertEquals("/data/run1.nc", datasets.get(0).get("location"));
+        assertEquals("false", datasets.get(0).get("queryable"));
+        assertFalse(datasets.get(1).containsKey("title"));
+    }
+
+    @Test
+    public void testJsonObject() throws IOException {
+        List<Map<String, String>> datasets = DatasetImportParser.parse(null,
+                new StringReader("{\"datasets\":[{\"id\":\"run1\",\"location\":\"/data/run1.nc\"}]}"));
+        assertEquals(1, datasets.size());
+        assertEquals("run1", datasets.get(0).get("id"));
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        List<Map<String, String>> datasets = DatasetImportParser.parse("text/csv; charset=UTF-8",
+                new StringReader("id, location, title\n"
+                        + "run1,/data/run1.nc,\"Run 1, \"\"control\"\"\"\n"
+                        + "\n"
+                        + "run2,/data/run2.nc\n"));
+        assertEquals(2, datasets.size());
+        assertEquals("Run 1, \"control\"", datasets.get(0).get("title"));
+        assertEquals("/data/run2.nc", datasets.get(1).get("location"));
+        assertFalse(datasets.get(1).containsKey("title"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCsvTooManyFields() throws IOException {
+        DatasetImportParser.parse("text/csv", new StringReader("id,location\nrun1,/data/run1.nc,extra\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidJson() throws IOException {
+        DatasetImportParser.parse("application/json", new StringReader("{\"id\":\"run1\"}"));
+    }
+}
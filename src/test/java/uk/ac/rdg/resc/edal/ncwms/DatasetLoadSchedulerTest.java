@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.CacheInfo;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig.DatasetState;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.VariableConfig;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsConfig;
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDynamicService;
+
+public class DatasetLoadSchedulerTest {
+
+    private DatasetLoadScheduler scheduler;
+    private DatasetConfig large;
+    private DatasetConfig archive;
+    private DatasetConfig popular;
+    /* The IDs of the datasets loaded, in the order their loads started */
+    private final List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch largeLoading = new CountDownLatch(1);
+    private final CountDownLatch finishLarge = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        large = createDataset("large");
+        archive = createDataset("archive");
+        popular = createDataset("popular");
+        NcwmsConfig config = new NcwmsConfig(new DatasetConfig[] { large, archive, popular },
+                new NcwmsDynamicService[0], null, null, new CacheInfo(), null);
+        scheduler = new DatasetLoadScheduler(config, new DatasetLoadScheduler.DatasetLoader() {
+            @Override
+            public void load(DatasetConfig dataset) throws Exception {
+                loaded.add(dataset.getId());
+                if (dataset == large) {
+                    largeLoading.countDown();
+                    finishLarge.await();
+                } else if (dataset == archive) {
+                    throw new IllegalStateException("Cannot read archive");
+                }
+            }
+        }, 1);
+    }
+
+    @After
+    public void tearDown() {
+        finishLarge.countDown();
+        scheduler.shutdown();
+    }
+
+    private static DatasetConfig createDataset(String id) {
+        DatasetConfig dataset = new DatasetConfig(new VariableConfig[0]);
+        dataset.setId(id);
+        dataset.setTitle(id);
+        dataset.setLocation("/data/" + id + ".nc");
+        dataset.setState(DatasetState.READY);
+        return dataset;
+    }
+
+    private static void waitForState(DatasetConfig dataset, DatasetState state) throws InterruptedException {
+        for (int i = 0; i < 100 && dataset.getState() != state; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(state, dataset.getState());
+    }
+
+    @Test
+    public void testHigherPriorityLoadsFirst() throws Exception {
+        scheduler.schedule(large, 0);
+        /*
+         * The only loader is now loading "large"
+         */
+        largeLoading.await();
+        assertEquals(DatasetState.UPDATING, large.getState());
+
+        scheduler.schedule(archive, 0);
+        scheduler.schedule(popular, 10);
+        assertEquals(Integer.valueOf(1), scheduler.getQueuePosition("popular"));
+        assertEquals(Integer.valueOf(2), scheduler.getQueuePosition("archive"));
+        assertNull(scheduler.getQueuePosition("large"));
+
+        finishLarge.countDown();
+        waitForState(archive, DatasetState.ERROR);
+        waitForState(popular, DatasetState.READY);
+        waitForState(large, DatasetState.READY);
+        assertEquals("large", loaded.get(0));
+        assertEquals("popular", loaded.get(1));
+        assertEquals("archive", loaded.get(2));
+        assertNotNull(scheduler.getLastLoadDuration("large"));
+        assertTrue(scheduler.getLastLoadDuration("large") >= 0);
+        assertNull(scheduler.getLastLoadDuration("archive"));
+    }
+
+    @Test
+    public void testLoadsDatasetsNeedingRefresh() throws Exception {
+        popular.setState(DatasetState.NEEDS_REFRESH);
+        archive.setState(DatasetState.NEEDS_REFRESH);
+        archive.setDisabled(true);
+        scheduler.scheduleDueRefreshes();
+        waitForState(popular, DatasetState.READY);
+        assertEquals(Collections.singletonList("popular"), loaded);
+        assertEquals(DatasetState.NEEDS_REFRESH, archive.getState());
+    }
+}
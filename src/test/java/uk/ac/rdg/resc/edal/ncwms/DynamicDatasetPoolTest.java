@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.Closeable;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.rdg.resc.edal.dataset.Dataset;
+
+public class DynamicDatasetPoolTest {
+
+    private DynamicDatasetPool pool;
+    private Ehcache cache;
+
+    @Before
+    public void setUp() {
+        pool = new DynamicDatasetPool();
+        cache = mock(Ehcache.class);
+    }
+
+    private static Dataset createDataset(String id) {
+        Dataset dataset = mock(Dataset.class, withSettings().extraInterfaces(Closeable.class));
+        when(dataset.getId()).thenReturn(id);
+        return dataset;
+    }
+
+    @Test
+    public void testDatasetClosedWhenLeavingCache() throws Exception {
+        Dataset expired = createDataset("expired");
+        Dataset evicted = createDataset("evicted");
+        Element expiredElement = new Element("expired", expired);
+        Element evictedElement = new Element("evicted", evicted);
+        pool.notifyElementPut(cache, expiredElement);
+        pool.notifyElementPut(cache, evictedElement);
+        assertEquals(2, pool.getOpenCount());
+
+        pool.notifyElementExpired(cache, expiredElement);
+        verify((Closeable) expired).close();
+        pool.notifyElementEvicted(cache, evictedElement);
+        verify((Closeable) evicted).close();
+
+        assertEquals(0, pool.getOpenCount());
+        assertEquals(2, pool.getCloseCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsClosed() throws Exception {
+        Dataset a = createDataset("a");
+        Dataset b = createDataset("b");
+        Dataset c = createDataset("c");
+        pool.notifyElementPut(cache, new Element("a", a));
+        pool.notifyElementPut(cache, new Element("b", b));
+        pool.notifyElementPut(cache, new Element("c", c));
+
+        /*
+         * "a" has been used most recently, so "b" should be closed
+         */
+        pool.touch("a");
+        when(cache.remove("b")).thenReturn(false);
+        pool.closeLeastRecentlyUsed(cache, 2);
+
+        verify(cache).remove("b");
+        verify((Closeable) b).close();
+        verify((Closeable) a, never()).close();
+        verify((Closeable) c, never()).close();
+        assertEquals(2, pool.getOpenCount());
+
+        /*
+         * No limit
+         */
+        pool.closeLeastRecentlyUsed(cache, 0);
+        assertEquals(2, pool.getOpenCount());
+    }
+
+    @Test
+    public void testRemoveAllClosesEverything() throws Exception {
+        Dataset a = createDataset("a");
+        Dataset b = createDataset("b");
+        pool.notifyElementPut(cache, new Element("a", a));
+        pool.notifyElementPut(cache, new Element("b", b));
+
+        pool.notifyRemoveAll(cache);
+        verify((Closeable) a).close();
+        verify((Closeable) b).close();
+        assertEquals(0, pool.getOpenCount());
+    }
+
+    @Test
+    public void testDatasetInUseClosedWhenReleased() throws Exception {
+        Dataset dataset = createDataset("a");
+        Element element = new Element("a", dataset);
+        pool.notifyElementPut(cache, element);
+        assertTrue(pool.acquire("a", dataset));
+        assertTrue(pool.acquire("a", dataset));
+
+        pool.notifyElementEvicted(cache, element);
+        verify((Closeable) dataset, never()).close();
+        assertEquals(1, pool.getOpenCount());
+
+        pool.release(dataset);
+        verify((Closeable) dataset, never()).close();
+        pool.release(dataset);
+        verify((Closeable) dataset).close();
+        assertEquals(0, pool.getOpenCount());
+        assertEquals(1, pool.getCloseCount());
+
+        /*
+         * It cannot be used again once closed
+         */
+        assertFalse(pool.acquire("a", dataset));
+    }
+
+    @Test
+    public void testOnlyCloseableDatasetsAreCounted() {
+        Dataset dataset = mock(Dataset.class);
+        Element element = new Element("a", dataset);
+        pool.notifyElementPut(cache, element);
+        pool.notifyElementRemoved(cache, element);
+        assertEquals(0, pool.getOpenCount());
+        assertEquals(0, pool.getCloseCount());
+    }
+}
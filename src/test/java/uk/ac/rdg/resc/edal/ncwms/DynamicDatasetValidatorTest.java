@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import net.sf.ehcache.Element;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DynamicDatasetValidatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DynamicDatasetValidator validator;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        validator = new DynamicDatasetValidator();
+        file = folder.newFile("forecast.nc");
+        write(file, 10);
+    }
+
+    private static void write(File file, int nBytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[nBytes]);
+        }
+    }
+
+    @Test
+    public void testDetectsChange() throws IOException {
+        validator.record("forecast",
+                DynamicDatasetValidator.getSourceState(file.getAbsolutePath()));
+        assertFalse(validator.hasChanged("forecast", 0L));
+
+        write(file, 20);
+        assertTrue(validator.hasChanged("forecast", 0L));
+    }
+
+    @Test
+    public void testDetectsChangeDuringLoad() throws IOException {
+        DynamicDatasetValidator.SourceState beforeLoad = DynamicDatasetValidator
+                .getSourceState(file.getAbsolutePath());
+        write(file, 20);
+        validator.record("forecast", beforeLoad);
+        assertTrue(validator.hasChanged("forecast", 0L));
+    }
+
+    @Test
+    public void testCheckInterval() throws IOException {
+        validator.record("forecast",
+                DynamicDatasetValidator.getSourceState(file.getAbsolutePath()));
+        write(file, 20);
+        /*
+         * Recorded too recently to be checked
+         */
+        assertFalse(validator.hasChanged("forecast", 60000L));
+    }
+
+    @Test
+    public void testForgetsRemovedDatasets() throws IOException {
+        validator.record("forecast",
+                DynamicDatasetValidator.getSourceState(file.getAbsolutePath()));
+        validator.notifyElementRemoved(null, new Element("forecast", null));
+        write(file, 20);
+        assertFalse(validator.hasChanged("forecast", 0L));
+    }
+
+    @Test
+    public void testOnlyLocalSourcesChecked() {
+        assertNull(SourceSignature.getLocalSource("http://example.com/thredds/dodsC/forecast.nc"));
+        assertNull(SourceSignature.getLocalSource(folder.getRoot().getAbsolutePath() + "/*.nc"));
+        assertNull(SourceSignature.getLocalSource(folder.getRoot().getAbsolutePath() + "/missing.nc"));
+        assertTrue(file.equals(SourceSignature.getLocalSource("file:" + file.getAbsolutePath())));
+    }
+}
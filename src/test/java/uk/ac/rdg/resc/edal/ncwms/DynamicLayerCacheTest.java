@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDynamicService;
+
+public class DynamicLayerCacheTest {
+
+    @Test
+    public void testLayersWithoutServiceAreCached() {
+        DynamicLayerCache cache = new DynamicLayerCache(null, 10);
+        NcwmsDynamicService service = new NcwmsDynamicService();
+        cache.putService("local/may1981.nc/sst", service);
+        cache.putService("unknown/sst", null);
+
+        assertSame(service, cache.getService("local/may1981.nc/sst"));
+        assertTrue(cache.containsService("unknown/sst"));
+        assertNull(cache.getService("unknown/sst"));
+        assertFalse(cache.containsService("other/sst"));
+    }
+
+    @Test
+    public void testNumberOfEntriesIsLimited() {
+        DynamicLayerCache cache = new DynamicLayerCache(null, 10);
+        NcwmsDynamicService service = new NcwmsDynamicService();
+        for (int i = 0; i < 100; i++) {
+            cache.putService("local/" + i, service);
+        }
+        int cached = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.containsService("local/" + i)) {
+                cached++;
+            }
+        }
+        assertEquals(10, cached);
+        /*
+         * The most recent entry is never the one discarded
+         */
+        assertTrue(cache.containsService("local/99"));
+    }
+}
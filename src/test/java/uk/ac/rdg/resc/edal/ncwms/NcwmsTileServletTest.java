@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class NcwmsTileServletTest {
+    private static final int TILE_SIZE = 64;
+
+    /**
+     * @return An image with a different, partly transparent, colour in every
+     *         pixel, as drawn by a raster style
+     */
+    private static BufferedImage image(int width, int height, int xOffset, int yOffset) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int px = x + xOffset;
+                int py = y + yOffset;
+                image.setRGB(x, y, ((px * 7 + py) % 256) << 24 | (px % 256) << 16
+                        | (py % 256) << 8 | ((px * py) % 256));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Encodes an image as EDAL does for image/png;mode=32bit
+     */
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", encoded);
+        return encoded.toByteArray();
+    }
+
+    @Test
+    public void testSplitTilesMatchDirectRenders() throws Exception {
+        CapturedResponse metatile = new CapturedResponse(200, null, "image/png;mode=32bit",
+                Collections.<CapturedResponse.Header> emptyList(), encode(image(3 * TILE_SIZE,
+                        2 * TILE_SIZE, 0, 0)));
+        byte[][][] tiles = NcwmsTileServlet.splitMetatile(metatile, 2, 3, TILE_SIZE);
+        assertEquals(2, tiles.length);
+        for (int row = 0; row < 2; row++) {
+            assertEquals(3, tiles[row].length);
+            for (int col = 0; col < 3; col++) {
+                byte[] direct = encode(image(TILE_SIZE, TILE_SIZE, col * TILE_SIZE, row
+                        * TILE_SIZE));
+                assertArrayEquals(direct, tiles[row][col]);
+            }
+        }
+    }
+
+    @Test
+    public void testWrongSizedMetatileIsNotSplit() throws Exception {
+        CapturedResponse metatile = new CapturedResponse(200, null, "image/png;mode=32bit",
+                Collections.<CapturedResponse.Header> emptyList(), encode(image(TILE_SIZE,
+                        TILE_SIZE, 0, 0)));
+        assertNull(NcwmsTileServlet.splitMetatile(metatile, 2, 2, TILE_SIZE));
+    }
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsProcessingInfo;
+
+public class RequestExecutorsTest {
+
+    @Test
+    public void testConcurrencyIsLimited() throws Exception {
+        NcwmsProcessingInfo processingInfo = new NcwmsProcessingInfo();
+        processingInfo.setIoThreads(2);
+        processingInfo.setRenderThreads(1);
+        RequestExecutors executors = new RequestExecutors(processingInfo);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch finished = new CountDownLatch(4);
+            final AtomicInteger running = new AtomicInteger(0);
+            final AtomicInteger maxRunning = new AtomicInteger(0);
+            for (int i = 0; i < 4; i++) {
+                executors.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        int now = running.incrementAndGet();
+                        synchronized (maxRunning) {
+                            maxRunning.set(Math.max(maxRunning.get(), now));
+                        }
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                        finished.countDown();
+                    }
+                });
+            }
+            /*
+             * Wait for the tasks to start
+             */
+            long end = System.currentTimeMillis() + 5000L;
+            while (running.get() < 2 && System.currentTimeMillis() < end) {
+                Thread.sleep(5);
+            }
+            JSONObject io = executors.getStatistics().getJSONObject("Io");
+            assertEquals(2, io.getInt("Active"));
+            assertEquals(2, io.getInt("Queued"));
+
+            release.countDown();
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertEquals(2, maxRunning.get());
+            assertEquals(1, executors.getRenderPool().getParallelism());
+        } finally {
+            executors.shutdown();
+        }
+    }
+
+    @Test
+    public void testQueueIsBounded() throws Exception {
+        NcwmsProcessingInfo processingInfo = new NcwmsProcessingInfo();
+        processingInfo.setIoThreads(1);
+        processingInfo.setIoQueueSize(1);
+        processingInfo.setRenderThreads(1);
+        RequestExecutors executors = new RequestExecutors(processingInfo);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch finished = new CountDownLatch(2);
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finished.countDown();
+                }
+            };
+            executors.execute(task);
+            executors.execute(task);
+            try {
+                executors.execute(task);
+                fail("The third request should have been rejected");
+            } catch (RejectedExecutionException e) {
+                /*
+                 * Expected
+                 */
+            }
+            assertEquals(1, executors.getStatistics().getJSONObject("Io")
+                    .getLong("RejectedCount"));
+
+            release.countDown();
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            /*
+             * There is room again once the requests have finished
+             */
+            final CountDownLatch another = new CountDownLatch(1);
+            executors.execute(new Runnable() {
+                @Override
+                public void run() {
+                    another.countDown();
+                }
+            });
+            assertTrue(another.await(5, TimeUnit.SECONDS));
+        } finally {
+            executors.shutdown();
+        }
+    }
+
+    @Test
+    public void testPartsDoNotTakeRequestPlaces() throws Exception {
+        NcwmsProcessingInfo processingInfo = new NcwmsProcessingInfo();
+        processingInfo.setIoThreads(1);
+        processingInfo.setIoQueueSize(1);
+        processingInfo.setRenderThreads(1);
+        RequestExecutors executors = new RequestExecutors(processingInfo);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            Runnable part = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            /*
+             * Fills the part executor (unless it uses virtual threads)
+             */
+            for (int i = 0; i < 3; i++) {
+                try {
+                    executors.getPartExecutor().execute(part);
+                } catch (RejectedExecutionException e) {
+                    /*
+                     * The part would be done by its request instead
+                     */
+                }
+            }
+
+            final CountDownLatch finished = new CountDownLatch(2);
+            for (int i = 0; i < 2; i++) {
+                executors.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        finished.countDown();
+                    }
+                });
+            }
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            release.countDown();
+        } finally {
+            executors.shutdown();
+        }
+    }
+}
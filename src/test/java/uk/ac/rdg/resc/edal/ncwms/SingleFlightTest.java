@@ -0,0 +1,348 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+    /* The threads calling the SingleFlight, in the order they were started */
+    private final List<Thread> callers = Collections.synchronizedList(new ArrayList<Thread>());
+
+    /**
+     * Waits until a caller is waiting for another caller's computation
+     *
+     * @param caller
+     *            The index of the caller in {@link #callers}
+     */
+    private void awaitWaiting(int caller) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000L;
+        while (callers.size() <= caller
+                || callers.get(caller).getState() != Thread.State.TIMED_WAITING) {
+            if (System.currentTimeMillis() > end) {
+                throw new AssertionError("Caller " + caller + " is not waiting");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testConcurrentCallsShareLoad() throws Exception {
+        final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+        final AtomicInteger loads = new AtomicInteger(0);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Object result = new Object();
+
+        final Callable<Object> loader = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                loads.incrementAndGet();
+                started.countDown();
+                release.await();
+                return result;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Object>> futures = new ArrayList<>();
+        try {
+            Callable<Object> caller = new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    callers.add(Thread.currentThread());
+                    return singleFlight.get("key", loader);
+                }
+            };
+            futures.add(executor.submit(caller));
+            started.await(5, TimeUnit.SECONDS);
+            for (int i = 1; i <= 3; i++) {
+                futures.add(executor.submit(caller));
+                /*
+                 * Joined the in-flight load
+                 */
+                awaitWaiting(i);
+            }
+            release.countDown();
+            for (Future<Object> future : futures) {
+                assertSame(result, future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testWaitIsTimeLimited() throws Exception {
+        final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> leader = executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return singleFlight.get("key", new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            started.countDown();
+                            release.await();
+                            return "slow";
+                        }
+                    });
+                }
+            });
+            started.await(5, TimeUnit.SECONDS);
+            try {
+                singleFlight.get("key", new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        fail("The in-flight computation should be shared");
+                        return null;
+                    }
+                }, 50, TimeUnit.MILLISECONDS);
+                fail("Expected a TimeoutException");
+            } catch (TimeoutException e) {
+                /*
+                 * Expected
+                 */
+            }
+            /*
+             * The computation itself is unaffected by the waiter giving up
+             */
+            release.countDown();
+            assertEquals("slow", leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testFailureIsPropagated() throws Exception {
+        SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+        try {
+            singleFlight.get("key", new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    throw new IOException("Cannot read");
+                }
+            });
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException e) {
+            assertEquals(IOException.class, e.getCause().getClass());
+        }
+        /*
+         * A failed load should not be remembered
+         */
+        assertEquals("loaded", singleFlight.get("key", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return "loaded";
+            }
+        }));
+    }
+
+    /**
+     * Calls {@link SingleFlight#get(Object, Callable)} on another thread, with
+     * the given token attached
+     */
+    private Future<Object> getWithToken(ExecutorService executor,
+            final SingleFlight<String, Object> singleFlight, final CancellationToken token,
+            final Callable<Object> loader) {
+        return executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                callers.add(Thread.currentThread());
+                CancellationToken previous = CancellationToken.attach(token);
+                try {
+                    return singleFlight.get("key", loader);
+                } finally {
+                    CancellationToken.attach(previous);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testComputationOutlivesCancelledRunner() throws Exception {
+        final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<CancellationToken> computationToken = new AtomicReference<>();
+        Callable<Object> loader = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                computationToken.set(CancellationToken.current());
+                started.countDown();
+                release.await();
+                CancellationToken.checkCurrent();
+                return "rendered";
+            }
+        };
+
+        CancellationToken runner = new CancellationToken("GetMap", 0L);
+        CancellationToken waiter = new CancellationToken("GetMap", 0L);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> runnerResult = getWithToken(executor, singleFlight, runner, loader);
+            started.await(5, TimeUnit.SECONDS);
+            assertFalse(computationToken.get() == runner);
+            Future<Object> waiterResult = getWithToken(executor, singleFlight, waiter, loader);
+            awaitWaiting(1);
+
+            runner.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+            assertFalse(computationToken.get().isCancelled());
+            release.countDown();
+            assertEquals("rendered", waiterResult.get(5, TimeUnit.SECONDS));
+            assertEquals("rendered", runnerResult.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testComputationStopsWhenAllCallersCancelled() throws Exception {
+        final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<CancellationToken> computationToken = new AtomicReference<>();
+        Callable<Object> loader = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                computationToken.set(CancellationToken.current());
+                started.countDown();
+                while (true) {
+                    CancellationToken.checkCurrent();
+                    Thread.sleep(10);
+                }
+            }
+        };
+
+        CancellationToken runner = new CancellationToken("GetMap", 0L);
+        CancellationToken waiter = new CancellationToken("GetMap", 0L);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> runnerResult = getWithToken(executor, singleFlight, runner, loader);
+            started.await(5, TimeUnit.SECONDS);
+            Future<Object> waiterResult = getWithToken(executor, singleFlight, waiter, loader);
+            awaitWaiting(1);
+
+            waiter.cancel(CancellationToken.Reason.DEADLINE_EXCEEDED);
+            try {
+                waiterResult.get(5, TimeUnit.SECONDS);
+                fail("The cancelled waiter should stop waiting");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RequestCancelledException);
+            }
+            assertFalse(computationToken.get().isCancelled());
+
+            runner.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+            try {
+                runnerResult.get(5, TimeUnit.SECONDS);
+                fail("The computation should have been stopped");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().getCause() instanceof RequestCancelledException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testWaiterRetriesComputationStoppedByOthers() throws Exception {
+        final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger(0);
+        final CancellationToken runner = new CancellationToken("GetMap", 0L);
+        Callable<Object> loader = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                if (runs.incrementAndGet() > 1) {
+                    return "rendered";
+                }
+                /*
+                 * Cancelled as if only the runner were waiting for this
+                 */
+                runner.cancel(CancellationToken.Reason.CLIENT_DISCONNECTED);
+                started.countDown();
+                release.await();
+                CancellationToken.checkCurrent();
+                return "stopped";
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> runnerResult = getWithToken(executor, singleFlight, runner, loader);
+            started.await(5, TimeUnit.SECONDS);
+            /*
+             * Joins once the computation has already been stopped
+             */
+            CancellationToken waiter = new CancellationToken("GetMap", 0L);
+            Future<Object> waiterResult = getWithToken(executor, singleFlight, waiter, loader);
+            awaitWaiting(1);
+            release.countDown();
+            assertEquals("rendered", waiterResult.get(5, TimeUnit.SECONDS));
+            try {
+                runnerResult.get(5, TimeUnit.SECONDS);
+                fail("The runner's own computation should have been stopped");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().getCause() instanceof RequestCancelledException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, runs.get());
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class TileMatrixSetTest {
+    private static final double DELTA = 1e-6;
+
+    @Test
+    public void testWebMercatorTiles() {
+        TileMatrixSet set = TileMatrixSet.WEB_MERCATOR;
+        double half = 20037508.3427892;
+        assertArrayEquals(new double[] { -half, -half, half, half }, set.getTileBounds(0, 0, 0),
+                DELTA);
+        /*
+         * Rows are counted from the top
+         */
+        assertArrayEquals(new double[] { 0, 0, half, half }, set.getTileBounds(1, 0, 1), DELTA);
+        assertArrayEquals(new double[] { -half, -half, 0, 0 }, set.getTileBounds(1, 1, 0), DELTA);
+        assertEquals(559082264.0287178, set.getScaleDenominator(0), 1e-3);
+        assertEquals("-2.00375083427892E7 2.00375083427892E7", set.getTopLeftCorner());
+    }
+
+    @Test
+    public void testWgs84Tiles() {
+        TileMatrixSet set = TileMatrixSet.WGS84;
+        assertEquals(2, set.getMatrixWidth(0));
+        assertEquals(1, set.getMatrixHeight(0));
+        assertEquals(8, set.getMatrixWidth(2));
+        assertArrayEquals(new double[] { 0, -90, 180, 90 }, set.getTileBounds(0, 0, 1), DELTA);
+        assertArrayEquals(new double[] { -180, 45, -135, 90 }, set.getTileBounds(2, 0, 0), DELTA);
+        assertEquals("90.0 -180.0", set.getTopLeftCorner());
+    }
+
+    @Test
+    public void testTileRange() {
+        assertArrayEquals(new int[] { 0, 0, 3, 3 },
+                TileMatrixSet.WEB_MERCATOR.getTileRange(2, -180, -90, 180, 90));
+        /*
+         * The north-east quarter of the world
+         */
+        assertArrayEquals(new int[] { 2, 0, 3, 1 },
+                TileMatrixSet.WEB_MERCATOR.getTileRange(2, 1, 1, 179, 89));
+        assertArrayEquals(new int[] { 4, 1, 4, 1 },
+                TileMatrixSet.WGS84.getTileRange(2, 1, 1, 40, 40));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTileOutsideMatrix() {
+        TileMatrixSet.WEB_MERCATOR.getTileBounds(1, 2, 0);
+    }
+
+    @Test
+    public void testSupportedSetsFollowCrsCodes() {
+        assertEquals(2, TileMatrixSet.getSupported(null).size());
+        assertSame(TileMatrixSet.WGS84, TileMatrixSet.forIdentifier("epsg:4326", null));
+        String[] codes = new String[] { "EPSG:4326", "CRS:84" };
+        assertEquals(1, TileMatrixSet.getSupported(codes).size());
+        assertNull(TileMatrixSet.forIdentifier("EPSG:3857", codes));
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import uk.ac.rdg.resc.edal.ncwms.config.NcwmsDatasetSettings;
+import uk.ac.rdg.resc.edal.wms.RequestParams;
+
+public class TileSeedRequestTest {
+
+    private static RequestParams params(String... namesAndValues) {
+        Map<String, String[]> params = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            params.put(namesAndValues[i], new String[] { namesAndValues[i + 1] });
+        }
+        return new RequestParams(params);
+    }
+
+    @Test
+    public void testZoomLevels() {
+        assertArrayEquals(new int[] { 3, 3 }, TileSeedRequest.parseZoomLevels("3"));
+        assertArrayEquals(new int[] { 0, 5 }, TileSeedRequest.parseZoomLevels(" 0 - 5 "));
+    }
+
+    @Test
+    public void testDefaults() {
+        TileSeedRequest request = TileSeedRequest.parse(params("dataset", "ds", "zoom", "0-2"));
+        assertEquals("ds", request.getDatasetId());
+        assertEquals(Collections.emptyList(), request.getLayers());
+        assertEquals(Arrays.asList("default"), request.getStyles());
+        assertEquals(Collections.singletonList(null), request.getTimes());
+        assertEquals(Collections.singletonList(null), request.getElevations());
+        assertEquals(0, request.getMinZoom());
+        assertEquals(2, request.getMaxZoom());
+        assertEquals("EPSG:3857", request.getTileMatrixSet());
+        assertEquals("image/png", request.getFormat());
+    }
+
+    @Test
+    public void testLists() {
+        TileSeedRequest request = TileSeedRequest.parse(params("layers", "ds/sst, ds/ice",
+                "zoom", "4", "styles", "default,default-contour", "times",
+                "2000-01-01T00:00:00Z,2000-02-01T00:00:00Z", "tileMatrixSet", "EPSG:4326",
+                "threads", "2"));
+        assertNull(request.getDatasetId());
+        assertEquals(Arrays.asList("ds/sst", "ds/ice"), request.getLayers());
+        assertEquals(Arrays.asList("default", "default-contour"), request.getStyles());
+        assertEquals(Arrays.asList("2000-01-01T00:00:00Z", "2000-02-01T00:00:00Z"),
+                request.getTimes());
+        assertEquals("EPSG:4326", request.getTileMatrixSet());
+        assertEquals(2, request.getThreads());
+    }
+
+    @Test
+    public void testDatasetSettings() {
+        NcwmsDatasetSettings settings = new NcwmsDatasetSettings("ds");
+        assertNull(TileSeedRequest.forDataset("ds", settings));
+        settings.setSeedZoomLevels("1-3");
+        TileSeedRequest request = TileSeedRequest.forDataset("ds", settings);
+        assertEquals("ds", request.getDatasetId());
+        assertEquals(1, request.getMinZoom());
+        assertEquals(3, request.getMaxZoom());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReversedZoomLevels() {
+        TileSeedRequest.parse(params("dataset", "ds", "zoom", "5-2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZoomLevelTooHigh() {
+        TileSeedRequest.parse(params("dataset", "ds", "zoom", "0-19"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNothingToSeed() {
+        TileSeedRequest.parse(params("zoom", "0-2"));
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class WmsRequestKeyTest {
+
+    private static Map<String, String[]> params(String... namesAndValues) {
+        Map<String, String[]> params = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            params.put(namesAndValues[i], new String[] { namesAndValues[i + 1] });
+        }
+        return params;
+    }
+
+    @Test
+    public void testEquivalentRequestsHaveSameKey() {
+        String key = WmsRequestKey.canonicalise(
+                params("REQUEST", "GetMap", "LAYERS", "ds/sst", "BBOX", "-180,-90,180,90",
+                        "WIDTH", "256", "FORMAT", "image/png"), null);
+        String reordered = WmsRequestKey.canonicalise(
+                params("format", "IMAGE/PNG", "width", "256.0", "bbox", "-180.0,-90,180.00,90",
+                        "layers", "ds/sst", "request", "getmap"), null);
+        assertEquals(key, reordered);
+        assertEquals("BBOX=-180,-90,180,90&FORMAT=image/png&LAYERS=ds/sst&REQUEST=getmap&WIDTH=256",
+                key);
+    }
+
+    @Test
+    public void testDifferentRequestsHaveDifferentKeys() {
+        String key = WmsRequestKey.canonicalise(params("LAYERS", "ds/sst", "BBOX", "0,0,10,10"),
+                null);
+        /*
+         * Layer names are case-sensitive
+         */
+        assertNotEquals(key, WmsRequestKey.canonicalise(
+                params("LAYERS", "ds/SST", "BBOX", "0,0,10,10"), null));
+        assertNotEquals(key, WmsRequestKey.canonicalise(
+                params("LAYERS", "ds/sst", "BBOX", "0,0,10,10.5"), null));
+    }
+
+    @Test
+    public void testOverridesReplaceParameters() {
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("LAYERS", "ds/sst");
+        overrides.put("DATASET", "ds");
+        assertEquals("DATASET=ds&LAYERS=ds/sst",
+                WmsRequestKey.canonicalise(params("layers", "sst"), overrides));
+    }
+
+    @Test
+    public void testNonNumericValuesAreKept() {
+        assertEquals("ELEVATION=-10/-5",
+                WmsRequestKey.canonicalise(params("ELEVATION", "-10/-5"), null));
+        assertEquals("ELEVATION=-5,0.5",
+                WmsRequestKey.canonicalise(params("ELEVATION", "-5.0, 0.50"), null));
+    }
+}
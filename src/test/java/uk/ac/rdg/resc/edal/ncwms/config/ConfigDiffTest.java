@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.CacheInfo;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.VariableConfig;
+import uk.ac.rdg.resc.edal.util.Extents;
+
+public class ConfigDiffTest {
+
+    private static DatasetConfig dataset(String id, String location, String palette) {
+        VariableConfig[] variables = new VariableConfig[] { new VariableConfig("sst", "SST",
+                "Sea surface temperature", Extents.newExtent(270f, 300f), palette, null, null,
+                null, "linear", 250) };
+        DatasetConfig dataset = new DatasetConfig(variables);
+        dataset.setId(id);
+        dataset.setTitle(id);
+        dataset.setLocation(location);
+        return dataset;
+    }
+
+    private static NcwmsDynamicService service(String alias, String path) {
+        NcwmsDynamicService service = new NcwmsDynamicService();
+        service.setAlias(alias);
+        service.setServicePath(path);
+        service.setDatasetIdMatch(".*");
+        return service;
+    }
+
+    private static NcwmsConfig config(DatasetConfig[] datasets, NcwmsDynamicService[] services) {
+        return new NcwmsConfig(datasets, services, new NcwmsContact(), new NcwmsServerInfo(),
+                new CacheInfo(), new NcwmsSupportedCrsCodes());
+    }
+
+    @Test
+    public void testIdenticalConfigs() throws Exception {
+        NcwmsConfig live = config(new DatasetConfig[] { dataset("a", "/data/a.nc", "default") },
+                new NcwmsDynamicService[] { service("local", "/data") });
+        NcwmsConfig updated = config(new DatasetConfig[] { dataset("a", "/data/a.nc", "default") },
+                new NcwmsDynamicService[] { service("local", "/data") });
+        assertTrue(ConfigDiff.between(live, updated).isEmpty());
+    }
+
+    @Test
+    public void testDatasetChanges() throws Exception {
+        DatasetConfig retitled = dataset("retitled", "/data/retitled.nc", "default");
+        DatasetConfig removed = dataset("removed", "/data/removed.nc", "default");
+        NcwmsConfig live = config(new DatasetConfig[] {
+                dataset("unchanged", "/data/unchanged.nc", "default"),
+                dataset("moved", "/data/moved.nc", "default"),
+                dataset("restyled", "/data/restyled.nc", "default"), retitled, removed },
+                new NcwmsDynamicService[0]);
+
+        DatasetConfig newRetitled = dataset("retitled", "/data/retitled.nc", "default");
+        newRetitled.setTitle("A new title");
+        NcwmsConfig updated = config(new DatasetConfig[] {
+                dataset("unchanged", "/data/unchanged.nc", "default"),
+                dataset("moved", "/data/elsewhere/moved.nc", "default"),
+                dataset("restyled", "/data/restyled.nc", "redblue"), newRetitled,
+                dataset("added", "/data/added.nc", "default") }, new NcwmsDynamicService[0]);
+
+        ConfigDiff diff = ConfigDiff.between(live, updated);
+        assertFalse(diff.isEmpty());
+        assertEquals(1, diff.getAddedDatasets().size());
+        assertEquals("added", diff.getAddedDatasets().get(0).getId());
+        assertEquals(1, diff.getRemovedDatasets().size());
+        assertSame(removed, diff.getRemovedDatasets().get(0));
+        assertEquals(2, diff.getReloadedDatasets().size());
+        assertEquals("moved", diff.getReloadedDatasets().get(0).getId());
+        assertEquals("restyled", diff.getReloadedDatasets().get(1).getId());
+        assertEquals(1, diff.getUpdatedDatasets().size());
+        assertSame(newRetitled, diff.getUpdatedDatasets().get(retitled));
+    }
+
+    @Test
+    public void testDynamicServiceChanges() throws Exception {
+        NcwmsDynamicService changed = service("changed", "/data/changed");
+        NcwmsDynamicService removed = service("removed", "/data/removed");
+        NcwmsConfig live = config(new DatasetConfig[0], new NcwmsDynamicService[] {
+                service("unchanged", "/data/unchanged"), changed, removed });
+        NcwmsConfig updated = config(new DatasetConfig[0], new NcwmsDynamicService[] {
+                service("unchanged", "/data/unchanged"), service("changed", "/archive/changed"),
+                service("added", "/data/added") });
+
+        ConfigDiff diff = ConfigDiff.between(live, updated);
+        assertEquals(1, diff.getAddedDynamicServices().size());
+        assertEquals("added", diff.getAddedDynamicServices().get(0).getAlias());
+        assertEquals(1, diff.getRemovedDynamicServices().size());
+        assertSame(removed, diff.getRemovedDynamicServices().get(0));
+        assertEquals(1, diff.getUpdatedDynamicServices().size());
+        assertEquals("/archive/changed", diff.getUpdatedDynamicServices().get(changed).getServicePath());
+        assertTrue(diff.getAddedDatasets().isEmpty());
+        assertFalse(diff.isCacheChanged());
+    }
+
+    @Test
+    public void testCrsCodeChanges() throws Exception {
+        NcwmsConfig live = config(new DatasetConfig[0], new NcwmsDynamicService[0]);
+        NcwmsConfig updated = new NcwmsConfig(new DatasetConfig[0], new NcwmsDynamicService[0],
+                new NcwmsContact(), new NcwmsServerInfo(), new CacheInfo(),
+                new NcwmsSupportedCrsCodes(new String[] { "EPSG:4326", "EPSG:3857" }));
+
+        ConfigDiff diff = ConfigDiff.between(live, updated);
+        assertFalse(diff.isEmpty());
+        assertTrue(diff.isCrsCodesChanged());
+        assertFalse(diff.isSettingsChanged());
+    }
+
+    @Test
+    public void testProcessingChanges() throws Exception {
+        NcwmsConfig live = config(new DatasetConfig[0], new NcwmsDynamicService[0]);
+        NcwmsConfig updated = config(new DatasetConfig[0], new NcwmsDynamicService[0]);
+        updated.getProcessingInfo().setBandedRenderingPixels(0);
+
+        ConfigDiff diff = ConfigDiff.between(live, updated);
+        assertFalse(diff.isEmpty());
+        assertTrue(diff.isSettingsChanged());
+        assertFalse(diff.isCrsCodesChanged());
+    }
+}
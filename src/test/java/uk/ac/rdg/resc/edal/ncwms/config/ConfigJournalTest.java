@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File configFile;
+    private ConfigJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        configFile = new File(folder.getRoot(), "config.xml");
+        journal = new ConfigJournal(configFile);
+    }
+
+    private static JSONObject entry(String op, String id) {
+        JSONObject entry = new JSONObject();
+        entry.put(ConfigJournal.OPERATION, op);
+        entry.put("id", id);
+        return entry;
+    }
+
+    @Test
+    public void testEntriesReadInOrder() throws IOException {
+        journal.append(entry("addDataset", "first"));
+        journal.append(entry("removeDataset", "second\nwith a newline"));
+        assertEquals(2, journal.size());
+
+        List<JSONObject> entries = new ConfigJournal(configFile).read();
+        assertEquals(2, entries.size());
+        assertEquals("first", entries.get(0).getString("id"));
+        assertEquals("second\nwith a newline", entries.get(1).getString("id"));
+    }
+
+    @Test
+    public void testPartialEntryIgnored() throws IOException {
+        journal.append(entry("addDataset", "complete"));
+        try (FileOutputStream out = new FileOutputStream(configFile.getAbsolutePath() + ".journal",
+                true)) {
+            out.write("{\"op\":\"addData".getBytes(StandardCharsets.UTF_8));
+        }
+        List<JSONObject> entries = journal.read();
+        assertEquals(1, entries.size());
+        assertEquals("complete", entries.get(0).getString("id"));
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        journal.append(entry("addDataset", "dataset"));
+        journal.clear();
+        assertEquals(0, journal.size());
+        assertTrue(journal.read().isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.rdg.resc.edal.catalogue.jaxb.CacheInfo;
+import uk.ac.rdg.resc.edal.catalogue.jaxb.DatasetConfig;
+
+public class DynamicServiceIndexTest {
+
+    private NcwmsConfig config;
+    private NcwmsDynamicService local;
+    private NcwmsDynamicService localModels;
+
+    @Before
+    public void setUp() {
+        local = createService("local");
+        localModels = createService("local/models");
+
+        /*
+         * Deliberately add the longer alias first - the old behaviour meant that
+         * the last matching alias won
+         */
+        config = new NcwmsConfig(new DatasetConfig[0],
+                new NcwmsDynamicService[] { localModels, local }, new NcwmsContact(),
+                new NcwmsServerInfo(), new CacheInfo(), new NcwmsSupportedCrsCodes());
+    }
+
+    private static NcwmsDynamicService createService(String alias) {
+        NcwmsDynamicService service = new NcwmsDynamicService();
+        service.setAlias(alias);
+        service.setServicePath("/data/" + alias);
+        service.setDatasetIdMatch(".*");
+        return service;
+    }
+
+    @Test
+    public void testLongestPrefixWins() {
+        DynamicServiceIndex index = config.getDynamicServiceIndex();
+        assertSame(localModels, index.longestPrefixMatch("local/models/global/may1981.nc/sst"));
+        assertSame(local, index.longestPrefixMatch("local/obs/may1981.nc/sst"));
+        assertSame(local, index.longestPrefixMatch("local"));
+        assertNull(index.longestPrefixMatch("remote/models/may1981.nc"));
+        assertNull(index.longestPrefixMatch(""));
+    }
+
+    @Test
+    public void testIndexRebuiltOnChange() {
+        DynamicServiceIndex before = config.getDynamicServiceIndex();
+
+        config.removeDynamicService(localModels);
+        DynamicServiceIndex afterRemove = config.getDynamicServiceIndex();
+        assertNotSame(before, afterRemove);
+        assertSame(local, afterRemove.longestPrefixMatch("local/models/global/may1981.nc"));
+
+        config.changeDynamicServiceId(local, "archive");
+        DynamicServiceIndex afterRename = config.getDynamicServiceIndex();
+        assertNull(afterRename.longestPrefixMatch("local/obs/may1981.nc"));
+        assertSame(local, afterRename.longestPrefixMatch("archive/obs/may1981.nc"));
+
+        NcwmsDynamicService remote = createService("remote");
+        config.addDynamicService(remote);
+        assertSame(remote, config.getDynamicServiceIndex().longestPrefixMatch("remote/x.nc"));
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2026 The University of Reading
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the University of Reading, nor the names of the
+ *    authors or contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package uk.ac.rdg.resc.edal.ncwms.config;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class NcwmsHttpCacheInfoTest {
+
+    @Test
+    public void testMaxAgeRules() {
+        NcwmsHttpCacheInfo httpCache = new NcwmsHttpCacheInfo();
+        assertEquals(0, httpCache.getMaxAge("GetMap"));
+
+        httpCache.setMaxAge("GetMap", 3600);
+        httpCache.setMaxAge("GetLegendGraphic", 86400);
+        /*
+         * Request names are not case-sensitive
+         */
+        assertEquals(3600, httpCache.getMaxAge("getmap"));
+        assertEquals(86400, httpCache.getMaxAge("GetLegendGraphic"));
+        assertEquals(0, httpCache.getMaxAge("GetFeatureInfo"));
+
+        httpCache.setMaxAge("GETMAP", 60);
+        assertEquals(60, httpCache.getMaxAge("GetMap"));
+        assertEquals(2, httpCache.getMaxAgeRules().size());
+
+        httpCache.setMaxAge("GetMap", 0);
+        assertEquals(0, httpCache.getMaxAge("GetMap"));
+        assertEquals(1, httpCache.getMaxAgeRules().size());
+    }
+}